@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import ch.lipsch.subsonic4j.model.Directory;
+
+/**
+ * Implement this interface to receive an album list one album at a time while
+ * it is read from the connection. See
+ * {@link SubsonicService#getAlbumList(ch.lipsch.subsonic4j.SubsonicService.AlbumType, Integer, Integer, AlbumVisitor)}
+ * .
+ * 
+ * Runtime exceptions thrown by the visitor abort the request and are passed
+ * on to the caller.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface AlbumVisitor {
+
+	/**
+	 * Called for every album in the order delivered by the server.
+	 * 
+	 * @param album
+	 *            The album. Its content is fetched on first access. Never
+	 *            <code>null</code>.
+	 */
+	public void visitAlbum(Directory album);
+}
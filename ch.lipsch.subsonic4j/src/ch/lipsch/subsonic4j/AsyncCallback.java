@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+/**
+ * Receives the outcome of a call made through {@link AsyncSubsonicService}.
+ * The methods are invoked on the thread which executed the call, they should
+ * therefore return quickly.
+ * 
+ * @author Erwin Betschart
+ * 
+ * @param <T>
+ *            The type of the result.
+ */
+public interface AsyncCallback<T> {
+
+	/**
+	 * Called when the call completed successfully.
+	 * 
+	 * @param result
+	 *            The result of the call. <code>null</code> for calls which do
+	 *            not return anything.
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called when the call failed.
+	 * 
+	 * @param exception
+	 *            The reason of the failure. Unexpected runtime exceptions are
+	 *            wrapped into a {@link SubsonicException} of type
+	 *            {@link SubsonicException.ErrorType#GENERIC}.
+	 */
+	public void onFailure(SubsonicException exception);
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import ch.lipsch.subsonic4j.SubsonicService.AlbumType;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.ChatMessage;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.model.License;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.model.NowPlaying;
+import ch.lipsch.subsonic4j.model.Playlist;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.User;
+
+/**
+ * Asynchronous counterpart of {@link SubsonicService}. Every call returns
+ * immediately, the request is executed on the executor configured in
+ * {@link ServiceSettings#setAsyncExecutor(java.util.concurrent.Executor)}.
+ * At most {@link ServiceSettings#getMaxConcurrentAsyncRequests()} requests
+ * are executed at the same time, further calls are queued without blocking
+ * the caller.
+ * 
+ * The result is available through the returned {@link Future}. Optionally a
+ * {@link AsyncCallback} may be passed which is notified once the call
+ * completes. Calls which are cancelled through {@link Future#cancel(boolean)}
+ * do not notify their callback. If a call fails
+ * {@link Future#get()} throws an
+ * {@link java.util.concurrent.ExecutionException} with the
+ * {@link SubsonicException} as cause.
+ * 
+ * See {@link SubsonicService} for the documentation of the single calls.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface AsyncSubsonicService {
+
+	public Future<Void> ping(AsyncCallback<Void> callback);
+
+	public Future<License> getLicense(AsyncCallback<License> callback);
+
+	public Future<List<MusicFolder>> getMusicFolders(
+			AsyncCallback<List<MusicFolder>> callback);
+
+	public Future<List<NowPlaying>> getNowPlaying(
+			AsyncCallback<List<NowPlaying>> callback);
+
+	public Future<List<Index>> getIndexes(MusicFolder musicFolder,
+			Calendar ifModifiedSince, AsyncCallback<List<Index>> callback);
+
+	public Future<Directory> getMusicDirectory(MusicFolder musicFolder,
+			AsyncCallback<Directory> callback);
+
+	public Future<Directory> getMusicDirectory(Artist artist,
+			AsyncCallback<Directory> callback);
+
+	public Future<SearchResult> search(String query,
+			AsyncCallback<SearchResult> callback);
+
+	public Future<SearchResult> search(String query, SearchPaging paging,
+			AsyncCallback<SearchResult> callback);
+
+	public Future<List<Playlist>> getPlayLists(
+			AsyncCallback<List<Playlist>> callback);
+
+	public Future<Playlist> createPlaylist(String name, List<Song> songs,
+			AsyncCallback<Playlist> callback);
+
+	public Future<Void> changePassword(String username, String password,
+			AsyncCallback<Void> callback);
+
+	public Future<User> getUser(String username, AsyncCallback<User> callback);
+
+	public Future<Void> createUser(String user, String password,
+			Boolean ldapAuthenticated, Boolean adminRole, Boolean settingsRole,
+			Boolean streamRole, Boolean jukeboxRole, Boolean downloadRole,
+			Boolean uploadRole, Boolean playlistRole, Boolean coverArtRole,
+			Boolean commentRole, Boolean podcastRole,
+			AsyncCallback<Void> callback);
+
+	public Future<Void> deleteUser(String username,
+			AsyncCallback<Void> callback);
+
+	public Future<List<ChatMessage>> getChatMessages(Calendar since,
+			AsyncCallback<List<ChatMessage>> callback);
+
+	public Future<Void> addChatMessage(String message,
+			AsyncCallback<Void> callback);
+
+	public Future<List<Directory>> getAlbumList(AlbumType albumType,
+			Integer size, Integer offset,
+			AsyncCallback<List<Directory>> callback);
+
+	public Future<List<Song>> getRandomSongs(AsyncCallback<List<Song>> callback);
+
+	public Future<List<Song>> getRandomSongs(Integer size, String genre,
+			Integer fromYear, Integer toYear, MusicFolder musicFolder,
+			AsyncCallback<List<Song>> callback);
+
+	public Future<String> getLyrics(String artist, String title,
+			AsyncCallback<String> callback);
+
+	/**
+	 * @return The number of calls which are currently executed.
+	 */
+	public int getActiveCount();
+
+	/**
+	 * @return The number of calls which wait for execution.
+	 */
+	public int getQueuedCount();
+
+	/**
+	 * @return The blocking service the calls are delegated to.
+	 */
+	public SubsonicService getSyncService();
+
+	/**
+	 * Disposes this service and the underlying {@link SubsonicService}.
+	 * Queued calls are cancelled. An executor which was passed through the
+	 * {@link ServiceSettings} is not shut down.
+	 */
+	public void disposeService();
+
+	/**
+	 * Checks if this service is disposed.
+	 * 
+	 * @return True if the service is disposed.
+	 */
+	public boolean isDisposed();
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+
+/**
+ * Snapshot of the counters of the request coalescing of a
+ * {@link SubsonicService}. Identical requests which are issued while the
+ * first of them is still running wait for its result instead of asking the
+ * server again.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class CoalescingStatistics {
+
+	private final long requests;
+	private final long coalesced;
+	private final int inFlight;
+
+	public CoalescingStatistics(long requests, long coalesced, int inFlight) {
+		this.requests = requests;
+		this.coalesced = coalesced;
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * @return The number of requests which could have been coalesced.
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return The number of requests which got the result of an identical
+	 *         running request instead of asking the server.
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * @return The number of distinct requests currently running.
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("requests={0}, coalesced={1}, inFlight={2}",
+				requests, coalesced, inFlight);
+	}
+}
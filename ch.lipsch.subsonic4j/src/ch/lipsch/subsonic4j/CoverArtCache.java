@@ -0,0 +1,764 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Disk cache for cover art. Every cover is cached per id and requested size.
+ * The images are stored content addressed, i.e. under the hash of their
+ * content, so an image which is the cover of several directories is stored
+ * once.
+ * 
+ * A size which is not cached is created locally by downscaling a cached
+ * larger variant of the same cover instead of asking the server.
+ * 
+ * The total size of the stored images is bounded, the least recently used
+ * covers are evicted first. Files are written to a temporary file first and
+ * renamed when complete, so a crash never leaves a partial image in the
+ * cache.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class CoverArtCache {
+
+	public static final long DEFAULT_MAX_BYTES = 128 * 1024 * 1024;
+
+	private static final String IMAGES_DIRECTORY = "images";
+	private static final String REFERENCES_DIRECTORY = "references";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * A cached cover of a given size which refers to an image.
+	 */
+	private static final class Reference {
+		private final String id;
+		private final Integer size;
+		private final String imageHash;
+
+		private Reference(String id, Integer size, String imageHash) {
+			this.id = id;
+			this.size = size;
+			this.imageHash = imageHash;
+		}
+	}
+
+	/**
+	 * A stored image and the number of references to it.
+	 */
+	private static final class Image {
+		private final long length;
+		private int references = 0;
+
+		private Image(long length) {
+			this.length = length;
+		}
+	}
+
+	private final File imagesDirectory;
+	private final File referencesDirectory;
+	private final long maxBytes;
+
+	/**
+	 * References by reference key in access order, the eldest is the least
+	 * recently used.
+	 */
+	private final LinkedHashMap<String, Reference> references = new LinkedHashMap<String, Reference>(
+			16, 0.75f, true);
+
+	/**
+	 * The cached sizes of every cover by cover id, to find a larger variant
+	 * without looking at all references.
+	 */
+	private final Map<String, List<Reference>> variants = new HashMap<String, List<Reference>>();
+
+	/**
+	 * Images by hash.
+	 */
+	private final Map<String, Image> images = new HashMap<String, Image>();
+
+	private long bytes = 0;
+	private long hits = 0;
+	private long scaledHits = 0;
+	private long misses = 0;
+
+	/**
+	 * Opens the cache in the given directory with {@link #DEFAULT_MAX_BYTES}.
+	 * 
+	 * @param directory
+	 *            The directory, is created if necessary. Must not be
+	 *            <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the directory could not be read.
+	 */
+	public CoverArtCache(File directory) throws SubsonicException {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Opens the cache in the given directory and loads the covers cached by
+	 * earlier processes.
+	 * 
+	 * @param directory
+	 *            The directory, is created if necessary. Must not be
+	 *            <code>null</code>.
+	 * @param maxBytes
+	 *            The maximum total size of the cached images.
+	 * @throws SubsonicException
+	 *             If the directory could not be read.
+	 */
+	public CoverArtCache(File directory, long maxBytes)
+			throws SubsonicException {
+		StateChecker.check(directory, "directory");
+		StateChecker.check(maxBytes > 0, "maxBytes must be greater than 0.");
+		this.maxBytes = maxBytes;
+		imagesDirectory = new File(directory, IMAGES_DIRECTORY);
+		referencesDirectory = new File(directory, REFERENCES_DIRECTORY);
+		try {
+			createDirectory(imagesDirectory);
+			createDirectory(referencesDirectory);
+			load();
+		} catch (IOException e) {
+			throw new SubsonicException("Could not open the cover art cache.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	private static void createDirectory(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+	}
+
+	/**
+	 * Reads the references from disk, the least recently used first. Left
+	 * over temporary files and unreferenced images are deleted.
+	 */
+	private synchronized void load() throws IOException {
+		File[] referenceFiles = referencesDirectory.listFiles();
+		List<File> sortedFiles = new ArrayList<File>(referenceFiles.length);
+		for (File referenceFile : referenceFiles) {
+			if (referenceFile.getName().endsWith(TEMP_SUFFIX)) {
+				referenceFile.delete();
+			} else {
+				sortedFiles.add(referenceFile);
+			}
+		}
+		Collections.sort(sortedFiles, new Comparator<File>() {
+			@Override
+			public int compare(File first, File second) {
+				long difference = first.lastModified() - second.lastModified();
+				return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+
+		for (File referenceFile : sortedFiles) {
+			Reference reference = readReference(referenceFile);
+			if (reference == null
+					|| !getImageFile(reference.imageHash).isFile()) {
+				referenceFile.delete();
+				continue;
+			}
+			File imageFile = getImageFile(reference.imageHash);
+			references.put(referenceFile.getName(), reference);
+			addVariant(reference);
+			Image image = images.get(reference.imageHash);
+			if (image == null) {
+				image = new Image(imageFile.length());
+				images.put(reference.imageHash, image);
+				bytes += image.length;
+			}
+			image.references++;
+		}
+
+		for (File imageFile : imagesDirectory.listFiles()) {
+			if (!images.containsKey(imageFile.getName())) {
+				imageFile.delete();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @return The reference or <code>null</code> if the file is corrupt.
+	 */
+	private static Reference readReference(File referenceFile)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(referenceFile), ENCODING));
+		try {
+			String id = reader.readLine();
+			String size = reader.readLine();
+			String imageHash = reader.readLine();
+			if (id == null || size == null || imageHash == null) {
+				return null;
+			}
+			return new Reference(id, size.length() == 0 ? null
+					: Integer.valueOf(size), imageHash);
+		} catch (NumberFormatException e) {
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Opens a cached cover. If the size is not cached but a larger variant
+	 * of the cover is, the cover is downscaled and cached in the requested
+	 * size.
+	 * 
+	 * @param id
+	 *            The id of the cover art. Must not be <code>null</code>.
+	 * @param size
+	 *            The requested size, <code>null</code> for the original
+	 *            size.
+	 * @return The image, the caller must close it. <code>null</code> if the
+	 *         cover is not cached.
+	 */
+	public InputStream open(String id, Integer size) {
+		StateChecker.check(id, "id");
+		File imageFile = getCachedImageFile(id, size);
+		if (imageFile != null) {
+			try {
+				return new FileInputStream(imageFile);
+			} catch (FileNotFoundException e) {
+				// Evicted in the meantime
+			}
+		}
+
+		if (size != null) {
+			byte[] scaledImage = scaleFromLargerVariant(id, size);
+			if (scaledImage != null) {
+				synchronized (this) {
+					scaledHits++;
+				}
+				return new ByteArrayInputStream(scaledImage);
+			}
+		}
+		synchronized (this) {
+			misses++;
+		}
+		return null;
+	}
+
+	private synchronized File getCachedImageFile(String id, Integer size) {
+		String referenceKey = getReferenceKey(id, size);
+		Reference reference = references.get(referenceKey);
+		if (reference == null) {
+			return null;
+		}
+		hits++;
+		// The modification time keeps the access order across restarts
+		new File(referencesDirectory, referenceKey).setLastModified(System
+				.currentTimeMillis());
+		return getImageFile(reference.imageHash);
+	}
+
+	/**
+	 * @return The smallest cached variant of the cover which is larger than
+	 *         the given size or <code>null</code>.
+	 */
+	private synchronized File findLargerVariant(String id, int size) {
+		List<Reference> sizes = variants.get(id);
+		if (sizes == null) {
+			return null;
+		}
+		Reference variant = null;
+		for (Reference reference : sizes) {
+			if (reference.size == null) {
+				// The original size is only used if nothing smaller fits
+				if (variant == null) {
+					variant = reference;
+				}
+			} else if (reference.size > size
+					&& (variant == null || variant.size == null
+							|| reference.size < variant.size)) {
+				variant = reference;
+			}
+		}
+		return variant == null ? null : getImageFile(variant.imageHash);
+	}
+
+	private byte[] scaleFromLargerVariant(String id, int size) {
+		File variantFile = findLargerVariant(id, size);
+		if (variantFile == null) {
+			return null;
+		}
+		try {
+			BufferedImage variant = ImageIO.read(variantFile);
+			if (variant == null
+					|| Math.max(variant.getWidth(), variant.getHeight())
+							< size) {
+				return null;
+			}
+			byte[] scaledImage = scale(variant, size);
+			try {
+				put(id, size, scaledImage);
+			} catch (SubsonicException e) {
+				// Scaled again next time
+			}
+			return scaledImage;
+		} catch (IOException e) {
+			// Evicted in the meantime or not readable
+			return null;
+		}
+	}
+
+	/**
+	 * Scales the image so that its larger side has the given size.
+	 * 
+	 * @return The scaled image as jpeg, or as png if it is transparent.
+	 */
+	private static byte[] scale(BufferedImage image, int size)
+			throws IOException {
+		double factor = (double) size
+				/ Math.max(image.getWidth(), image.getHeight());
+		int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+		int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+		boolean transparent = image.getColorModel().hasAlpha();
+
+		BufferedImage scaled = new BufferedImage(width, height,
+				transparent ? BufferedImage.TYPE_INT_ARGB
+						: BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+					RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(scaled, transparent ? "png" : "jpg", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Caches a cover.
+	 * 
+	 * @param id
+	 *            The id of the cover art. Must not be <code>null</code>.
+	 * @param size
+	 *            The size of the cover, <code>null</code> for the original
+	 *            size.
+	 * @param image
+	 *            The image. Must not be <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the image could not be written.
+	 */
+	public void put(String id, Integer size, byte[] image)
+			throws SubsonicException {
+		StateChecker.check(id, "id");
+		StateChecker.check(image, "image");
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile("image", TEMP_SUFFIX,
+					imagesDirectory);
+			OutputStream out = new FileOutputStream(tempFile);
+			try {
+				out.write(image);
+			} finally {
+				out.close();
+			}
+			commit(id, size, tempFile, toHex(createDigest().digest(image)));
+		} catch (IOException e) {
+			throw new SubsonicException("Could not cache the cover art.",
+					ErrorType.GENERIC, e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new SubsonicException("Could not cache the cover art.",
+					ErrorType.GENERIC, e);
+		} finally {
+			if (tempFile != null) {
+				// Already moved if the commit succeeded
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns a stream which reads the given stream and caches its content as
+	 * the cover with the given id and size once the end of the stream is
+	 * reached. If the stream fails or is closed while there is still content
+	 * left, nothing is cached. The caller must close the returned stream.
+	 * 
+	 * @param id
+	 *            The id of the cover art. Must not be <code>null</code>.
+	 * @param size
+	 *            The size of the cover, <code>null</code> for the original
+	 *            size.
+	 * @param inputStream
+	 *            The image. Must not be <code>null</code>.
+	 * @return The stream to read instead of the given one.
+	 */
+	public InputStream storeWhileReading(String id, Integer size,
+			InputStream inputStream) {
+		StateChecker.check(id, "id");
+		StateChecker.check(inputStream, "inputStream");
+		try {
+			File tempFile = File.createTempFile("image", TEMP_SUFFIX,
+					imagesDirectory);
+			return new StoringInputStream(inputStream, id, size, tempFile);
+		} catch (IOException e) {
+			// Without a temporary file the image is not cached
+			return inputStream;
+		} catch (NoSuchAlgorithmException e) {
+			return inputStream;
+		}
+	}
+
+	/**
+	 * Moves a completely written image into the cache.
+	 */
+	private synchronized void commit(String id, Integer size, File tempFile,
+			String imageHash) throws IOException {
+		File imageFile = getImageFile(imageHash);
+		Image image = images.get(imageHash);
+		if (image == null) {
+			if (!tempFile.renameTo(imageFile)) {
+				throw new IOException("Could not create " + imageFile);
+			}
+			image = new Image(imageFile.length());
+			images.put(imageHash, image);
+			bytes += image.length;
+		} else {
+			tempFile.delete();
+		}
+
+		String referenceKey = getReferenceKey(id, size);
+		File referenceFile = new File(referencesDirectory, referenceKey);
+		File tempReferenceFile = new File(referencesDirectory, referenceKey
+				+ TEMP_SUFFIX);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(
+				tempReferenceFile), ENCODING);
+		try {
+			writer.write(id + "\n" + (size == null ? "" : size.toString())
+					+ "\n" + imageHash + "\n");
+		} finally {
+			writer.close();
+		}
+		referenceFile.delete();
+		if (!tempReferenceFile.renameTo(referenceFile)) {
+			throw new IOException("Could not create " + referenceFile);
+		}
+
+		Reference reference = new Reference(id, size, imageHash);
+		Reference previous = references.put(referenceKey, reference);
+		image.references++;
+		if (previous != null) {
+			removeVariant(previous);
+			release(previous.imageHash);
+		}
+		addVariant(reference);
+		evict();
+	}
+
+	private void addVariant(Reference reference) {
+		List<Reference> sizes = variants.get(reference.id);
+		if (sizes == null) {
+			sizes = new ArrayList<Reference>(2);
+			variants.put(reference.id, sizes);
+		}
+		sizes.add(reference);
+	}
+
+	private void removeVariant(Reference reference) {
+		List<Reference> sizes = variants.get(reference.id);
+		sizes.remove(reference);
+		if (sizes.isEmpty()) {
+			variants.remove(reference.id);
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Reference>> eldest = references.entrySet()
+				.iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<String, Reference> entry = eldest.next();
+			eldest.remove();
+			new File(referencesDirectory, entry.getKey()).delete();
+			removeVariant(entry.getValue());
+			release(entry.getValue().imageHash);
+		}
+	}
+
+	/**
+	 * Removes a reference to an image and deletes the image if it was the
+	 * last one.
+	 */
+	private void release(String imageHash) {
+		Image image = images.get(imageHash);
+		image.references--;
+		if (image.references == 0) {
+			images.remove(imageHash);
+			getImageFile(imageHash).delete();
+			bytes -= image.length;
+		}
+	}
+
+	/**
+	 * Removes all sizes of a cover.
+	 * 
+	 * @param id
+	 *            The id of the cover art. Must not be <code>null</code>.
+	 */
+	public synchronized void remove(String id) {
+		StateChecker.check(id, "id");
+		List<Reference> sizes = variants.remove(id);
+		if (sizes == null) {
+			return;
+		}
+		for (Reference reference : sizes) {
+			String referenceKey = getReferenceKey(id, reference.size);
+			references.remove(referenceKey);
+			new File(referencesDirectory, referenceKey).delete();
+			release(reference.imageHash);
+		}
+	}
+
+	/**
+	 * Removes all covers.
+	 */
+	public synchronized void clear() {
+		for (String referenceKey : references.keySet()) {
+			new File(referencesDirectory, referenceKey).delete();
+		}
+		for (String imageHash : images.keySet()) {
+			getImageFile(imageHash).delete();
+		}
+		references.clear();
+		variants.clear();
+		images.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return The number of cached covers, counting every size.
+	 */
+	public synchronized int getEntryCount() {
+		return references.size();
+	}
+
+	/**
+	 * @return The total size of the stored images.
+	 */
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of covers which were cached in the requested size.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of covers which were created by downscaling a
+	 *         cached larger variant.
+	 */
+	public synchronized long getScaledHitCount() {
+		return scaledHits;
+	}
+
+	/**
+	 * @return The number of covers which were not cached.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	private File getImageFile(String imageHash) {
+		return new File(imagesDirectory, String.valueOf(imageHash));
+	}
+
+	private static String getReferenceKey(String id, Integer size) {
+		try {
+			return toHex(createDigest().digest(
+					(id + "\n" + size).getBytes(ENCODING)));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MessageDigest createDigest()
+			throws NoSuchAlgorithmException {
+		return MessageDigest.getInstance("SHA-1");
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >>> 4) & 0x0F, 16));
+			hex.append(Character.forDigit(b & 0x0F, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Copies what is read into a temporary file and commits it when the end
+	 * of the stream is reached. If the stream is closed before, the image is
+	 * only committed if nothing is left to read.
+	 */
+	private final class StoringInputStream extends FilterInputStream {
+		private final String id;
+		private final Integer size;
+		private final File tempFile;
+		private final OutputStream tempOut;
+		private final MessageDigest digest;
+		private boolean storing = true;
+
+		private StoringInputStream(InputStream in, String id, Integer size,
+				File tempFile) throws IOException, NoSuchAlgorithmException {
+			super(in);
+			this.id = id;
+			this.size = size;
+			this.tempFile = tempFile;
+			this.digest = createDigest();
+			this.tempOut = new FileOutputStream(tempFile);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			int read = read(single, 0, 1);
+			return read == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int read;
+			try {
+				read = super.read(buffer, offset, length);
+			} catch (IOException e) {
+				abort();
+				throw e;
+			}
+			if (!storing) {
+				return read;
+			}
+			if (read == -1) {
+				finish();
+			} else {
+				try {
+					tempOut.write(buffer, offset, read);
+					digest.update(buffer, offset, read);
+				} catch (IOException e) {
+					// The reader gets the image even if it cannot be cached
+					abort();
+				}
+			}
+			return read;
+		}
+
+		/**
+		 * Commits the completely read image.
+		 */
+		private void finish() {
+			storing = false;
+			try {
+				tempOut.close();
+				commit(id, size, tempFile, toHex(digest.digest()));
+			} catch (IOException e) {
+				// Not cached
+				tempFile.delete();
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped content cannot be cached
+			abort();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				// The reader may stop after the last byte without reading
+				// the end of the stream
+				if (storing && in.read() == -1) {
+					finish();
+				}
+			} catch (IOException e) {
+				// Not cached
+			} finally {
+				abort();
+				super.close();
+			}
+		}
+
+		private void abort() {
+			if (storing) {
+				storing = false;
+				try {
+					tempOut.close();
+				} catch (IOException e) {
+					// Deleted anyway
+				}
+				tempFile.delete();
+			}
+		}
+	}
+}
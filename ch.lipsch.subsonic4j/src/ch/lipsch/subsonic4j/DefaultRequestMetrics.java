@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Keeps the request count, the response bytes, the errors by
+ * {@link ErrorType} and a {@link LatencyHistogram} per {@link Phase} for
+ * every endpoint. Recording only updates atomic counters and never waits
+ * for a lock. A metrics instance may be shared by several services.
+ * 
+ * The counters are read one after another, a snapshot taken while requests
+ * complete may therefore count a request in one counter but not yet in
+ * another.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class DefaultRequestMetrics implements RequestMetrics {
+
+	private static final int PHASE_COUNT = Phase.values().length;
+
+	private final ConcurrentHashMap<String, EndpointCounters> endpoints = new ConcurrentHashMap<String, EndpointCounters>();
+
+	@Override
+	public void record(String endpoint, long[] phaseNanos, long bytes,
+			ErrorType errorType) {
+		EndpointCounters counters = endpoints.get(endpoint);
+		if (counters == null) {
+			counters = new EndpointCounters();
+			EndpointCounters existing = endpoints.putIfAbsent(endpoint,
+					counters);
+			if (existing != null) {
+				counters = existing;
+			}
+		}
+		counters.record(phaseNanos, bytes, errorType);
+	}
+
+	/**
+	 * @param endpoint
+	 *            The view of the rest api, e.g. "getMusicDirectory.view".
+	 *            Must not be <code>null</code>.
+	 * @return The statistics of the endpoint or <code>null</code> if no
+	 *         request to it was recorded.
+	 */
+	public EndpointStatistics getStatistics(String endpoint) {
+		StateChecker.check(endpoint, "endpoint");
+		EndpointCounters counters = endpoints.get(endpoint);
+		return counters == null ? null : counters.snapshot(endpoint);
+	}
+
+	/**
+	 * @return The statistics of all endpoints to which requests were
+	 *         recorded, sorted by endpoint.
+	 */
+	public SortedMap<String, EndpointStatistics> getSnapshot() {
+		SortedMap<String, EndpointStatistics> snapshot = new TreeMap<String, EndpointStatistics>();
+		for (Map.Entry<String, EndpointCounters> entry : endpoints.entrySet()) {
+			snapshot.put(entry.getKey(),
+					entry.getValue().snapshot(entry.getKey()));
+		}
+		return Collections.unmodifiableSortedMap(snapshot);
+	}
+
+	/**
+	 * Drops all recorded requests.
+	 */
+	public void reset() {
+		endpoints.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (EndpointStatistics statistics : getSnapshot().values()) {
+			result.append(statistics).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The counters of one endpoint.
+	 */
+	private static final class EndpointCounters {
+		private final AtomicLong requests = new AtomicLong(0);
+		private final AtomicLong bytes = new AtomicLong(0);
+		private final AtomicLongArray errors = new AtomicLongArray(
+				ErrorType.values().length);
+		private final Histogram[] phases = new Histogram[PHASE_COUNT];
+		private final Histogram total = new Histogram();
+
+		private EndpointCounters() {
+			for (int phase = 0; phase < PHASE_COUNT; phase++) {
+				phases[phase] = new Histogram();
+			}
+		}
+
+		private void record(long[] phaseNanos, long bytes,
+				ErrorType errorType) {
+			long totalNanos = 0;
+			for (int phase = 0; phase < PHASE_COUNT; phase++) {
+				if (phaseNanos[phase] >= 0) {
+					phases[phase].record(phaseNanos[phase]);
+					totalNanos += phaseNanos[phase];
+				}
+			}
+			total.record(totalNanos);
+			this.bytes.addAndGet(bytes);
+			if (errorType != null) {
+				errors.incrementAndGet(errorType.ordinal());
+			}
+			requests.incrementAndGet();
+		}
+
+		private EndpointStatistics snapshot(String endpoint) {
+			long[] errorCounts = new long[errors.length()];
+			for (int i = 0; i < errorCounts.length; i++) {
+				errorCounts[i] = errors.get(i);
+			}
+			LatencyHistogram[] phaseHistograms = new LatencyHistogram[PHASE_COUNT];
+			for (int phase = 0; phase < PHASE_COUNT; phase++) {
+				phaseHistograms[phase] = phases[phase].snapshot();
+			}
+			return new EndpointStatistics(endpoint, requests.get(),
+					bytes.get(), errorCounts, phaseHistograms,
+					total.snapshot());
+		}
+	}
+
+	/**
+	 * The recording side of a {@link LatencyHistogram}.
+	 */
+	private static final class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(
+				LatencyHistogram.BUCKET_COUNT);
+		private final AtomicLong totalNanos = new AtomicLong(0);
+		private final AtomicLong maxNanos = new AtomicLong(0);
+
+		private void record(long nanos) {
+			buckets.incrementAndGet(LatencyHistogram.getBucket(nanos));
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		private LatencyHistogram snapshot() {
+			long[] counts = new long[buckets.length()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+			}
+			return new LatencyHistogram(counts, totalNanos.get(),
+					maxNanos.get());
+		}
+	}
+}
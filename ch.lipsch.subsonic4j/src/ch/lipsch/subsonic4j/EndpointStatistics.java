@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+
+import ch.lipsch.subsonic4j.RequestMetrics.Phase;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Snapshot of the measurements of the requests to one endpoint, see
+ * {@link DefaultRequestMetrics#getSnapshot()}.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class EndpointStatistics {
+
+	private final String endpoint;
+	private final long requests;
+	private final long bytes;
+	private final long[] errors;
+	private final LatencyHistogram[] phases;
+	private final LatencyHistogram total;
+
+	/**
+	 * @param errors
+	 *            The number of errors of each {@link ErrorType}, indexed by
+	 *            its ordinal. Is not copied.
+	 * @param phases
+	 *            The durations of each {@link Phase}, indexed by its ordinal.
+	 *            Is not copied.
+	 */
+	EndpointStatistics(String endpoint, long requests, long bytes,
+			long[] errors, LatencyHistogram[] phases, LatencyHistogram total) {
+		this.endpoint = endpoint;
+		this.requests = requests;
+		this.bytes = bytes;
+		this.errors = errors;
+		this.phases = phases;
+		this.total = total;
+	}
+
+	/**
+	 * @return The view of the rest api, e.g. "getMusicDirectory.view".
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return The number of completed requests, successful or not.
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return The number of response bytes which were read.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of failed requests.
+	 */
+	public long getErrors() {
+		long sum = 0;
+		for (long count : errors) {
+			sum += count;
+		}
+		return sum;
+	}
+
+	/**
+	 * @param errorType
+	 *            Must not be <code>null</code>.
+	 * @return The number of requests which failed with the given type of
+	 *         error.
+	 */
+	public long getErrors(ErrorType errorType) {
+		StateChecker.check(errorType, "errorType");
+		return errors[errorType.ordinal()];
+	}
+
+	/**
+	 * @param phase
+	 *            Must not be <code>null</code>.
+	 * @return The durations of the phase, of the requests which went through
+	 *         it.
+	 */
+	public LatencyHistogram getLatency(Phase phase) {
+		StateChecker.check(phase, "phase");
+		return phases[phase.ordinal()];
+	}
+
+	/**
+	 * @return The durations of the requests, the sum of their phases.
+	 */
+	public LatencyHistogram getTotalLatency() {
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(MessageFormat.format(
+				"{0}: requests={1}, bytes={2}, errors={3}", endpoint,
+				requests, bytes, getErrors()));
+		result.append("\n  total: ").append(total);
+		for (Phase phase : Phase.values()) {
+			if (phases[phase.ordinal()].getCount() > 0) {
+				result.append("\n  ").append(phase).append(": ")
+						.append(phases[phase.ordinal()]);
+			}
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+
+/**
+ * Snapshot of the counters of an executor which runs tasks of a
+ * {@link SubsonicService}, e.g. the delivery of streams.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class ExecutorStatistics {
+
+	private final int queued;
+	private final int active;
+	private final long completed;
+	private final long rejected;
+
+	public ExecutorStatistics(int queued, int active, long completed,
+			long rejected) {
+		this.queued = queued;
+		this.active = active;
+		this.completed = completed;
+		this.rejected = rejected;
+	}
+
+	/**
+	 * @return The number of tasks waiting for a free thread.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return The number of tasks currently running.
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * @return The number of tasks which ran to the end, successfully or not.
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return The number of tasks which were rejected or discarded without
+	 *         being run.
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"queued={0}, active={1}, completed={2}, rejected={3}", queued,
+				active, completed, rejected);
+	}
+}
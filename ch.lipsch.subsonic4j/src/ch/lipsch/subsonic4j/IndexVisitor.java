@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import ch.lipsch.subsonic4j.model.Artist;
+
+/**
+ * Implement this interface to receive the indexes of the subsonic server one
+ * element at a time while they are read from the connection. See
+ * {@link SubsonicService#getIndexes(ch.lipsch.subsonic4j.model.MusicFolder, java.util.Calendar, IndexVisitor)}
+ * .
+ * 
+ * Runtime exceptions thrown by the visitor abort the request and are passed
+ * on to the caller.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface IndexVisitor {
+
+	/**
+	 * Called once before the first index.
+	 * 
+	 * @param lastModified
+	 *            The time in milliseconds the artist collection was last
+	 *            changed on the server. Pass it as ifModifiedSince to skip
+	 *            unchanged collections in later calls.
+	 */
+	public void visitLastModified(long lastModified);
+
+	/**
+	 * Called when a new index starts. All artists delivered until the next
+	 * call belong to this index.
+	 * 
+	 * @param identifier
+	 *            The identifier of the index, e.g. "A".
+	 */
+	public void visitIndex(String identifier);
+
+	/**
+	 * Called for every artist of the current index.
+	 * 
+	 * @param artist
+	 *            The artist. Never <code>null</code>.
+	 */
+	public void visitArtist(Artist artist);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Snapshot of the distribution of durations, e.g. of one phase of the
+ * requests to an endpoint. Every power of two of nanoseconds is divided into
+ * {@link #SUB_BUCKETS} buckets, so a percentile is at most 12.5% above the
+ * real duration.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Durations below {@link #SUB_BUCKETS} have a bucket each, the highest
+	 * bit of a longer duration selects a group of {@link #SUB_BUCKETS}
+	 * buckets and the bits after it the bucket in the group.
+	 */
+	static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final long[] buckets;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+
+	/**
+	 * @param buckets
+	 *            The number of durations in each bucket, has
+	 *            {@link #BUCKET_COUNT} elements. Is not copied.
+	 */
+	LatencyHistogram(long[] buckets, long totalNanos, long maxNanos) {
+		this.buckets = buckets;
+		long bucketTotal = 0;
+		for (long bucket : buckets) {
+			bucketTotal += bucket;
+		}
+		count = bucketTotal;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * @return The bucket of the given duration.
+	 */
+	static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(nanos, 0);
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+		int shift = highestBit - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return The longest duration which falls into the given bucket.
+	 */
+	static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	/**
+	 * @return The number of recorded durations.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The sum of all recorded durations.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return The average duration, 0 if none was recorded.
+	 */
+	public long getMeanNanos() {
+		return count == 0 ? 0 : totalNanos / count;
+	}
+
+	/**
+	 * @return The longest recorded duration, 0 if none was recorded.
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Returns the duration which the given percentage of the recorded
+	 * durations did not exceed.
+	 * 
+	 * @param percentile
+	 *            Between 0 and 100, e.g. 99 for the 99th percentile.
+	 * @return The duration, 0 if none was recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		StateChecker.check(percentile >= 0 && percentile <= 100,
+				"percentile must be between 0 and 100.");
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int bucket = 0; bucket < buckets.length; bucket++) {
+			seen += buckets[bucket];
+			if (seen >= rank) {
+				return Math.min(getUpperBound(bucket), maxNanos);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"count={0}, mean={1}us, p50={2}us, p99={3}us, max={4}us",
+				count, getMeanNanos() / 1000, getPercentileNanos(50) / 1000,
+				getPercentileNanos(99) / 1000, maxNanos / 1000);
+	}
+}
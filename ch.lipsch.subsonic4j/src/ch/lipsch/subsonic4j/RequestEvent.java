@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+
+import ch.lipsch.subsonic4j.RequestMetrics.Phase;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * A completed request of a {@link SubsonicService}, see
+ * {@link RequestListener}.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class RequestEvent {
+
+	private final String endpoint;
+	private final String parameters;
+	private final String threadName;
+	private final long startMillis;
+	private final long durationNanos;
+	private final int status;
+	private final long bytes;
+	private final long[] phaseNanos;
+	private final boolean cacheHit;
+	private final boolean coalesced;
+	private final ErrorType errorType;
+
+	/**
+	 * @param phaseNanos
+	 *            The duration of each {@link Phase}, indexed by its ordinal,
+	 *            -1 for the phases the request did not go through. Is
+	 *            copied.
+	 */
+	public RequestEvent(String endpoint, String parameters,
+			String threadName, long startMillis, long durationNanos,
+			int status, long bytes, long[] phaseNanos, boolean cacheHit,
+			boolean coalesced, ErrorType errorType) {
+		StateChecker.check(endpoint, "endpoint");
+		StateChecker.check(parameters, "parameters");
+		StateChecker.check(phaseNanos, "phaseNanos");
+		this.endpoint = endpoint;
+		this.parameters = parameters;
+		this.threadName = threadName;
+		this.startMillis = startMillis;
+		this.durationNanos = durationNanos;
+		this.status = status;
+		this.bytes = bytes;
+		this.phaseNanos = phaseNanos.clone();
+		this.cacheHit = cacheHit;
+		this.coalesced = coalesced;
+		this.errorType = errorType;
+	}
+
+	/**
+	 * @return The view of the rest api, e.g. "getMusicDirectory.view".
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return The url encoded parameters of the request without the user
+	 *         name and the password, e.g. "v=1.4.0&c=subs4j&id=12".
+	 */
+	public String getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return The name of the thread which issued the request.
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return The time the request started, in milliseconds since the epoch.
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return The time from the start of the request until it was complete.
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return The http status of the response, 0 if the request got no
+	 *         response from the server.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The size of the response body which was read.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @param phase
+	 *            Must not be <code>null</code>.
+	 * @return The duration of the phase, -1 if the request did not go
+	 *         through it.
+	 */
+	public long getPhaseNanos(Phase phase) {
+		StateChecker.check(phase, "phase");
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return True if the response came from the {@link ResponseCache}.
+	 */
+	public boolean isCacheHit() {
+		return cacheHit;
+	}
+
+	/**
+	 * @return True if the request waited for a running identical request
+	 *         instead of asking the server.
+	 */
+	public boolean isCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * @return The type of the error the request failed with or
+	 *         <code>null</code> if it succeeded.
+	 */
+	public ErrorType getErrorType() {
+		return errorType;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format(
+				"{0}?{1}: status={2}, bytes={3}, duration={4}us, "
+						+ "cacheHit={5}, coalesced={6}, error={7}", endpoint,
+				parameters, status, bytes, durationNanos / 1000, cacheHit,
+				coalesced, errorType);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+/**
+ * Is told about every request of a {@link SubsonicService}, see
+ * {@link ServiceSettings#setRequestListener(RequestListener)}. Unlike the
+ * aggregated {@link RequestMetrics}, a listener sees each request on its
+ * own, e.g. to commit it as event of a profiler, next to the garbage
+ * collections and the lock contention of the same time.
+ * 
+ * Implementations must be thread-safe and should return quickly, they are
+ * called by the threads which execute the requests.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface RequestListener {
+
+	/**
+	 * Is called once a request is complete: after its response was decoded,
+	 * for streams after the stream listener returned. Requests which were
+	 * coalesced with a running identical request and responses from the
+	 * {@link ResponseCache} are reported too.
+	 * 
+	 * @param event
+	 *            The request. Never <code>null</code>.
+	 */
+	public void requestCompleted(RequestEvent event);
+}
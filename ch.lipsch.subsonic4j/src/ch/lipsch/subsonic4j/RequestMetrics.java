@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+
+/**
+ * Receives the measurements of the requests of a {@link SubsonicService},
+ * see {@link ServiceSettings#setRequestMetrics(RequestMetrics)}. A request
+ * is recorded once it is complete: after its response was decoded, for
+ * streams after the listener returned. Requests which were coalesced with a
+ * running identical request are not recorded, responses from the
+ * {@link ResponseCache} are.
+ * 
+ * Implementations must be thread-safe and should not block, they are called
+ * by the threads which execute the requests. {@link DefaultRequestMetrics}
+ * keeps counters and histograms per endpoint.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface RequestMetrics {
+
+	/**
+	 * The phases of a request.
+	 */
+	public enum Phase {
+		/**
+		 * Establishing a new connection to the server. 0 if a pooled
+		 * connection was reused.
+		 */
+		CONNECT,
+		/**
+		 * Sending the request and waiting for the response headers.
+		 */
+		FIRST_BYTE,
+		/**
+		 * Waiting for the response body.
+		 */
+		TRANSFER,
+		/**
+		 * Parsing the response body. Includes the creation of the model
+		 * objects if the decoder creates them while parsing.
+		 */
+		PARSE,
+		/**
+		 * Creating the model objects from the parsed response.
+		 */
+		MAP
+	}
+
+	/**
+	 * Records a completed request.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api, e.g. "getMusicDirectory.view".
+	 * @param phaseNanos
+	 *            The duration of each {@link Phase}, indexed by its ordinal.
+	 *            -1 if the request did not go through a phase, e.g. a cached
+	 *            response was not transferred and a stream is not parsed.
+	 *            Must not be kept, the array may be reused.
+	 * @param bytes
+	 *            The size of the response body which was read.
+	 * @param errorType
+	 *            The type of the error the request failed with or
+	 *            <code>null</code> if it succeeded.
+	 */
+	public void record(String endpoint, long[] phaseNanos, long bytes,
+			ErrorType errorType);
+}
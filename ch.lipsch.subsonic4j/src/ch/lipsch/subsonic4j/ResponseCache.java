@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * In-memory cache of raw response bodies. Only endpoints with a time to live
+ * are cached, by default {@link #DEFAULT_CACHED_ENDPOINTS} for
+ * {@link #DEFAULT_TIME_TO_LIVE} milliseconds. The cache is bounded by the
+ * number of entries and the total size of the bodies, the least recently
+ * used entries are evicted first.
+ * 
+ * The keys never contain the password of a user, so a cache may be shared by
+ * several services, even of different users. Responses which depend on the
+ * user (e.g. the playlists or the music folders a user may access) are kept
+ * per user name.
+ * 
+ * Responses which become stale by a write request (e.g. the playlists after
+ * deletePlaylist) are invalidated by the service which executes the write.
+ * 
+ * A {@link ResponseStore} may be added as persistent tier. Responses which
+ * are not in memory are then looked up in the store, and cached responses
+ * of the stored endpoints are also written to the store. A response read
+ * from the store is cached in memory for the time to live of its endpoint,
+ * the store itself keeps responses for its own, longer retention. The
+ * store is never accessed while holding the lock of the cache, lookups must
+ * not wait for the disk.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class ResponseCache {
+
+	public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+	/**
+	 * The endpoints which are cached unless configured otherwise.
+	 */
+	public static final String[] DEFAULT_CACHED_ENDPOINTS = {
+			"getMusicFolders.view", "getIndexes.view",
+			"getMusicDirectory.view", "getLicense.view", "getLyrics.view" };
+
+	private static final class Entry {
+		private final String endpoint;
+		private final byte[] body;
+		private final long expiresAt;
+
+		private Entry(String endpoint, byte[] body, long expiresAt) {
+			this.endpoint = endpoint;
+			this.body = body;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxBytes;
+
+	/**
+	 * The persistent tier, <code>null</code> if there is none.
+	 */
+	private final ResponseStore store;
+
+	/**
+	 * Time to live in milliseconds by endpoint.
+	 */
+	private final Map<String, Long> timesToLive = new HashMap<String, Long>();
+
+	/**
+	 * Entries by key in access order, the eldest entry is the least recently
+	 * used.
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long storeHits = 0;
+	private long storeErrors = 0;
+
+	/**
+	 * Incremented on every invalidation. A response which was requested
+	 * before an invalidation may be stale and is not cached.
+	 */
+	private long invalidations = 0;
+
+	/**
+	 * Creates a cache with {@link #DEFAULT_MAX_ENTRIES} and
+	 * {@link #DEFAULT_MAX_BYTES}.
+	 */
+	public ResponseCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            The maximum number of cached responses. Must be greater or
+	 *            equal than 1.
+	 * @param maxBytes
+	 *            The maximum total size of the cached response bodies.
+	 *            Responses larger than this are never cached.
+	 */
+	public ResponseCache(int maxEntries, long maxBytes) {
+		this(maxEntries, maxBytes, null);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            The maximum number of responses cached in memory. Must be
+	 *            greater or equal than 1.
+	 * @param maxBytes
+	 *            The maximum total size of the response bodies cached in
+	 *            memory. Larger responses are only written to the store.
+	 * @param store
+	 *            The persistent tier. May be <code>null</code>.
+	 */
+	public ResponseCache(int maxEntries, long maxBytes, ResponseStore store) {
+		StateChecker.checkGreaterOrEqual(maxEntries, 1, "maxEntries");
+		StateChecker.check(maxBytes > 0, "maxBytes must be greater than 0.");
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.store = store;
+		for (String endpoint : DEFAULT_CACHED_ENDPOINTS) {
+			timesToLive.put(endpoint, DEFAULT_TIME_TO_LIVE);
+		}
+	}
+
+	/**
+	 * Sets how long the responses of an endpoint are cached. Cached entries
+	 * keep their previous expiry.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api, e.g. "getMusicDirectory.view".
+	 *            Must not be <code>null</code>.
+	 * @param timeToLive
+	 *            The time in milliseconds. 0 disables caching of the
+	 *            endpoint.
+	 */
+	public synchronized void setTimeToLive(String endpoint, long timeToLive) {
+		StateChecker.check(endpoint, "endpoint");
+		StateChecker.check(timeToLive >= 0,
+				"timeToLive must be greater or equal than 0.");
+		if (timeToLive == 0) {
+			timesToLive.remove(endpoint);
+		} else {
+			timesToLive.put(endpoint, timeToLive);
+		}
+	}
+
+	/**
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @return The time to live of the responses of the endpoint in
+	 *         milliseconds, 0 if the endpoint is not cached.
+	 */
+	public synchronized long getTimeToLive(String endpoint) {
+		StateChecker.check(endpoint, "endpoint");
+		Long timeToLive = timesToLive.get(endpoint);
+		return timeToLive == null ? 0 : timeToLive;
+	}
+
+	/**
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @return True if the responses of the endpoint are cached.
+	 */
+	public boolean isCached(String endpoint) {
+		return getTimeToLive(endpoint) > 0;
+	}
+
+	/**
+	 * @return The persistent tier or <code>null</code>.
+	 */
+	public ResponseStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns a cached response body. A response found in the store is also
+	 * cached in memory.
+	 * 
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @return The body or <code>null</code> if nothing or only an expired
+	 *         body is cached. The returned array must not be modified.
+	 */
+	public byte[] get(String key) {
+		StateChecker.check(key, "key");
+		long invalidationCount;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null
+					&& entry.expiresAt <= System.currentTimeMillis()) {
+				remove(key);
+				entry = null;
+			}
+			if (entry != null) {
+				hits++;
+				return entry.body;
+			}
+			if (store == null) {
+				misses++;
+				return null;
+			}
+			invalidationCount = invalidations;
+		}
+
+		// The store is read without holding the lock, other lookups must
+		// not wait for the disk.
+		ResponseStore.StoredResponse storedResponse = null;
+		try {
+			storedResponse = store.get(key);
+		} catch (SubsonicException e) {
+			storeFailed();
+		}
+
+		synchronized (this) {
+			long timeToLive = 0;
+			if (storedResponse != null) {
+				timeToLive = getTimeToLive(storedResponse.getEndpoint());
+			}
+			if (timeToLive == 0) {
+				misses++;
+				return null;
+			}
+			storeHits++;
+			if (invalidationCount == invalidations) {
+				putInMemory(storedResponse.getEndpoint(), key,
+						storedResponse.getBody(), System.currentTimeMillis()
+								+ timeToLive);
+			}
+			return storedResponse.getBody();
+		}
+	}
+
+	/**
+	 * A failing store must not fail requests, the response is then just not
+	 * read from or written to the store.
+	 */
+	private synchronized void storeFailed() {
+		storeErrors++;
+	}
+
+	/**
+	 * Caches a response body if its endpoint is cached and the body fits into
+	 * the cache. Least recently used entries are evicted to make room.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @param body
+	 *            The response body. Must not be <code>null</code> and must
+	 *            not be modified afterwards.
+	 */
+	public void put(String endpoint, String key, byte[] body) {
+		put(endpoint, key, body, getInvalidationCount());
+	}
+
+	/**
+	 * Caches a response body like {@link #put(String, String, byte[])}
+	 * unless an invalidation happened since the response was requested.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @param body
+	 *            The response body. Must not be <code>null</code> and must
+	 *            not be modified afterwards.
+	 * @param invalidationCount
+	 *            The {@link #getInvalidationCount()} before the request was
+	 *            sent.
+	 */
+	public void put(String endpoint, String key, byte[] body,
+			long invalidationCount) {
+		StateChecker.check(endpoint, "endpoint");
+		StateChecker.check(key, "key");
+		StateChecker.check(body, "body");
+		synchronized (this) {
+			long timeToLive = getTimeToLive(endpoint);
+			if (timeToLive == 0 || invalidationCount != invalidations) {
+				return;
+			}
+			putInMemory(endpoint, key, body, System.currentTimeMillis()
+					+ timeToLive);
+		}
+		if (store == null) {
+			return;
+		}
+
+		try {
+			store.put(endpoint, key, body);
+			// An invalidation which happened while the response was written
+			// may have missed it in the store
+			if (invalidationCount != getInvalidationCount()) {
+				store.remove(key);
+			}
+		} catch (SubsonicException e) {
+			storeFailed();
+		}
+	}
+
+	private void putInMemory(String endpoint, String key, byte[] body,
+			long expiresAt) {
+		if (body.length > maxBytes) {
+			return;
+		}
+
+		remove(key);
+		entries.put(key, new Entry(endpoint, body, expiresAt));
+		bytes += body.length;
+
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (entries.size() > maxEntries || bytes > maxBytes) {
+			Entry entry = eldest.next();
+			eldest.remove();
+			bytes -= entry.body.length;
+			evictions++;
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.body.length;
+		}
+	}
+
+	/**
+	 * Removes all cached responses of an endpoint.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 */
+	public void invalidate(String endpoint) {
+		invalidate(endpoint, null, null);
+	}
+
+	/**
+	 * Removes the cached responses of an endpoint whose request had the given
+	 * parameter.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @param parameterName
+	 *            The name of the parameter, <code>null</code> to remove all
+	 *            responses of the endpoint.
+	 * @param parameterValue
+	 *            The value of the parameter as it appears in the url, i.e.
+	 *            url encoded.
+	 */
+	public void invalidate(String endpoint, String parameterName,
+			String parameterValue) {
+		StateChecker.check(endpoint, "endpoint");
+		String parameter = parameterName == null ? null : parameterName + "="
+				+ parameterValue;
+		synchronized (this) {
+			invalidations++;
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet()
+					.iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Entry> entry = iterator.next();
+				if (entry.getValue().endpoint.equals(endpoint)
+						&& (parameter == null || hasParameter(entry.getKey(),
+								parameter))) {
+					iterator.remove();
+					bytes -= entry.getValue().body.length;
+				}
+			}
+		}
+
+		if (store != null) {
+			try {
+				store.invalidate(endpoint, parameterName, parameterValue);
+			} catch (SubsonicException e) {
+				// A stale response must not survive in the store
+				storeFailed();
+				store.clear();
+			}
+		}
+	}
+
+	static boolean hasParameter(String key, String parameter) {
+		int queryStart = key.indexOf('?');
+		if (queryStart == -1) {
+			return false;
+		}
+		for (String keyParameter : key.substring(queryStart + 1).split("&")) {
+			if (keyParameter.equals(parameter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public void clear() {
+		synchronized (this) {
+			invalidations++;
+			entries.clear();
+			bytes = 0;
+		}
+		if (store != null) {
+			store.clear();
+		}
+	}
+
+	/**
+	 * @return The number of invalidations so far.
+	 */
+	public synchronized long getInvalidationCount() {
+		return invalidations;
+	}
+
+	/**
+	 * @return The number of cached responses.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The total size of the cached response bodies.
+	 */
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of lookups which found a response in memory.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups which found nothing, neither in memory
+	 *         nor in the store.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of lookups which were missed in memory but found in
+	 *         the store.
+	 */
+	public synchronized long getStoreHitCount() {
+		return storeHits;
+	}
+
+	/**
+	 * @return The number of failed reads and writes of the store.
+	 */
+	public synchronized long getStoreErrorCount() {
+		return storeErrors;
+	}
+
+	/**
+	 * @return The number of responses which were removed to make room.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+}
@@ -0,0 +1,774 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Persistent tier of a {@link ResponseCache}. Keeps the response bodies of
+ * metadata endpoints in a directory so a new process starts with a warm
+ * cache.
+ * 
+ * The bodies are appended to a data file. A memory mapped hash table in a
+ * separate index file maps the keys to the offsets of the records, a lookup
+ * therefore costs no more than one read of the data file. If the data file
+ * grows beyond its limit, outdated records are dropped by rewriting it.
+ * 
+ * Every record keeps the time it was written, records which are older than
+ * the retention of the store are dropped. The retention is independent of
+ * the much shorter time to live of the {@link ResponseCache}, a response
+ * read from the store is cached in memory for the time to live of its
+ * endpoint again. In addition, the store remembers the last modification
+ * time of the indexes of the server. Stored responses are only returned
+ * after {@link #validate(SubsonicService)} confirmed with conditional
+ * getIndexes calls that the library did not change since then. If it
+ * changed, the store is cleared.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class ResponseStore {
+
+	public static final long DEFAULT_MAX_BYTES = 256 * 1024 * 1024;
+
+	public static final long DEFAULT_RETENTION = 7L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * The endpoints which are stored unless configured otherwise.
+	 */
+	public static final String[] DEFAULT_STORED_ENDPOINTS = {
+			"getMusicFolders.view", "getIndexes.view",
+			"getMusicDirectory.view" };
+
+	private static final String DATA_FILE = "responses.dat";
+	private static final String INDEX_FILE = "responses.idx";
+
+	private static final int MAGIC = 0x53344a52;
+	private static final int VERSION = 2;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Magic, version, capacity, used slots and last modified.
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+	private static final int POSITION_CAPACITY = 8;
+	private static final int POSITION_USED_SLOTS = 12;
+	private static final int POSITION_LAST_MODIFIED = 16;
+
+	/**
+	 * Hash and offset of a record.
+	 */
+	private static final int SLOT_SIZE = 8 + 8;
+	private static final long EMPTY_HASH = 0;
+
+	/**
+	 * Offset of a slot whose record was removed. The slot can be reused but
+	 * does not end a lookup.
+	 */
+	private static final long REMOVED_OFFSET = -1;
+
+	/**
+	 * A stored response.
+	 */
+	static final class StoredResponse {
+		private final String endpoint;
+		private final byte[] body;
+		private final long storedAt;
+
+		private StoredResponse(String endpoint, byte[] body, long storedAt) {
+			this.endpoint = endpoint;
+			this.body = body;
+			this.storedAt = storedAt;
+		}
+
+		String getEndpoint() {
+			return endpoint;
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+
+		/**
+		 * @return The time the response was written in milliseconds.
+		 */
+		long getStoredAt() {
+			return storedAt;
+		}
+	}
+
+	private final File directory;
+	private final long maxBytes;
+	private final Set<String> storedEndpoints = new HashSet<String>();
+	private long retention = DEFAULT_RETENTION;
+
+	private RandomAccessFile data;
+	private RandomAccessFile index;
+	private MappedByteBuffer slots;
+	private int capacity;
+
+	/**
+	 * Slots which are in use or were removed.
+	 */
+	private int usedSlots;
+
+	/**
+	 * Slots which refer to a record.
+	 */
+	private int entryCount;
+
+	private boolean validated = false;
+	private boolean closed = false;
+
+	/**
+	 * Opens the store in the given directory with {@link #DEFAULT_MAX_BYTES}.
+	 * 
+	 * @param directory
+	 *            The directory, is created if necessary. Must not be
+	 *            <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the files of the store could not be opened.
+	 */
+	public ResponseStore(File directory) throws SubsonicException {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Opens the store in the given directory. Existing files which are not
+	 * readable as store are replaced.
+	 * 
+	 * @param directory
+	 *            The directory, is created if necessary. Must not be
+	 *            <code>null</code>.
+	 * @param maxBytes
+	 *            The size the data file may reach before outdated records are
+	 *            dropped. If the current records alone exceed half of it, the
+	 *            store is cleared.
+	 * @throws SubsonicException
+	 *             If the files of the store could not be opened.
+	 */
+	public ResponseStore(File directory, long maxBytes)
+			throws SubsonicException {
+		StateChecker.check(directory, "directory");
+		StateChecker.check(maxBytes > 0, "maxBytes must be greater than 0.");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		for (String endpoint : DEFAULT_STORED_ENDPOINTS) {
+			storedEndpoints.add(endpoint);
+		}
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create " + directory);
+			}
+			data = new RandomAccessFile(new File(directory, DATA_FILE), "rw");
+			index = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+			if (!openIndex()) {
+				data.setLength(0);
+				createIndex(INITIAL_CAPACITY, 0);
+			}
+		} catch (IOException e) {
+			throw new SubsonicException("Could not open the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Maps an existing index.
+	 * 
+	 * @return False if there is no valid index.
+	 */
+	private boolean openIndex() throws IOException {
+		if (index.length() < HEADER_SIZE) {
+			return false;
+		}
+		index.seek(0);
+		if (index.readInt() != MAGIC || index.readInt() != VERSION) {
+			return false;
+		}
+		int storedCapacity = index.readInt();
+		if (storedCapacity <= 0
+				|| index.length() != HEADER_SIZE + (long) storedCapacity
+						* SLOT_SIZE) {
+			return false;
+		}
+
+		capacity = storedCapacity;
+		slots = index.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				index.length());
+		usedSlots = slots.getInt(POSITION_USED_SLOTS);
+		entryCount = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (getHash(slot) != EMPTY_HASH && getOffset(slot) >= 0) {
+				entryCount++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates an empty index with the given capacity.
+	 */
+	private void createIndex(int newCapacity, long lastModified)
+			throws IOException {
+		long length = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+		index.setLength(0);
+		index.setLength(length);
+		slots = index.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				length);
+		slots.putInt(0, MAGIC);
+		slots.putInt(4, VERSION);
+		slots.putInt(POSITION_CAPACITY, newCapacity);
+		slots.putInt(POSITION_USED_SLOTS, 0);
+		slots.putLong(POSITION_LAST_MODIFIED, lastModified);
+		capacity = newCapacity;
+		usedSlots = 0;
+		entryCount = 0;
+	}
+
+	/**
+	 * Selects whether the responses of an endpoint are stored.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api, e.g. "getMusicDirectory.view".
+	 *            Must not be <code>null</code>.
+	 * @param stored
+	 *            True to store the responses of the endpoint.
+	 */
+	public synchronized void setStored(String endpoint, boolean stored) {
+		StateChecker.check(endpoint, "endpoint");
+		if (stored) {
+			storedEndpoints.add(endpoint);
+		} else {
+			storedEndpoints.remove(endpoint);
+		}
+	}
+
+	/**
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @return True if the responses of the endpoint are stored.
+	 */
+	public synchronized boolean isStored(String endpoint) {
+		StateChecker.check(endpoint, "endpoint");
+		return storedEndpoints.contains(endpoint);
+	}
+
+	/**
+	 * Sets how long responses are kept in the store. Stored responses are
+	 * still dropped earlier if {@link #validate(SubsonicService)} detects a
+	 * change of the library.
+	 * 
+	 * @param retention
+	 *            The time in milliseconds. Must be greater than 0.
+	 */
+	public synchronized void setRetention(long retention) {
+		StateChecker.check(retention > 0, "retention must be greater than 0.");
+		this.retention = retention;
+	}
+
+	/**
+	 * @return How long responses are kept in the store in milliseconds.
+	 */
+	public synchronized long getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Checks with conditional getIndexes calls whether the library changed
+	 * since the stored responses were written and clears the store if it did.
+	 * Stored responses are only returned after a validation.
+	 * 
+	 * @param service
+	 *            The service of the server whose responses are stored. Must
+	 *            not be <code>null</code>.
+	 * @return True if the stored responses were kept.
+	 * @throws SubsonicException
+	 *             If the server could not be asked. The store stays
+	 *             unvalidated.
+	 */
+	public boolean validate(SubsonicService service) throws SubsonicException {
+		StateChecker.check(service, "service");
+		// The server is asked without holding the lock, lookups of other
+		// threads must not wait for it.
+		long lastModified = getLastModified();
+		Calendar ifModifiedSince = Calendar.getInstance();
+		ifModifiedSince.setTimeInMillis(lastModified);
+
+		boolean changed = lastModified == 0;
+		long newestModification = lastModified;
+		// The music folders are not yet served from the store
+		for (MusicFolder musicFolder : service.getMusicFolders()) {
+			ModificationVisitor visitor = new ModificationVisitor();
+			service.getIndexes(musicFolder, ifModifiedSince, visitor);
+			changed |= visitor.changed || visitor.lastModified > lastModified;
+			newestModification = Math.max(newestModification,
+					visitor.lastModified);
+		}
+
+		validated(changed, newestModification);
+		return !changed;
+	}
+
+	private synchronized void validated(boolean changed, long lastModified)
+			throws SubsonicException {
+		throwIfClosed();
+		try {
+			if (changed) {
+				clearFiles();
+			}
+			slots.putLong(POSITION_LAST_MODIFIED, lastModified);
+		} catch (IOException e) {
+			throw new SubsonicException("Could not clear the response store.",
+					ErrorType.GENERIC, e);
+		}
+		validated = true;
+	}
+
+	/**
+	 * @return True if the store was validated and returns its responses.
+	 */
+	public synchronized boolean isValidated() {
+		return validated;
+	}
+
+	/**
+	 * @return The last modification time of the indexes of the server as
+	 *         seen by the last validation, 0 if the store was never
+	 *         validated.
+	 */
+	public synchronized long getLastModified() {
+		throwIfClosed();
+		return slots.getLong(POSITION_LAST_MODIFIED);
+	}
+
+	/**
+	 * Returns a stored response.
+	 * 
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @return The response or <code>null</code> if none is stored, it is
+	 *         older than the retention or the store was not validated yet.
+	 * @throws SubsonicException
+	 *             If the store could not be read.
+	 */
+	synchronized StoredResponse get(String key) throws SubsonicException {
+		StateChecker.check(key, "key");
+		if (!validated || closed) {
+			return null;
+		}
+		try {
+			int slot = findSlot(key, hash(key));
+			if (slot < 0) {
+				return null;
+			}
+			StoredResponse response = readRecord(getOffset(slot));
+			if (response.getStoredAt() + retention <= System
+					.currentTimeMillis()) {
+				setSlot(slot, getHash(slot), REMOVED_OFFSET);
+				entryCount--;
+				return null;
+			}
+			return response;
+		} catch (IOException e) {
+			throw new SubsonicException("Could not read the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Stores a response if its endpoint is stored.
+	 * 
+	 * @param endpoint
+	 *            The view of the rest api. Must not be <code>null</code>.
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @param body
+	 *            The response body. Must not be <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the store could not be written.
+	 */
+	synchronized void put(String endpoint, String key, byte[] body)
+			throws SubsonicException {
+		StateChecker.check(endpoint, "endpoint");
+		StateChecker.check(key, "key");
+		StateChecker.check(body, "body");
+		if (closed || !storedEndpoints.contains(endpoint)) {
+			return;
+		}
+		try {
+			if (data.length() > maxBytes) {
+				compact();
+			}
+			long offset = appendRecord(endpoint, key, body);
+
+			if (usedSlots + 1 > capacity * 3 / 4) {
+				resizeIndex(capacity * 2);
+			}
+			long hash = hash(key);
+			int slot = findSlot(key, hash);
+			if (slot >= 0) {
+				setSlot(slot, hash, offset);
+			} else {
+				insertSlot(hash, offset);
+			}
+		} catch (IOException e) {
+			throw new SubsonicException("Could not write the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Removes the stored response of a key.
+	 * 
+	 * @param key
+	 *            The key of the request. Must not be <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the store could not be read.
+	 */
+	synchronized void remove(String key) throws SubsonicException {
+		StateChecker.check(key, "key");
+		if (closed) {
+			return;
+		}
+		try {
+			long hash = hash(key);
+			int slot = findSlot(key, hash);
+			if (slot >= 0) {
+				setSlot(slot, hash, REMOVED_OFFSET);
+				entryCount--;
+			}
+		} catch (IOException e) {
+			throw new SubsonicException("Could not read the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Removes the stored responses of an endpoint, see
+	 * {@link ResponseCache#invalidate(String, String, String)}.
+	 * 
+	 * @throws SubsonicException
+	 *             If the store could not be read.
+	 */
+	synchronized void invalidate(String endpoint, String parameterName,
+			String parameterValue) throws SubsonicException {
+		StateChecker.check(endpoint, "endpoint");
+		if (closed || !storedEndpoints.contains(endpoint)) {
+			return;
+		}
+		String parameter = parameterName == null ? null : parameterName + "="
+				+ parameterValue;
+		try {
+			for (int slot = 0; slot < capacity; slot++) {
+				if (getHash(slot) == EMPTY_HASH || getOffset(slot) < 0) {
+					continue;
+				}
+				data.seek(getOffset(slot) + 4);
+				if (data.readUTF().equals(endpoint)
+						&& (parameter == null || ResponseCache.hasParameter(
+								data.readUTF(), parameter))) {
+					setSlot(slot, getHash(slot), REMOVED_OFFSET);
+					entryCount--;
+				}
+			}
+		} catch (IOException e) {
+			throw new SubsonicException("Could not read the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Removes all stored responses. The last modification time is kept.
+	 * 
+	 * @throws SubsonicException
+	 *             If the store could not be written.
+	 */
+	public synchronized void clear() throws SubsonicException {
+		throwIfClosed();
+		try {
+			clearFiles();
+		} catch (IOException e) {
+			throw new SubsonicException("Could not clear the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	private void clearFiles() throws IOException {
+		data.setLength(0);
+		createIndex(INITIAL_CAPACITY, getLastModified());
+	}
+
+	/**
+	 * @return The number of stored responses.
+	 */
+	public synchronized int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * @return The size of the data file including outdated records.
+	 * @throws SubsonicException
+	 *             If the size could not be read.
+	 */
+	public synchronized long getByteCount() throws SubsonicException {
+		throwIfClosed();
+		try {
+			return data.length();
+		} catch (IOException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Closes the files of the store. Afterwards nothing is stored or
+	 * returned anymore.
+	 * 
+	 * @throws SubsonicException
+	 *             If the files could not be closed.
+	 */
+	public synchronized void close() throws SubsonicException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			slots.force();
+			data.close();
+			index.close();
+		} catch (IOException e) {
+			throw new SubsonicException("Could not close the response store.",
+					ErrorType.GENERIC, e);
+		}
+	}
+
+	private void throwIfClosed() {
+		StateChecker.check(!closed, "The response store is closed.");
+	}
+
+	/**
+	 * Record layout: length of the rest of the record, endpoint, key, time of
+	 * the write, body length and body.
+	 */
+	private long appendRecord(String endpoint, String key, byte[] body)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				body.length + key.length() + 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeUTF(endpoint);
+		out.writeUTF(key);
+		out.writeLong(System.currentTimeMillis());
+		out.writeInt(body.length);
+		out.write(body);
+		out.close();
+		byte[] record = bytes.toByteArray();
+		int length = record.length - 4;
+		record[0] = (byte) (length >>> 24);
+		record[1] = (byte) (length >>> 16);
+		record[2] = (byte) (length >>> 8);
+		record[3] = (byte) length;
+
+		long offset = data.length();
+		data.seek(offset);
+		data.write(record);
+		return offset;
+	}
+
+	private byte[] readRawRecord(long offset) throws IOException {
+		data.seek(offset);
+		byte[] record = new byte[data.readInt()];
+		data.readFully(record);
+		return record;
+	}
+
+	private StoredResponse readRecord(long offset) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				readRawRecord(offset)));
+		String endpoint = in.readUTF();
+		in.readUTF();
+		long storedAt = in.readLong();
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new StoredResponse(endpoint, body, storedAt);
+	}
+
+	private String readKey(long offset) throws IOException {
+		data.seek(offset + 4);
+		data.readUTF();
+		return data.readUTF();
+	}
+
+	/**
+	 * @return The slot of the key or -1.
+	 */
+	private int findSlot(String key, long hash) throws IOException {
+		long dataLength = data.length();
+		int slot = (int) ((hash & Long.MAX_VALUE) % capacity);
+		while (getHash(slot) != EMPTY_HASH) {
+			long offset = getOffset(slot);
+			// An offset behind the data file is left over from a crash
+			if (getHash(slot) == hash && offset >= 0 && offset < dataLength
+					&& readKey(offset).equals(key)) {
+				return slot;
+			}
+			slot = (slot + 1) % capacity;
+		}
+		return -1;
+	}
+
+	private void insertSlot(long hash, long offset) {
+		int slot = (int) ((hash & Long.MAX_VALUE) % capacity);
+		while (getHash(slot) != EMPTY_HASH && getOffset(slot) >= 0) {
+			slot = (slot + 1) % capacity;
+		}
+		if (getHash(slot) == EMPTY_HASH) {
+			usedSlots++;
+			slots.putInt(POSITION_USED_SLOTS, usedSlots);
+		}
+		setSlot(slot, hash, offset);
+		entryCount++;
+	}
+
+	private void resizeIndex(int newCapacity) throws IOException {
+		List<long[]> entries = getEntries();
+		createIndex(newCapacity, getLastModified());
+		for (long[] entry : entries) {
+			insertSlot(entry[0], entry[1]);
+		}
+	}
+
+	/**
+	 * @return Hash and offset of every stored response.
+	 */
+	private List<long[]> getEntries() {
+		List<long[]> entries = new ArrayList<long[]>(entryCount);
+		for (int slot = 0; slot < capacity; slot++) {
+			if (getHash(slot) != EMPTY_HASH && getOffset(slot) >= 0) {
+				entries.add(new long[] { getHash(slot), getOffset(slot) });
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Rewrites the data file with the current records only.
+	 */
+	private void compact() throws IOException {
+		List<long[]> entries = getEntries();
+		File compactedFile = new File(directory, DATA_FILE + ".tmp");
+		RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw");
+		try {
+			compacted.setLength(0);
+			for (long[] entry : entries) {
+				byte[] record = readRawRecord(entry[1]);
+				entry[1] = compacted.getFilePointer();
+				compacted.writeInt(record.length);
+				compacted.write(record);
+			}
+		} finally {
+			compacted.close();
+		}
+
+		File dataFile = new File(directory, DATA_FILE);
+		data.close();
+		if (!compactedFile.renameTo(dataFile)
+				&& !(dataFile.delete() && compactedFile.renameTo(dataFile))) {
+			throw new IOException("Could not replace " + dataFile);
+		}
+		data = new RandomAccessFile(dataFile, "rw");
+
+		if (data.length() > maxBytes / 2) {
+			clearFiles();
+			return;
+		}
+		createIndex(capacity, getLastModified());
+		for (long[] entry : entries) {
+			insertSlot(entry[0], entry[1]);
+		}
+	}
+
+	private long getHash(int slot) {
+		return slots.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+	}
+
+	private long getOffset(int slot) {
+		return slots.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+	}
+
+	private void setSlot(int slot, long hash, long offset) {
+		slots.putLong(HEADER_SIZE + slot * SLOT_SIZE, hash);
+		slots.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, offset);
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the key, never {@link #EMPTY_HASH}.
+	 */
+	private static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == EMPTY_HASH ? 1 : hash;
+	}
+
+	/**
+	 * Records whether the indexes of a music folder changed.
+	 */
+	private static final class ModificationVisitor implements IndexVisitor {
+		private long lastModified = 0;
+		private boolean changed = false;
+
+		@Override
+		public void visitLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public void visitIndex(String identifier) {
+			changed = true;
+		}
+
+		@Override
+		public void visitArtist(Artist artist) {
+			changed = true;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.util.List;
+
+/**
+ * Searches many queries at once, e.g. to match the lines of an imported
+ * tracklist against the library, see
+ * {@link SubsonicService#createSearchBatch(int, SearchPaging)}.
+ * 
+ * The queries are searched in parallel with a bounded number of concurrent
+ * requests, but their results are delivered in the order of the queries. The
+ * first pages of the results are kept by the batch: a query which occurs
+ * several times, or which was searched by an earlier call, is only requested
+ * once. Queries are compared ignoring case and surrounding whitespace. Failed
+ * searches are not kept.
+ * 
+ * The methods may be called by any thread.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface SearchBatch {
+
+	/**
+	 * Searches the queries and delivers their results to the listener in the
+	 * order of the queries. Only a limited number of queries is searched
+	 * ahead of the one which is delivered next. Returns when all results
+	 * are delivered.
+	 * 
+	 * @param queries
+	 *            The queries, e.g. one per line of a tracklist. Must not be
+	 *            <code>null</code> or contain <code>null</code>. A blank
+	 *            query is delivered with an empty result without a request.
+	 * @param listener
+	 *            Receives the results. Is called by the calling thread. Must
+	 *            not be <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the batch is closed.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted.
+	 */
+	public void search(List<String> queries, SearchBatchListener listener)
+			throws SubsonicException, InterruptedException;
+
+	/**
+	 * Drops the waiting searches and the kept results and stops the threads
+	 * of the batch once the running requests are done. A running
+	 * {@link #search(List, SearchBatchListener)} reports the dropped queries
+	 * as failed. Does nothing if the batch is closed already.
+	 */
+	public void close();
+
+	/**
+	 * @return True if the batch is closed.
+	 */
+	public boolean isClosed();
+}
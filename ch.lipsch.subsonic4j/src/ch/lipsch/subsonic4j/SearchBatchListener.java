@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import ch.lipsch.subsonic4j.model.SearchResult;
+
+/**
+ * Receives the results of a {@link SearchBatch}, one call per query in the
+ * order of the queries.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface SearchBatchListener {
+
+	/**
+	 * Called when the result of a query is available.
+	 * 
+	 * @param index
+	 *            The index of the query in the searched list.
+	 * @param query
+	 *            The query as it was passed.
+	 * @param result
+	 *            The result of the query.
+	 */
+	public void resultAvailable(int index, String query, SearchResult result);
+
+	/**
+	 * Called when the search of a query failed. The batch goes on with the
+	 * following queries.
+	 * 
+	 * @param index
+	 *            The index of the query in the searched list.
+	 * @param query
+	 *            The query as it was passed.
+	 * @param exception
+	 *            The reason of the failure.
+	 */
+	public void searchFailed(int index, String query,
+			SubsonicException exception);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Selects how many results of each type a {@link SearchResult} requests per
+ * page, see {@link SubsonicService#search(String, SearchPaging)}.
+ * 
+ * A fixed paging requests the same number of results with every page. An
+ * adaptive paging starts with a small first page, which answers e.g. a
+ * typeahead quickly, and doubles the size of every further page up to a
+ * maximum as long as the pages arrive within a target latency. A page which
+ * takes longer halves the size again, but not below the size of the first
+ * page. Deep iterations therefore need a handful of requests only. The next
+ * page is only requested while the current one is consumed, the pages grow
+ * as long as the consumer keeps iterating.
+ * 
+ * This class is immutable.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class SearchPaging {
+
+	public static final int DEFAULT_PAGE_SIZE = 20;
+
+	private final int firstPageSize;
+	private final int maxPageSize;
+	private final long targetLatencyNanos;
+
+	/**
+	 * Creates a fixed paging.
+	 * 
+	 * @param pageSize
+	 *            The number of results of each type per page. Must be greater
+	 *            or equal than 1.
+	 */
+	public SearchPaging(int pageSize) {
+		StateChecker.checkGreaterOrEqual(pageSize, 1, "pageSize");
+		firstPageSize = pageSize;
+		maxPageSize = pageSize;
+		targetLatencyNanos = 0;
+	}
+
+	/**
+	 * Creates an adaptive paging.
+	 * 
+	 * @param firstPageSize
+	 *            The number of results of each type of the first page. Must
+	 *            be greater or equal than 1.
+	 * @param maxPageSize
+	 *            The upper bound of the page size. Must be greater or equal
+	 *            than firstPageSize.
+	 * @param targetLatencyMillis
+	 *            Pages which are fetched within this time let the next page
+	 *            grow. Must be greater than 0.
+	 */
+	public SearchPaging(int firstPageSize, int maxPageSize,
+			long targetLatencyMillis) {
+		StateChecker.checkGreaterOrEqual(firstPageSize, 1, "firstPageSize");
+		StateChecker.checkGreaterOrEqual(maxPageSize, firstPageSize,
+				"maxPageSize");
+		StateChecker.check(targetLatencyMillis > 0,
+				"targetLatencyMillis must be greater than 0.");
+		this.firstPageSize = firstPageSize;
+		this.maxPageSize = maxPageSize;
+		targetLatencyNanos = TimeUnit.MILLISECONDS
+				.toNanos(targetLatencyMillis);
+	}
+
+	/**
+	 * @return The number of results of each type of the first page.
+	 */
+	public int getFirstPageSize() {
+		return firstPageSize;
+	}
+
+	/**
+	 * @return The upper bound of the page size.
+	 */
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	/**
+	 * @return True if the page size adapts to the latency of the pages.
+	 */
+	public boolean isAdaptive() {
+		return targetLatencyNanos > 0;
+	}
+
+	/**
+	 * @return The latency below which the pages grow, 0 if the paging is
+	 *         fixed.
+	 */
+	public long getTargetLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos);
+	}
+
+	/**
+	 * Determines the size of the page after the given one.
+	 * 
+	 * @param pageSize
+	 *            The requested size of the current page.
+	 * @param pageNanos
+	 *            The time it took to fetch the current page. Negative if
+	 *            unknown, which keeps the size.
+	 * @return The size of the next page.
+	 */
+	public int getNextPageSize(int pageSize, long pageNanos) {
+		if (!isAdaptive() || pageNanos < 0) {
+			return pageSize;
+		} else if (pageNanos <= targetLatencyNanos) {
+			return (int) Math.min((long) pageSize * 2, maxPageSize);
+		} else {
+			return Math.max(pageSize / 2, firstPageSize);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (isAdaptive()) {
+			return MessageFormat.format(
+					"adaptive: first={0}, max={1}, target={2}ms",
+					firstPageSize, maxPageSize, getTargetLatencyMillis());
+		}
+		return "fixed: " + firstPageSize;
+	}
+}
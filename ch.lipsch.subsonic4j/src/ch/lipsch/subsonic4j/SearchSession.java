@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+/**
+ * Searches while the user types a query, see
+ * {@link SubsonicService#createSearchSession(long, SearchPaging, SearchSessionListener)}
+ * .
+ * 
+ * A query is searched once it was not changed for the debounce time. A new
+ * query supersedes the previous one: its pending search is dropped, its
+ * running request is aborted and its result is not delivered. The first
+ * pages of the searched queries are kept by the session. A query which was
+ * searched before is answered from them without a request. If a query
+ * extends a query whose first page held all of its results, only its albums
+ * and songs are requested. Its artists are filtered from the kept page on
+ * the client: every word of the query must occur in the name of an artist,
+ * which approximates the matching of the server.
+ * 
+ * The methods may be called by any thread.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface SearchSession {
+
+	/**
+	 * Sets the query as typed so far. Returns at once, the result is
+	 * delivered to the {@link SearchSessionListener} of the session.
+	 * 
+	 * @param query
+	 *            Must not be <code>null</code>. A blank query only cancels
+	 *            the search of the previous query.
+	 * @throws SubsonicException
+	 *             If the session is closed.
+	 */
+	public void setQuery(String query) throws SubsonicException;
+
+	/**
+	 * Cancels the pending or running search and stops the thread of the
+	 * session. Does nothing if the session is closed already.
+	 */
+	public void close();
+
+	/**
+	 * @return True if the session is closed.
+	 */
+	public boolean isClosed();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import ch.lipsch.subsonic4j.model.SearchResult;
+
+/**
+ * Receives the results of a {@link SearchSession}. Is called by the thread of
+ * the session and only for the current query. A query which is superseded
+ * while its result is delivered may still be reported.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface SearchSessionListener {
+
+	/**
+	 * Called when the result of a query is available.
+	 * 
+	 * @param query
+	 *            The query as it was set.
+	 * @param result
+	 *            The result of the query.
+	 */
+	public void resultAvailable(String query, SearchResult result);
+
+	/**
+	 * Called when the search of a query failed. Cancelled searches are not
+	 * reported.
+	 * 
+	 * @param query
+	 *            The query as it was set.
+	 * @param exception
+	 *            The reason of the failure.
+	 */
+	public void searchFailed(String query, SubsonicException exception);
+}
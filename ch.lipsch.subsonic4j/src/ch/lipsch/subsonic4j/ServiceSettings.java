@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j;
+
+import java.util.concurrent.Executor;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Tuning settings of a {@link SubsonicService}. The settings are read once
+ * when the service is created through {@link SubsonicFactory}, changing them
+ * afterwards has no effect on existing services.
+ * 
+ * Metadata calls (ping, getIndexes, search...) and stream calls (stream,
+ * download, getCoverArt) use separate connection pools. Long running streams
+ * can therefore never starve metadata calls.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class ServiceSettings {
+
+	/**
+	 * How the large responses (indexes, directories, album lists and search
+	 * results) are decoded.
+	 * 
+	 * @author Erwin Betschart
+	 * 
+	 */
+	public enum ResponseDecoding {
+		/**
+		 * Unmarshals the response with jaxb and converts the jaxb objects to
+		 * model objects.
+		 */
+		JAXB,
+		/**
+		 * Reads the response with a StAX parser directly into model objects.
+		 * Faster and allocates less on large responses.
+		 */
+		STAX
+	}
+
+	/**
+	 * Kind of threads which deliver streams and execute the calls of an
+	 * {@link AsyncSubsonicService}.
+	 * 
+	 * @author Erwin Betschart
+	 * 
+	 */
+	public enum ExecutionMode {
+		/**
+		 * Classic operating system threads.
+		 */
+		PLATFORM_THREADS,
+		/**
+		 * Virtual threads, a new one for every stream and asynchronous call.
+		 * Requires a Java runtime which supports virtual threads (21 or
+		 * newer). Note that the http client waits for free pooled
+		 * connections inside synchronized blocks, which pins the carrier
+		 * thread of a virtual thread on older runtimes. Keep the connection
+		 * limits high enough for the expected concurrency.
+		 */
+		VIRTUAL_THREADS
+	}
+
+	/**
+	 * What happens to a stream if all delivery threads are busy and the
+	 * delivery queue is full.
+	 * 
+	 * @author Erwin Betschart
+	 * 
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * The request fails with a {@link SubsonicException}.
+		 */
+		ABORT,
+		/**
+		 * The stream is delivered on the calling thread.
+		 */
+		CALLER_RUNS,
+		/**
+		 * The longest waiting stream is dropped without notifying its
+		 * listener. Useful if only the latest requests matter, e.g. cover
+		 * art of a scrolling grid.
+		 */
+		DISCARD_OLDEST
+	}
+
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+	public static final int DEFAULT_MAX_STREAM_CONNECTIONS = 10;
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+	public static final int DEFAULT_MAX_IDLE_UNMARSHALLERS = Runtime
+			.getRuntime().availableProcessors() * 2;
+	public static final int DEFAULT_MAX_CONCURRENT_ASYNC_REQUESTS = 16;
+	public static final int DEFAULT_MAX_STREAM_DELIVERY_THREADS = DEFAULT_MAX_STREAM_CONNECTIONS;
+	public static final int DEFAULT_STREAM_DELIVERY_QUEUE_SIZE = 100;
+
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int maxStreamConnections = DEFAULT_MAX_STREAM_CONNECTIONS;
+	private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	private int connectionTimeout = 0;
+	private int socketTimeout = 0;
+	private int maxIdleUnmarshallers = DEFAULT_MAX_IDLE_UNMARSHALLERS;
+	private ResponseDecoding responseDecoding = ResponseDecoding.JAXB;
+	private Executor asyncExecutor = null;
+	private int maxConcurrentAsyncRequests = DEFAULT_MAX_CONCURRENT_ASYNC_REQUESTS;
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+	private Executor streamDeliveryExecutor = null;
+	private int maxStreamDeliveryThreads = DEFAULT_MAX_STREAM_DELIVERY_THREADS;
+	private int streamDeliveryQueueSize = DEFAULT_STREAM_DELIVERY_QUEUE_SIZE;
+	private RejectionPolicy streamRejectionPolicy = RejectionPolicy.ABORT;
+	private int directoryPrefetchDepth = 0;
+	private ResponseCache responseCache = null;
+	private CoverArtCache coverArtCache = null;
+	private boolean coalesceRequests = true;
+	private RequestMetrics requestMetrics = null;
+	private RequestListener requestListener = null;
+	private SearchPaging searchPaging = new SearchPaging(
+			SearchPaging.DEFAULT_PAGE_SIZE);
+
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/**
+	 * Sets the maximum number of pooled connections used for metadata calls.
+	 * 
+	 * @param maxTotalConnections
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		StateChecker.checkGreaterOrEqual(maxTotalConnections, 1,
+				"maxTotalConnections");
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Sets the maximum number of pooled connections per host used for
+	 * metadata calls.
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		StateChecker.checkGreaterOrEqual(maxConnectionsPerHost, 1,
+				"maxConnectionsPerHost");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getMaxStreamConnections() {
+		return maxStreamConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections which may be used concurrently
+	 * by stream, download and cover art requests.
+	 * 
+	 * @param maxStreamConnections
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxStreamConnections(int maxStreamConnections) {
+		StateChecker.checkGreaterOrEqual(maxStreamConnections, 1,
+				"maxStreamConnections");
+		this.maxStreamConnections = maxStreamConnections;
+	}
+
+	public long getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an unused pooled connection
+	 * is closed. Zero disables the eviction of idle connections.
+	 * 
+	 * @param idleConnectionTimeout
+	 *            Must be greater or equal than 0.
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		StateChecker.check(idleConnectionTimeout >= 0,
+				"idleConnectionTimeout must be greater or equal than 0");
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * Sets the timeout in milliseconds until a connection is established.
+	 * Zero means no timeout.
+	 * 
+	 * @param connectionTimeout
+	 *            Must be greater or equal than 0.
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		StateChecker.checkGreaterOrEqual(connectionTimeout, 0,
+				"connectionTimeout");
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	/**
+	 * Sets the socket read timeout in milliseconds. Zero means no timeout.
+	 * 
+	 * @param socketTimeout
+	 *            Must be greater or equal than 0.
+	 */
+	public void setSocketTimeout(int socketTimeout) {
+		StateChecker.checkGreaterOrEqual(socketTimeout, 0, "socketTimeout");
+		this.socketTimeout = socketTimeout;
+	}
+
+	public int getMaxIdleUnmarshallers() {
+		return maxIdleUnmarshallers;
+	}
+
+	/**
+	 * Sets the number of xml unmarshallers which are kept for reuse. Every
+	 * concurrently parsed response uses its own unmarshaller, this setting
+	 * only limits how many of them are retained between calls.
+	 * 
+	 * @param maxIdleUnmarshallers
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxIdleUnmarshallers(int maxIdleUnmarshallers) {
+		StateChecker.checkGreaterOrEqual(maxIdleUnmarshallers, 1,
+				"maxIdleUnmarshallers");
+		this.maxIdleUnmarshallers = maxIdleUnmarshallers;
+	}
+
+	public ResponseDecoding getResponseDecoding() {
+		return responseDecoding;
+	}
+
+	/**
+	 * Selects how large responses are decoded. Default is
+	 * {@link ResponseDecoding#JAXB}.
+	 * 
+	 * @param responseDecoding
+	 *            Must not be <code>null</code>.
+	 */
+	public void setResponseDecoding(ResponseDecoding responseDecoding) {
+		StateChecker.check(responseDecoding, "responseDecoding");
+		this.responseDecoding = responseDecoding;
+	}
+
+	public Executor getAsyncExecutor() {
+		return asyncExecutor;
+	}
+
+	/**
+	 * Sets the executor which executes the calls of an
+	 * {@link AsyncSubsonicService}. If <code>null</code> the service creates
+	 * its own pool of {@link #getMaxConcurrentAsyncRequests()} threads and
+	 * shuts it down on dispose. A given executor is never shut down by the
+	 * service.
+	 * 
+	 * @param asyncExecutor
+	 *            May be <code>null</code>.
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	public int getMaxConcurrentAsyncRequests() {
+		return maxConcurrentAsyncRequests;
+	}
+
+	/**
+	 * Sets the maximum number of calls an {@link AsyncSubsonicService} hands
+	 * to its executor at the same time. Additional calls are queued.
+	 * 
+	 * @param maxConcurrentAsyncRequests
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxConcurrentAsyncRequests(int maxConcurrentAsyncRequests) {
+		StateChecker.checkGreaterOrEqual(maxConcurrentAsyncRequests, 1,
+				"maxConcurrentAsyncRequests");
+		this.maxConcurrentAsyncRequests = maxConcurrentAsyncRequests;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Selects the threads which deliver streams, load the next pages of
+	 * search results and, unless an own executor is set, execute asynchronous
+	 * calls. Default is
+	 * {@link ExecutionMode#PLATFORM_THREADS}. Creating a service with
+	 * {@link ExecutionMode#VIRTUAL_THREADS} fails on runtimes without
+	 * virtual threads.
+	 * 
+	 * @param executionMode
+	 *            Must not be <code>null</code>.
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		StateChecker.check(executionMode, "executionMode");
+		this.executionMode = executionMode;
+	}
+
+	public Executor getStreamDeliveryExecutor() {
+		return streamDeliveryExecutor;
+	}
+
+	/**
+	 * Sets the executor which runs the {@link StreamListener}s of stream,
+	 * download and cover art requests. If <code>null</code> the service
+	 * creates its own threads according to {@link #getExecutionMode()} and
+	 * disposes them with the service. A given executor is never shut down by
+	 * the service.
+	 * 
+	 * @param streamDeliveryExecutor
+	 *            May be <code>null</code>.
+	 */
+	public void setStreamDeliveryExecutor(Executor streamDeliveryExecutor) {
+		this.streamDeliveryExecutor = streamDeliveryExecutor;
+	}
+
+	public int getMaxStreamDeliveryThreads() {
+		return maxStreamDeliveryThreads;
+	}
+
+	/**
+	 * Sets the maximum number of streams which are delivered at the same
+	 * time. Further streams wait in the delivery queue. Note that a waiting
+	 * stream keeps its connection, see {@link #setMaxStreamConnections(int)}
+	 * .
+	 * 
+	 * @param maxStreamDeliveryThreads
+	 *            Must be greater or equal than 1.
+	 */
+	public void setMaxStreamDeliveryThreads(int maxStreamDeliveryThreads) {
+		StateChecker.checkGreaterOrEqual(maxStreamDeliveryThreads, 1,
+				"maxStreamDeliveryThreads");
+		this.maxStreamDeliveryThreads = maxStreamDeliveryThreads;
+	}
+
+	public int getStreamDeliveryQueueSize() {
+		return streamDeliveryQueueSize;
+	}
+
+	/**
+	 * Sets the number of streams which may wait for delivery. If the queue
+	 * is full the {@link #getStreamRejectionPolicy()} applies.
+	 * 
+	 * @param streamDeliveryQueueSize
+	 *            Must be greater or equal than 1.
+	 */
+	public void setStreamDeliveryQueueSize(int streamDeliveryQueueSize) {
+		StateChecker.checkGreaterOrEqual(streamDeliveryQueueSize, 1,
+				"streamDeliveryQueueSize");
+		this.streamDeliveryQueueSize = streamDeliveryQueueSize;
+	}
+
+	public RejectionPolicy getStreamRejectionPolicy() {
+		return streamRejectionPolicy;
+	}
+
+	/**
+	 * Selects what happens to a stream which does not fit into the delivery
+	 * queue. Default is {@link RejectionPolicy#ABORT}.
+	 * 
+	 * @param streamRejectionPolicy
+	 *            Must not be <code>null</code>.
+	 */
+	public void setStreamRejectionPolicy(RejectionPolicy streamRejectionPolicy) {
+		StateChecker.check(streamRejectionPolicy, "streamRejectionPolicy");
+		this.streamRejectionPolicy = streamRejectionPolicy;
+	}
+
+	public int getDirectoryPrefetchDepth() {
+		return directoryPrefetchDepth;
+	}
+
+	/**
+	 * Sets how many levels of child directories are loaded together with a
+	 * directory. With the default of zero child directories fetch their
+	 * content only when it is accessed. A depth of one loads e.g. all albums
+	 * of an artist with one request per album.
+	 * 
+	 * @param directoryPrefetchDepth
+	 *            Must be greater or equal than 0.
+	 */
+	public void setDirectoryPrefetchDepth(int directoryPrefetchDepth) {
+		StateChecker.checkGreaterOrEqual(directoryPrefetchDepth, 0,
+				"directoryPrefetchDepth");
+		this.directoryPrefetchDepth = directoryPrefetchDepth;
+	}
+
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sets the cache for response bodies. Default is <code>null</code>, which
+	 * disables caching. A cache may be shared by several services. To keep
+	 * the responses across restarts create the cache with a
+	 * {@link ResponseStore} and validate the store once the service exists.
+	 * 
+	 * @param responseCache
+	 *            May be <code>null</code>.
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public CoverArtCache getCoverArtCache() {
+		return coverArtCache;
+	}
+
+	/**
+	 * Sets the disk cache for cover art. Default is <code>null</code>, which
+	 * requests every cover from the server. A cache may be shared by several
+	 * services of the same server.
+	 * 
+	 * @param coverArtCache
+	 *            May be <code>null</code>.
+	 */
+	public void setCoverArtCache(CoverArtCache coverArtCache) {
+		this.coverArtCache = coverArtCache;
+	}
+
+	public boolean isCoalesceRequests() {
+		return coalesceRequests;
+	}
+
+	/**
+	 * Selects whether identical concurrent read requests are coalesced. If
+	 * enabled, which is the default, a request which is identical to a
+	 * running one is not sent but waits for the running one and returns the
+	 * same result. The callers then share the returned objects, which must
+	 * therefore not be modified. Writes and random songs are never
+	 * coalesced.
+	 * 
+	 * @param coalesceRequests
+	 *            True to coalesce requests.
+	 */
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
+	/**
+	 * Sets the receiver of the measurements of every request. Default is
+	 * <code>null</code>, which measures nothing. Metrics may be shared by
+	 * several services, {@link DefaultRequestMetrics} keeps them per
+	 * endpoint.
+	 * 
+	 * @param requestMetrics
+	 *            May be <code>null</code>.
+	 */
+	public void setRequestMetrics(RequestMetrics requestMetrics) {
+		this.requestMetrics = requestMetrics;
+	}
+
+	public RequestListener getRequestListener() {
+		return requestListener;
+	}
+
+	/**
+	 * Sets the listener which is told about every request. Default is
+	 * <code>null</code>. Without listener and metrics the requests are not
+	 * timed at all.
+	 * 
+	 * @param requestListener
+	 *            May be <code>null</code>.
+	 */
+	public void setRequestListener(RequestListener requestListener) {
+		this.requestListener = requestListener;
+	}
+
+	public SearchPaging getSearchPaging() {
+		return searchPaging;
+	}
+
+	/**
+	 * Sets the paging of the results of {@link SubsonicService#search(String)}
+	 * . Default is a fixed paging of {@link SearchPaging#DEFAULT_PAGE_SIZE}
+	 * results per type.
+	 * 
+	 * @param searchPaging
+	 *            Must not be <code>null</code>.
+	 */
+	public void setSearchPaging(SearchPaging searchPaging) {
+		StateChecker.check(searchPaging, "searchPaging");
+		this.searchPaging = searchPaging;
+	}
+}
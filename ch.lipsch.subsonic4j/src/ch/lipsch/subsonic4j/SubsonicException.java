@@ -51,7 +51,13 @@ public final class SubsonicException extends RuntimeException {
 		 * -1 Is thrown if the subsonic service is disposed. Not an official
 		 * subsonic error code.
 		 */
-		IS_DISPOSED
+		IS_DISPOSED,
+		/*
+		 * Is thrown if a request was cancelled by the client, e.g. the search
+		 * of a superseded query of a search session. Not an official subsonic
+		 * error code.
+		 */
+		CANCELLED
 	}
 
 	private final ErrorType errorType;
@@ -20,6 +20,7 @@ package ch.lipsch.subsonic4j;
 
 import java.net.URL;
 
+import ch.lipsch.subsonic4j.internal.AsyncSubsonicServiceImpl;
 import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
 
 /**
@@ -38,7 +39,73 @@ public final class SubsonicFactory {
 	public static SubsonicService createService(URL url,
 			boolean allowInvalidCerts, CredentialsProvider credentialsProvider)
 			throws SubsonicException {
+		return createService(url, allowInvalidCerts, credentialsProvider,
+				new ServiceSettings());
+	}
+
+	/**
+	 * Creates a service which is tuned according to the given settings.
+	 * 
+	 * @param url
+	 *            The root url of the subsonic server. Must not be
+	 *            <code>null</code>.
+	 * @param allowInvalidCerts
+	 *            True if invalid server certificates should be tolerated.
+	 * @param credentialsProvider
+	 *            Provides the credentials. Must not be <code>null</code>.
+	 * @param settings
+	 *            Connection pool and other tuning settings. Must not be
+	 *            <code>null</code>.
+	 * @return The service.
+	 * @throws SubsonicException
+	 *             In case the service could not be created.
+	 */
+	public static SubsonicService createService(URL url,
+			boolean allowInvalidCerts, CredentialsProvider credentialsProvider,
+			ServiceSettings settings) throws SubsonicException {
 		return new SubsonicServiceImpl(url, allowInvalidCerts,
-				credentialsProvider);
+				credentialsProvider, settings);
+	}
+
+	/**
+	 * Creates an asynchronous service. The calls are executed by a
+	 * {@link SubsonicService} which is created with the same settings.
+	 * 
+	 * @param url
+	 *            The root url of the subsonic server. Must not be
+	 *            <code>null</code>.
+	 * @param allowInvalidCerts
+	 *            True if invalid server certificates should be tolerated.
+	 * @param credentialsProvider
+	 *            Provides the credentials. Must not be <code>null</code>.
+	 * @param settings
+	 *            Connection pool, executor and other tuning settings. Must not
+	 *            be <code>null</code>.
+	 * @return The asynchronous service.
+	 * @throws SubsonicException
+	 *             In case the service could not be created.
+	 */
+	public static AsyncSubsonicService createAsyncService(URL url,
+			boolean allowInvalidCerts, CredentialsProvider credentialsProvider,
+			ServiceSettings settings) throws SubsonicException {
+		return createAsyncService(
+				createService(url, allowInvalidCerts, credentialsProvider,
+						settings), settings);
+	}
+
+	/**
+	 * Creates an asynchronous service which delegates to the given service.
+	 * Disposing the asynchronous service disposes the given service as well.
+	 * 
+	 * @param service
+	 *            The service which executes the calls. Must not be
+	 *            <code>null</code>.
+	 * @param settings
+	 *            The executor settings. Must not be <code>null</code>.
+	 * @return The asynchronous service.
+	 */
+	public static AsyncSubsonicService createAsyncService(
+			SubsonicService service, ServiceSettings settings) {
+		return new AsyncSubsonicServiceImpl(service, settings);
 	}
 }
@@ -148,6 +148,27 @@ public interface SubsonicService {
 	public List<Index> getIndexes(MusicFolder musicFolder,
 			Calendar ifModifiedSince) throws SubsonicException;
 
+	/**
+	 * Streaming variant of {@link #getIndexes(MusicFolder, Calendar)}. Every
+	 * index and artist is passed to the visitor as soon as it is read from
+	 * the connection, nothing is retained by the service. Use this for huge
+	 * libraries to process artists in constant memory.
+	 * 
+	 * @param musicFolder
+	 *            If specified, only return artists in the given music folder.
+	 *            May be <code>null</code>
+	 * @param ifModifiedSince
+	 *            If specified, only returns a result if the artist collection
+	 *            has changed since the given time. May be <code>null</code>
+	 * @param visitor
+	 *            Receives the indexes and artists on the calling thread. Must
+	 *            not be <code>null</code>.
+	 * @throws SubsonicException
+	 *             In case of a problem.
+	 */
+	public void getIndexes(MusicFolder musicFolder, Calendar ifModifiedSince,
+			IndexVisitor visitor) throws SubsonicException;
+
 	/**
 	 * Returns a listing of all files in a music directory.
 	 * 
@@ -178,6 +199,8 @@ public interface SubsonicService {
 
 	/**
 	 * Returns albums, artists and songs matching the given search criteria.
+	 * The result is paged according to
+	 * {@link ServiceSettings#getSearchPaging()}.
 	 * 
 	 * @param query
 	 *            Search query. Must not be <code>null</code>.
@@ -187,6 +210,59 @@ public interface SubsonicService {
 	 */
 	public SearchResult search(String query) throws SubsonicException;
 
+	/**
+	 * Returns albums, artists and songs matching the given search criteria.
+	 * 
+	 * @param query
+	 *            Search query. Must not be <code>null</code>.
+	 * @param paging
+	 *            The size of the pages in which the result is loaded. Must
+	 *            not be <code>null</code>.
+	 * @return A search result which is loaded lazily.
+	 * @throws SubsonicException
+	 *             In case of problems,
+	 */
+	public SearchResult search(String query, SearchPaging paging)
+			throws SubsonicException;
+
+	/**
+	 * Creates a session which searches the queries of a typeahead, see
+	 * {@link SearchSession}. The session has its own thread and must be
+	 * closed.
+	 * 
+	 * @param debounceMillis
+	 *            The time a query must stay unchanged until it is searched.
+	 *            Must be greater or equal than 0.
+	 * @param paging
+	 *            The size of the pages in which the results are loaded. Must
+	 *            not be <code>null</code>.
+	 * @param listener
+	 *            Receives the results. Must not be <code>null</code>.
+	 * @return The session.
+	 * @throws SubsonicException
+	 *             If the service is disposed.
+	 */
+	public SearchSession createSearchSession(long debounceMillis,
+			SearchPaging paging, SearchSessionListener listener)
+			throws SubsonicException;
+
+	/**
+	 * Creates a batch which searches many queries in parallel, see
+	 * {@link SearchBatch}. The batch has its own threads and must be closed.
+	 * 
+	 * @param parallelism
+	 *            The maximum number of concurrent requests. Must be greater
+	 *            or equal than 1.
+	 * @param paging
+	 *            The size of the pages in which the results are loaded. Must
+	 *            not be <code>null</code>.
+	 * @return The batch.
+	 * @throws SubsonicException
+	 *             If the service is disposed.
+	 */
+	public SearchBatch createSearchBatch(int parallelism, SearchPaging paging)
+			throws SubsonicException;
+
 	/**
 	 * Fetch all playlists.
 	 * 
@@ -388,6 +464,27 @@ public interface SubsonicService {
 	public List<Directory> getAlbumList(AlbumType albumType, Integer size,
 			Integer offset) throws SubsonicException;
 
+	/**
+	 * Streaming variant of {@link #getAlbumList(AlbumType, Integer, Integer)}
+	 * . Every album is passed to the visitor as soon as it is read from the
+	 * connection.
+	 * 
+	 * @param albumType
+	 *            The list type.
+	 * @param size
+	 *            The number of albums to return. Max 500. May be
+	 *            <code>null</code>.
+	 * @param offset
+	 *            The list offset. Max 5000. May be <code>null</code>.
+	 * @param visitor
+	 *            Receives the albums on the calling thread. Must not be
+	 *            <code>null</code>.
+	 * @throws SubsonicException
+	 *             In case of a problem.
+	 */
+	public void getAlbumList(AlbumType albumType, Integer size,
+			Integer offset, AlbumVisitor visitor) throws SubsonicException;
+
 	/**
 	 * Returns ten random songs.
 	 * 
@@ -452,4 +549,23 @@ public interface SubsonicService {
 	public boolean isDisposed();
 
 	public String getStreamUrl(String id) throws SubsonicException;
+
+	/**
+	 * Returns the counters of the executor which delivers streams of
+	 * {@link #download(String, StreamListener)},
+	 * {@link #stream(String, BitRate, StreamListener)} and
+	 * {@link #getCoverArt(String, Integer, StreamListener)} to their
+	 * listeners.
+	 * 
+	 * @return A snapshot of the counters.
+	 */
+	public ExecutorStatistics getStreamDeliveryStatistics();
+
+	/**
+	 * Returns how many requests were answered by an identical request which
+	 * was already running, see {@link ServiceSettings#setCoalesceRequests}.
+	 * 
+	 * @return A snapshot of the counters.
+	 */
+	public CoalescingStatistics getCoalescingStatistics();
 }
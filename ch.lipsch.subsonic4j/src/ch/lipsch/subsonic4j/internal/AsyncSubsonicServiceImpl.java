@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import ch.lipsch.subsonic4j.AsyncCallback;
+import ch.lipsch.subsonic4j.AsyncSubsonicService;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.RejectionPolicy;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.SubsonicService.AlbumType;
+import ch.lipsch.subsonic4j.internal.BoundedExecutor.DiscardableTask;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.ChatMessage;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.model.License;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.model.NowPlaying;
+import ch.lipsch.subsonic4j.model.Playlist;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.User;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Executes the calls of a blocking {@link SubsonicService} on an executor.
+ * The number of concurrent calls is limited by a {@link BoundedExecutor}
+ * with an unbounded queue.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public class AsyncSubsonicServiceImpl implements AsyncSubsonicService {
+
+	private final SubsonicService service;
+
+	private final BoundedExecutor dispatcher;
+
+	/**
+	 * The executor if it was created by this service and has to be shut down
+	 * on dispose, <code>null</code> otherwise.
+	 */
+	private final ExecutorService ownedExecutor;
+
+	private volatile boolean disposed = false;
+
+	public AsyncSubsonicServiceImpl(SubsonicService service,
+			ServiceSettings settings) {
+		StateChecker.check(service, "service");
+		StateChecker.check(settings, "settings");
+		this.service = service;
+		int maxConcurrentRequests = settings.getMaxConcurrentAsyncRequests();
+
+		Executor executor;
+		if (settings.getAsyncExecutor() != null) {
+			executor = settings.getAsyncExecutor();
+			ownedExecutor = null;
+		} else {
+			ownedExecutor = ThreadFactories.createExecutor(
+					settings.getExecutionMode(), "SubsonicAsync",
+					maxConcurrentRequests, true);
+			executor = ownedExecutor;
+		}
+		dispatcher = new BoundedExecutor(executor, maxConcurrentRequests,
+				null, RejectionPolicy.ABORT);
+	}
+
+	@Override
+	public Future<Void> ping(AsyncCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws SubsonicException {
+				service.ping();
+				return null;
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<License> getLicense(AsyncCallback<License> callback) {
+		return submit(new Callable<License>() {
+			@Override
+			public License call() throws SubsonicException {
+				return service.getLicense();
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<MusicFolder>> getMusicFolders(
+			AsyncCallback<List<MusicFolder>> callback) {
+		return submit(new Callable<List<MusicFolder>>() {
+			@Override
+			public List<MusicFolder> call() throws SubsonicException {
+				return service.getMusicFolders();
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<NowPlaying>> getNowPlaying(
+			AsyncCallback<List<NowPlaying>> callback) {
+		return submit(new Callable<List<NowPlaying>>() {
+			@Override
+			public List<NowPlaying> call() throws SubsonicException {
+				return service.getNowPlaying();
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<Index>> getIndexes(final MusicFolder musicFolder,
+			final Calendar ifModifiedSince,
+			AsyncCallback<List<Index>> callback) {
+		return submit(new Callable<List<Index>>() {
+			@Override
+			public List<Index> call() throws SubsonicException {
+				return service.getIndexes(musicFolder, ifModifiedSince);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Directory> getMusicDirectory(final MusicFolder musicFolder,
+			AsyncCallback<Directory> callback) {
+		return submit(new Callable<Directory>() {
+			@Override
+			public Directory call() throws SubsonicException {
+				return service.getMusicDirectory(musicFolder);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Directory> getMusicDirectory(final Artist artist,
+			AsyncCallback<Directory> callback) {
+		return submit(new Callable<Directory>() {
+			@Override
+			public Directory call() throws SubsonicException {
+				return service.getMusicDirectory(artist);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<SearchResult> search(final String query,
+			AsyncCallback<SearchResult> callback) {
+		return submit(new Callable<SearchResult>() {
+			@Override
+			public SearchResult call() throws SubsonicException {
+				return service.search(query);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<SearchResult> search(final String query,
+			final SearchPaging paging, AsyncCallback<SearchResult> callback) {
+		return submit(new Callable<SearchResult>() {
+			@Override
+			public SearchResult call() throws SubsonicException {
+				return service.search(query, paging);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<Playlist>> getPlayLists(
+			AsyncCallback<List<Playlist>> callback) {
+		return submit(new Callable<List<Playlist>>() {
+			@Override
+			public List<Playlist> call() throws SubsonicException {
+				return service.getPlayLists();
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Playlist> createPlaylist(final String name,
+			final List<Song> songs, AsyncCallback<Playlist> callback) {
+		return submit(new Callable<Playlist>() {
+			@Override
+			public Playlist call() throws SubsonicException {
+				return service.createPlaylist(name, songs);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Void> changePassword(final String username,
+			final String password, AsyncCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws SubsonicException {
+				service.changePassword(username, password);
+				return null;
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<User> getUser(final String username,
+			AsyncCallback<User> callback) {
+		return submit(new Callable<User>() {
+			@Override
+			public User call() throws SubsonicException {
+				return service.getUser(username);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Void> createUser(final String user, final String password,
+			final Boolean ldapAuthenticated, final Boolean adminRole,
+			final Boolean settingsRole, final Boolean streamRole,
+			final Boolean jukeboxRole, final Boolean downloadRole,
+			final Boolean uploadRole, final Boolean playlistRole,
+			final Boolean coverArtRole, final Boolean commentRole,
+			final Boolean podcastRole, AsyncCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws SubsonicException {
+				service.createUser(user, password, ldapAuthenticated, adminRole,
+						settingsRole, streamRole, jukeboxRole, downloadRole,
+						uploadRole, playlistRole, coverArtRole, commentRole,
+						podcastRole);
+				return null;
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Void> deleteUser(final String username,
+			AsyncCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws SubsonicException {
+				service.deleteUser(username);
+				return null;
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<ChatMessage>> getChatMessages(final Calendar since,
+			AsyncCallback<List<ChatMessage>> callback) {
+		return submit(new Callable<List<ChatMessage>>() {
+			@Override
+			public List<ChatMessage> call() throws SubsonicException {
+				return service.getChatMessages(since);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<Void> addChatMessage(final String message,
+			AsyncCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws SubsonicException {
+				service.addChatMessage(message);
+				return null;
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<Directory>> getAlbumList(final AlbumType albumType,
+			final Integer size, final Integer offset,
+			AsyncCallback<List<Directory>> callback) {
+		return submit(new Callable<List<Directory>>() {
+			@Override
+			public List<Directory> call() throws SubsonicException {
+				return service.getAlbumList(albumType, size, offset);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<Song>> getRandomSongs(
+			AsyncCallback<List<Song>> callback) {
+		return submit(new Callable<List<Song>>() {
+			@Override
+			public List<Song> call() throws SubsonicException {
+				return service.getRandomSongs();
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<List<Song>> getRandomSongs(final Integer size,
+			final String genre, final Integer fromYear, final Integer toYear,
+			final MusicFolder musicFolder, AsyncCallback<List<Song>> callback) {
+		return submit(new Callable<List<Song>>() {
+			@Override
+			public List<Song> call() throws SubsonicException {
+				return service.getRandomSongs(size, genre, fromYear, toYear,
+						musicFolder);
+			}
+		}, callback);
+	}
+
+	@Override
+	public Future<String> getLyrics(final String artist, final String title,
+			AsyncCallback<String> callback) {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws SubsonicException {
+				return service.getLyrics(artist, title);
+			}
+		}, callback);
+	}
+
+	@Override
+	public int getActiveCount() {
+		return dispatcher.getStatistics().getActive();
+	}
+
+	@Override
+	public int getQueuedCount() {
+		return dispatcher.getStatistics().getQueued();
+	}
+
+	@Override
+	public SubsonicService getSyncService() {
+		return service;
+	}
+
+	@Override
+	public void disposeService() {
+		disposed = true;
+
+		for (Runnable pendingCall : dispatcher.drainQueue()) {
+			((AsyncCall<?>) pendingCall).cancel(false);
+		}
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+		service.disposeService();
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return disposed;
+	}
+
+	private <T> Future<T> submit(Callable<T> callable,
+			AsyncCallback<T> callback) {
+		AsyncCall<T> call = new AsyncCall<T>(callable, callback);
+		if (disposed) {
+			call.fail(new SubsonicException("Service is disposed",
+					ErrorType.IS_DISPOSED));
+			return call;
+		}
+
+		dispatcher.execute(call);
+		return call;
+	}
+
+	private static SubsonicException toSubsonicException(Throwable throwable) {
+		if (throwable instanceof SubsonicException) {
+			return (SubsonicException) throwable;
+		}
+		return new SubsonicException(ErrorType.GENERIC, throwable);
+	}
+
+	/**
+	 * A single call which notifies its callback once it is done.
+	 */
+	private static final class AsyncCall<T> extends FutureTask<T> implements
+			DiscardableTask {
+
+		private final AsyncCallback<T> callback;
+
+		public AsyncCall(Callable<T> callable, AsyncCallback<T> callback) {
+			super(callable);
+			this.callback = callback;
+		}
+
+		public void fail(SubsonicException exception) {
+			setException(exception);
+		}
+
+		@Override
+		public void discard() {
+			fail(new SubsonicException("The call was rejected by the executor.",
+					ErrorType.GENERIC));
+		}
+
+		@Override
+		protected void done() {
+			if (callback == null || isCancelled()) {
+				return;
+			}
+
+			T result;
+			try {
+				result = get();
+			} catch (ExecutionException e) {
+				callback.onFailure(toSubsonicException(e.getCause()));
+				return;
+			} catch (InterruptedException e) {
+				// Can not happen as the call is done
+				Thread.currentThread().interrupt();
+				return;
+			}
+			callback.onSuccess(result);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.lipsch.subsonic4j.ExecutorStatistics;
+import ch.lipsch.subsonic4j.ServiceSettings.RejectionPolicy;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Limits the number of tasks which run concurrently on an underlying
+ * {@link Executor}. Tasks are queued and handed to the executor as long as
+ * less than the maximum are active. Every finished task dispatches the next
+ * queued one, so neither the submitter nor an executor thread ever blocks on
+ * the limit. The limit works with every executor, also with ones which start
+ * a thread per task.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class BoundedExecutor implements Executor {
+
+	/**
+	 * A task which has to clean up if it is dropped without being run.
+	 */
+	public interface DiscardableTask extends Runnable {
+
+		/**
+		 * Called instead of {@link #run()} if the task is dropped.
+		 */
+		public void discard();
+	}
+
+	private final Executor executor;
+
+	private final int maxActive;
+
+	private final BlockingQueue<Runnable> queue;
+
+	private final RejectionPolicy rejectionPolicy;
+
+	private final AtomicInteger activeCount = new AtomicInteger(0);
+
+	private final AtomicLong completedCount = new AtomicLong(0);
+
+	private final AtomicLong rejectedCount = new AtomicLong(0);
+
+	/**
+	 * @param executor
+	 *            Runs the tasks. Must not be <code>null</code>.
+	 * @param maxActive
+	 *            The maximum number of concurrently running tasks. Must be
+	 *            greater or equal than 1.
+	 * @param queueSize
+	 *            The maximum number of waiting tasks or <code>null</code>
+	 *            for an unbounded queue.
+	 * @param rejectionPolicy
+	 *            Applies if the queue is full. Must not be <code>null</code>.
+	 */
+	public BoundedExecutor(Executor executor, int maxActive,
+			Integer queueSize, RejectionPolicy rejectionPolicy) {
+		StateChecker.check(executor, "executor");
+		StateChecker.checkGreaterOrEqual(maxActive, 1, "maxActive");
+		StateChecker.check(rejectionPolicy, "rejectionPolicy");
+		this.executor = executor;
+		this.maxActive = maxActive;
+		this.rejectionPolicy = rejectionPolicy;
+		if (queueSize == null) {
+			queue = new LinkedBlockingQueue<Runnable>();
+		} else {
+			StateChecker.checkGreaterOrEqual(queueSize, 1, "queueSize");
+			queue = new ArrayBlockingQueue<Runnable>(queueSize);
+		}
+	}
+
+	/**
+	 * Queues the task for execution.
+	 * 
+	 * @throws RejectedExecutionException
+	 *             If the queue is full and the policy is
+	 *             {@link RejectionPolicy#ABORT}.
+	 */
+	@Override
+	public void execute(Runnable task) {
+		StateChecker.check(task, "task");
+		while (!queue.offer(task)) {
+			switch (rejectionPolicy) {
+			case CALLER_RUNS:
+				runTask(task);
+				return;
+
+			case DISCARD_OLDEST:
+				Runnable oldest = queue.poll();
+				if (oldest != null) {
+					rejectedCount.incrementAndGet();
+					discard(oldest);
+				}
+				break;
+
+			default:
+				rejectedCount.incrementAndGet();
+				throw new RejectedExecutionException(
+						"Too many tasks are waiting for execution.");
+			}
+		}
+		dispatch();
+	}
+
+	/**
+	 * Hands queued tasks to the executor until the limit is reached or the
+	 * queue is empty.
+	 */
+	private void dispatch() {
+		while (!queue.isEmpty()) {
+			int active = activeCount.get();
+			if (active >= maxActive) {
+				return;
+			}
+			if (!activeCount.compareAndSet(active, active + 1)) {
+				continue;
+			}
+
+			final Runnable task = queue.poll();
+			if (task == null) {
+				activeCount.decrementAndGet();
+				continue;
+			}
+
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							runTask(task);
+						} finally {
+							activeCount.decrementAndGet();
+							dispatch();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				activeCount.decrementAndGet();
+				rejectedCount.incrementAndGet();
+				discard(task);
+			}
+		}
+	}
+
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		} finally {
+			completedCount.incrementAndGet();
+		}
+	}
+
+	private static void discard(Runnable task) {
+		if (task instanceof DiscardableTask) {
+			((DiscardableTask) task).discard();
+		}
+	}
+
+	/**
+	 * Removes all waiting tasks from the queue without running or discarding
+	 * them.
+	 * 
+	 * @return The removed tasks.
+	 */
+	public List<Runnable> drainQueue() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		queue.drainTo(tasks);
+		return tasks;
+	}
+
+	/**
+	 * Discards all waiting tasks.
+	 */
+	public void discardQueue() {
+		for (Runnable task : drainQueue()) {
+			discard(task);
+		}
+	}
+
+	public ExecutorStatistics getStatistics() {
+		return new ExecutorStatistics(queue.size(), activeCount.get(),
+				completedCount.get(), rejectedCount.get());
+	}
+}
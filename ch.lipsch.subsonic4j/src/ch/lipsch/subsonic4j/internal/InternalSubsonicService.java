@@ -19,6 +19,7 @@
 package ch.lipsch.subsonic4j.internal;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.subsonic.restapi.SearchResult2;
 
@@ -68,6 +69,38 @@ public interface InternalSubsonicService extends SubsonicService {
 			Integer artistOffset, Integer albumCount, Integer albumOffset,
 			Integer songCount, Integer songOffset) throws SubsonicException;
 
+	/**
+	 * Fetches one page of a search. Unlike
+	 * {@link #search(String, Integer, Integer, Integer, Integer, Integer, Integer)}
+	 * the page is decoded by the configured decoder. A count of 0 omits the
+	 * type from the response.
+	 * 
+	 * @param query
+	 *            Search query. Must not be <code>null</code>.
+	 * @return The page, converted to model objects.
+	 * @throws SubsonicException
+	 *             In case of problems.
+	 */
+	public SearchPage searchPage(String query, int artistCount,
+			int artistOffset, int albumCount, int albumOffset, int songCount,
+			int songOffset) throws SubsonicException;
+
+	/**
+	 * Fetches one page of a search in the background, see
+	 * {@link #searchPage(String, int, int, int, int, int, int)}. Used to load
+	 * the next page of a search result while the current one is iterated.
+	 * 
+	 * @param query
+	 *            Search query. Must not be <code>null</code>.
+	 * @return The pending page. Its failure is a {@link SubsonicException}.
+	 * @throws SubsonicException
+	 *             If the service is disposed.
+	 */
+	public Future<SearchPage> prefetchSearchPage(String query,
+			int artistCount, int artistOffset, int albumCount,
+			int albumOffset, int songCount, int songOffset)
+			throws SubsonicException;
+
 	/**
 	 * Returns a listing of files in a saved playlist.
 	 * 
@@ -120,7 +120,39 @@ public final class Jaxb2ModelFactory {
 	public static Directory createDirectory(
 			org.subsonic.restapi.Directory jaxbDirectory,
 			SubsonicService service) {
-		return new DirectoryImpl(jaxbDirectory, service);
+		StateChecker.check(jaxbDirectory, "jaxbDirectory");
+		StateChecker.check(service, "service");
+
+		List<Song> songs = new ArrayList<Song>();
+		List<Directory> childDirectories = new ArrayList<Directory>();
+		for (Child child : jaxbDirectory.getChild()) {
+			if (child.isIsDir()) {
+				childDirectories.add(createDirectory(child, service));
+			} else {
+				songs.add(createSong(child, service));
+			}
+		}
+		return new DirectoryImpl(jaxbDirectory.getId(),
+				jaxbDirectory.getName(), null, songs, childDirectories,
+				service);
+	}
+
+	/**
+	 * Converts a directory entry to a {@link Directory} whose content is
+	 * fetched on first access.
+	 * 
+	 * @param jaxbDir
+	 *            The entry. Must be a directory.
+	 * @param service
+	 *            The subsonic service. Must not be <code>null</code>.
+	 * @return The directory.
+	 */
+	public static Directory createDirectory(Child jaxbDir,
+			SubsonicService service) {
+		StateChecker.check(jaxbDir, "jaxbDir");
+		StateChecker.check(jaxbDir.isIsDir(), "jaxbDir must be a directory");
+		return new DirectoryImpl(jaxbDir.getId(), jaxbDir.getTitle(),
+				jaxbDir.getCoverArt(), service);
 	}
 
 	public static List<Directory> createDirectories(AlbumList jaxbAlbums,
@@ -128,12 +160,7 @@ public final class Jaxb2ModelFactory {
 		StateChecker.check(jaxbAlbums, "jaxbAlbums");
 		StateChecker.check(service, "service");
 
-		List<Directory> directories = new ArrayList<Directory>();
-		for (Child jaxbAlbum : jaxbAlbums.getAlbum()) {
-			directories.add(new DirectoryImpl(jaxbAlbum, service));
-		}
-
-		return directories;
+		return createDirectories(jaxbAlbums.getAlbum(), service);
 	}
 
 	public static Song createSong(Child child, SubsonicService service) {
@@ -274,7 +301,7 @@ public final class Jaxb2ModelFactory {
 
 		for (Child jaxbDir : jaxbDirs) {
 			if (jaxbDir.isIsDir()) {
-				directories.add(new DirectoryImpl(jaxbDir, service));
+				directories.add(createDirectory(jaxbDir, service));
 			}
 		}
 
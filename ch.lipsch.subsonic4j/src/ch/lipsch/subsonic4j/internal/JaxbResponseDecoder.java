@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+
+import org.subsonic.restapi.Response;
+import org.subsonic.restapi.SearchResult2;
+
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Decodes responses by unmarshalling them into the jaxb classes of
+ * <code>org.subsonic.restapi</code> which are then converted by
+ * {@link Jaxb2ModelFactory}.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class JaxbResponseDecoder implements ResponseDecoder {
+
+	private final UnmarshallerPool unmarshallerPool;
+
+	public JaxbResponseDecoder(UnmarshallerPool unmarshallerPool) {
+		StateChecker.check(unmarshallerPool, "unmarshallerPool");
+		this.unmarshallerPool = unmarshallerPool;
+	}
+
+	/**
+	 * Unmarshals a complete response.
+	 * 
+	 * @param inputStream
+	 *            The response body. Must not be <code>null</code>.
+	 * @return The response. Never <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the server reported an error or the content could not
+	 *             be unmarshalled.
+	 */
+	public Response decodeResponse(InputStream inputStream)
+			throws SubsonicException {
+		Response response;
+		try {
+			Object unmarshallObj = unmarshallerPool.unmarshal(inputStream);
+			RequestTimer.parsed();
+			JAXBElement<?> element = (JAXBElement<?>) unmarshallObj;
+			response = (Response) element.getValue();
+		} catch (JAXBException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		}
+		SubsonicUtil.throwExceptionIfNecessary(response);
+		return response;
+	}
+
+	@Override
+	public List<Index> decodeIndexes(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		return Jaxb2ModelFactory.createIndexList(decodeResponse(inputStream)
+				.getIndexes(), service);
+	}
+
+	@Override
+	public Directory decodeDirectory(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		return Jaxb2ModelFactory.createDirectory(decodeResponse(inputStream)
+				.getDirectory(), service);
+	}
+
+	@Override
+	public List<Directory> decodeAlbumList(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		return Jaxb2ModelFactory.createDirectories(
+				decodeResponse(inputStream).getAlbumList(), service);
+	}
+
+	@Override
+	public SearchPage decodeSearchResult2(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		SearchResult2 result = decodeResponse(inputStream).getSearchResult2();
+		return new SearchPage(Jaxb2ModelFactory.createArtistList(
+				result.getArtist(), service),
+				Jaxb2ModelFactory.createDirectories(result.getAlbum(), service),
+				Jaxb2ModelFactory.createSongs(result.getSong(), service));
+	}
+}
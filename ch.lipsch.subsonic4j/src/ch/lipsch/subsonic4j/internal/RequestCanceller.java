@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+
+/**
+ * Lets another thread cancel the requests of a thread. While a canceller is
+ * installed with {@link #begin()} the {@link SubsonicServiceImpl} registers
+ * every {@link HttpMethod} the thread executes with it, {@link #cancel()}
+ * aborts the running method and lets every further request of the thread
+ * fail with {@link ErrorType#CANCELLED}.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+final class RequestCanceller {
+
+	private static final ThreadLocal<RequestCanceller> CURRENT = new ThreadLocal<RequestCanceller>();
+
+	private HttpMethod method = null;
+	private boolean cancelled = false;
+
+	private RequestCanceller() {
+	}
+
+	/**
+	 * Installs a canceller for the requests of the current thread. Must be
+	 * followed by {@link #end()}.
+	 * 
+	 * @return The canceller, may be handed to other threads.
+	 */
+	static RequestCanceller begin() {
+		RequestCanceller canceller = new RequestCanceller();
+		CURRENT.set(canceller);
+		return canceller;
+	}
+
+	/**
+	 * Removes the canceller from the current thread.
+	 */
+	void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @return True if the requests of the current thread may be cancelled.
+	 */
+	static boolean isActive() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * @return True if the requests of the current thread were cancelled.
+	 */
+	static boolean isCancelled() {
+		RequestCanceller canceller = CURRENT.get();
+		return canceller != null && canceller.isCancelledRequest();
+	}
+
+	/**
+	 * Registers a method which the current thread is about to execute.
+	 * 
+	 * @throws SubsonicException
+	 *             If the requests were cancelled already.
+	 */
+	static void executing(HttpMethod method) throws SubsonicException {
+		RequestCanceller canceller = CURRENT.get();
+		if (canceller != null) {
+			canceller.setMethod(method);
+		}
+	}
+
+	/**
+	 * Unregisters a method once it was released.
+	 */
+	static void done(HttpMethod method) {
+		RequestCanceller canceller = CURRENT.get();
+		if (canceller != null) {
+			canceller.clearMethod(method);
+		}
+	}
+
+	/**
+	 * Aborts the running request and fails the following ones.
+	 */
+	synchronized void cancel() {
+		cancelled = true;
+		if (method != null) {
+			method.abort();
+		}
+	}
+
+	private synchronized boolean isCancelledRequest() {
+		return cancelled;
+	}
+
+	private synchronized void setMethod(HttpMethod method)
+			throws SubsonicException {
+		if (cancelled) {
+			throw new SubsonicException("The request was cancelled.",
+					ErrorType.CANCELLED);
+		}
+		this.method = method;
+	}
+
+	private synchronized void clearMethod(HttpMethod method) {
+		if (this.method == method) {
+			this.method = null;
+		}
+	}
+}
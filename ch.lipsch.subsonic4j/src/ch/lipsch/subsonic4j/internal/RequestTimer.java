@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ch.lipsch.subsonic4j.RequestEvent;
+import ch.lipsch.subsonic4j.RequestListener;
+import ch.lipsch.subsonic4j.RequestMetrics;
+import ch.lipsch.subsonic4j.RequestMetrics.Phase;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+
+/**
+ * Measures the phases of one request for a {@link RequestMetrics} and a
+ * {@link RequestListener}. The timer
+ * of the request which the current thread executes is kept in a thread
+ * local, so the socket factory and the decoders can report the phases they
+ * see without knowing the request.
+ * 
+ * A request may execute nested requests, e.g. a cached read fetches the
+ * body it caches. Those use the timer of the outer request, which is
+ * recorded once the outer request is done.
+ * 
+ * This class is not thread-safe, a timer is handed over to a stream
+ * deliverer together with the stream.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+final class RequestTimer {
+
+	private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<RequestTimer>();
+
+	private final RequestMetrics metrics;
+	private final RequestListener listener;
+	private final String endpoint;
+	private final String parameters;
+	private final String threadName;
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private long bytes = 0;
+	private int status = 0;
+	private boolean cacheHit = false;
+	private boolean coalesced = false;
+	private ErrorType errorType = null;
+
+	/**
+	 * Number of requests which run on this timer.
+	 */
+	private int depth = 1;
+
+	private long requestStart;
+	private long connectNanosAtRequestStart;
+	private boolean handling = false;
+	private boolean parseEnded;
+	private long parseEnd;
+
+	private RequestTimer(RequestMetrics metrics, RequestListener listener,
+			String endpoint, String parameters) {
+		this.metrics = metrics;
+		this.listener = listener;
+		this.endpoint = endpoint;
+		this.parameters = parameters;
+		threadName = listener == null ? null : Thread.currentThread()
+				.getName();
+		for (int phase = 0; phase < phaseNanos.length; phase++) {
+			phaseNanos[phase] = -1;
+		}
+	}
+
+	/**
+	 * Starts to time a request on the current thread. A request which is
+	 * started while the thread times another one becomes part of it.
+	 * 
+	 * @param metrics
+	 *            Receives the measurements. May be <code>null</code>.
+	 * @param listener
+	 *            Is told about the request. May be <code>null</code>.
+	 * @param parameters
+	 *            The parameters of the request which the listener may see.
+	 *            May be <code>null</code> if there is no listener.
+	 * @return The timer or <code>null</code> if neither metrics nor listener
+	 *         are given, then nothing is timed.
+	 */
+	static RequestTimer start(RequestMetrics metrics,
+			RequestListener listener, String endpoint, String parameters) {
+		if (metrics == null && listener == null) {
+			return null;
+		}
+		RequestTimer timer = CURRENT.get();
+		if (timer != null) {
+			timer.depth++;
+			return timer;
+		}
+		timer = new RequestTimer(metrics, listener, endpoint, parameters);
+		CURRENT.set(timer);
+		return timer;
+	}
+
+	/**
+	 * Ends a request which was started with
+	 * {@link #start(RequestMetrics, RequestListener, String, String)} and
+	 * reports it if it is not part of another one.
+	 * 
+	 * @param failure
+	 *            The exception the request failed with or <code>null</code>.
+	 */
+	void stop(Throwable failure) {
+		if (failure instanceof SubsonicException) {
+			stop(((SubsonicException) failure).getErrorType());
+		} else {
+			stop(failure == null ? null : ErrorType.GENERIC);
+		}
+	}
+
+	/**
+	 * @see #stop(Throwable)
+	 * @param failure
+	 *            The type of the error the request failed with or
+	 *            <code>null</code>.
+	 */
+	void stop(ErrorType failure) {
+		if (errorType == null) {
+			errorType = failure;
+		}
+		depth--;
+		if (depth == 0) {
+			if (CURRENT.get() == this) {
+				CURRENT.remove();
+			}
+			if (metrics != null && !coalesced) {
+				metrics.record(endpoint, phaseNanos, bytes, errorType);
+			}
+			if (listener != null) {
+				listener.requestCompleted(new RequestEvent(endpoint,
+						parameters, threadName, startMillis, System.nanoTime()
+								- startNanos, status, bytes, phaseNanos,
+						cacheHit, coalesced, errorType));
+			}
+		}
+	}
+
+	/**
+	 * Hands the timer over from the thread which sent the request to the
+	 * thread which reads its response.
+	 */
+	void detach() {
+		if (CURRENT.get() == this) {
+			CURRENT.remove();
+		}
+	}
+
+	/**
+	 * Adds the time to establish a connection to the request running on the
+	 * current thread, if it is timed.
+	 */
+	static void connected(long nanos) {
+		RequestTimer timer = CURRENT.get();
+		if (timer != null) {
+			timer.add(Phase.CONNECT, nanos);
+		}
+	}
+
+	/**
+	 * Ends the {@link Phase#PARSE} phase of the request running on the
+	 * current thread, if it is timed. The rest of its handling is counted as
+	 * {@link Phase#MAP}.
+	 */
+	static void parsed() {
+		RequestTimer timer = CURRENT.get();
+		if (timer != null && timer.handling) {
+			timer.parseEnd = System.nanoTime();
+			timer.parseEnded = true;
+		}
+	}
+
+	/**
+	 * Marks that the request is sent.
+	 */
+	void sending() {
+		add(Phase.CONNECT, 0);
+		connectNanosAtRequestStart = getNanos(Phase.CONNECT);
+		requestStart = System.nanoTime();
+	}
+
+	/**
+	 * Marks that the response headers are received.
+	 * 
+	 * @param status
+	 *            The http status of the response.
+	 */
+	void received(int status) {
+		this.status = status;
+		long connectNanos = getNanos(Phase.CONNECT)
+				- connectNanosAtRequestStart;
+		add(Phase.FIRST_BYTE, System.nanoTime() - requestStart
+				- connectNanos);
+	}
+
+	/**
+	 * Marks that the response is answered from the cache.
+	 * 
+	 * @param size
+	 *            The size of the cached body.
+	 */
+	void cached(int size) {
+		cacheHit = true;
+		bytes += size;
+	}
+
+	/**
+	 * Marks that the request waits for a running identical request.
+	 */
+	void coalesced() {
+		coalesced = true;
+	}
+
+	/**
+	 * @return A stream which counts the bytes and the time spent waiting for
+	 *         them as {@link Phase#TRANSFER}.
+	 */
+	InputStream time(InputStream inputStream) {
+		add(Phase.TRANSFER, 0);
+		return new TimedInputStream(inputStream);
+	}
+
+	/**
+	 * Passes the response body to the handler and counts the time it takes
+	 * as {@link Phase#PARSE} and {@link Phase#MAP}, without the time spent
+	 * waiting for the body.
+	 */
+	<T> T handle(ResponseHandler<T> handler, InputStream inputStream)
+			throws IOException {
+		long transferNanosAtStart = Math.max(getNanos(Phase.TRANSFER), 0);
+		handling = true;
+		parseEnded = false;
+		long start = System.nanoTime();
+		try {
+			T result = handler.handle(inputStream);
+			long end = System.nanoTime();
+			long transferNanos = Math.max(getNanos(Phase.TRANSFER), 0)
+					- transferNanosAtStart;
+			long mapNanos = parseEnded ? end - parseEnd : 0;
+			add(Phase.PARSE,
+					Math.max(end - start - transferNanos - mapNanos, 0));
+			if (parseEnded) {
+				add(Phase.MAP, mapNanos);
+			}
+			return result;
+		} finally {
+			handling = false;
+		}
+	}
+
+	private long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Adds to a phase and marks that the request went through it.
+	 */
+	private void add(Phase phase, long nanos) {
+		int index = phase.ordinal();
+		phaseNanos[index] = Math.max(phaseNanos[index], 0) + nanos;
+	}
+
+	/**
+	 * Counts the bytes and the time spent waiting for them.
+	 */
+	private final class TimedInputStream extends FilterInputStream {
+
+		private TimedInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int result = super.read();
+			add(Phase.TRANSFER, System.nanoTime() - start);
+			if (result >= 0) {
+				bytes++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			long start = System.nanoTime();
+			int read = super.read(buffer, offset, length);
+			add(Phase.TRANSFER, System.nanoTime() - start);
+			if (read > 0) {
+				bytes += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			long start = System.nanoTime();
+			long skipped = super.skip(count);
+			add(Phase.TRANSFER, System.nanoTime() - start);
+			bytes += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.net.URL;
+
+import org.apache.commons.httpclient.URIException;
+import org.apache.commons.httpclient.util.URIUtil;
+
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Builds the request urls of one subsonic server. The rest root of the
+ * server ("http://host/rest/") is computed once and the credential
+ * parameters are reused as long as the {@link CredentialsProvider} returns
+ * the same user name and password. Every url is appended into a single
+ * buffer.
+ * 
+ * This class is thread-safe, a {@link RequestUrl} is not.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class RequestUrlBuilder {
+
+	private static final String REST_PATH = "rest/";
+	private static final String SUBSONIC_VERSION = "1.4.0";
+	private static final String CLIENT_APP = "subs4j";
+
+	/**
+	 * Room for the parameters of a request when its buffer is allocated.
+	 */
+	private static final int PARAMETER_CAPACITY = 64;
+
+	private final String restUrl;
+
+	private final CredentialsProvider credentialsProvider;
+
+	private volatile Credentials credentials = null;
+
+	public RequestUrlBuilder(URL url, CredentialsProvider credentialsProvider) {
+		StateChecker.check(url, "url");
+		StateChecker.check(credentialsProvider, "credentialsProvider");
+		String root = url.toString();
+		restUrl = (root.endsWith("/") ? root : root + "/") + REST_PATH;
+		this.credentialsProvider = credentialsProvider;
+	}
+
+	/**
+	 * Starts the url of a request.
+	 * 
+	 * @param view
+	 *            The view of the rest api, e.g. "ping.view". Must not be
+	 *            <code>null</code>.
+	 * @return The url with the credential parameters, to which further
+	 *         parameters can be appended.
+	 */
+	public RequestUrl create(String view) {
+		StateChecker.check(view, "view");
+		String credentialParameters = getCredentialParameters();
+		StringBuilder buffer = new StringBuilder(restUrl.length()
+				+ view.length() + credentialParameters.length()
+				+ PARAMETER_CAPACITY);
+		buffer.append(restUrl).append(view).append(credentialParameters);
+		return new RequestUrl(buffer);
+	}
+
+	/**
+	 * @return The parameters u, p, v and c. Recomputed only if the
+	 *         credentials have changed.
+	 */
+	private String getCredentialParameters() {
+		String userName = credentialsProvider.getUserName();
+		String password = credentialsProvider.getPassword();
+		Credentials current = credentials;
+		if (current == null || !current.matches(userName, password)) {
+			current = new Credentials(userName, password);
+			credentials = current;
+		}
+		return current.parameters;
+	}
+
+	/**
+	 * The credential parameters computed for a user name and password.
+	 */
+	private static final class Credentials {
+		private final String userName;
+		private final String password;
+		private final String parameters;
+
+		private Credentials(String userName, String password) {
+			this.userName = userName;
+			this.password = password;
+			parameters = "?u=" + userName + "&p="
+					+ SubsonicUtil.hexEncodePassword(password) + "&v="
+					+ SUBSONIC_VERSION + "&c=" + CLIENT_APP;
+		}
+
+		private boolean matches(String userName, String password) {
+			return same(this.userName, userName)
+					&& same(this.password, password);
+		}
+
+		private static boolean same(String first, String second) {
+			return first == null ? second == null : first.equals(second);
+		}
+	}
+
+	/**
+	 * The url of one request. Parameters with a <code>null</code> value are
+	 * skipped.
+	 */
+	public static final class RequestUrl {
+		private final StringBuilder buffer;
+
+		private RequestUrl(StringBuilder buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Appends a parameter, the value is encoded to fit into the url.
+		 * 
+		 * @throws SubsonicException
+		 *             In case the value can not be encoded.
+		 */
+		public RequestUrl append(String key, String value)
+				throws SubsonicException {
+			if (value != null) {
+				appendKey(key);
+				if (isUnreserved(value)) {
+					buffer.append(value);
+				} else {
+					try {
+						buffer.append(URIUtil.encodeWithinQuery(value));
+					} catch (URIException e) {
+						throw new SubsonicException(ErrorType.GENERIC, e);
+					}
+				}
+			}
+			return this;
+		}
+
+		public RequestUrl append(String key, int value) {
+			appendKey(key);
+			buffer.append(value);
+			return this;
+		}
+
+		public RequestUrl append(String key, long value) {
+			appendKey(key);
+			buffer.append(value);
+			return this;
+		}
+
+		public RequestUrl append(String key, Integer value) {
+			if (value != null) {
+				append(key, value.intValue());
+			}
+			return this;
+		}
+
+		public RequestUrl append(String key, Boolean value) {
+			if (value != null) {
+				appendKey(key);
+				buffer.append(value.booleanValue());
+			}
+			return this;
+		}
+
+		private void appendKey(String key) {
+			buffer.append('&').append(key).append('=');
+		}
+
+		@Override
+		public String toString() {
+			return buffer.toString();
+		}
+	}
+
+	/**
+	 * @return True if the value consists only of characters which are never
+	 *         encoded, so it can be appended without encoding.
+	 */
+	static boolean isUnreserved(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '-' || c == '_'
+					|| c == '.')) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.InputStream;
+import java.util.List;
+
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+
+/**
+ * Decodes the body of a subsonic response into model objects. Implementations
+ * must be thread-safe.
+ * 
+ * All methods throw a {@link SubsonicException} carrying the server's error
+ * code if the response reports a failure.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface ResponseDecoder {
+
+	/**
+	 * Decodes a getIndexes response.
+	 * 
+	 * @param inputStream
+	 *            The response body. Must not be <code>null</code>.
+	 * @param service
+	 *            The service the model objects belong to. Must not be
+	 *            <code>null</code>.
+	 * @return The indexes. Never <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the server reported an error or the content could not
+	 *             be decoded.
+	 */
+	public List<Index> decodeIndexes(InputStream inputStream,
+			SubsonicService service) throws SubsonicException;
+
+	/**
+	 * Decodes a getMusicDirectory response.
+	 * 
+	 * @see #decodeIndexes(InputStream, SubsonicService)
+	 */
+	public Directory decodeDirectory(InputStream inputStream,
+			SubsonicService service) throws SubsonicException;
+
+	/**
+	 * Decodes a getAlbumList response.
+	 * 
+	 * @see #decodeIndexes(InputStream, SubsonicService)
+	 */
+	public List<Directory> decodeAlbumList(InputStream inputStream,
+			SubsonicService service) throws SubsonicException;
+
+	/**
+	 * Decodes a search2 response.
+	 * 
+	 * @see #decodeIndexes(InputStream, SubsonicService)
+	 */
+	public SearchPage decodeSearchResult2(InputStream inputStream,
+			SubsonicService service) throws SubsonicException;
+}
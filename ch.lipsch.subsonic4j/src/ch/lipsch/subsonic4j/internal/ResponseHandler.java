@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import ch.lipsch.subsonic4j.SubsonicException;
+
+/**
+ * Turns the body of a successful http request into a result.
+ * 
+ * @author Erwin Betschart
+ * 
+ * @param <T>
+ *            The type of the result.
+ */
+interface ResponseHandler<T> {
+
+	/**
+	 * Handles a response body.
+	 * 
+	 * @param inputStream
+	 *            The response body. Is closed by the caller.
+	 * @return The result.
+	 * @throws IOException
+	 *             If reading the body failed.
+	 * @throws SubsonicException
+	 *             If the body reports an error or could not be decoded.
+	 */
+	public T handle(InputStream inputStream) throws IOException,
+			SubsonicException;
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import ch.lipsch.subsonic4j.SearchBatch;
+import ch.lipsch.subsonic4j.SearchBatchListener;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.ServiceSettings.ExecutionMode;
+import ch.lipsch.subsonic4j.ServiceSettings.RejectionPolicy;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.BoundedExecutor.DiscardableTask;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.SearchResultImpl;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Searches the queries of a {@link SearchBatch} on a pool whose concurrency
+ * is limited by a {@link BoundedExecutor}. The calling thread submits the
+ * queries a limited number ahead of the one it delivers next and waits for
+ * their results in order. Every search is kept as a future by its normalized
+ * query, so duplicates share one request.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+final class SearchBatchImpl implements SearchBatch {
+
+	/**
+	 * The number of queries per thread which are searched ahead of the
+	 * delivered one. Keeps the threads busy while a slow query is waited for
+	 * without buffering the results of the whole list.
+	 */
+	private static final int LOOKAHEAD_PER_THREAD = 4;
+
+	/**
+	 * The number of queries whose search is kept.
+	 */
+	private static final int MAX_KEPT_SEARCHES = 1024;
+
+	private static final SearchPage EMPTY_PAGE = new SearchPage(
+			Collections.<Artist> emptyList(),
+			Collections.<Directory> emptyList(),
+			Collections.<Song> emptyList());
+
+	private final InternalSubsonicService service;
+	private final SearchPaging paging;
+	private final int lookahead;
+	private final ExecutorService executor;
+	private final BoundedExecutor dispatcher;
+
+	/**
+	 * The searches by normalized query, least recently used first. Access
+	 * must be synchronized on the map.
+	 */
+	private final Map<String, SearchTask> keptSearches = new LinkedHashMap<String, SearchTask>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, SearchTask> eldest) {
+			return size() > MAX_KEPT_SEARCHES;
+		}
+	};
+
+	private volatile boolean closed = false;
+
+	SearchBatchImpl(InternalSubsonicService service, int parallelism,
+			SearchPaging paging, ExecutionMode executionMode)
+			throws SubsonicException {
+		this.service = service;
+		this.paging = paging;
+		lookahead = parallelism * LOOKAHEAD_PER_THREAD;
+		executor = ThreadFactories.createExecutor(executionMode,
+				"SearchBatch", parallelism, true);
+		dispatcher = new BoundedExecutor(executor, parallelism, null,
+				RejectionPolicy.ABORT);
+	}
+
+	@Override
+	public void search(List<String> queries, SearchBatchListener listener)
+			throws SubsonicException, InterruptedException {
+		StateChecker.check(queries, "queries");
+		for (String query : queries) {
+			StateChecker.check(query, "query");
+		}
+		StateChecker.check(listener, "listener");
+		throwIfClosed();
+
+		List<Future<SearchPage>> pages = new ArrayList<Future<SearchPage>>(
+				queries.size());
+		for (int i = 0; i < queries.size(); i++) {
+			while (pages.size() < queries.size()
+					&& pages.size() <= i + lookahead) {
+				pages.add(lookup(queries.get(pages.size())));
+			}
+
+			String query = queries.get(i);
+			// Releases the page once it is delivered
+			Future<SearchPage> page = pages.set(i, null);
+			SearchResult result;
+			try {
+				result = createResult(query, await(page));
+			} catch (SubsonicException e) {
+				listener.searchFailed(i, query, e);
+				continue;
+			}
+			listener.resultAvailable(i, query, result);
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (keptSearches) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			keptSearches.clear();
+		}
+		for (Runnable waitingSearch : dispatcher.drainQueue()) {
+			((SearchTask) waitingSearch).cancel(false);
+		}
+		// Searches which are dispatched later are discarded by the executor
+		executor.shutdown();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private void throwIfClosed() throws SubsonicException {
+		if (closed) {
+			throw new SubsonicException("Search batch is closed",
+					ErrorType.IS_DISPOSED);
+		}
+	}
+
+	/**
+	 * @return The kept search of the query or a new one which is started.
+	 */
+	private Future<SearchPage> lookup(String query) throws SubsonicException {
+		String key = normalize(query);
+		SearchTask search;
+		synchronized (keptSearches) {
+			throwIfClosed();
+			if (key.length() == 0) {
+				// Blank lines are not searched
+				search = new SearchTask(key, new Callable<SearchPage>() {
+					@Override
+					public SearchPage call() {
+						return EMPTY_PAGE;
+					}
+				});
+				search.run();
+				return search;
+			}
+			search = keptSearches.get(key);
+			// A failed search may not be forgotten yet, its waiters are
+			// released before done() runs
+			if (search != null && !search.isFailed()) {
+				return search;
+			}
+			search = new SearchTask(key, createSearch(query));
+			keptSearches.put(key, search);
+		}
+		dispatcher.execute(search);
+		return search;
+	}
+
+	private Callable<SearchPage> createSearch(final String query) {
+		return new Callable<SearchPage>() {
+			@Override
+			public SearchPage call() throws SubsonicException {
+				int pageSize = paging.getFirstPageSize();
+				return service.searchPage(query, pageSize, 0, pageSize, 0,
+						pageSize, 0);
+			}
+		};
+	}
+
+	private SearchResult createResult(String query, SearchPage page) {
+		int pageSize = paging.getFirstPageSize();
+		SearchResultImpl.SearchParams searchParams = new SearchResultImpl.SearchParams();
+		searchParams.setAlbumCount(pageSize);
+		searchParams.setAlbumOffset(0);
+		searchParams.setArtistCount(pageSize);
+		searchParams.setArtistOffset(0);
+		searchParams.setQuery(query);
+		searchParams.setSongCount(pageSize);
+		searchParams.setSongOffset(0);
+		return new SearchResultImpl(page, searchParams, paging, service);
+	}
+
+	/**
+	 * Forgets a failed search, so that it is requested again by the next
+	 * occurrence of its query.
+	 */
+	private void forget(SearchTask search) {
+		synchronized (keptSearches) {
+			if (keptSearches.get(search.key) == search) {
+				keptSearches.remove(search.key);
+			}
+		}
+	}
+
+	private static SearchPage await(Future<SearchPage> page)
+			throws SubsonicException, InterruptedException {
+		try {
+			return page.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SubsonicException) {
+				throw (SubsonicException) e.getCause();
+			}
+			throw new SubsonicException(ErrorType.GENERIC, e.getCause());
+		} catch (CancellationException e) {
+			throw new SubsonicException("Search batch is closed",
+					ErrorType.IS_DISPOSED, e);
+		}
+	}
+
+	private static String normalize(String query) {
+		return query.trim().replaceAll("\\s+", " ").toLowerCase();
+	}
+
+	/**
+	 * The search of a query, shared by all its occurrences.
+	 */
+	private final class SearchTask extends FutureTask<SearchPage> implements
+			DiscardableTask {
+
+		private final String key;
+
+		public SearchTask(String key, Callable<SearchPage> search) {
+			super(search);
+			this.key = key;
+		}
+
+		@Override
+		public void discard() {
+			cancel(false);
+		}
+
+		@Override
+		protected void done() {
+			if (isFailed()) {
+				forget(this);
+			}
+		}
+
+		/**
+		 * @return True if the search is done without a result.
+		 */
+		public boolean isFailed() {
+			if (!isDone()) {
+				return false;
+			} else if (isCancelled()) {
+				return true;
+			}
+			try {
+				get();
+				return false;
+			} catch (ExecutionException e) {
+				return true;
+			} catch (InterruptedException e) {
+				// Can not happen as the search is done
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+}
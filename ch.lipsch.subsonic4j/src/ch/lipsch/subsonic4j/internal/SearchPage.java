@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.List;
+
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * One page of a search2 response, already converted to model objects.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class SearchPage {
+
+	private final List<Artist> artists;
+	private final List<Directory> albums;
+	private final List<Song> songs;
+	private final long fetchNanos;
+
+	public SearchPage(List<Artist> artists, List<Directory> albums,
+			List<Song> songs) {
+		this(artists, albums, songs, -1);
+	}
+
+	/**
+	 * @param fetchNanos
+	 *            The time it took to fetch the page, -1 if unknown.
+	 */
+	public SearchPage(List<Artist> artists, List<Directory> albums,
+			List<Song> songs, long fetchNanos) {
+		StateChecker.check(artists, "artists");
+		StateChecker.check(albums, "albums");
+		StateChecker.check(songs, "songs");
+		this.artists = artists;
+		this.albums = albums;
+		this.songs = songs;
+		this.fetchNanos = fetchNanos;
+	}
+
+	public List<Artist> getArtists() {
+		return artists;
+	}
+
+	public List<Directory> getAlbums() {
+		return albums;
+	}
+
+	public List<Song> getSongs() {
+		return songs;
+	}
+
+	/**
+	 * @return The time it took to fetch the page, -1 if unknown.
+	 */
+	public long getFetchNanos() {
+		return fetchNanos;
+	}
+}
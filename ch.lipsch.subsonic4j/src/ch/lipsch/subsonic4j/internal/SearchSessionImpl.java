@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.SearchSession;
+import ch.lipsch.subsonic4j.SearchSessionListener;
+import ch.lipsch.subsonic4j.ServiceSettings.ExecutionMode;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.impl.SearchResultImpl;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Searches the queries of a {@link SearchSession} with a single thread. A
+ * query is scheduled after the debounce time, a newer query unschedules it
+ * or, if it is running already, aborts its request with a
+ * {@link RequestCanceller}. Only artists are taken from the kept page of a
+ * prefix: the server also matches albums and songs on their artist, which
+ * the model does not provide, so they are always requested.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+final class SearchSessionImpl implements SearchSession {
+
+	/**
+	 * The number of queries whose first page is kept.
+	 */
+	private static final int MAX_KEPT_PAGES = 32;
+
+	private final InternalSubsonicService service;
+	private final long debounceMillis;
+	private final SearchPaging paging;
+	private final SearchSessionListener listener;
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * The first pages of the searched queries by normalized query, least
+	 * recently used first. Is only accessed by the thread of the session.
+	 */
+	private final Map<String, SearchPage> keptPages = new LinkedHashMap<String, SearchPage>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, SearchPage> eldest) {
+			return size() > MAX_KEPT_PAGES;
+		}
+	};
+
+	/**
+	 * Is incremented with every query, a search whose generation differs is
+	 * superseded.
+	 */
+	private long generation = 0;
+	private Future<?> pendingSearch = null;
+	private RequestCanceller runningSearch = null;
+	private boolean closed = false;
+
+	SearchSessionImpl(InternalSubsonicService service, long debounceMillis,
+			SearchPaging paging, SearchSessionListener listener,
+			ExecutionMode executionMode) throws SubsonicException {
+		this.service = service;
+		this.debounceMillis = debounceMillis;
+		this.paging = paging;
+		this.listener = listener;
+		executor = new ScheduledThreadPoolExecutor(1, ThreadFactories.create(
+				executionMode, "SearchSession", true));
+	}
+
+	@Override
+	public synchronized void setQuery(final String query)
+			throws SubsonicException {
+		StateChecker.check(query, "query");
+		if (closed) {
+			throw new SubsonicException("Search session is closed",
+					ErrorType.IS_DISPOSED);
+		}
+		cancelSearch();
+		if (query.trim().length() == 0) {
+			return;
+		}
+
+		final long searchGeneration = generation;
+		pendingSearch = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				search(query, searchGeneration);
+			}
+		}, debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		cancelSearch();
+		executor.shutdownNow();
+	}
+
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Supersedes the current query. Must be called synchronized.
+	 */
+	private void cancelSearch() {
+		generation++;
+		if (pendingSearch != null) {
+			pendingSearch.cancel(false);
+			pendingSearch = null;
+		}
+		if (runningSearch != null) {
+			runningSearch.cancel();
+			runningSearch = null;
+		}
+	}
+
+	private synchronized boolean isCurrent(long searchGeneration) {
+		return searchGeneration == generation;
+	}
+
+	/**
+	 * Searches a query on the thread of the session and delivers its result
+	 * unless it was superseded meanwhile.
+	 */
+	private void search(String query, long searchGeneration) {
+		RequestCanceller canceller;
+		synchronized (this) {
+			if (searchGeneration != generation) {
+				return;
+			}
+			pendingSearch = null;
+			canceller = RequestCanceller.begin();
+			runningSearch = canceller;
+		}
+
+		SearchResult result = null;
+		SubsonicException failure = null;
+		try {
+			result = find(query);
+		} catch (SubsonicException e) {
+			failure = e;
+		} finally {
+			canceller.end();
+			synchronized (this) {
+				if (runningSearch == canceller) {
+					runningSearch = null;
+				}
+			}
+		}
+
+		if (!isCurrent(searchGeneration)) {
+			return;
+		} else if (failure == null) {
+			listener.resultAvailable(query, result);
+		} else if (failure.getErrorType() != ErrorType.CANCELLED) {
+			listener.searchFailed(query, failure);
+		}
+	}
+
+	/**
+	 * Answers a query from the kept pages if possible, from the server
+	 * otherwise.
+	 */
+	private SearchResult find(String query) throws SubsonicException {
+		String key = normalize(query);
+		int pageSize = paging.getFirstPageSize();
+		SearchPage page = keptPages.get(key);
+		if (page == null) {
+			List<Artist> artists = filterKeptArtists(key);
+			if (artists == null) {
+				page = service.searchPage(query, pageSize, 0, pageSize, 0,
+						pageSize, 0);
+			} else {
+				// The server also matches albums and songs on their artist,
+				// which is not known by the model
+				SearchPage fetched = service.searchPage(query, 0, 0,
+						pageSize, 0, pageSize, 0);
+				page = new SearchPage(artists, fetched.getAlbums(),
+						fetched.getSongs(), fetched.getFetchNanos());
+			}
+		}
+		keptPages.put(key, page);
+
+		SearchResultImpl.SearchParams searchParams = new SearchResultImpl.SearchParams();
+		searchParams.setAlbumCount(pageSize);
+		searchParams.setAlbumOffset(0);
+		searchParams.setArtistCount(pageSize);
+		searchParams.setArtistOffset(0);
+		searchParams.setQuery(query);
+		searchParams.setSongCount(pageSize);
+		searchParams.setSongOffset(0);
+		return new SearchResultImpl(page, searchParams, paging, service);
+	}
+
+	/**
+	 * @return The artists of the longest kept query which is a prefix of the
+	 *         given one and whose page is complete, filtered by the given
+	 *         query. <code>null</code> if there is no such query.
+	 */
+	private List<Artist> filterKeptArtists(String key) {
+		String prefix = null;
+		for (Map.Entry<String, SearchPage> entry : keptPages.entrySet()) {
+			if (key.startsWith(entry.getKey())
+					&& isComplete(entry.getValue())
+					&& (prefix == null || entry.getKey().length() > prefix
+							.length())) {
+				prefix = entry.getKey();
+			}
+		}
+		if (prefix == null) {
+			return null;
+		}
+
+		SearchPage page = keptPages.get(prefix);
+		String[] words = key.split("\\s+");
+		List<Artist> artists = new ArrayList<Artist>();
+		for (Artist artist : page.getArtists()) {
+			if (matches(artist.getName(), words)) {
+				artists.add(artist);
+			}
+		}
+		return artists;
+	}
+
+	/**
+	 * @return True if the page holds all results of its query.
+	 */
+	private boolean isComplete(SearchPage page) {
+		int pageSize = paging.getFirstPageSize();
+		return page.getArtists().size() < pageSize
+				&& page.getAlbums().size() < pageSize
+				&& page.getSongs().size() < pageSize;
+	}
+
+	private static boolean matches(String name, String[] words) {
+		if (name == null) {
+			return false;
+		}
+		String lowerName = name.toLowerCase();
+		for (String word : words) {
+			if (!lowerName.contains(word)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String normalize(String query) {
+		return query.trim().toLowerCase();
+	}
+}
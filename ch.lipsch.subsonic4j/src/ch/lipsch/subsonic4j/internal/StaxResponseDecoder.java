@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import ch.lipsch.subsonic4j.AlbumVisitor;
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.model.ModelFactory;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
+import ch.lipsch.subsonic4j.model.impl.SongImpl;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Decodes responses with a StAX pull parser directly into model objects. In
+ * contrast to {@link JaxbResponseDecoder} no intermediate
+ * <code>org.subsonic.restapi</code> object tree is built, which makes this
+ * decoder faster and allocate less on large responses.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class StaxResponseDecoder implements ResponseDecoder {
+
+	private static final String ELEMENT_RESPONSE = "subsonic-response";
+	private static final String ELEMENT_ERROR = "error";
+	private static final String ELEMENT_INDEXES = "indexes";
+	private static final String ELEMENT_INDEX = "index";
+	private static final String ELEMENT_ARTIST = "artist";
+	private static final String ELEMENT_DIRECTORY = "directory";
+	private static final String ELEMENT_CHILD = "child";
+	private static final String ELEMENT_ALBUM = "album";
+	private static final String ELEMENT_SONG = "song";
+	private static final String ATTRIBUTE_STATUS = "status";
+	private static final String ATTRIBUTE_CODE = "code";
+	private static final String ATTRIBUTE_MESSAGE = "message";
+	private static final String ATTRIBUTE_ID = "id";
+	private static final String ATTRIBUTE_NAME = "name";
+	private static final String ATTRIBUTE_TITLE = "title";
+	private static final String ATTRIBUTE_GENRE = "genre";
+	private static final String ATTRIBUTE_IS_DIR = "isDir";
+	private static final String ATTRIBUTE_COVER_ART = "coverArt";
+	private static final String ATTRIBUTE_LAST_MODIFIED = "lastModified";
+	private static final String STATUS_FAILED = "failed";
+
+	/**
+	 * Factories are thread-safe once configured.
+	 */
+	private final XMLInputFactory inputFactory;
+
+	public StaxResponseDecoder() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	@Override
+	public List<Index> decodeIndexes(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		IndexCollector collector = new IndexCollector(service);
+		visitIndexes(inputStream, collector, service);
+		return collector.getIndexes();
+	}
+
+	/**
+	 * Decodes a getIndexes response and passes every index and artist to the
+	 * visitor as soon as it is read.
+	 * 
+	 * @param inputStream
+	 *            The response body. Must not be <code>null</code>.
+	 * @param visitor
+	 *            Receives the indexes and artists. Must not be
+	 *            <code>null</code>.
+	 * @param service
+	 *            The service the model objects belong to. Must not be
+	 *            <code>null</code>.
+	 * @throws SubsonicException
+	 *             If the server reported an error or the content could not
+	 *             be decoded.
+	 */
+	public void visitIndexes(InputStream inputStream, IndexVisitor visitor,
+			SubsonicService service) throws SubsonicException {
+		StateChecker.check(visitor, "visitor");
+		XMLStreamReader reader = openResponse(inputStream);
+		try {
+			boolean inIndex = false;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String element = reader.getLocalName();
+					if (ELEMENT_INDEXES.equals(element)) {
+						visitor.visitLastModified(parseLong(
+								reader.getAttributeValue(null,
+										ATTRIBUTE_LAST_MODIFIED), 0));
+					} else if (ELEMENT_INDEX.equals(element)) {
+						inIndex = true;
+						visitor.visitIndex(reader.getAttributeValue(null,
+								ATTRIBUTE_NAME));
+					} else if (ELEMENT_ARTIST.equals(element) && inIndex) {
+						// Shortcuts are artists outside of an index and are
+						// skipped.
+						visitor.visitArtist(createArtist(reader, service));
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT
+						&& ELEMENT_INDEX.equals(reader.getLocalName())) {
+					inIndex = false;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	@Override
+	public Directory decodeDirectory(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		XMLStreamReader reader = openResponse(inputStream);
+		try {
+			String id = null;
+			String name = null;
+			List<Song> songs = new ArrayList<Song>();
+			List<Directory> childDirectories = new ArrayList<Directory>();
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String element = reader.getLocalName();
+					if (ELEMENT_DIRECTORY.equals(element)) {
+						id = reader.getAttributeValue(null, ATTRIBUTE_ID);
+						name = reader.getAttributeValue(null, ATTRIBUTE_NAME);
+					} else if (ELEMENT_CHILD.equals(element)) {
+						if (isDir(reader)) {
+							childDirectories.add(createDirectory(reader,
+									service));
+						} else {
+							songs.add(createSong(reader, service));
+						}
+					}
+				}
+			}
+
+			if (id == null) {
+				throw new SubsonicException(
+						"Response does not contain a directory.",
+						ErrorType.GENERIC);
+			}
+			return new DirectoryImpl(id, name, null, songs,
+					childDirectories, service);
+		} catch (XMLStreamException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	@Override
+	public List<Directory> decodeAlbumList(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		final List<Directory> albums = new ArrayList<Directory>();
+		visitAlbumList(inputStream, new AlbumVisitor() {
+			@Override
+			public void visitAlbum(Directory album) {
+				albums.add(album);
+			}
+		}, service);
+		return albums;
+	}
+
+	/**
+	 * Decodes a getAlbumList response and passes every album to the visitor
+	 * as soon as it is read.
+	 * 
+	 * @see #visitIndexes(InputStream, IndexVisitor, SubsonicService)
+	 */
+	public void visitAlbumList(InputStream inputStream, AlbumVisitor visitor,
+			SubsonicService service) throws SubsonicException {
+		StateChecker.check(visitor, "visitor");
+		XMLStreamReader reader = openResponse(inputStream);
+		try {
+			while (reader.hasNext()) {
+				// Entries which are no directories are skipped like in the
+				// search result
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& ELEMENT_ALBUM.equals(reader.getLocalName())
+						&& isDir(reader)) {
+					visitor.visitAlbum(createDirectory(reader, service));
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	@Override
+	public SearchPage decodeSearchResult2(InputStream inputStream,
+			SubsonicService service) throws SubsonicException {
+		XMLStreamReader reader = openResponse(inputStream);
+		try {
+			List<Artist> artists = new ArrayList<Artist>();
+			List<Directory> albums = new ArrayList<Directory>();
+			List<Song> songs = new ArrayList<Song>();
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String element = reader.getLocalName();
+					if (ELEMENT_ARTIST.equals(element)) {
+						artists.add(createArtist(reader, service));
+					} else if (ELEMENT_ALBUM.equals(element)) {
+						if (isDir(reader)) {
+							albums.add(createDirectory(reader, service));
+						}
+					} else if (ELEMENT_SONG.equals(element)) {
+						songs.add(createSong(reader, service));
+					}
+				}
+			}
+			return new SearchPage(artists, albums, songs);
+		} catch (XMLStreamException e) {
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Creates a reader positioned on the root element of the response.
+	 * 
+	 * @throws SubsonicException
+	 *             If the response reports a failure or is not a subsonic
+	 *             response at all.
+	 */
+	private XMLStreamReader openResponse(InputStream inputStream)
+			throws SubsonicException {
+		StateChecker.check(inputStream, "inputStream");
+		XMLStreamReader reader = null;
+		try {
+			reader = inputFactory.createXMLStreamReader(inputStream);
+			reader.nextTag();
+			if (!ELEMENT_RESPONSE.equals(reader.getLocalName())) {
+				throw new SubsonicException("Unexpected root element: "
+						+ reader.getLocalName(), ErrorType.GENERIC);
+			}
+			if (STATUS_FAILED.equals(reader.getAttributeValue(null,
+					ATTRIBUTE_STATUS))) {
+				throwError(reader);
+			}
+			return reader;
+		} catch (XMLStreamException e) {
+			close(reader);
+			throw new SubsonicException(ErrorType.GENERIC, e);
+		} catch (SubsonicException e) {
+			close(reader);
+			throw e;
+		}
+	}
+
+	private static void throwError(XMLStreamReader reader)
+			throws XMLStreamException, SubsonicException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT
+					&& ELEMENT_ERROR.equals(reader.getLocalName())) {
+				String code = reader.getAttributeValue(null, ATTRIBUTE_CODE);
+				throw new SubsonicException(reader.getAttributeValue(null,
+						ATTRIBUTE_MESSAGE), parseInt(code, 0));
+			}
+		}
+		throw new SubsonicException("Request failed without error details.",
+				ErrorType.GENERIC);
+	}
+
+	private static Artist createArtist(XMLStreamReader reader,
+			SubsonicService service) {
+		return ModelFactory.createArtist(
+				reader.getAttributeValue(null, ATTRIBUTE_NAME),
+				reader.getAttributeValue(null, ATTRIBUTE_ID), service);
+	}
+
+	private static Song createSong(XMLStreamReader reader,
+			SubsonicService service) {
+		return new SongImpl(reader.getAttributeValue(null, ATTRIBUTE_TITLE),
+				reader.getAttributeValue(null, ATTRIBUTE_ID),
+				reader.getAttributeValue(null, ATTRIBUTE_GENRE), service);
+	}
+
+	private static Directory createDirectory(XMLStreamReader reader,
+			SubsonicService service) {
+		return new DirectoryImpl(reader.getAttributeValue(null, ATTRIBUTE_ID),
+				reader.getAttributeValue(null, ATTRIBUTE_TITLE),
+				reader.getAttributeValue(null, ATTRIBUTE_COVER_ART), service);
+	}
+
+	private static boolean isDir(XMLStreamReader reader) {
+		String isDir = reader.getAttributeValue(null, ATTRIBUTE_IS_DIR);
+		return "true".equals(isDir) || "1".equals(isDir);
+	}
+
+	private static long parseLong(String value, long defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static void close(XMLStreamReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				// Closing the reader does not close the underlying stream,
+				// nothing left to clean up.
+			}
+		}
+	}
+
+	/**
+	 * Collects visited indexes into a list.
+	 */
+	private static final class IndexCollector implements IndexVisitor {
+		private final SubsonicService service;
+		private final List<Index> indexes = new ArrayList<Index>();
+		private String identifier = null;
+		private List<Artist> artists = null;
+
+		private IndexCollector(SubsonicService service) {
+			this.service = service;
+		}
+
+		@Override
+		public void visitLastModified(long lastModified) {
+		}
+
+		@Override
+		public void visitIndex(String identifier) {
+			addCurrentIndex();
+			this.identifier = identifier;
+			this.artists = new ArrayList<Artist>();
+		}
+
+		@Override
+		public void visitArtist(Artist artist) {
+			artists.add(artist);
+		}
+
+		private void addCurrentIndex() {
+			if (artists != null) {
+				indexes.add(ModelFactory.createIndex(identifier, artists,
+						service));
+				artists = null;
+			}
+		}
+
+		private List<Index> getIndexes() {
+			addCurrentIndex();
+			return indexes;
+		}
+	}
+}
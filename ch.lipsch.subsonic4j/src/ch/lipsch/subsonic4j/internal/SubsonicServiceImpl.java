@@ -18,6 +18,8 @@
  */
 package ch.lipsch.subsonic4j.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -26,8 +28,21 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -37,22 +52,41 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.subsonic.restapi.Response;
 import org.subsonic.restapi.SearchResult2;
 
+import ch.lipsch.subsonic4j.AlbumVisitor;
+import ch.lipsch.subsonic4j.CoalescingStatistics;
+import ch.lipsch.subsonic4j.CoverArtCache;
 import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.ExecutorStatistics;
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.RequestListener;
+import ch.lipsch.subsonic4j.RequestMetrics;
+import ch.lipsch.subsonic4j.ResponseCache;
+import ch.lipsch.subsonic4j.SearchBatch;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.SearchSession;
+import ch.lipsch.subsonic4j.SearchSessionListener;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ExecutionMode;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
 import ch.lipsch.subsonic4j.StreamListener;
 import ch.lipsch.subsonic4j.SubsonicException;
 import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.BoundedExecutor.DiscardableTask;
+import ch.lipsch.subsonic4j.internal.RequestUrlBuilder.RequestUrl;
 import ch.lipsch.subsonic4j.model.Artist;
 import ch.lipsch.subsonic4j.model.ChatMessage;
 import ch.lipsch.subsonic4j.model.Directory;
@@ -64,12 +98,15 @@ import ch.lipsch.subsonic4j.model.Playlist;
 import ch.lipsch.subsonic4j.model.SearchResult;
 import ch.lipsch.subsonic4j.model.Song;
 import ch.lipsch.subsonic4j.model.User;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
 import ch.lipsch.subsonic4j.model.impl.SearchResultImpl;
 import ch.lipsch.subsonic4j.tools.PlaylistTool;
 import ch.lipsch.subsonic4j.tools.StateChecker;
 
 /**
- * This class is thread-safe.
+ * This class is thread-safe. Requests are executed on pooled connections,
+ * concurrent calls therefore run in parallel up to the limits given by
+ * {@link ServiceSettings}.
  * 
  * @author Erwin Betschart
  * 
@@ -102,18 +139,61 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	private static final String HTTP_CONTENT_TYPE_TEXT_XML = "text/xml";
 	private static final String HTTP_RESPONSE_HEADER_CONTENT_TYPE = "Content-Type";
 
-	private static final Integer DEFAULT_SEARCH_COUNT = 20;
 	/**
-	 * The root url of the subsonic server. Access must be synchronized by
-	 * {@link SubsonicServiceImpl} instance.
+	 * The number of threads which load the next pages of search results.
+	 */
+	private static final int SEARCH_PREFETCH_THREADS = 2;
+	private static final String PARAM_USER = "u";
+	private static final String PARAM_PASSWORD = "p";
+
+	/**
+	 * Endpoints whose responses depend on the authenticated user. Their cache
+	 * keys contain the user name.
+	 */
+	private static final Set<String> USER_SCOPED_ENDPOINTS = new HashSet<String>(
+			Arrays.asList(PATH_GET_MUSIC_FOLDERS, PATH_GET_NOW_PLAYING,
+					PATH_GET_INDEXES, PATH_GET_PLAYLISTS, PATH_GET_PLAYLIST,
+					PATH_GET_USER, PATH_GET_CHAT_MESSAGE,
+					PATH_GET_RANDOM_SONGS));
+
+	/**
+	 * Endpoints whose concurrent identical requests are not coalesced
+	 * because every request must reach the server. Writes are never
+	 * coalesced either.
 	 */
-	private URL url = null;
+	private static final Set<String> UNCOALESCED_ENDPOINTS = new HashSet<String>(
+			Arrays.asList(PATH_GET_RANDOM_SONGS));
 
 	/**
-	 * Provides credentials for subsonic access. Access must be synchronized
-	 * with {@link SubsonicServiceImpl} instance.
+	 * Cached reads which become stale by a write, by the endpoint of the
+	 * write.
+	 */
+	private static final Map<String, Invalidation[]> INVALIDATIONS = new HashMap<String, Invalidation[]>();
+	static {
+		INVALIDATIONS.put(PATH_CREATE_PLAYLIST, new Invalidation[] {
+				new Invalidation(PATH_GET_PLAYLISTS, null, null),
+				new Invalidation(PATH_GET_PLAYLIST, "playlistId", "id") });
+		INVALIDATIONS.put(PATH_DELETE_PLAYLIST, new Invalidation[] {
+				new Invalidation(PATH_GET_PLAYLISTS, null, null),
+				new Invalidation(PATH_GET_PLAYLIST, "id", "id") });
+		INVALIDATIONS.put(PATH_CREATE_USER,
+				new Invalidation[] { new Invalidation(PATH_GET_USER,
+						"username", "username") });
+		INVALIDATIONS.put(PATH_DELETE_USER,
+				new Invalidation[] { new Invalidation(PATH_GET_USER,
+						"username", "username") });
+		INVALIDATIONS.put(PATH_CHANGE_PASSWORD,
+				new Invalidation[] { new Invalidation(PATH_GET_USER,
+						"username", "username") });
+		INVALIDATIONS.put(PATH_ADD_CHAT_MESSAGE,
+				new Invalidation[] { new Invalidation(PATH_GET_CHAT_MESSAGE,
+						null, null) });
+	}
+	/**
+	 * Builds the request urls from the root url of the subsonic server and
+	 * the credentials for subsonic access.
 	 */
-	private CredentialsProvider credentialsProvider = null;
+	private final RequestUrlBuilder urls;
 
 	/**
 	 * The jaxb context used for xml serialization. Access must be synchronized
@@ -125,7 +205,32 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	 * Unmashals xml content received from subsonic server. Access must be
 	 * synchronized by {@link SubsonicServiceImpl} instance.
 	 */
-	private Unmarshaller jaxbUnmarshaller = null;
+	private JaxbResponseDecoder jaxbDecoder = null;
+
+	/**
+	 * Decodes the large responses (indexes, directories, album lists and
+	 * search results). Either {@link #jaxbDecoder} or a StAX based decoder,
+	 * see {@link ServiceSettings#setResponseDecoding(ResponseDecoding)}.
+	 * Access must be synchronized by {@link SubsonicServiceImpl} instance.
+	 */
+	private ResponseDecoder decoder = null;
+
+	/**
+	 * Decodes responses which are delivered to visitors. Is always a StAX
+	 * decoder, independent of {@link #decoder}.
+	 */
+	private final StaxResponseDecoder staxDecoder = new StaxResponseDecoder();
+
+	/**
+	 * Unmarshals a complete response and checks it for errors.
+	 */
+	private final ResponseHandler<Response> responseHandler = new ResponseHandler<Response>() {
+		@Override
+		public Response handle(InputStream inputStream)
+				throws SubsonicException {
+			return getJaxbDecoder().decodeResponse(inputStream);
+		}
+	};
 
 	/**
 	 * Saves the state if invalid server certificates should be tolerated.
@@ -146,18 +251,170 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	 */
 	private boolean disposed = false;
 
-	private final HttpClient httpClient = new HttpClient();
+	/**
+	 * Pooled connections used for all metadata calls.
+	 */
+	private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+
+	/**
+	 * Pooled connections used for stream, download and cover art calls. Kept
+	 * apart from {@link #connectionManager} so that long running streams can
+	 * not starve metadata calls.
+	 */
+	private final MultiThreadedHttpConnectionManager streamConnectionManager = new MultiThreadedHttpConnectionManager();
+
+	private final HttpClient httpClient = new HttpClient(connectionManager);
+
+	private final HttpClient streamHttpClient = new HttpClient(
+			streamConnectionManager);
+
+	/**
+	 * Closes idle pooled connections. Is <code>null</code> if idle connections
+	 * are kept open.
+	 */
+	private final IdleConnectionTimeoutThread idleConnectionEvictor;
+
+	/**
+	 * Delivers streams to their listeners with a bounded number of threads.
+	 */
+	private final BoundedExecutor streamDeliverer;
+
+	/**
+	 * The executor of {@link #streamDeliverer} if it was created by this
+	 * service, <code>null</code> otherwise.
+	 */
+	private final ExecutorService ownedStreamExecutor;
+
+	/**
+	 * Loads the next pages of search results in the background.
+	 */
+	private final ExecutorService searchPrefetcher;
+
+	/**
+	 * Number of directory levels below a fetched directory which are loaded
+	 * together with it.
+	 */
+	private final int directoryPrefetchDepth;
+
+	/**
+	 * Cache of response bodies, <code>null</code> if caching is disabled.
+	 */
+	private final ResponseCache responseCache;
+
+	/**
+	 * Disk cache of cover art, <code>null</code> if caching is disabled.
+	 */
+	private final CoverArtCache coverArtCache;
+
+	private final boolean coalesceRequests;
+
+	/**
+	 * The running coalescable requests by handler and url.
+	 */
+	private final ConcurrentHashMap<String, InFlightRequest> inFlightRequests = new ConcurrentHashMap<String, InFlightRequest>();
+
+	private final AtomicLong coalescableRequests = new AtomicLong(0);
+
+	private final AtomicLong coalescedRequests = new AtomicLong(0);
+
+	/**
+	 * Receives the measurements of the requests, <code>null</code> if they
+	 * are not measured.
+	 */
+	private final RequestMetrics requestMetrics;
+
+	/**
+	 * Is told about every request, <code>null</code> if there is no
+	 * listener.
+	 */
+	private final RequestListener requestListener;
+
+	/**
+	 * The paging of {@link #search(String)}.
+	 */
+	private final SearchPaging searchPaging;
+
+	/**
+	 * The kind of threads of the search sessions.
+	 */
+	private final ExecutionMode executionMode;
 
 	public SubsonicServiceImpl(URL url, boolean allowInvalidCerts,
 			CredentialsProvider credentialsProvider) throws SubsonicException {
+		this(url, allowInvalidCerts, credentialsProvider,
+				new ServiceSettings());
+	}
+
+	public SubsonicServiceImpl(URL url, boolean allowInvalidCerts,
+			CredentialsProvider credentialsProvider, ServiceSettings settings)
+			throws SubsonicException {
 		StateChecker.check(url, "url");
 		StateChecker.check(credentialsProvider, "credentialsProvider");
-		this.url = url;
+		StateChecker.check(settings, "settings");
+		urls = new RequestUrlBuilder(url, credentialsProvider);
 		this.allowInvalidCerts = allowInvalidCerts;
-		this.credentialsProvider = credentialsProvider;
+		directoryPrefetchDepth = settings.getDirectoryPrefetchDepth();
+		responseCache = settings.getResponseCache();
+		coverArtCache = settings.getCoverArtCache();
+		coalesceRequests = settings.isCoalesceRequests();
+		requestMetrics = settings.getRequestMetrics();
+		requestListener = settings.getRequestListener();
+		searchPaging = settings.getSearchPaging();
+		executionMode = settings.getExecutionMode();
+
+		Executor streamExecutor;
+		if (settings.getStreamDeliveryExecutor() != null) {
+			streamExecutor = settings.getStreamDeliveryExecutor();
+			ownedStreamExecutor = null;
+		} else {
+			ownedStreamExecutor = ThreadFactories.createExecutor(
+					settings.getExecutionMode(), "StreamDeliverer",
+					settings.getMaxStreamDeliveryThreads(), false);
+			streamExecutor = ownedStreamExecutor;
+		}
+		streamDeliverer = new BoundedExecutor(streamExecutor,
+				settings.getMaxStreamDeliveryThreads(),
+				settings.getStreamDeliveryQueueSize(),
+				settings.getStreamRejectionPolicy());
+		searchPrefetcher = ThreadFactories.createExecutor(
+				settings.getExecutionMode(), "SearchPrefetcher",
+				SEARCH_PREFETCH_THREADS, true);
+
+		try {
+			configureHost(url);
+			configureConnectionManager(connectionManager,
+					settings.getMaxTotalConnections(),
+					settings.getMaxConnectionsPerHost(), settings);
+			configureConnectionManager(streamConnectionManager,
+					settings.getMaxStreamConnections(),
+					settings.getMaxStreamConnections(), settings);
+			initDecoders(settings);
+		} catch (RuntimeException e) {
+			// Nobody can dispose a service which was not constructed
+			shutdownExecutorsAndConnections();
+			throw e;
+		}
 
+		// Started last, as it is only stopped by disposeService()
+		if (settings.getIdleConnectionTimeout() > 0) {
+			idleConnectionEvictor = new IdleConnectionTimeoutThread();
+			idleConnectionEvictor.setConnectionTimeout(settings
+					.getIdleConnectionTimeout());
+			idleConnectionEvictor.setTimeoutInterval(settings
+					.getIdleConnectionTimeout());
+			idleConnectionEvictor.addConnectionManager(connectionManager);
+			idleConnectionEvictor.addConnectionManager(streamConnectionManager);
+			idleConnectionEvictor.start();
+		} else {
+			idleConnectionEvictor = null;
+		}
+	}
+
+	private void initDecoders(ServiceSettings settings)
+			throws SubsonicException {
 		try {
-			initJaxb();
+			initJaxb(settings.getMaxIdleUnmarshallers());
+			initDecoder(settings.getResponseDecoding());
 
 			if (allowInvalidCerts) {
 				allowUntrustedCerts();
@@ -176,6 +433,37 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		}
 	}
 
+	/**
+	 * Lets both http clients send their requests to the server over a
+	 * protocol which times the creation of connections. The requests are
+	 * then executed with paths relative to the server, see
+	 * {@link #getRequestPath(String)}.
+	 */
+	private void configureHost(URL url) throws SubsonicException {
+		Protocol protocol;
+		try {
+			protocol = TimedSocketFactory.wrap(Protocol.getProtocol(url
+					.getProtocol()));
+		} catch (IllegalStateException e) {
+			throw new SubsonicException("Unsupported protocol: "
+					+ url.getProtocol(), ErrorType.GENERIC, e);
+		}
+		httpClient.getHostConfiguration().setHost(url.getHost(),
+				url.getPort(), protocol);
+		streamHttpClient.getHostConfiguration().setHost(url.getHost(),
+				url.getPort(), protocol);
+	}
+
+	private static void configureConnectionManager(
+			MultiThreadedHttpConnectionManager manager, int maxTotal,
+			int maxPerHost, ServiceSettings settings) {
+		HttpConnectionManagerParams params = manager.getParams();
+		params.setMaxTotalConnections(maxTotal);
+		params.setDefaultMaxConnectionsPerHost(Math.min(maxTotal, maxPerHost));
+		params.setConnectionTimeout(settings.getConnectionTimeout());
+		params.setSoTimeout(settings.getSocketTimeout());
+	}
+
 	private synchronized void allowUntrustedCerts()
 			throws KeyManagementException, NoSuchAlgorithmException {
 		SSLContext ctx = SSLContext.getInstance("TLS");
@@ -196,87 +484,429 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		HttpsURLConnection.setDefaultHostnameVerifier(hv);
 	}
 
-	private synchronized void initJaxb() throws JAXBException {
+	private synchronized void initJaxb(int maxIdleUnmarshallers)
+			throws JAXBException {
 		jaxbContext = JAXBContext.newInstance(JAXB_CONTEXT_PATH);
-		jaxbUnmarshaller = jaxbContext.createUnmarshaller();
+		jaxbDecoder = new JaxbResponseDecoder(new UnmarshallerPool(
+				jaxbContext, maxIdleUnmarshallers));
 	}
 
-	private synchronized Response unmarshalResponse(InputStream inputStream)
-			throws JAXBException {
-		Object unmarshallObj = jaxbUnmarshaller.unmarshal(inputStream);
-		JAXBElement element = (JAXBElement) unmarshallObj;
-		Response response = (Response) element.getValue();
+	private synchronized void initDecoder(ResponseDecoding responseDecoding) {
+		switch (responseDecoding) {
+		case JAXB:
+			decoder = jaxbDecoder;
+			break;
+
+		case STAX:
+			decoder = staxDecoder;
+			break;
+
+		default:
+			throw new IllegalStateException("Encountered invalid enum: "
+					+ responseDecoding);
+		}
+	}
+
+	private synchronized JaxbResponseDecoder getJaxbDecoder() {
+		return jaxbDecoder;
+	}
 
-		return response;
+	private synchronized ResponseDecoder getDecoder() {
+		return decoder;
 	}
 
 	private Response fetchResponse(String connectionUrl)
 			throws SubsonicException {
-		HttpMethod method = new GetMethod(connectionUrl);
-		Response response = null;
+		return fetch(connectionUrl, responseHandler);
+	}
+
+	/**
+	 * Fetches a response. A write invalidates the cached reads it affects,
+	 * identical concurrent reads are coalesced and cached reads are answered
+	 * by the {@link #responseCache}.
+	 */
+	private <T> T fetch(String connectionUrl, ResponseHandler<T> handler)
+			throws SubsonicException {
+		String endpoint = getEndpoint(connectionUrl);
+		Invalidation[] invalidations = INVALIDATIONS.get(endpoint);
+		if (invalidations != null) {
+			try {
+				return fetchStreaming(connectionUrl, handler);
+			} finally {
+				// Also after a failure, the server may have executed the
+				// write anyway.
+				if (responseCache != null) {
+					invalidate(connectionUrl, invalidations);
+				}
+			}
+		}
+
+		// A cancelled request must not fail the requests waiting for it
+		if (coalesceRequests && !UNCOALESCED_ENDPOINTS.contains(endpoint)
+				&& !RequestCanceller.isActive()) {
+			return fetchCoalesced(connectionUrl, endpoint, handler);
+		}
+		return fetchCached(connectionUrl, endpoint, handler);
+	}
+
+	/**
+	 * Lets identical concurrent requests wait for the first of them instead
+	 * of sending them too. The waiting callers share the result of the first
+	 * request.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T fetchCoalesced(String connectionUrl, String endpoint,
+			ResponseHandler<T> handler) throws SubsonicException {
+		// Different handlers may decode the same url into different types
+		String key = handler.getClass().getName() + ' ' + connectionUrl;
+		InFlightRequest request = new InFlightRequest();
+		InFlightRequest runningRequest = inFlightRequests.putIfAbsent(key,
+				request);
+		coalescableRequests.incrementAndGet();
+		if (runningRequest != null) {
+			coalescedRequests.incrementAndGet();
+			RequestTimer timer = startTimer(connectionUrl, endpoint);
+			Throwable failure = null;
+			try {
+				if (timer != null) {
+					timer.coalesced();
+				}
+				return (T) runningRequest.getResult();
+			} catch (RuntimeException e) {
+				failure = e;
+				throw e;
+			} finally {
+				if (timer != null) {
+					timer.stop(failure);
+				}
+			}
+		}
+
+		Object result = null;
+		Throwable failure = null;
 		try {
-			httpClient.executeMethod(method);
-			InputStream responseStream = method.getResponseBodyAsStream();
+			T typedResult = fetchCached(connectionUrl, endpoint, handler);
+			result = typedResult;
+			return typedResult;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} catch (Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			inFlightRequests.remove(key, request);
+			request.complete(result, failure);
+		}
+	}
 
-			response = unmarshalResponse(responseStream);
+	/**
+	 * Fetches a response through the {@link #responseCache} if its endpoint
+	 * is cached. A response body is only cached if the handler accepted it.
+	 */
+	private <T> T fetchCached(String connectionUrl, String endpoint,
+			ResponseHandler<T> handler) throws SubsonicException {
+		if (responseCache == null || !responseCache.isCached(endpoint)) {
+			return fetchStreaming(connectionUrl, handler);
+		}
 
-		} catch (HttpException e) {
-			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
+		RequestTimer timer = startTimer(connectionUrl, endpoint);
+		Throwable failure = null;
+		try {
+			long invalidationCount = responseCache.getInvalidationCount();
+			String key = createCacheKey(connectionUrl, endpoint);
+			byte[] body = responseCache.get(key);
+			if (body != null) {
+				if (timer != null) {
+					timer.cached(body.length);
+				}
+				return handle(timer, handler, body);
+			}
+
+			body = fetchStreaming(connectionUrl,
+					new ResponseHandler<byte[]>() {
+						@Override
+						public byte[] handle(InputStream inputStream)
+								throws IOException {
+							ByteArrayOutputStream body = new ByteArrayOutputStream();
+							byte[] buffer = new byte[8192];
+							int read;
+							while ((read = inputStream.read(buffer)) != -1) {
+								body.write(buffer, 0, read);
+							}
+							return body.toByteArray();
+						}
+					});
+			T result = handle(timer, handler, body);
+			responseCache.put(endpoint, key, body, invalidationCount);
+			return result;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			if (timer != null) {
+				timer.stop(failure);
+			}
+		}
+	}
+
+	private void invalidate(String connectionUrl,
+			Invalidation[] invalidations) {
+		for (Invalidation invalidation : invalidations) {
+			if (invalidation.writeParameter == null) {
+				responseCache.invalidate(invalidation.readEndpoint);
+			} else {
+				String value = getParameter(connectionUrl,
+						invalidation.writeParameter);
+				if (value != null) {
+					responseCache.invalidate(invalidation.readEndpoint,
+							invalidation.readParameter, value);
+				}
+			}
+		}
+	}
+
+	private static <T> T handle(RequestTimer timer,
+			ResponseHandler<T> handler, byte[] body) throws SubsonicException {
+		try {
+			InputStream inputStream = new ByteArrayInputStream(body);
+			if (timer == null) {
+				return handler.handle(inputStream);
+			}
+			return timer.handle(handler, inputStream);
 		} catch (IOException e) {
 			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
-		} catch (JAXBException e) {
-			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
+		}
+	}
+
+	/**
+	 * Starts to time a request if there are metrics or a listener.
+	 * 
+	 * @return The timer or <code>null</code>.
+	 */
+	private RequestTimer startTimer(String connectionUrl, String endpoint) {
+		if (requestMetrics == null && requestListener == null) {
+			return null;
+		}
+		return RequestTimer.start(requestMetrics, requestListener, endpoint,
+				requestListener == null ? null
+						: getListenedParameters(connectionUrl));
+	}
+
+	/**
+	 * @return The view of the rest api which is called by the given url.
+	 */
+	private static String getEndpoint(String connectionUrl) {
+		int queryStart = connectionUrl.indexOf('?');
+		return connectionUrl.substring(
+				connectionUrl.lastIndexOf('/', queryStart) + 1, queryStart);
+	}
+
+	/**
+	 * @return The path and query of the given url, which are requested from
+	 *         the host of the http clients.
+	 */
+	private static String getRequestPath(String connectionUrl) {
+		return connectionUrl.substring(connectionUrl.indexOf('/',
+				connectionUrl.indexOf("://") + 3));
+	}
+
+	/**
+	 * Creates the cache key of a request: the url without the password and,
+	 * unless the endpoint is user scoped, without the user name.
+	 */
+	private static String createCacheKey(String connectionUrl,
+			String endpoint) {
+		boolean userScoped = USER_SCOPED_ENDPOINTS.contains(endpoint);
+		int queryStart = connectionUrl.indexOf('?');
+		StringBuilder key = new StringBuilder(connectionUrl.length());
+		key.append(connectionUrl, 0, queryStart);
+		char separator = '?';
+		for (String param : getParameters(connectionUrl)) {
+			String name = param.substring(0, param.indexOf('='));
+			if (name.equals(PARAM_PASSWORD)
+					|| (name.equals(PARAM_USER) && !userScoped)) {
+				continue;
+			}
+			key.append(separator).append(param);
+			separator = '&';
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return The parameters of the given url without the user name and the
+	 *         password.
+	 */
+	private static String getListenedParameters(String connectionUrl) {
+		StringBuilder parameters = new StringBuilder(connectionUrl.length());
+		for (String param : getParameters(connectionUrl)) {
+			if (param.startsWith(PARAM_USER + "=")
+					|| param.startsWith(PARAM_PASSWORD + "=")) {
+				continue;
+			}
+			if (parameters.length() > 0) {
+				parameters.append('&');
+			}
+			parameters.append(param);
+		}
+		return parameters.toString();
+	}
+
+	/**
+	 * @return The parameters of the given url as "name=value" pairs.
+	 */
+	private static String[] getParameters(String connectionUrl) {
+		return connectionUrl.substring(connectionUrl.indexOf('?') + 1).split(
+				"&");
+	}
+
+	/**
+	 * @return The url encoded value of the first parameter with the given
+	 *         name or <code>null</code> if the url has no such parameter.
+	 */
+	private static String getParameter(String connectionUrl, String name) {
+		String prefix = name + "=";
+		for (String param : getParameters(connectionUrl)) {
+			if (param.startsWith(prefix)) {
+				return param.substring(prefix.length());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Fetches a response bypassing the {@link #responseCache}, the handler
+	 * reads the body while it is received.
+	 */
+	private <T> T fetchStreaming(String connectionUrl,
+			ResponseHandler<T> handler) throws SubsonicException {
+		RequestTimer timer = startTimer(connectionUrl,
+				getEndpoint(connectionUrl));
+		HttpMethod method = new GetMethod(getRequestPath(connectionUrl));
+		Throwable failure = null;
+		try {
+			RequestCanceller.executing(method);
+			if (timer == null) {
+				httpClient.executeMethod(method);
+				return handler.handle(method.getResponseBodyAsStream());
+			}
+
+			timer.sending();
+			timer.received(httpClient.executeMethod(method));
+			return timer.handle(handler,
+					timer.time(method.getResponseBodyAsStream()));
+		} catch (HttpException e) {
+			failure = createFetchException(e);
+			throw (SubsonicException) failure;
+		} catch (IOException e) {
+			failure = createFetchException(e);
+			throw (SubsonicException) failure;
+		} catch (SubsonicException e) {
+			// An aborted response may also fail while it is decoded
+			failure = e.getErrorType() == ErrorType.CANCELLED ? e
+					: createFetchException(e);
+			throw (SubsonicException) failure;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
 		} finally {
 			method.releaseConnection();
+			RequestCanceller.done(method);
+			if (timer != null) {
+				timer.stop(failure);
+			}
 		}
-		SubsonicUtil.throwExceptionIfNecessary(response);
-		return response;
+	}
+
+	/**
+	 * @return A {@link ErrorType#CANCELLED} exception if the request failed
+	 *         because it was cancelled, the given exception as a
+	 *         {@link ErrorType#GENERIC} one otherwise.
+	 */
+	private static SubsonicException createFetchException(Exception cause) {
+		if (RequestCanceller.isCancelled()) {
+			return new SubsonicException("The request was cancelled.",
+					ErrorType.CANCELLED, cause);
+		} else if (cause instanceof SubsonicException) {
+			return (SubsonicException) cause;
+		}
+		return new SubsonicException(ErrorType.GENERIC, cause);
 	}
 
 	private void fetchAsyncStream(String url, final StreamListener listener)
-			throws IOException, JAXBException, SubsonicException {
-		final HttpMethod method = new GetMethod(url);
-		httpClient.executeMethod(method);
-
-		final InputStream responseStream = method.getResponseBodyAsStream();
-		Header contentTypeHeader = method
-				.getResponseHeader(HTTP_RESPONSE_HEADER_CONTENT_TYPE);
-
-		if (contentTypeHeader.getValue().startsWith(HTTP_CONTENT_TYPE_TEXT_XML)) {
-			// There was an error
-			Response response = unmarshalResponse(responseStream);
-			SubsonicUtil.throwExceptionIfNecessary(response);
-		} else {
-			new Thread("StreamDeliverer") {
-				@Override
-				public void run() {
-					try {
-						listener.receivedStream(responseStream);
-					} finally {
-						method.releaseConnection();
-					}
-				};
-			}.start();
+			throws IOException, SubsonicException {
+		HttpMethod method = new GetMethod(getRequestPath(url));
+		RequestTimer timer = startTimer(url, getEndpoint(url));
+		boolean delivering = false;
+		Throwable failure = null;
+		try {
+			if (timer != null) {
+				timer.sending();
+			}
+			int status = streamHttpClient.executeMethod(method);
+			if (timer != null) {
+				timer.received(status);
+			}
+
+			InputStream responseStream = method.getResponseBodyAsStream();
+			Header contentTypeHeader = method
+					.getResponseHeader(HTTP_RESPONSE_HEADER_CONTENT_TYPE);
+
+			if (contentTypeHeader != null
+					&& contentTypeHeader.getValue().startsWith(
+							HTTP_CONTENT_TYPE_TEXT_XML)) {
+				// There was an error
+				getJaxbDecoder().decodeResponse(responseStream);
+			} else {
+				if (timer != null) {
+					// The stream is read by the deliverer
+					responseStream = timer.time(responseStream);
+					timer.detach();
+				}
+				deliver(new StreamDelivery(method, responseStream, listener,
+						timer));
+				delivering = true;
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			// The connection must go back to the pool unless the deliverer
+			// took over its ownership.
+			if (!delivering) {
+				method.releaseConnection();
+				if (timer != null) {
+					timer.stop(failure);
+				}
+			}
+		}
+	}
+
+	private void deliver(DiscardableTask delivery) throws SubsonicException {
+		try {
+			streamDeliverer.execute(delivery);
+		} catch (RejectedExecutionException e) {
+			throw new SubsonicException(
+					"Too many streams are waiting for delivery.",
+					ErrorType.GENERIC, e);
 		}
 	}
 
 	@Override
 	public void ping() throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_PING);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
+		String restifiedUrl = urls.create(PATH_PING).toString();
 		fetchResponse(restifiedUrl);
 	}
 
 	@Override
 	public License getLicense() throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_LICENSE);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
+		String restifiedUrl = urls.create(PATH_LICENSE).toString();
 
 		Response response = fetchResponse(restifiedUrl);
 		org.subsonic.restapi.License jaxbLicense = response.getLicense();
@@ -286,10 +916,7 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public List<MusicFolder> getMusicFolders() throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_MUSIC_FOLDERS);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
+		String restifiedUrl = urls.create(PATH_GET_MUSIC_FOLDERS).toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -300,10 +927,7 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public List<NowPlaying> getNowPlaying() throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_NOW_PLAYING);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
+		String restifiedUrl = urls.create(PATH_GET_NOW_PLAYING).toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -315,6 +939,38 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public List<Index> getIndexes(MusicFolder musicFolder,
 			Calendar ifModifiedSince) throws SubsonicException {
 		throwIfDisposed();
+		String restifiedUrl = createIndexesUrl(musicFolder, ifModifiedSince);
+
+		return fetch(restifiedUrl, new ResponseHandler<List<Index>>() {
+			@Override
+			public List<Index> handle(InputStream inputStream)
+					throws SubsonicException {
+				return getDecoder().decodeIndexes(inputStream,
+						SubsonicServiceImpl.this);
+			}
+		});
+	}
+
+	@Override
+	public void getIndexes(MusicFolder musicFolder, Calendar ifModifiedSince,
+			final IndexVisitor visitor) throws SubsonicException {
+		throwIfDisposed();
+		StateChecker.check(visitor, "visitor");
+		String restifiedUrl = createIndexesUrl(musicFolder, ifModifiedSince);
+
+		fetchStreaming(restifiedUrl, new ResponseHandler<Void>() {
+			@Override
+			public Void handle(InputStream inputStream)
+					throws SubsonicException {
+				staxDecoder.visitIndexes(inputStream, visitor,
+						SubsonicServiceImpl.this);
+				return null;
+			}
+		});
+	}
+
+	private String createIndexesUrl(MusicFolder musicFolder,
+			Calendar ifModifiedSince) throws SubsonicException {
 		if ((musicFolder == null && ifModifiedSince != null)
 				|| (musicFolder != null && ifModifiedSince == null)) {
 			throw new SubsonicException(
@@ -322,24 +978,12 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 					ErrorType.GENERIC);
 		}
 
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_INDEXES);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(
-				restifiedUrl,
-				"musicFolderId",
-				musicFolder == null ? null : Integer.toString(musicFolder
-						.getId()));
-		restifiedUrl = SubsonicUtil.appendIfSet(
-				restifiedUrl,
-				"ifModifiedSince",
-				ifModifiedSince != null ? Long.toString(ifModifiedSince
-						.getTimeInMillis()) : null);
-
-		Response response;
-		response = fetchResponse(restifiedUrl);
-		return Jaxb2ModelFactory.createIndexList(response.getIndexes(), this);
+		RequestUrl restifiedUrl = urls.create(PATH_GET_INDEXES);
+		if (musicFolder != null) {
+			restifiedUrl.append("musicFolderId", musicFolder.getId()).append(
+					"ifModifiedSince", ifModifiedSince.getTimeInMillis());
+		}
+		return restifiedUrl.toString();
 	}
 
 	@Override
@@ -361,33 +1005,68 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public ch.lipsch.subsonic4j.model.Directory getMusicDirectory(
 			String folderId) {
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_MUSIC_DIR);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", folderId);
+		Directory directory = fetchMusicDirectory(folderId);
+		if (directoryPrefetchDepth > 0) {
+			prefetch(directory.getChildDirectories(), directoryPrefetchDepth);
+		}
+		return directory;
+	}
 
-		Response response;
-		response = fetchResponse(restifiedUrl);
-		return Jaxb2ModelFactory.createDirectory(response.getDirectory(), this);
+	private Directory fetchMusicDirectory(String folderId) {
+		String restifiedUrl = urls.create(PATH_GET_MUSIC_DIR)
+				.append("id", folderId).toString();
+
+		return fetch(restifiedUrl, new ResponseHandler<Directory>() {
+			@Override
+			public Directory handle(InputStream inputStream)
+					throws SubsonicException {
+				return getDecoder().decodeDirectory(inputStream,
+						SubsonicServiceImpl.this);
+			}
+		});
+	}
+
+	/**
+	 * Loads the content of the given directories and of their descendants
+	 * down to the given depth.
+	 */
+	private void prefetch(List<Directory> directories, int depth) {
+		for (Directory directory : directories) {
+			if (directory instanceof DirectoryImpl
+					&& !((DirectoryImpl) directory).isContentLoaded()) {
+				Directory content = fetchMusicDirectory(directory.getId());
+				((DirectoryImpl) directory).setContent(content.getSongs(),
+						content.getChildDirectories());
+			}
+			if (depth > 1) {
+				prefetch(directory.getChildDirectories(), depth - 1);
+			}
+		}
 	}
 
 	@Override
 	public SearchResult search(String query) throws SubsonicException {
-		SearchResult2 result2 = search(query, DEFAULT_SEARCH_COUNT, 0,
-				DEFAULT_SEARCH_COUNT, 0, DEFAULT_SEARCH_COUNT, 0);
+		return search(query, searchPaging);
+	}
+
+	@Override
+	public SearchResult search(String query, SearchPaging paging)
+			throws SubsonicException {
+		StateChecker.check(paging, "paging");
+		int pageSize = paging.getFirstPageSize();
+		SearchPage page = searchPage(query, pageSize, 0, pageSize, 0,
+				pageSize, 0);
 
 		SearchResultImpl.SearchParams searchParams = new SearchResultImpl.SearchParams();
-		searchParams.setAlbumCount(DEFAULT_SEARCH_COUNT);
+		searchParams.setAlbumCount(pageSize);
 		searchParams.setAlbumOffset(0);
-		searchParams.setArtistCount(DEFAULT_SEARCH_COUNT);
+		searchParams.setArtistCount(pageSize);
 		searchParams.setArtistOffset(0);
 		searchParams.setQuery(query);
-		searchParams.setSongCount(DEFAULT_SEARCH_COUNT);
+		searchParams.setSongCount(pageSize);
 		searchParams.setSongOffset(0);
 
-		return Jaxb2ModelFactory
-				.createSearchResult(result2, searchParams, this);
+		return new SearchResultImpl(page, searchParams, paging, this);
 	}
 
 	@Override
@@ -395,23 +1074,8 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 			Integer artistOffset, Integer albumCount, Integer albumOffset,
 			Integer songCount, Integer songOffset) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_SEARCH2);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "query", query);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "artistCount",
-				Integer.toString(artistCount));
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "artistOffset",
-				Integer.toString(artistOffset));
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "albumCount",
-				Integer.toString(albumCount));
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "albumOffset",
-				Integer.toString(albumOffset));
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "songCount",
-				Integer.toString(songCount));
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "songOffset",
-				Integer.toString(songOffset));
+		String restifiedUrl = createSearchUrl(query, artistCount,
+				artistOffset, albumCount, albumOffset, songCount, songOffset);
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -419,13 +1083,89 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		return response.getSearchResult2();
 	}
 
+	@Override
+	public SearchSession createSearchSession(long debounceMillis,
+			SearchPaging paging, SearchSessionListener listener)
+			throws SubsonicException {
+		StateChecker.check(debounceMillis >= 0,
+				"debounceMillis must be greater or equal than 0.");
+		StateChecker.check(paging, "paging");
+		StateChecker.check(listener, "listener");
+		throwIfDisposed();
+		return new SearchSessionImpl(this, debounceMillis, paging, listener,
+				executionMode);
+	}
+
+	@Override
+	public SearchBatch createSearchBatch(int parallelism, SearchPaging paging)
+			throws SubsonicException {
+		StateChecker.checkGreaterOrEqual(parallelism, 1, "parallelism");
+		StateChecker.check(paging, "paging");
+		throwIfDisposed();
+		return new SearchBatchImpl(this, parallelism, paging, executionMode);
+	}
+
+	@Override
+	public SearchPage searchPage(String query, int artistCount,
+			int artistOffset, int albumCount, int albumOffset, int songCount,
+			int songOffset) throws SubsonicException {
+		StateChecker.check(query, "query");
+		throwIfDisposed();
+		String restifiedUrl = createSearchUrl(query, artistCount,
+				artistOffset, albumCount, albumOffset, songCount, songOffset);
+		long start = System.nanoTime();
+		SearchPage page = fetch(restifiedUrl,
+				new ResponseHandler<SearchPage>() {
+					@Override
+					public SearchPage handle(InputStream inputStream)
+							throws SubsonicException {
+						return getDecoder().decodeSearchResult2(inputStream,
+								SubsonicServiceImpl.this);
+					}
+				});
+		return new SearchPage(page.getArtists(), page.getAlbums(),
+				page.getSongs(), System.nanoTime() - start);
+	}
+
+	@Override
+	public Future<SearchPage> prefetchSearchPage(final String query,
+			final int artistCount, final int artistOffset,
+			final int albumCount, final int albumOffset, final int songCount,
+			final int songOffset) throws SubsonicException {
+		StateChecker.check(query, "query");
+		throwIfDisposed();
+		try {
+			return searchPrefetcher.submit(new Callable<SearchPage>() {
+				@Override
+				public SearchPage call() throws SubsonicException {
+					return searchPage(query, artistCount, artistOffset,
+							albumCount, albumOffset, songCount, songOffset);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// The service was disposed meanwhile
+			throw new SubsonicException("Service is disposed",
+					ErrorType.IS_DISPOSED, e);
+		}
+	}
+
+	private String createSearchUrl(String query, Integer artistCount,
+			Integer artistOffset, Integer albumCount, Integer albumOffset,
+			Integer songCount, Integer songOffset) throws SubsonicException {
+		String restifiedUrl = urls.create(PATH_SEARCH2).append("query", query)
+				.append("artistCount", artistCount)
+				.append("artistOffset", artistOffset)
+				.append("albumCount", albumCount)
+				.append("albumOffset", albumOffset)
+				.append("songCount", songCount)
+				.append("songOffset", songOffset).toString();
+		return restifiedUrl;
+	}
+
 	@Override
 	public List<Playlist> getPlayLists() throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_PLAYLISTS);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
+		String restifiedUrl = urls.create(PATH_GET_PLAYLISTS).toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -435,11 +1175,8 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public List<Song> getPlaylistSongs(String id) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_PLAYLIST);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
+		String restifiedUrl = urls.create(PATH_GET_PLAYLIST).append("id", id)
+				.toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -451,29 +1188,20 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public void createOrUpdatePlaylist(String playlistId, String name,
 			List<Song> songs) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_CREATE_PLAYLIST);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "playlistId",
-				playlistId);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "name", name);
+		RequestUrl restifiedUrl = urls.create(PATH_CREATE_PLAYLIST)
+				.append("playlistId", playlistId).append("name", name);
 		for (Song song : songs) {
-			restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "songId",
-					song.getId());
+			restifiedUrl.append("songId", song.getId());
 		}
 
-		fetchResponse(restifiedUrl);
+		fetchResponse(restifiedUrl.toString());
 	}
 
 	@Override
 	public void deletePlaylist(String id) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_DELETE_PLAYLIST);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
+		String restifiedUrl = urls.create(PATH_DELETE_PLAYLIST).append("id", id)
+				.toString();
 
 		fetchResponse(restifiedUrl);
 	}
@@ -482,18 +1210,13 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public void download(String id, StreamListener listener)
 			throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_DOWNLOAD);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
+		String restifiedUrl = urls.create(PATH_DOWNLOAD).append("id", id)
+				.toString();
 
 		try {
 			fetchAsyncStream(restifiedUrl, listener);
 		} catch (IOException e) {
 			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
-		} catch (JAXBException e) {
-			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
 		}
 	}
 
@@ -504,48 +1227,63 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		StateChecker.check(listener, "listener");
 
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_STREAM);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
-		restifiedUrl = SubsonicUtil.appendIfSet(
-				restifiedUrl,
-				"maxBitRate",
-				maxBitRate == null ? null : Integer.toString(maxBitRate
-						.intValue()));
+		RequestUrl restifiedUrl = urls.create(PATH_STREAM).append("id", id);
+		if (maxBitRate != null) {
+			restifiedUrl.append("maxBitRate", maxBitRate.intValue());
+		}
 
 		try {
-			fetchAsyncStream(restifiedUrl, listener);
+			fetchAsyncStream(restifiedUrl.toString(), listener);
 		} catch (IOException e) {
 			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
-		} catch (JAXBException e) {
-			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
 		}
 	}
 
 	@Override
-	public void getCoverArt(String id, Integer size, StreamListener listener)
-			throws SubsonicException {
+	public void getCoverArt(final String id, final Integer size,
+			final StreamListener listener) throws SubsonicException {
 		throwIfDisposed();
 		StateChecker.check(id, "id");
 		StateChecker.check(listener, "listener");
 
+		if (coverArtCache != null) {
+			InputStream cachedCoverArt = coverArtCache.open(id, size);
+			if (cachedCoverArt != null) {
+				deliver(new CachedStreamDelivery(cachedCoverArt, listener));
+				return;
+			}
+		}
+
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_COVER_ART);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "size",
-				size == null ? null : Integer.toString(size));
+		String restifiedUrl = urls.create(PATH_GET_COVER_ART).append("id", id)
+				.append("size", size).toString();
+
+		StreamListener deliveringListener = listener;
+		if (coverArtCache != null) {
+			deliveringListener = new StreamListener() {
+				@Override
+				public void receivedStream(InputStream inputStream) {
+					InputStream storingStream = coverArtCache
+							.storeWhileReading(id, size, inputStream);
+					try {
+						listener.receivedStream(storingStream);
+					} finally {
+						// Commits a completely read cover and drops the
+						// temporary file of a partially read one
+						try {
+							storingStream.close();
+						} catch (IOException e) {
+							// The connection is released anyway
+						}
+					}
+				}
+			};
+		}
 
 		try {
-			fetchAsyncStream(restifiedUrl, listener);
+			fetchAsyncStream(restifiedUrl, deliveringListener);
 		} catch (IOException e) {
 			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
-		} catch (JAXBException e) {
-			throw new SubsonicException(SubsonicException.ErrorType.GENERIC, e);
 		}
 	}
 
@@ -553,14 +1291,9 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public void changePassword(String username, String password)
 			throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_CHANGE_PASSWORD);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "username",
-				username);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "password",
-				password);
+		String restifiedUrl = urls.create(PATH_CHANGE_PASSWORD)
+				.append("username", username).append("password", password)
+				.toString();
 
 		fetchResponse(restifiedUrl);
 	}
@@ -568,12 +1301,8 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public User getUser(String username) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_USER);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "username",
-				username);
+		String restifiedUrl = urls.create(PATH_GET_USER)
+				.append("username", username).toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -587,37 +1316,19 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 			Boolean uploadRole, Boolean playlistRole, Boolean coverArtRole,
 			Boolean commentRole, Boolean podcastRole) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_CREATE_USER);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "username",
-				username);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "password",
-				password);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl,
-				"ldapAuthenticated", ldapAuthenticated == null ? null
-						: ldapAuthenticated.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "adminRole",
-				adminRole == null ? null : adminRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "settingsRole",
-				settingsRole == null ? null : settingsRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "streamRole",
-				streamRole == null ? null : streamRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "jukeboxRole",
-				jukeboxRole == null ? null : jukeboxRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "downloadRole",
-				downloadRole == null ? null : downloadRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "uploadRole",
-				uploadRole == null ? null : uploadRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "playlistRole",
-				playlistRole == null ? null : playlistRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "coverArtRole",
-				coverArtRole == null ? null : coverArtRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "commentRole",
-				commentRole == null ? null : commentRole.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "podcastRole",
-				podcastRole == null ? null : podcastRole.toString());
+		String restifiedUrl = urls.create(PATH_CREATE_USER)
+				.append("username", username).append("password", password)
+				.append("ldapAuthenticated", ldapAuthenticated)
+				.append("adminRole", adminRole)
+				.append("settingsRole", settingsRole)
+				.append("streamRole", streamRole)
+				.append("jukeboxRole", jukeboxRole)
+				.append("downloadRole", downloadRole)
+				.append("uploadRole", uploadRole)
+				.append("playlistRole", playlistRole)
+				.append("coverArtRole", coverArtRole)
+				.append("commentRole", commentRole)
+				.append("podcastRole", podcastRole).toString();
 
 		fetchResponse(restifiedUrl);
 	}
@@ -625,12 +1336,8 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	@Override
 	public void deleteUser(String username) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_DELETE_USER);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "username",
-				username);
+		String restifiedUrl = urls.create(PATH_DELETE_USER)
+				.append("username", username).toString();
 
 		fetchResponse(restifiedUrl);
 	}
@@ -639,32 +1346,22 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public List<ChatMessage> getChatMessages(Calendar since)
 			throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_CHAT_MESSAGE);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "since",
-				since == null ? null : Long.toString(since.getTimeInMillis()));
+		RequestUrl restifiedUrl = urls.create(PATH_GET_CHAT_MESSAGE);
+		if (since != null) {
+			restifiedUrl.append("since", since.getTimeInMillis());
+		}
 
 		Response response;
-		response = fetchResponse(restifiedUrl);
+		response = fetchResponse(restifiedUrl.toString());
 		return Jaxb2ModelFactory.createChatMessages(response.getChatMessages(),
 				this);
 	}
 
-	private synchronized URL getUrl() {
-		return url;
-	}
-
 	@Override
 	public void addChatMessage(String message) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_ADD_CHAT_MESSAGE);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "message",
-				message);
+		String restifiedUrl = urls.create(PATH_ADD_CHAT_MESSAGE)
+				.append("message", message).toString();
 
 		fetchResponse(restifiedUrl);
 	}
@@ -673,22 +1370,43 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public List<Directory> getAlbumList(AlbumType albumType, Integer size,
 			Integer offset) throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_ALBUM_LIST);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "type",
-				albumType.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "size",
-				size == null ? null : size.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "offset",
-				offset == null ? null : offset.toString());
+		String restifiedUrl = createAlbumListUrl(albumType, size, offset);
 
-		Response response;
-		response = fetchResponse(restifiedUrl);
+		return fetch(restifiedUrl, new ResponseHandler<List<Directory>>() {
+			@Override
+			public List<Directory> handle(InputStream inputStream)
+					throws SubsonicException {
+				return getDecoder().decodeAlbumList(inputStream,
+						SubsonicServiceImpl.this);
+			}
+		});
+	}
 
-		return Jaxb2ModelFactory.createDirectories(response.getAlbumList(),
-				this);
+	@Override
+	public void getAlbumList(AlbumType albumType, Integer size,
+			Integer offset, final AlbumVisitor visitor)
+			throws SubsonicException {
+		throwIfDisposed();
+		StateChecker.check(visitor, "visitor");
+		String restifiedUrl = createAlbumListUrl(albumType, size, offset);
+
+		fetchStreaming(restifiedUrl, new ResponseHandler<Void>() {
+			@Override
+			public Void handle(InputStream inputStream)
+					throws SubsonicException {
+				staxDecoder.visitAlbumList(inputStream, visitor,
+						SubsonicServiceImpl.this);
+				return null;
+			}
+		});
+	}
+
+	private String createAlbumListUrl(AlbumType albumType, Integer size,
+			Integer offset) throws SubsonicException {
+		String restifiedUrl = urls.create(PATH_GET_ALBUM_LIST)
+				.append("type", albumType.toString()).append("size", size)
+				.append("offset", offset).toString();
+		return restifiedUrl;
 	}
 
 	@Override
@@ -701,44 +1419,25 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 			Integer fromYear, Integer toYear, MusicFolder musicFolder)
 			throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_RANDOM_SONGS);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "size",
-				size != null ? size.toString() : null);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "genre",
-				genre != null ? genre.toString() : null);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "fromYear",
-				fromYear != null ? fromYear.toString() : null);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "toYear",
-				toYear != null ? toYear.toString() : null);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "musicFolderId",
-				musicFolder != null ? Integer.toString(musicFolder.getId())
-						: null);
+		RequestUrl restifiedUrl = urls.create(PATH_GET_RANDOM_SONGS)
+				.append("size", size).append("genre", genre)
+				.append("fromYear", fromYear).append("toYear", toYear);
+		if (musicFolder != null) {
+			restifiedUrl.append("musicFolderId", musicFolder.getId());
+		}
 
 		Response response;
-		response = fetchResponse(restifiedUrl);
+		response = fetchResponse(restifiedUrl.toString());
 		return Jaxb2ModelFactory.createSongs(response.getRandomSongs()
 				.getSong(), this);
 	}
 
-	private synchronized CredentialsProvider getCredentialsProvider() {
-		return credentialsProvider;
-	}
-
 	@Override
 	public String getLyrics(String artist, String title)
 			throws SubsonicException {
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_GET_LYRICS);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "artist",
-				artist.toString());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "title",
-				title.toString());
+		String restifiedUrl = urls.create(PATH_GET_LYRICS)
+				.append("artist", artist).append("title", title).toString();
 
 		Response response;
 		response = fetchResponse(restifiedUrl);
@@ -774,6 +1473,12 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 	public synchronized void disposeService() {
 		disposed = true;
 
+		if (idleConnectionEvictor != null) {
+			idleConnectionEvictor.shutdown();
+		}
+		streamDeliverer.discardQueue();
+		shutdownExecutorsAndConnections();
+
 		// Restores the original hostname verifier.
 		if (allowInvalidCerts && defaultHostnameVerifier != null) {
 			HttpsURLConnection
@@ -781,6 +1486,15 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		}
 	}
 
+	private void shutdownExecutorsAndConnections() {
+		if (ownedStreamExecutor != null) {
+			ownedStreamExecutor.shutdown();
+		}
+		searchPrefetcher.shutdownNow();
+		connectionManager.shutdown();
+		streamConnectionManager.shutdown();
+	}
+
 	@Override
 	public synchronized boolean isDisposed() {
 		return disposed;
@@ -798,13 +1512,9 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		StateChecker.check(id, "id");
 
 		throwIfDisposed();
-		String restifiedUrl = SubsonicUtil.restifySubsonicUrl(getUrl(),
-				PATH_STREAM);
-		restifiedUrl = SubsonicUtil.appendCredentialsAsFirstParam(restifiedUrl,
-				getCredentialsProvider());
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "id", id);
-		restifiedUrl = SubsonicUtil.appendIfSet(restifiedUrl, "maxBitRate",
-				Integer.toString(BitRate.BITRATE_DEFAULT.intValue()));
+		String restifiedUrl = urls.create(PATH_STREAM).append("id", id)
+				.append("maxBitRate", BitRate.BITRATE_DEFAULT.intValue())
+				.toString();
 
 		return restifiedUrl;
 	}
@@ -815,4 +1525,150 @@ public class SubsonicServiceImpl implements InternalSubsonicService {
 		createOrUpdatePlaylist(null, name, songs);
 		return PlaylistTool.findPlaylistIdByName(name, this);
 	}
+
+	@Override
+	public ExecutorStatistics getStreamDeliveryStatistics() {
+		return streamDeliverer.getStatistics();
+	}
+
+	@Override
+	public CoalescingStatistics getCoalescingStatistics() {
+		return new CoalescingStatistics(coalescableRequests.get(),
+				coalescedRequests.get(), inFlightRequests.size());
+	}
+
+	/**
+	 * A running request whose result is shared with identical requests.
+	 */
+	private static final class InFlightRequest {
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private volatile Object result;
+		private volatile Throwable failure;
+
+		private void complete(Object result, Throwable failure) {
+			this.result = result;
+			this.failure = failure;
+			completed.countDown();
+		}
+
+		/**
+		 * Waits for the request like for a blocking http request, i.e. an
+		 * interrupt is kept but does not end the wait.
+		 */
+		private Object getResult() throws SubsonicException {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					completed.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A cached read which becomes stale by a write. If the parameters are
+	 * set only the reads whose read parameter has the value of the write
+	 * parameter are stale, otherwise all reads of the endpoint.
+	 */
+	private static final class Invalidation {
+		private final String readEndpoint;
+		private final String writeParameter;
+		private final String readParameter;
+
+		private Invalidation(String readEndpoint, String writeParameter,
+				String readParameter) {
+			this.readEndpoint = readEndpoint;
+			this.writeParameter = writeParameter;
+			this.readParameter = readParameter;
+		}
+	}
+
+	/**
+	 * Delivers the body of a stream request to its listener. Owns the
+	 * connection of the request and releases it when it is done or
+	 * discarded.
+	 */
+	private static final class StreamDelivery implements DiscardableTask {
+
+		private final HttpMethod method;
+		private final InputStream responseStream;
+		private final StreamListener listener;
+
+		/**
+		 * Times the request until the listener returns, <code>null</code> if
+		 * it is not timed.
+		 */
+		private final RequestTimer timer;
+
+		public StreamDelivery(HttpMethod method, InputStream responseStream,
+				StreamListener listener, RequestTimer timer) {
+			this.method = method;
+			this.responseStream = responseStream;
+			this.listener = listener;
+			this.timer = timer;
+		}
+
+		@Override
+		public void run() {
+			try {
+				listener.receivedStream(responseStream);
+			} finally {
+				method.releaseConnection();
+				if (timer != null) {
+					timer.stop((Throwable) null);
+				}
+			}
+		}
+
+		@Override
+		public void discard() {
+			method.releaseConnection();
+			if (timer != null) {
+				timer.stop(ErrorType.GENERIC);
+			}
+		}
+	}
+
+	/**
+	 * Delivers a stream which does not come from the server.
+	 */
+	private static final class CachedStreamDelivery implements
+			DiscardableTask {
+
+		private final InputStream inputStream;
+		private final StreamListener listener;
+
+		public CachedStreamDelivery(InputStream inputStream,
+				StreamListener listener) {
+			this.inputStream = inputStream;
+			this.listener = listener;
+		}
+
+		@Override
+		public void run() {
+			listener.receivedStream(inputStream);
+		}
+
+		@Override
+		public void discard() {
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				// Nobody is interested anymore
+			}
+		}
+	}
 }
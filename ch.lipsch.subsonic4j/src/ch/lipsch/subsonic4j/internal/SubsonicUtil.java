@@ -19,86 +19,17 @@
 package ch.lipsch.subsonic4j.internal;
 
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
 
-import org.apache.commons.httpclient.URIException;
-import org.apache.commons.httpclient.util.URIUtil;
 import org.subsonic.restapi.Response;
 import org.subsonic.restapi.ResponseStatus;
 
-import ch.lipsch.subsonic4j.CredentialsProvider;
 import ch.lipsch.subsonic4j.SubsonicException;
-import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
-import ch.lipsch.subsonic4j.tools.StateChecker;
 
 public final class SubsonicUtil {
 
-	private static final String REST_PATH = "rest";
-	private static final String SUBSONIC_VERSION = "1.4.0";
-	private static final String CLIENT_APP = "subs4j";
-
 	private SubsonicUtil() {
 	}
 
-	private static String addSlashIfNecessary(String url) {
-		if (!url.endsWith("/")) {
-			return url + "/";
-		}
-		return url;
-	}
-
-	/**
-	 * Appends a key value pair to an url if the value is set. Must only be used
-	 * there is already a parameter set on the url. * @param url
-	 * 
-	 * @param key
-	 *            The parameter name. May be <code>null</code>.
-	 * @param value
-	 *            The value. May be <code>null</code>.
-	 * @return The key & value added to the url:
-	 *         http://12.34.56.78?first=bla&key=value
-	 * @throws SubsonicException
-	 *             In case the value can not be encode to fit into the url.
-	 */
-	public static String appendIfSet(String url, String key, String value)
-			throws SubsonicException {
-		if (key != null && value != null) {
-			try {
-				return url + "&" + key + "=" + URIUtil.encodeWithinQuery(value);
-			} catch (URIException e) {
-				throw new SubsonicException(ErrorType.GENERIC, e);
-			}
-		} else {
-			return url;
-		}
-	}
-
-	public static String appendCredentialsAsFirstParam(String url,
-			CredentialsProvider credentials) {
-		StringBuilder sb = new StringBuilder();
-		sb.append(url);
-		sb.append("?u=");
-		sb.append(credentials.getUserName());
-		sb.append("&p=");
-		sb.append(SubsonicUtil.hexEncodePassword(credentials.getPassword()));
-		sb.append("&v=");
-		sb.append(SUBSONIC_VERSION);
-		sb.append("&c=");
-		sb.append(CLIENT_APP);
-		return sb.toString();
-	}
-
-	public static String restifySubsonicUrl(URL url, String view) {
-		StateChecker.check(url, "url");
-		StateChecker.check(view, "view");
-		String restifiedUrl = url.toString();
-		restifiedUrl = addSlashIfNecessary(restifiedUrl);
-		restifiedUrl += REST_PATH;
-		restifiedUrl = addSlashIfNecessary(restifiedUrl);
-		restifiedUrl += view;
-		return restifiedUrl;
-	}
-
 	public static void throwExceptionIfNecessary(Response response)
 			throws SubsonicException {
 		if (response.getStatus().equals(ResponseStatus.FAILED)) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.lipsch.subsonic4j.ServiceSettings.ExecutionMode;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Creates the {@link ThreadFactory} and executors of an {@link ExecutionMode}
+ * . Virtual threads are looked up by reflection, the bundle itself still runs
+ * on older runtimes.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class ThreadFactories {
+
+	private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+	private ThreadFactories() {
+	}
+
+	/**
+	 * Creates a factory for the given mode.
+	 * 
+	 * @param executionMode
+	 *            The kind of threads. Must not be <code>null</code>.
+	 * @param name
+	 *            Prefix of the thread names. Must not be <code>null</code>.
+	 * @param daemon
+	 *            True if platform threads should be daemon threads. Virtual
+	 *            threads are always daemon threads.
+	 * @return The factory.
+	 * @throws SubsonicException
+	 *             If virtual threads are requested but not supported.
+	 */
+	public static ThreadFactory create(ExecutionMode executionMode,
+			String name, boolean daemon) throws SubsonicException {
+		StateChecker.check(executionMode, "executionMode");
+		StateChecker.check(name, "name");
+		switch (executionMode) {
+		case VIRTUAL_THREADS:
+			return createVirtualThreadFactory(name);
+		default:
+			return createPlatformThreadFactory(name, daemon);
+		}
+	}
+
+	/**
+	 * Creates an executor for the given mode. Platform threads are pooled and
+	 * time out when idle. Virtual threads are cheap and therefore not pooled,
+	 * every task gets its own thread.
+	 * 
+	 * @param executionMode
+	 *            The kind of threads. Must not be <code>null</code>.
+	 * @param name
+	 *            Prefix of the thread names. Must not be <code>null</code>.
+	 * @param maxThreads
+	 *            The maximum number of pooled platform threads.
+	 * @param daemon
+	 *            True if platform threads should be daemon threads.
+	 * @return The executor. The caller has to shut it down.
+	 * @throws SubsonicException
+	 *             If virtual threads are requested but not supported.
+	 */
+	public static ExecutorService createExecutor(ExecutionMode executionMode,
+			String name, int maxThreads, boolean daemon)
+			throws SubsonicException {
+		ThreadFactory threadFactory = create(executionMode, name, daemon);
+		if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+			return new ThreadPerTaskExecutor(threadFactory);
+		}
+
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(maxThreads,
+				maxThreads, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		threadPool.allowCoreThreadTimeOut(true);
+		return threadPool;
+	}
+
+	/**
+	 * @return True if the running jvm supports virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static ThreadFactory createPlatformThreadFactory(
+			final String name, final boolean daemon) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-"
+						+ threadNumber.getAndIncrement());
+				thread.setDaemon(daemon);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Equivalent of
+	 * <code>Thread.ofVirtual().name(name + "-", 1).factory()</code>.
+	 */
+	private static ThreadFactory createVirtualThreadFactory(String name)
+			throws SubsonicException {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method nameMethod = builderClass.getMethod("name", String.class,
+					long.class);
+			builder = nameMethod.invoke(builder, name + "-", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(
+					builder);
+		} catch (NoSuchMethodException e) {
+			throw createUnsupportedException(e);
+		} catch (ClassNotFoundException e) {
+			throw createUnsupportedException(e);
+		} catch (IllegalAccessException e) {
+			throw createUnsupportedException(e);
+		} catch (InvocationTargetException e) {
+			throw createUnsupportedException(e);
+		}
+	}
+
+	private static SubsonicException createUnsupportedException(
+			Exception cause) {
+		return new SubsonicException(
+				"Virtual threads are not supported by this java runtime.",
+				ErrorType.GENERIC, cause);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Executor which starts a new thread for every task. Meant for virtual
+ * threads, which are too cheap to be pooled.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+final class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * Guarded by this.
+	 */
+	private boolean shutdown = false;
+
+	/**
+	 * Number of tasks which are started but not finished yet. Guarded by
+	 * this.
+	 */
+	private int runningTasks = 0;
+
+	public ThreadPerTaskExecutor(ThreadFactory threadFactory) {
+		StateChecker.check(threadFactory, "threadFactory");
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		StateChecker.check(command, "command");
+		synchronized (this) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Executor is shut down");
+			}
+			runningTasks++;
+		}
+
+		try {
+			threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						command.run();
+					} finally {
+						taskFinished();
+					}
+				}
+			}).start();
+		} catch (RuntimeException e) {
+			taskFinished();
+			throw new RejectedExecutionException(e);
+		}
+	}
+
+	private synchronized void taskFinished() {
+		runningTasks--;
+		if (runningTasks == 0) {
+			notifyAll();
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		shutdown = true;
+	}
+
+	/**
+	 * Same as {@link #shutdown()}, running tasks are not interrupted.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public synchronized boolean isTerminated() {
+		return shutdown && runningTasks == 0;
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!isTerminated()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Socket factory which reports the time to establish a connection to the
+ * {@link RequestTimer} of the current thread. Delegates the creation of the
+ * sockets to the factory of the wrapped {@link Protocol}.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+class TimedSocketFactory implements ProtocolSocketFactory {
+
+	private final ProtocolSocketFactory socketFactory;
+
+	private TimedSocketFactory(ProtocolSocketFactory socketFactory) {
+		this.socketFactory = socketFactory;
+	}
+
+	/**
+	 * Creates a protocol which behaves like the given one, but times the
+	 * creation of its connections.
+	 * 
+	 * @param protocol
+	 *            Must not be <code>null</code>.
+	 * @return The timed protocol. Is only equal to itself, so it must be
+	 *         reused to let the connection manager pool its connections.
+	 */
+	static Protocol wrap(Protocol protocol) {
+		StateChecker.check(protocol, "protocol");
+		ProtocolSocketFactory factory = protocol.getSocketFactory();
+		TimedSocketFactory timedFactory;
+		if (factory instanceof SecureProtocolSocketFactory) {
+			timedFactory = new Secure((SecureProtocolSocketFactory) factory);
+		} else {
+			timedFactory = new TimedSocketFactory(factory);
+		}
+		return new Protocol(protocol.getScheme(), timedFactory,
+				protocol.getDefaultPort());
+	}
+
+	@Override
+	public Socket createSocket(String host, int port,
+			InetAddress localAddress, int localPort) throws IOException,
+			UnknownHostException {
+		long start = System.nanoTime();
+		try {
+			return socketFactory.createSocket(host, port, localAddress,
+					localPort);
+		} finally {
+			RequestTimer.connected(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Socket createSocket(String host, int port,
+			InetAddress localAddress, int localPort,
+			HttpConnectionParams params) throws IOException,
+			UnknownHostException, ConnectTimeoutException {
+		long start = System.nanoTime();
+		try {
+			return socketFactory.createSocket(host, port, localAddress,
+					localPort, params);
+		} finally {
+			RequestTimer.connected(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException,
+			UnknownHostException {
+		long start = System.nanoTime();
+		try {
+			return socketFactory.createSocket(host, port);
+		} finally {
+			RequestTimer.connected(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Timed factory of a secure protocol, lets the {@link Protocol} know
+	 * that its connections are secure.
+	 */
+	private static final class Secure extends TimedSocketFactory implements
+			SecureProtocolSocketFactory {
+
+		private final SecureProtocolSocketFactory secureSocketFactory;
+
+		private Secure(SecureProtocolSocketFactory socketFactory) {
+			super(socketFactory);
+			secureSocketFactory = socketFactory;
+		}
+
+		@Override
+		public Socket createSocket(Socket socket, String host, int port,
+				boolean autoClose) throws IOException, UnknownHostException {
+			long start = System.nanoTime();
+			try {
+				return secureSocketFactory.createSocket(socket, host, port,
+						autoClose);
+			} finally {
+				RequestTimer.connected(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.internal;
+
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import ch.lipsch.subsonic4j.tools.StateChecker;
+
+/**
+ * Pool of {@link Unmarshaller}s created from one shared {@link JAXBContext}.
+ * An {@link Unmarshaller} is not thread-safe, but the {@link JAXBContext} is.
+ * Every unmarshal borrows its own instance, so responses can be parsed
+ * concurrently without a global lock.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class UnmarshallerPool {
+
+	private final JAXBContext jaxbContext;
+
+	/**
+	 * Number of unmarshallers which are kept when they are returned to the
+	 * pool. Additional instances are dropped.
+	 */
+	private final int maxIdle;
+
+	private final ConcurrentLinkedQueue<Unmarshaller> idleUnmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+	/**
+	 * Size of {@link #idleUnmarshallers}. Tracked separately as
+	 * {@link ConcurrentLinkedQueue#size()} is not a constant time operation.
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger(0);
+
+	public UnmarshallerPool(JAXBContext jaxbContext, int maxIdle) {
+		StateChecker.check(jaxbContext, "jaxbContext");
+		StateChecker.checkGreaterOrEqual(maxIdle, 1, "maxIdle");
+		this.jaxbContext = jaxbContext;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Unmarshals the given stream with a pooled {@link Unmarshaller}.
+	 * 
+	 * @param inputStream
+	 *            The xml content. Must not be <code>null</code>.
+	 * @return The unmarshalled object.
+	 * @throws JAXBException
+	 *             If the content could not be unmarshalled.
+	 */
+	public Object unmarshal(InputStream inputStream) throws JAXBException {
+		StateChecker.check(inputStream, "inputStream");
+		Unmarshaller unmarshaller = borrow();
+		try {
+			return unmarshaller.unmarshal(inputStream);
+		} finally {
+			giveBack(unmarshaller);
+		}
+	}
+
+	private Unmarshaller borrow() throws JAXBException {
+		Unmarshaller unmarshaller = idleUnmarshallers.poll();
+		if (unmarshaller == null) {
+			return jaxbContext.createUnmarshaller();
+		}
+		idleCount.decrementAndGet();
+		return unmarshaller;
+	}
+
+	private void giveBack(Unmarshaller unmarshaller) {
+		if (idleCount.incrementAndGet() <= maxIdle) {
+			idleUnmarshallers.offer(unmarshaller);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The number of unmarshallers currently waiting in the pool.
+	 */
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+}
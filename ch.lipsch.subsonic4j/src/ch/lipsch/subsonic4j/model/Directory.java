@@ -26,7 +26,26 @@ public interface Directory extends SubsonicModelObject {
 
 	public String getId();
 
+	/**
+	 * @return The id of the cover art to pass to
+	 *         {@link ch.lipsch.subsonic4j.SubsonicService#getCoverArt(String, Integer, ch.lipsch.subsonic4j.StreamListener)}
+	 *         or <code>null</code> if the directory has no cover art.
+	 */
+	public String getCoverArtId();
+
+	/**
+	 * Returns the directly contained directories. The returned directories
+	 * fetch their own content only when it is accessed.
+	 * 
+	 * @return The child directories.
+	 */
 	public List<Directory> getChildDirectories();
 
+	/**
+	 * Returns the songs directly contained in this directory. Songs of child
+	 * directories are not included.
+	 * 
+	 * @return The songs.
+	 */
 	public List<Song> getSongs();
 }
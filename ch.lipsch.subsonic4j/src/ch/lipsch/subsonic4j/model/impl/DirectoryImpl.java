@@ -22,10 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.subsonic.restapi.Child;
-
 import ch.lipsch.subsonic4j.SubsonicService;
-import ch.lipsch.subsonic4j.internal.Jaxb2ModelFactory;
 import ch.lipsch.subsonic4j.model.Directory;
 import ch.lipsch.subsonic4j.model.Song;
 import ch.lipsch.subsonic4j.tools.StateChecker;
@@ -33,129 +30,136 @@ import ch.lipsch.subsonic4j.tools.StateChecker;
 public class DirectoryImpl extends AbstractSubsonicModelObject implements
 		Directory {
 
-	private final RootHolder root;
+	private final String id;
+
+	private final String name;
+
+	private final String coverArtId;
 
 	/**
-	 * Directly contained songs in this directory. Built up lazily. Access must
+	 * Directly contained songs in this directory. Is <code>null</code> as
+	 * long as the content of this directory has not been fetched. Access must
 	 * be synchronized with {@link DirectoryImpl} instance.
 	 */
 	private List<Song> songs = null;
 
 	/**
-	 * Directly contained child directories in this directory. Built up lazily.
-	 * Access must be synchronized with {@link DirectoryImpl} instance.
+	 * Directly contained child directories in this directory. Is
+	 * <code>null</code> as long as the content of this directory has not been
+	 * fetched. Access must be synchronized with {@link DirectoryImpl}
+	 * instance.
 	 */
 	private List<Directory> subDirectories = null;
 
-	public DirectoryImpl(Child root, SubsonicService service) {
+	/**
+	 * Creates a directory whose content is fetched on first access.
+	 * 
+	 * @param id
+	 *            The id of the directory. Must not be <code>null</code>.
+	 * @param name
+	 *            The name of the directory.
+	 * @param coverArtId
+	 *            The id of the cover art. May be <code>null</code>.
+	 * @param service
+	 *            The service. Must not be <code>null</code>.
+	 */
+	public DirectoryImpl(String id, String name, String coverArtId,
+			SubsonicService service) {
 		super(service);
-		this.root = new RootHolder(root);
+		StateChecker.check(id, "id");
+		this.id = id;
+		this.name = name;
+		this.coverArtId = coverArtId;
 	}
 
-	public DirectoryImpl(org.subsonic.restapi.Directory directory,
+	/**
+	 * Creates a directory whose content is already known.
+	 * 
+	 * @param id
+	 *            The id of the directory. Must not be <code>null</code>.
+	 * @param name
+	 *            The name of the directory.
+	 * @param coverArtId
+	 *            The id of the cover art. May be <code>null</code>.
+	 * @param songs
+	 *            The directly contained songs. Must not be <code>null</code>.
+	 * @param childDirectories
+	 *            The directly contained directories, usually not yet loaded.
+	 *            Must not be <code>null</code>.
+	 * @param service
+	 *            The service. Must not be <code>null</code>.
+	 */
+	public DirectoryImpl(String id, String name, String coverArtId,
+			List<Song> songs, List<Directory> childDirectories,
 			SubsonicService service) {
-		super(service);
-		StateChecker.check(directory, "directory");
-		root = new RootHolder(directory);
+		this(id, name, coverArtId, service);
+		setContent(songs, childDirectories);
 	}
 
-	private synchronized void buildUpChildsOnce() {
-		if (subDirectories == null || songs == null) {
-			subDirectories = new ArrayList<Directory>();
-			songs = new ArrayList<Song>();
-			root.buildUpChilds();
+	private synchronized void loadContentOnce() {
+		if (songs == null) {
+			Directory musicDir = getService().getMusicDirectory(id);
+			setContent(musicDir.getSongs(), musicDir.getChildDirectories());
 		}
 	}
 
+	/**
+	 * Sets the content of this directory unless it is already loaded. Used to
+	 * prefetch directories.
+	 * 
+	 * @param songs
+	 *            The directly contained songs. Must not be <code>null</code>.
+	 * @param childDirectories
+	 *            The directly contained directories. Must not be
+	 *            <code>null</code>.
+	 */
+	public synchronized void setContent(List<Song> songs,
+			List<Directory> childDirectories) {
+		StateChecker.check(songs, "songs");
+		StateChecker.check(childDirectories, "childDirectories");
+		if (this.songs == null) {
+			this.songs = new ArrayList<Song>(songs);
+			this.subDirectories = new ArrayList<Directory>(childDirectories);
+		}
+	}
+
+	/**
+	 * @return True if the songs and child directories are known and
+	 *         accessing them causes no request.
+	 */
+	public synchronized boolean isContentLoaded() {
+		return songs != null;
+	}
+
 	@Override
 	public String getName() {
-		return root.getName();
+		return name;
+	}
+
+	@Override
+	public String getCoverArtId() {
+		return coverArtId;
 	}
 
 	@Override
 	public synchronized List<Directory> getChildDirectories() {
-		buildUpChildsOnce();
+		loadContentOnce();
 		return Collections.unmodifiableList(subDirectories);
 	}
 
 	@Override
-	public List<Song> getSongs() {
-		buildUpChildsOnce();
+	public synchronized List<Song> getSongs() {
+		loadContentOnce();
 		return Collections.unmodifiableList(songs);
 	}
 
 	@Override
 	public String getId() {
-		return root.getId();
+		return id;
 	}
 
 	@Override
 	public String toString() {
 		return getName();
 	}
-
-	private class RootHolder {
-		private final org.subsonic.restapi.Directory directory;
-		private final Child rootChild;
-
-		private RootHolder(org.subsonic.restapi.Directory directory) {
-			StateChecker.check(directory, "directory");
-			this.directory = directory;
-			this.rootChild = null;
-		}
-
-		public String getName() {
-			if (directory != null) {
-				return directory.getName();
-			} else {
-				return rootChild.getTitle();
-			}
-		}
-
-		private RootHolder(Child root) {
-			StateChecker.check(root, "root");
-			StateChecker.check(root.isIsDir(), "root must be a directory");
-			this.rootChild = root;
-			this.directory = null;
-		}
-
-		public void buildUpChilds() {
-			if (directory != null) {
-				for (Child child : directory.getChild()) {
-					if (child.isIsDir()) {
-						Directory musicDirectory = getService()
-								.getMusicDirectory(child.getId());
-						synchronized (DirectoryImpl.this) {
-							subDirectories.add(musicDirectory);
-						}
-					} else {
-						Song song = Jaxb2ModelFactory.createSong(child,
-								getService());
-						synchronized (DirectoryImpl.this) {
-							songs.add(song);
-						}
-					}
-				}
-			} else {
-				Directory musicDir = getService().getMusicDirectory(
-						rootChild.getId());
-				List<Directory> childDirectories = musicDir
-						.getChildDirectories();
-				List<Song> songs = musicDir.getSongs();
-				synchronized (DirectoryImpl.this) {
-					subDirectories.addAll(childDirectories);
-					songs.addAll(songs);
-				}
-			}
-		}
-
-		private String getId() {
-			if (directory != null) {
-				return directory.getId();
-			} else {
-				return rootChild.getId();
-			}
-		}
-	}
-
 }
@@ -21,11 +21,14 @@ package ch.lipsch.subsonic4j.model.impl;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import org.subsonic.restapi.SearchResult2;
-
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
 import ch.lipsch.subsonic4j.SubsonicService;
-import ch.lipsch.subsonic4j.internal.Jaxb2ModelFactory;
+import ch.lipsch.subsonic4j.internal.SearchPage;
 import ch.lipsch.subsonic4j.model.Artist;
 import ch.lipsch.subsonic4j.model.Directory;
 import ch.lipsch.subsonic4j.model.SearchResult;
@@ -44,125 +47,219 @@ public class SearchResultImpl extends AbstractSubsonicModelObject implements
 	private final List<Artist> artists;
 	private final SearchParams initialSearchParams;
 
+	/**
+	 * The paging of the further pages, <code>null</code> to keep the counts
+	 * of the first page.
+	 */
+	private final SearchPaging paging;
+
+	/**
+	 * The time it took to fetch the first page, -1 if unknown.
+	 */
+	private final long firstPageNanos;
+
 	public SearchResultImpl(List<Song> songs, List<Directory> albums,
 			List<Artist> artists, SearchParams searchParams,
 			SubsonicService service) {
+		this(new SearchPage(artists, albums, songs), searchParams, null,
+				service);
+	}
+
+	/**
+	 * @param firstPage
+	 *            The page which was fetched with the searchParams.
+	 * @param paging
+	 *            The paging of the further pages, <code>null</code> to keep
+	 *            the counts of the searchParams.
+	 */
+	public SearchResultImpl(SearchPage firstPage, SearchParams searchParams,
+			SearchPaging paging, SubsonicService service) {
 		super(service);
-		StateChecker.check(songs, "songs");
-		StateChecker.check(albums, "albums");
-		StateChecker.check(artists, "artists");
+		StateChecker.check(firstPage, "firstPage");
 		StateChecker.check(searchParams, "searchParams");
-		this.songs = songs;
-		this.albums = albums;
-		this.artists = artists;
+		this.songs = firstPage.getSongs();
+		this.albums = firstPage.getAlbums();
+		this.artists = firstPage.getArtists();
 		this.initialSearchParams = searchParams;
+		this.paging = paging;
+		firstPageNanos = firstPage.getFetchNanos();
 	}
 
 	@Override
 	public Iterator<Song> getSongs() {
 		ResultDeliverer<Song> results = new ResultDeliverer<Song>(songs,
-				SearchType.SONGS);
+				SearchType.SONGS, initialSearchParams.getSongCount(),
+				initialSearchParams.getSongOffset());
 		return results;
 	}
 
 	@Override
 	public Iterator<Directory> getAlbums() {
 		ResultDeliverer<Directory> results = new ResultDeliverer<Directory>(
-				albums, SearchType.ALBUMS);
+				albums, SearchType.ALBUMS, initialSearchParams.getAlbumCount(),
+				initialSearchParams.getAlbumOffset());
 		return results;
 	}
 
 	@Override
 	public Iterator<Artist> getArtists() {
 		ResultDeliverer<Artist> results = new ResultDeliverer<Artist>(artists,
-				SearchType.ARTISTS);
+				SearchType.ARTISTS, initialSearchParams.getArtistCount(),
+				initialSearchParams.getArtistOffset());
 		return results;
 	}
 
+	/**
+	 * Pages through the results of one type. Every page only requests this
+	 * type, the next page is loaded in the background once half of the
+	 * current one was consumed. Its size is determined by the
+	 * {@link SearchPaging} from the size and the latency of the current page.
+	 * A page smaller than the requested count is the last one.
+	 * 
+	 * This class is not thread-safe.
+	 */
 	private final class ResultDeliverer<T> implements Iterator<T> {
-		private List<T> currentResult = null;
-		private volatile int currentIndex = 0;
 		private final SearchType typeOfSearch;
-		private volatile int currentSearchOffset = 0;
-
-		private ResultDeliverer(List<T> initialResult, SearchType typeOfSearch) {
+		private List<T> currentResult;
+		private int currentIndex = 0;
+
+		/**
+		 * The requested size of {@link #currentResult}.
+		 */
+		private int pageSize;
+
+		/**
+		 * The time it took to fetch {@link #currentResult}.
+		 */
+		private long pageNanos;
+
+		/**
+		 * The requested size of {@link #nextResult}.
+		 */
+		private int nextPageSize;
+
+		/**
+		 * Offset of the page after {@link #currentResult}.
+		 */
+		private int nextOffset;
+
+		/**
+		 * The page after {@link #currentResult}, <code>null</code> if it was
+		 * not requested yet.
+		 */
+		private Future<SearchPage> nextResult = null;
+
+		private ResultDeliverer(List<T> initialResult, SearchType typeOfSearch,
+				Integer count, Integer offset) {
 			currentResult = initialResult;
 			this.typeOfSearch = typeOfSearch;
-			currentSearchOffset = initialResult.size() + 1;
+			pageSize = count == null ? 0 : count;
+			pageNanos = firstPageNanos;
+			nextOffset = (offset == null ? 0 : offset) + initialResult.size();
 		}
 
 		@Override
 		public boolean hasNext() {
-			boolean hasNext = false;
-			if (currentIndex == currentResult.size()) {
-				// We are over the last index fetch a new result to check if
-				// there
-				// are more results to deliver.
-				SearchResult2 result = getService()
-						.search(initialSearchParams.getQuery(),
-								initialSearchParams.getArtistCount(),
-								currentSearchOffset,
-								initialSearchParams.getAlbumCount(),
-								currentSearchOffset,
-								initialSearchParams.getSongCount(),
-								currentSearchOffset);
-				currentSearchOffset += Math.max(Math.max(result.getAlbum()
-						.size(), result.getArtist().size()), result.getSong()
-						.size());
-
-				switch (typeOfSearch) {
-				case ALBUMS:
-					if (result.getAlbum().size() > 0) {
-						currentIndex = 0;
-						hasNext = true;
-						currentResult = (List<T>) Jaxb2ModelFactory
-								.createDirectories(result.getAlbum(),
-										getService());
-					}
-					break;
-
-				case ARTISTS:
-					if (result.getArtist().size() > 0) {
-						currentIndex = 0;
-						hasNext = true;
-						currentResult = (List<T>) Jaxb2ModelFactory
-								.createArtistList(result.getArtist(),
-										getService());
-					}
-					break;
-
-				case SONGS:
-					if (result.getSong().size() > 0) {
-						currentIndex = 0;
-						hasNext = true;
-						currentResult = (List<T>) Jaxb2ModelFactory
-								.createSongs(result.getSong(), getService());
-					}
-					break;
-				default:
-					throw new IllegalStateException(
-							"Encountered invalid enum: " + typeOfSearch);
+			while (currentIndex == currentResult.size()) {
+				if (isLastPage()) {
+					return false;
 				}
-			} else {
-				hasNext = currentIndex <= (currentResult.size() - 1);
+				prefetch();
+				SearchPage page = await(nextResult);
+				currentResult = select(page);
+				currentIndex = 0;
+				nextResult = null;
+				pageSize = nextPageSize;
+				pageNanos = page.getFetchNanos();
+				nextOffset += currentResult.size();
 			}
-			return hasNext;
+			return true;
 		}
 
 		@Override
 		public T next() {
 			if (!hasNext()) {
 				throw new NoSuchElementException();
-			} else {
-				currentIndex++;
-				return currentResult.get(currentIndex - 1);
 			}
+			currentIndex++;
+			if (currentIndex >= currentResult.size() / 2 && !isLastPage()) {
+				prefetch();
+			}
+			return currentResult.get(currentIndex - 1);
 		}
 
 		@Override
 		public void remove() {
 			throw new UnsupportedOperationException("remove not supported");
 		}
+
+		private boolean isLastPage() {
+			return currentResult.size() < pageSize || pageSize == 0;
+		}
+
+		/**
+		 * Requests the next page unless it was already requested.
+		 */
+		private void prefetch() {
+			if (nextResult != null) {
+				return;
+			}
+			nextPageSize = paging == null ? pageSize : paging.getNextPageSize(
+					pageSize, pageNanos);
+			String query = initialSearchParams.getQuery();
+			switch (typeOfSearch) {
+			case ARTISTS:
+				nextResult = getService().prefetchSearchPage(query,
+						nextPageSize, nextOffset, 0, 0, 0, 0);
+				break;
+			case ALBUMS:
+				nextResult = getService().prefetchSearchPage(query, 0, 0,
+						nextPageSize, nextOffset, 0, 0);
+				break;
+			case SONGS:
+				nextResult = getService().prefetchSearchPage(query, 0, 0, 0,
+						0, nextPageSize, nextOffset);
+				break;
+			default:
+				throw new IllegalStateException("Encountered invalid enum: "
+						+ typeOfSearch);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<T> select(SearchPage page) {
+			switch (typeOfSearch) {
+			case ARTISTS:
+				return (List<T>) page.getArtists();
+			case ALBUMS:
+				return (List<T>) page.getAlbums();
+			case SONGS:
+				return (List<T>) page.getSongs();
+			default:
+				throw new IllegalStateException("Encountered invalid enum: "
+						+ typeOfSearch);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a page which is loaded in the background.
+	 */
+	private static SearchPage await(Future<SearchPage> page)
+			throws SubsonicException {
+		try {
+			return page.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SubsonicException) {
+				throw (SubsonicException) e.getCause();
+			}
+			throw new SubsonicException(ErrorType.GENERIC, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SubsonicException(
+					"Interrupted while waiting for the next search page.",
+					ErrorType.GENERIC, e);
+		}
 	}
 
 	public final static class SearchParams {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.tools;
+
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+
+/**
+ * Receives the changes a {@link CatalogSync} found since the previous sync.
+ * The methods are called on the thread which runs the sync.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface CatalogListener {
+
+	/**
+	 * Called for an artist which was not known before. On the first sync of a
+	 * music folder every artist is reported as added.
+	 * 
+	 * @param artist
+	 *            The new artist.
+	 * @param directory
+	 *            The freshly fetched directory of the artist.
+	 */
+	public void artistAdded(Artist artist, Directory directory);
+
+	/**
+	 * Called for a known artist whose entry in the index changed.
+	 * 
+	 * @param artist
+	 *            The changed artist.
+	 * @param directory
+	 *            The freshly fetched directory of the artist.
+	 */
+	public void artistChanged(Artist artist, Directory directory);
+
+	/**
+	 * Called for an artist which is no longer in the index.
+	 * 
+	 * @param artistId
+	 *            The id of the removed artist.
+	 * @param artistName
+	 *            The name the artist had.
+	 */
+	public void artistRemoved(String artistId, String artistName);
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.tools;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.lipsch.subsonic4j.model.MusicFolder;
+
+/**
+ * What a {@link CatalogSync} knows about the catalog: per music folder the
+ * last modification time reported by the server and the artists of the
+ * folder. The state is serializable so it can be stored between runs, e.g.
+ * of a nightly job.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class CatalogState implements Serializable {
+
+	private static final long serialVersionUID = 4611937165204723189L;
+
+	/**
+	 * Snapshot of a music folder.
+	 */
+	static final class FolderState implements Serializable {
+
+		private static final long serialVersionUID = -3528711842953310561L;
+
+		private final long lastModified;
+
+		/**
+		 * Artist names by artist id.
+		 */
+		private final Map<String, String> artists;
+
+		FolderState(long lastModified, Map<String, String> artists) {
+			this.lastModified = lastModified;
+			this.artists = Collections
+					.unmodifiableMap(new HashMap<String, String>(artists));
+		}
+
+		long getLastModified() {
+			return lastModified;
+		}
+
+		Map<String, String> getArtists() {
+			return artists;
+		}
+	}
+
+	/**
+	 * Folder snapshots by music folder id.
+	 */
+	private final Map<Integer, FolderState> folders = new HashMap<Integer, FolderState>();
+
+	/**
+	 * Returns the last modification time of the given folder as reported by
+	 * the server during the last sync.
+	 * 
+	 * @param musicFolder
+	 *            The music folder. Must not be <code>null</code>.
+	 * @return The time in milliseconds or <code>null</code> if the folder has
+	 *         not been synced yet.
+	 */
+	public synchronized Long getLastModified(MusicFolder musicFolder) {
+		StateChecker.check(musicFolder, "musicFolder");
+		FolderState folderState = folders.get(musicFolder.getId());
+		return folderState == null ? null : folderState.getLastModified();
+	}
+
+	/**
+	 * Returns the number of artists the given folder had during the last
+	 * sync.
+	 * 
+	 * @param musicFolder
+	 *            The music folder. Must not be <code>null</code>.
+	 * @return The number of artists, 0 if the folder has not been synced yet.
+	 */
+	public synchronized int getArtistCount(MusicFolder musicFolder) {
+		StateChecker.check(musicFolder, "musicFolder");
+		FolderState folderState = folders.get(musicFolder.getId());
+		return folderState == null ? 0 : folderState.getArtists().size();
+	}
+
+	/**
+	 * Forgets everything about the given folder. The next sync reports all
+	 * of its artists as added.
+	 * 
+	 * @param musicFolder
+	 *            The music folder. Must not be <code>null</code>.
+	 */
+	public synchronized void reset(MusicFolder musicFolder) {
+		StateChecker.check(musicFolder, "musicFolder");
+		folders.remove(musicFolder.getId());
+	}
+
+	synchronized FolderState getFolderState(int musicFolderId) {
+		return folders.get(musicFolderId);
+	}
+
+	synchronized void setFolderState(int musicFolderId,
+			FolderState folderState) {
+		folders.put(musicFolderId, folderState);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.tools;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.tools.CatalogState.FolderState;
+
+/**
+ * Keeps a {@link CatalogState} up to date with as few requests as possible.
+ * A sync asks the server for the indexes of a music folder only if they
+ * changed since the last sync (getIndexes with ifModifiedSince). If they did,
+ * the artists are compared with the previous snapshot and only the
+ * directories of added or changed artists are fetched. The differences are
+ * reported to a {@link CatalogListener}.
+ * 
+ * The index only contains the id and name of the artists. Content changes
+ * inside the directory of an artist whose id and name stayed the same are
+ * therefore not detected.
+ * 
+ * This class is thread-safe, concurrent syncs are serialized.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class CatalogSync {
+
+	private final SubsonicService service;
+
+	private final CatalogListener listener;
+
+	private final CatalogState state;
+
+	/**
+	 * Creates a sync which starts without any knowledge, the first sync
+	 * reports all artists as added.
+	 * 
+	 * @param service
+	 *            The service. Must not be <code>null</code>.
+	 * @param listener
+	 *            Receives the changes. Must not be <code>null</code>.
+	 */
+	public CatalogSync(SubsonicService service, CatalogListener listener) {
+		this(service, listener, new CatalogState());
+	}
+
+	/**
+	 * Creates a sync which continues from a stored state.
+	 * 
+	 * @param service
+	 *            The service. Must not be <code>null</code>.
+	 * @param listener
+	 *            Receives the changes. Must not be <code>null</code>.
+	 * @param state
+	 *            The state of a previous sync. Must not be <code>null</code>.
+	 */
+	public CatalogSync(SubsonicService service, CatalogListener listener,
+			CatalogState state) {
+		StateChecker.check(service, "service");
+		StateChecker.check(listener, "listener");
+		StateChecker.check(state, "state");
+		this.service = service;
+		this.listener = listener;
+		this.state = state;
+	}
+
+	/**
+	 * Syncs all music folders of the server.
+	 * 
+	 * @return True if any folder changed since the last sync.
+	 * @throws SubsonicException
+	 *             In case of a problem. Folders synced before the problem
+	 *             keep their new state.
+	 */
+	public boolean sync() throws SubsonicException {
+		boolean changed = false;
+		for (MusicFolder musicFolder : service.getMusicFolders()) {
+			changed |= sync(musicFolder);
+		}
+		return changed;
+	}
+
+	/**
+	 * Syncs the given music folder.
+	 * 
+	 * @param musicFolder
+	 *            The folder. Must not be <code>null</code>.
+	 * @return True if the folder changed since the last sync.
+	 * @throws SubsonicException
+	 *             In case of a problem. The state of the folder is only
+	 *             updated if the sync succeeded.
+	 */
+	public synchronized boolean sync(MusicFolder musicFolder)
+			throws SubsonicException {
+		StateChecker.check(musicFolder, "musicFolder");
+		FolderState previous = state.getFolderState(musicFolder.getId());
+
+		// The service requires ifModifiedSince together with a music folder,
+		// the epoch requests the whole index on the first sync
+		Calendar ifModifiedSince = Calendar.getInstance();
+		ifModifiedSince.setTimeInMillis(previous == null ? 0 : previous
+				.getLastModified());
+
+		ArtistCollector collector = new ArtistCollector();
+		service.getIndexes(musicFolder, ifModifiedSince, collector);
+
+		if (previous != null && collector.artists.isEmpty()
+				&& collector.lastModified <= previous.getLastModified()) {
+			// The server only sends artists if something changed
+			return false;
+		}
+
+		Map<String, String> previousArtists = previous == null ? new HashMap<String, String>()
+				: previous.getArtists();
+		Map<String, String> currentArtists = new HashMap<String, String>();
+		for (Artist artist : collector.artists.values()) {
+			currentArtists.put(artist.getId(), artist.getName());
+		}
+
+		for (Map.Entry<String, String> previousArtist : previousArtists
+				.entrySet()) {
+			if (!currentArtists.containsKey(previousArtist.getKey())) {
+				listener.artistRemoved(previousArtist.getKey(),
+						previousArtist.getValue());
+			}
+		}
+		for (Artist artist : collector.artists.values()) {
+			if (!previousArtists.containsKey(artist.getId())) {
+				listener.artistAdded(artist, service.getMusicDirectory(artist));
+			} else if (!equal(previousArtists.get(artist.getId()),
+					artist.getName())) {
+				listener.artistChanged(artist,
+						service.getMusicDirectory(artist));
+			}
+		}
+
+		state.setFolderState(musicFolder.getId(), new FolderState(
+				collector.lastModified, currentArtists));
+		return true;
+	}
+
+	/**
+	 * @return The state, which may be stored and passed to a later sync.
+	 */
+	public CatalogState getState() {
+		return state;
+	}
+
+	private static boolean equal(String first, String second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+	/**
+	 * Collects the artists of the indexes by id.
+	 */
+	private static final class ArtistCollector implements IndexVisitor {
+		private long lastModified = 0;
+		private final Map<String, Artist> artists = new LinkedHashMap<String, Artist>();
+
+		@Override
+		public void visitLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public void visitIndex(String identifier) {
+		}
+
+		@Override
+		public void visitArtist(Artist artist) {
+			artists.put(artist.getId(), artist);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.tools;
+
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Receives what a {@link LibraryCrawler} discovers. The methods are called
+ * concurrently from the crawler threads, implementations must be
+ * thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public interface CrawlListener {
+
+	/**
+	 * Called once for every directory whose content has been fetched.
+	 * 
+	 * @param directory
+	 *            The directory. Its songs and child directories are loaded.
+	 */
+	public void directoryFound(Directory directory);
+
+	/**
+	 * Called for every song of a fetched directory.
+	 * 
+	 * @param song
+	 *            The song.
+	 * @param directory
+	 *            The directory which contains the song.
+	 */
+	public void songFound(Song song, Directory directory);
+
+	/**
+	 * Called if a directory could not be fetched. The crawl goes on with the
+	 * other directories.
+	 * 
+	 * @param directoryId
+	 *            The id of the directory or <code>null</code> if the indexes
+	 *            could not be fetched.
+	 * @param exception
+	 *            The reason.
+	 */
+	public void directoryFailed(String directoryId, SubsonicException exception);
+}
@@ -29,4 +29,25 @@ public class FolderTool {
 		StateChecker.check(service, "service");
 		return service.getIndexes(null, null);
 	}
+
+	/**
+	 * Walks all directories of the library with the given number of
+	 * concurrent requests and reports them to the listener. Returns when the
+	 * whole library has been walked. Use {@link LibraryCrawler} directly to
+	 * crawl in the background, observe the progress or cancel.
+	 * 
+	 * @param service
+	 *            The service. Must not be <code>null</code>.
+	 * @param parallelism
+	 *            The maximum number of concurrent requests.
+	 * @param listener
+	 *            Receives the directories and songs. Must not be
+	 *            <code>null</code>.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted.
+	 */
+	public static void crawlLibrary(SubsonicService service, int parallelism,
+			CrawlListener listener) throws InterruptedException {
+		new LibraryCrawler(service, parallelism, listener).crawl(null);
+	}
 }
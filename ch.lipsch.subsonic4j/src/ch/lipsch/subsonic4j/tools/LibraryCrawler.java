@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subsonic4j.tools;
+
+import java.text.MessageFormat;
+import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Walks the whole library (indexes, artists and all directories below) with
+ * a bounded number of parallel requests. Every fetched directory schedules
+ * its child directories as new tasks on a shared pool, idle threads take the
+ * next waiting directory, so the walk keeps all threads busy regardless of
+ * the shape of the tree. Discovered directories and songs are reported to a
+ * {@link CrawlListener} as soon as they are fetched.
+ * 
+ * A crawler can be started once. This class is thread-safe.
+ * 
+ * @author Erwin Betschart
+ * 
+ */
+public final class LibraryCrawler {
+
+	private final SubsonicService service;
+
+	private final CrawlListener listener;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Number of scheduled tasks which are not finished yet. The crawl is
+	 * complete when it drops to zero.
+	 */
+	private final AtomicInteger pendingTasks = new AtomicInteger(0);
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private final AtomicLong artistsFound = new AtomicLong(0);
+	private final AtomicLong directoriesFound = new AtomicLong(0);
+	private final AtomicLong directoriesFetched = new AtomicLong(0);
+	private final AtomicLong directoriesFailed = new AtomicLong(0);
+	private final AtomicLong songsFound = new AtomicLong(0);
+	private final AtomicLong indexesFailed = new AtomicLong(0);
+
+	private volatile boolean started = false;
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param service
+	 *            The service to crawl. Must not be <code>null</code>.
+	 * @param parallelism
+	 *            The maximum number of concurrent requests. Must be greater
+	 *            or equal than 1.
+	 * @param listener
+	 *            Receives the discovered directories and songs. Must not be
+	 *            <code>null</code>.
+	 */
+	public LibraryCrawler(SubsonicService service, int parallelism,
+			CrawlListener listener) {
+		StateChecker.check(service, "service");
+		StateChecker.checkGreaterOrEqual(parallelism, 1, "parallelism");
+		StateChecker.check(listener, "listener");
+		this.service = service;
+		this.listener = listener;
+		executor = new ThreadPoolExecutor(parallelism, parallelism, 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(
+							1);
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "LibraryCrawler-"
+								+ threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Starts the crawl in the background.
+	 * 
+	 * @param musicFolder
+	 *            Only crawls the given music folder. May be <code>null</code>
+	 *            to crawl all folders.
+	 */
+	public synchronized void start(final MusicFolder musicFolder) {
+		StateChecker.check(!started, "The crawler has already been started");
+		started = true;
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				crawlIndexes(musicFolder);
+			}
+		});
+	}
+
+	/**
+	 * Crawls the library and returns when all directories are fetched or the
+	 * crawl was cancelled.
+	 * 
+	 * @param musicFolder
+	 *            Only crawls the given music folder. May be <code>null</code>
+	 *            to crawl all folders.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted.
+	 */
+	public void crawl(MusicFolder musicFolder) throws InterruptedException {
+		start(musicFolder);
+		awaitCompletion();
+	}
+
+	/**
+	 * Waits until the crawl is complete or cancelled.
+	 * 
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted.
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		finished.await();
+	}
+
+	/**
+	 * Waits until the crawl is complete or cancelled.
+	 * 
+	 * @return True if the crawl is done, false if the timeout elapsed.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted.
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	/**
+	 * Stops the crawl. Waiting directories are dropped, requests which are
+	 * already running are completed but their results are not reported
+	 * anymore.
+	 */
+	public void cancel() {
+		cancelled = true;
+		executor.shutdown();
+		executor.getQueue().clear();
+		finished.countDown();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isDone() {
+		return finished.getCount() == 0;
+	}
+
+	/**
+	 * @return A snapshot of the counters of this crawl.
+	 */
+	public Progress getProgress() {
+		return new Progress(artistsFound.get(), directoriesFound.get(),
+				directoriesFetched.get(), directoriesFailed.get(),
+				songsFound.get(), indexesFailed.get());
+	}
+
+	private void crawlIndexes(MusicFolder musicFolder) {
+		// The service requires ifModifiedSince together with a music folder,
+		// the epoch requests the whole index
+		Calendar ifModifiedSince = null;
+		if (musicFolder != null) {
+			ifModifiedSince = Calendar.getInstance();
+			ifModifiedSince.setTimeInMillis(0);
+		}
+
+		try {
+			IndexVisitor visitor = new IndexVisitor() {
+				@Override
+				public void visitLastModified(long lastModified) {
+				}
+
+				@Override
+				public void visitIndex(String identifier) {
+				}
+
+				@Override
+				public void visitArtist(final Artist artist) {
+					artistsFound.incrementAndGet();
+					scheduleDirectory(artist.getId(), new DirectoryLoader() {
+						@Override
+						public Directory load() {
+							return service.getMusicDirectory(artist);
+						}
+					});
+				}
+			};
+			service.getIndexes(musicFolder, ifModifiedSince, visitor);
+		} catch (SubsonicException e) {
+			indexesFailed.incrementAndGet();
+			if (!cancelled) {
+				listener.directoryFailed(null, e);
+			}
+		}
+	}
+
+	private void scheduleDirectory(final String directoryId,
+			final DirectoryLoader loader) {
+		directoriesFound.incrementAndGet();
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				crawlDirectory(directoryId, loader);
+			}
+		});
+	}
+
+	private void crawlDirectory(String directoryId, DirectoryLoader loader) {
+		Directory directory;
+		try {
+			directory = loader.load();
+			// Loads the content of stubs
+			directory.getSongs();
+		} catch (SubsonicException e) {
+			directoriesFailed.incrementAndGet();
+			if (!cancelled) {
+				listener.directoryFailed(directoryId, e);
+			}
+			return;
+		}
+		directoriesFetched.incrementAndGet();
+		if (cancelled) {
+			return;
+		}
+
+		listener.directoryFound(directory);
+		for (Song song : directory.getSongs()) {
+			songsFound.incrementAndGet();
+			listener.songFound(song, directory);
+		}
+		for (final Directory child : directory.getChildDirectories()) {
+			scheduleDirectory(child.getId(), new DirectoryLoader() {
+				@Override
+				public Directory load() {
+					return child;
+				}
+			});
+		}
+	}
+
+	private void submit(final Runnable task) {
+		if (cancelled) {
+			return;
+		}
+		pendingTasks.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!cancelled) {
+							task.run();
+						}
+					} finally {
+						taskFinished();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Only happens if the crawl has been cancelled
+			taskFinished();
+		}
+	}
+
+	private void taskFinished() {
+		if (pendingTasks.decrementAndGet() == 0) {
+			executor.shutdown();
+			finished.countDown();
+		}
+	}
+
+	private interface DirectoryLoader {
+		public Directory load() throws SubsonicException;
+	}
+
+	/**
+	 * Snapshot of the counters of a crawl.
+	 * 
+	 * @author Erwin Betschart
+	 * 
+	 */
+	public static final class Progress {
+
+		private final long artists;
+		private final long directoriesFound;
+		private final long directoriesFetched;
+		private final long directoriesFailed;
+		private final long songs;
+		private final long indexesFailed;
+
+		private Progress(long artists, long directoriesFound,
+				long directoriesFetched, long directoriesFailed, long songs,
+				long indexesFailed) {
+			this.artists = artists;
+			this.directoriesFound = directoriesFound;
+			this.directoriesFetched = directoriesFetched;
+			this.directoriesFailed = directoriesFailed;
+			this.songs = songs;
+			this.indexesFailed = indexesFailed;
+		}
+
+		public long getArtists() {
+			return artists;
+		}
+
+		/**
+		 * @return The number of directories which have been discovered so
+		 *         far, fetched or not.
+		 */
+		public long getDirectoriesFound() {
+			return directoriesFound;
+		}
+
+		public long getDirectoriesFetched() {
+			return directoriesFetched;
+		}
+
+		public long getDirectoriesFailed() {
+			return directoriesFailed;
+		}
+
+		public long getSongs() {
+			return songs;
+		}
+
+		/**
+		 * @return The number of failed index requests. Such a failure is not
+		 *         counted as failed directory since no directory was
+		 *         discovered.
+		 */
+		public long getIndexesFailed() {
+			return indexesFailed;
+		}
+
+		/**
+		 * @return The number of discovered directories which are not
+		 *         processed yet.
+		 */
+		public long getDirectoriesPending() {
+			return directoriesFound - directoriesFetched - directoriesFailed;
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format(
+					"artists={0}, directories={1}/{2}, failed={3}, songs={4}, "
+							+ "failed indexes={5}", artists,
+					directoriesFetched, directoriesFound, directoriesFailed,
+					songs, indexesFailed);
+		}
+	}
+}
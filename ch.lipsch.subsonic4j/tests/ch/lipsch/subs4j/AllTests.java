@@ -24,13 +24,45 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import ch.lipsch.subs4j.benchmark.ClientBenchmarks;
+import ch.lipsch.subs4j.internal.AsyncSubsonicServiceImplTest;
+import ch.lipsch.subs4j.internal.BoundedExecutorTest;
+import ch.lipsch.subs4j.internal.CoverArtCacheTest;
+import ch.lipsch.subs4j.internal.CatalogSyncTest;
+import ch.lipsch.subs4j.internal.CoalescingTest;
+import ch.lipsch.subs4j.internal.DirectoryImplTest;
+import ch.lipsch.subs4j.internal.ExecutionModeLoadTest;
+import ch.lipsch.subs4j.internal.LibraryCrawlerTest;
 import ch.lipsch.subs4j.internal.PlaylistTest;
+import ch.lipsch.subs4j.internal.RequestListenerTest;
+import ch.lipsch.subs4j.internal.RequestMetricsTest;
+import ch.lipsch.subs4j.internal.RequestUrlBuilderTest;
 import ch.lipsch.subs4j.internal.RLServiceTest;
+import ch.lipsch.subs4j.internal.SearchBatchTest;
+import ch.lipsch.subs4j.internal.SearchPagingTest;
+import ch.lipsch.subs4j.internal.SearchSessionTest;
+import ch.lipsch.subs4j.internal.ResponseCacheTest;
+import ch.lipsch.subs4j.internal.ResponseStoreTest;
+import ch.lipsch.subs4j.internal.StaxResponseDecoderTest;
 import ch.lipsch.subs4j.internal.Subsonic4PMSLikeTest;
 import ch.lipsch.subs4j.internal.SubsonicServiceImplTests;
+import ch.lipsch.subs4j.internal.UnmarshallerPoolTest;
+import ch.lipsch.subs4j.stub.FixtureGeneratorTest;
+import ch.lipsch.subs4j.stub.StubSubsonicServerTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({ SubsonicServiceImplTests.class, RLServiceTest.class,
-		Subsonic4PMSLikeTest.class, PlaylistTest.class })
+		Subsonic4PMSLikeTest.class, PlaylistTest.class,
+		UnmarshallerPoolTest.class, StaxResponseDecoderTest.class,
+		AsyncSubsonicServiceImplTest.class, ExecutionModeLoadTest.class,
+		BoundedExecutorTest.class, DirectoryImplTest.class,
+		LibraryCrawlerTest.class, CatalogSyncTest.class,
+		ResponseCacheTest.class, ResponseStoreTest.class,
+		CoverArtCacheTest.class, CoalescingTest.class,
+		RequestUrlBuilderTest.class, ClientBenchmarks.class,
+		StubSubsonicServerTest.class, FixtureGeneratorTest.class,
+		RequestMetricsTest.class, RequestListenerTest.class,
+		SearchPagingTest.class, SearchSessionTest.class,
+		SearchBatchTest.class })
 public class AllTests extends TestSuite {
 }
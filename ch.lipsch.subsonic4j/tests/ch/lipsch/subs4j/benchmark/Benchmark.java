@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.benchmark;
+
+/**
+ * One measured operation of a benchmark suite, run by a
+ * {@link BenchmarkRunner}.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	/**
+	 * @param name
+	 *            The name under which the results are reported. Must stay
+	 *            the same across releases to keep results comparable.
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Prepares the benchmark once before it is measured.
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Runs the measured operation once.
+	 * 
+	 * @return The result of the operation, which is consumed by the runner
+	 *         so the vm can not optimize the operation away.
+	 */
+	public abstract Object run() throws Exception;
+}
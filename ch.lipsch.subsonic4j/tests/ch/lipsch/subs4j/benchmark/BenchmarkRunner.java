@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs {@link Benchmark}s in timed iterations and reports the time and the
+ * allocated bytes per operation. Every benchmark is warmed up first, then
+ * measured in several iterations whose spread is reported as error.
+ * 
+ * The report is tab separated with one line per benchmark so the results of
+ * different releases can be compared line by line.
+ */
+public final class BenchmarkRunner {
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationNanos;
+	private final PrintStream out;
+
+	/**
+	 * Consumes the benchmark results.
+	 */
+	private volatile int sink;
+
+	/**
+	 * @param warmupIterations
+	 *            Number of iterations run before measuring.
+	 * @param measurementIterations
+	 *            Number of measured iterations. Must be at least 1.
+	 * @param iterationMillis
+	 *            Duration of one iteration.
+	 * @param out
+	 *            Where the report is printed to.
+	 */
+	public BenchmarkRunner(int warmupIterations, int measurementIterations,
+			long iterationMillis, PrintStream out) {
+		if (measurementIterations < 1) {
+			throw new IllegalArgumentException(
+					"At least one measurement iteration is required.");
+		}
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+		this.out = out;
+	}
+
+	/**
+	 * Runs and reports all benchmarks in the given order.
+	 * 
+	 * @return The results in the same order.
+	 */
+	public List<Result> runAll(List<Benchmark> benchmarks) throws Exception {
+		out.println(MessageFormat.format(
+				"# java {0} ({1}), {2} {3}, {4} cpus",
+				System.getProperty("java.version"),
+				System.getProperty("java.vm.name"),
+				System.getProperty("os.name"), System.getProperty("os.arch"),
+				Runtime.getRuntime().availableProcessors()));
+		out.println("benchmark\tns/op\terror\tbytes/op");
+
+		List<Result> results = new ArrayList<Result>();
+		for (Benchmark benchmark : benchmarks) {
+			Result result = run(benchmark);
+			out.println(result);
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Runs one benchmark.
+	 */
+	public Result run(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		for (int i = 0; i < warmupIterations; i++) {
+			runIteration(benchmark);
+		}
+
+		double[] nanosPerOp = new double[measurementIterations];
+		long operations = 0;
+		long startBytes = getAllocatedBytes();
+		for (int i = 0; i < measurementIterations; i++) {
+			long[] iteration = runIteration(benchmark);
+			operations += iteration[0];
+			nanosPerOp[i] = (double) iteration[1] / iteration[0];
+		}
+		long bytes = getAllocatedBytes() - startBytes;
+
+		double mean = 0;
+		for (double value : nanosPerOp) {
+			mean += value;
+		}
+		mean /= nanosPerOp.length;
+		double variance = 0;
+		for (double value : nanosPerOp) {
+			variance += (value - mean) * (value - mean);
+		}
+		double error = nanosPerOp.length > 1 ? Math.sqrt(variance
+				/ (nanosPerOp.length - 1)) : 0;
+
+		return new Result(benchmark.getName(), mean, error,
+				startBytes < 0 ? -1 : bytes / operations);
+	}
+
+	/**
+	 * Runs the benchmark until the iteration time is over. The clock is
+	 * read only every few operations to keep its cost out of short
+	 * operations.
+	 * 
+	 * @return The number of operations and the nanoseconds they took.
+	 */
+	private long[] runIteration(Benchmark benchmark) throws Exception {
+		long operations = 0;
+		int batch = 1;
+		long start = System.nanoTime();
+		long duration;
+		do {
+			for (int i = 0; i < batch; i++) {
+				Object result = benchmark.run();
+				sink ^= System.identityHashCode(result);
+			}
+			operations += batch;
+			batch = Math.min(batch * 2, 1024);
+			duration = System.nanoTime() - start;
+		} while (duration < iterationNanos);
+		return new long[] { operations, duration };
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread or -1 if the vm does
+	 *         not support measuring them.
+	 */
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory
+				.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * The measurement of one benchmark.
+	 */
+	public static final class Result {
+		private final String name;
+		private final double nanosPerOp;
+		private final double error;
+		private final long bytesPerOp;
+
+		private Result(String name, double nanosPerOp, double error,
+				long bytesPerOp) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double getNanosPerOp() {
+			return nanosPerOp;
+		}
+
+		public double getError() {
+			return error;
+		}
+
+		/**
+		 * @return The allocated bytes per operation or -1 if they could not
+		 *         be measured.
+		 */
+		public long getBytesPerOp() {
+			return bytesPerOp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s\t%.1f\t%.1f\t%d", name,
+					nanosPerOp, error, bytesPerOp);
+		}
+	}
+}
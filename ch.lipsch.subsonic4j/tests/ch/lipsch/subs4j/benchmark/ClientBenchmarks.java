@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.subsonic.restapi.Child;
+import org.subsonic.restapi.Response;
+
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subs4j.stub.FixtureGenerator;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.internal.Jaxb2ModelFactory;
+import ch.lipsch.subsonic4j.internal.RequestUrlBuilder;
+import ch.lipsch.subsonic4j.internal.SearchPage;
+import ch.lipsch.subsonic4j.internal.StaxResponseDecoder;
+import ch.lipsch.subsonic4j.internal.UnmarshallerPool;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
+import ch.lipsch.subsonic4j.model.impl.SearchResultImpl;
+
+/**
+ * Benchmarks of the client hot paths: url building, xml decoding, mapping to
+ * the model, lazy directory loading and search result iteration. Runs
+ * offline against the bundled and generated fixtures, the fake service
+ * answers the requests of the model objects from memory.
+ * 
+ * The test runs every benchmark briefly to keep the suite working. Run
+ * {@link #main(String[])} for results which are comparable across releases.
+ */
+public class ClientBenchmarks extends TestCase {
+
+	private static final int SEARCH_PAGE_SIZE = 20;
+	private static final int SEARCH_SONGS = 200;
+
+	public static void main(String[] args) throws Exception {
+		new BenchmarkRunner(5, 10, 1000, System.out).runAll(createBenchmarks());
+	}
+
+	@Test
+	public void testBenchmarks() throws Exception {
+		List<Benchmark> benchmarks = createBenchmarks();
+		List<BenchmarkRunner.Result> results = new BenchmarkRunner(1, 2, 50,
+				System.out).runAll(benchmarks);
+		assertEquals(benchmarks.size(), results.size());
+		for (BenchmarkRunner.Result result : results) {
+			assertTrue(result.getNanosPerOp() > 0);
+		}
+	}
+
+	/**
+	 * @return All benchmarks of the suite. Their names are part of the
+	 *         report and must not change.
+	 */
+	public static List<Benchmark> createBenchmarks() throws Exception {
+		final byte[] fixture = Fixtures.read(Fixtures.MUSIC_DIRECTORY);
+		final FakeService fakeService = new FakeService();
+		final InternalSubsonicService service = fakeService.getProxy();
+		final RequestUrlBuilder urls = new RequestUrlBuilder(new URL(
+				"http://localhost:4040/"), new CredentialsProvider() {
+			@Override
+			public String getUserName() {
+				return "user";
+			}
+
+			@Override
+			public String getPassword() {
+				return "password";
+			}
+		});
+		final StaxResponseDecoder staxDecoder = new StaxResponseDecoder();
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("url.ping") {
+			@Override
+			public Object run() {
+				return urls.create("ping.view").toString();
+			}
+		});
+		benchmarks.add(new Benchmark("url.createUser") {
+			@Override
+			public Object run() {
+				return urls.create("createUser.view")
+						.append("username", "newuser")
+						.append("password", "secret")
+						.append("adminRole", Boolean.FALSE)
+						.append("streamRole", Boolean.TRUE)
+						.append("playlistRole", Boolean.TRUE).toString();
+			}
+		});
+		benchmarks.add(new Benchmark("unmarshal.directory.jaxb") {
+			private UnmarshallerPool pool;
+
+			@Override
+			public void setUp() throws Exception {
+				pool = new UnmarshallerPool(
+						JAXBContext.newInstance("org.subsonic.restapi"), 1);
+			}
+
+			@Override
+			public Object run() throws Exception {
+				return pool.unmarshal(new ByteArrayInputStream(fixture));
+			}
+		});
+		benchmarks.add(new Benchmark("decode.directory.stax") {
+			@Override
+			public Object run() {
+				return staxDecoder.decodeDirectory(new ByteArrayInputStream(
+						fixture), service);
+			}
+		});
+		benchmarks.add(new Benchmark("decode.indexes.large") {
+			private byte[] indexes;
+
+			@Override
+			public void setUp() {
+				SyntheticLibrary.Shape shape = new SyntheticLibrary.Shape();
+				shape.setArtists(20000);
+				indexes = new FixtureGenerator(new SyntheticLibrary(shape))
+						.indexes();
+			}
+
+			@Override
+			public Object run() {
+				return staxDecoder.decodeIndexes(new ByteArrayInputStream(
+						indexes), service);
+			}
+		});
+		benchmarks.add(new Benchmark("decode.directory.wide") {
+			private byte[] directory;
+
+			@Override
+			public void setUp() {
+				SyntheticLibrary.Shape shape = new SyntheticLibrary.Shape();
+				shape.setArtists(1);
+				shape.setAlbumsPerArtist(1);
+				shape.setSongsPerFolder(2000);
+				shape.setMinTitleLength(60);
+				shape.setUnicode(true);
+				SyntheticLibrary library = new SyntheticLibrary(shape);
+				directory = new FixtureGenerator(library).directory(library
+						.getAlbumId(0));
+			}
+
+			@Override
+			public Object run() {
+				return staxDecoder.decodeDirectory(new ByteArrayInputStream(
+						directory), service);
+			}
+		});
+		benchmarks.add(new Benchmark("map.directory") {
+			private org.subsonic.restapi.Directory jaxbDirectory;
+
+			@Override
+			public void setUp() throws Exception {
+				Object unmarshalled = new UnmarshallerPool(
+						JAXBContext.newInstance("org.subsonic.restapi"), 1)
+						.unmarshal(new ByteArrayInputStream(fixture));
+				jaxbDirectory = ((Response) ((JAXBElement<?>) unmarshalled)
+						.getValue()).getDirectory();
+			}
+
+			@Override
+			public Object run() {
+				return Jaxb2ModelFactory.createDirectory(jaxbDirectory,
+						service);
+			}
+		});
+		benchmarks.add(new Benchmark("directory.lazyLoad") {
+			private List<Directory> albums;
+
+			@Override
+			public void setUp() {
+				Directory artist = staxDecoder.decodeDirectory(
+						new ByteArrayInputStream(fixture), service);
+				albums = artist.getChildDirectories();
+				fakeService.albumSongs = artist.getSongs().subList(0, 25);
+			}
+
+			@Override
+			public Object run() {
+				// Fresh stubs, as decoded from an artist directory
+				int songs = 0;
+				for (Directory album : albums) {
+					songs += new DirectoryImpl(album.getId(), album.getName(),
+							album.getCoverArtId(), service).getSongs().size();
+				}
+				return Integer.valueOf(songs);
+			}
+		});
+		benchmarks.add(new Benchmark("search.iterate") {
+			private List<Song> firstPage;
+			private SearchResultImpl.SearchParams params;
+
+			@Override
+			public void setUp() {
+				params = new SearchResultImpl.SearchParams();
+				params.setQuery("benchmark");
+				params.setArtistCount(SEARCH_PAGE_SIZE);
+				params.setAlbumCount(SEARCH_PAGE_SIZE);
+				params.setSongCount(SEARCH_PAGE_SIZE);
+				firstPage = fakeService.search(0, SEARCH_PAGE_SIZE).getSongs();
+			}
+
+			@Override
+			public Object run() {
+				Iterator<Song> songs = new SearchResultImpl(firstPage,
+						Collections.<Directory> emptyList(),
+						Collections.<Artist> emptyList(), params, service)
+						.getSongs();
+				int count = 0;
+				while (songs.hasNext()) {
+					songs.next();
+					count++;
+				}
+				return Integer.valueOf(count);
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * Answers the directory and search requests of the model objects from
+	 * memory.
+	 */
+	private static final class FakeService implements InvocationHandler {
+		private final InternalSubsonicService proxy;
+		private final List<Child> searchSongs = new ArrayList<Child>();
+		private volatile List<Song> albumSongs = Collections.emptyList();
+
+		private FakeService() {
+			proxy = (InternalSubsonicService) Proxy.newProxyInstance(
+					FakeService.class.getClassLoader(),
+					new Class<?>[] { InternalSubsonicService.class }, this);
+			for (int i = 0; i < SEARCH_SONGS; i++) {
+				Child song = new Child();
+				song.setId(Integer.toString(i));
+				song.setParent("1");
+				song.setTitle("Song " + i);
+				song.setIsDir(false);
+				searchSongs.add(song);
+			}
+		}
+
+		private InternalSubsonicService getProxy() {
+			return proxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			if (method.getName().equals("getMusicDirectory")
+					&& args[0] instanceof String) {
+				return new DirectoryImpl((String) args[0], "Album", null,
+						albumSongs, Collections.<Directory> emptyList(),
+						this.proxy);
+			} else if (method.getName().equals("prefetchSearchPage")) {
+				final int offset = (Integer) args[6];
+				final int count = (Integer) args[5];
+				FutureTask<SearchPage> page = new FutureTask<SearchPage>(
+						new Callable<SearchPage>() {
+							@Override
+							public SearchPage call() {
+								return search(offset, count);
+							}
+						});
+				page.run();
+				return page;
+			}
+			return null;
+		}
+
+		/**
+		 * Maps the requested songs like a decoder does.
+		 */
+		private SearchPage search(int offset, int count) {
+			int from = Math.min(offset, searchSongs.size());
+			int to = Math.min(offset + count, searchSongs.size());
+			return new SearchPage(Collections.<Artist> emptyList(),
+					Collections.<Directory> emptyList(),
+					Jaxb2ModelFactory.createSongs(searchSongs.subList(from, to),
+							proxy));
+		}
+	}
+}
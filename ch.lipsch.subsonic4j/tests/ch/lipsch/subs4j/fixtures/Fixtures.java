@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Access to the recorded subsonic responses bundled next to this class.
+ */
+public final class Fixtures {
+
+	/**
+	 * An artist directory with 12 albums and 300 songs.
+	 */
+	public static final String MUSIC_DIRECTORY = "getMusicDirectory.xml";
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Reads a bundled fixture completely.
+	 * 
+	 * @param name
+	 *            The file name of the fixture.
+	 * @return The content of the fixture.
+	 * @throws IOException
+	 *             If the fixture does not exist or could not be read.
+	 */
+	public static byte[] read(String name) throws IOException {
+		InputStream in = Fixtures.class.getResourceAsStream(name);
+		if (in == null) {
+			throw new IOException("Unknown fixture: " + name);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read = in.read(buffer);
+			while (read != -1) {
+				out.write(buffer, 0, read);
+				read = in.read(buffer);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.AsyncCallback;
+import ch.lipsch.subsonic4j.AsyncSubsonicService;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.SubsonicFactory;
+import ch.lipsch.subsonic4j.SubsonicService;
+
+/**
+ * Tests the dispatching of {@link AsyncSubsonicService} against a fake
+ * service which needs no server.
+ */
+public class AsyncSubsonicServiceImplTest extends TestCase {
+
+	private static final int MAX_CONCURRENT = 3;
+
+	private static final long CALL_DURATION = 50;
+
+	private final AtomicInteger running = new AtomicInteger(0);
+	private final AtomicInteger maxRunning = new AtomicInteger(0);
+
+	private AsyncSubsonicService asyncService;
+
+	@Override
+	@Before
+	public void setUp() {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setMaxConcurrentAsyncRequests(MAX_CONCURRENT);
+		asyncService = SubsonicFactory.createAsyncService(
+				createSlowService(), settings);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		asyncService.disposeService();
+	}
+
+	@Test
+	public void testBoundedConcurrency() throws Exception {
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < MAX_CONCURRENT * 5; i++) {
+			futures.add(asyncService.getLyrics("artist", "title" + i, null));
+		}
+		assertTrue(asyncService.getQueuedCount() > 0);
+
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals("title" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(MAX_CONCURRENT, maxRunning.get());
+		assertEquals(0, asyncService.getQueuedCount());
+	}
+
+	@Test
+	public void testCallback() throws Exception {
+		final CountDownLatch done = new CountDownLatch(2);
+		final AtomicReference<String> lyrics = new AtomicReference<String>();
+		final AtomicReference<SubsonicException> failure = new AtomicReference<SubsonicException>();
+
+		asyncService.getLyrics("artist", "title", new AsyncCallback<String>() {
+			@Override
+			public void onSuccess(String result) {
+				lyrics.set(result);
+				done.countDown();
+			}
+
+			@Override
+			public void onFailure(SubsonicException exception) {
+				done.countDown();
+			}
+		});
+		Future<Void> ping = asyncService.ping(new AsyncCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				done.countDown();
+			}
+
+			@Override
+			public void onFailure(SubsonicException exception) {
+				failure.set(exception);
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("title", lyrics.get());
+		assertEquals(ErrorType.DATA_NOT_FOUND, failure.get().getErrorType());
+		try {
+			ping.get();
+			fail("ping must fail");
+		} catch (ExecutionException e) {
+			assertSame(failure.get(), e.getCause());
+		}
+	}
+
+	@Test
+	public void testDispose() throws Exception {
+		asyncService.disposeService();
+		assertTrue(asyncService.isDisposed());
+		try {
+			asyncService.getLicense(null).get();
+			fail("Call on a disposed service must fail");
+		} catch (ExecutionException e) {
+			assertEquals(ErrorType.IS_DISPOSED,
+					((SubsonicException) e.getCause()).getErrorType());
+		}
+	}
+
+	/**
+	 * @return A service whose getLyrics returns the title after
+	 *         {@link #CALL_DURATION} and whose ping always fails.
+	 */
+	private SubsonicService createSlowService() {
+		return (SubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { SubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getLyrics")) {
+							int current = running.incrementAndGet();
+							synchronized (maxRunning) {
+								maxRunning.set(Math.max(maxRunning.get(),
+										current));
+							}
+							Thread.sleep(CALL_DURATION);
+							running.decrementAndGet();
+							return args[1];
+						} else if (method.getName().equals("ping")) {
+							throw new SubsonicException("Not reachable",
+									ErrorType.DATA_NOT_FOUND);
+						}
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.ExecutorStatistics;
+import ch.lipsch.subsonic4j.ServiceSettings.RejectionPolicy;
+import ch.lipsch.subsonic4j.internal.BoundedExecutor;
+import ch.lipsch.subsonic4j.internal.BoundedExecutor.DiscardableTask;
+
+/**
+ * Tests the limits, rejection policies and statistics of the
+ * {@link BoundedExecutor} which delivers streams.
+ */
+public class BoundedExecutorTest extends TestCase {
+
+	private ExecutorService threadPool;
+
+	/**
+	 * Blocks the running tasks until it is released.
+	 */
+	private CountDownLatch release;
+
+	private AtomicInteger discarded;
+
+	@Override
+	@Before
+	public void setUp() {
+		threadPool = Executors.newCachedThreadPool();
+		release = new CountDownLatch(1);
+		discarded = new AtomicInteger(0);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		release.countDown();
+		threadPool.shutdown();
+	}
+
+	@Test
+	public void testLimitAndStatistics() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(threadPool, 2, 10,
+				RejectionPolicy.ABORT);
+		for (int i = 0; i < 5; i++) {
+			executor.execute(new BlockingTask());
+		}
+		waitForActive(executor, 2);
+
+		ExecutorStatistics statistics = executor.getStatistics();
+		assertEquals(2, statistics.getActive());
+		assertEquals(3, statistics.getQueued());
+
+		release.countDown();
+		waitForCompleted(executor, 5);
+		assertEquals(0, executor.getStatistics().getActive());
+		assertEquals(0, executor.getStatistics().getQueued());
+	}
+
+	@Test
+	public void testAbort() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(threadPool, 1, 1,
+				RejectionPolicy.ABORT);
+		executor.execute(new BlockingTask());
+		waitForActive(executor, 1);
+		executor.execute(new BlockingTask());
+		try {
+			executor.execute(new BlockingTask());
+			fail("The full queue must reject the task");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+		assertEquals(1, executor.getStatistics().getRejected());
+	}
+
+	@Test
+	public void testCallerRuns() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(threadPool, 1, 1,
+				RejectionPolicy.CALLER_RUNS);
+		executor.execute(new BlockingTask());
+		waitForActive(executor, 1);
+		executor.execute(new BlockingTask());
+
+		final Thread caller = Thread.currentThread();
+		final boolean[] ranOnCaller = new boolean[1];
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				ranOnCaller[0] = Thread.currentThread() == caller;
+			}
+		});
+		assertTrue(ranOnCaller[0]);
+		assertEquals(0, executor.getStatistics().getRejected());
+	}
+
+	@Test
+	public void testDiscardOldest() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(threadPool, 1, 2,
+				RejectionPolicy.DISCARD_OLDEST);
+		executor.execute(new BlockingTask());
+		waitForActive(executor, 1);
+		for (int i = 0; i < 5; i++) {
+			executor.execute(new BlockingTask());
+		}
+		assertEquals(3, discarded.get());
+		assertEquals(3, executor.getStatistics().getRejected());
+		assertEquals(2, executor.getStatistics().getQueued());
+
+		executor.discardQueue();
+		assertEquals(5, discarded.get());
+	}
+
+	@Test
+	public void testManyStreams() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(threadPool, 4, 1000,
+				RejectionPolicy.ABORT);
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < 500; i++) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					int current = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(current, maxRunning.get()));
+					}
+					running.decrementAndGet();
+				}
+			});
+		}
+		for (Runnable task : tasks) {
+			executor.execute(task);
+		}
+		waitForCompleted(executor, tasks.size());
+		assertTrue(maxRunning.get() <= 4);
+	}
+
+	private static void waitForActive(BoundedExecutor executor, int active)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executor.getStatistics().getActive() < active
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(active, executor.getStatistics().getActive());
+	}
+
+	private static void waitForCompleted(BoundedExecutor executor,
+			long completed) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executor.getStatistics().getCompleted() < completed
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(completed, executor.getStatistics().getCompleted());
+	}
+
+	private class BlockingTask implements DiscardableTask {
+
+		@Override
+		public void run() {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void discard() {
+			discarded.incrementAndGet();
+		}
+	}
+}
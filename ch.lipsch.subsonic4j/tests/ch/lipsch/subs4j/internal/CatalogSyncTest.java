@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.ModelFactory;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
+import ch.lipsch.subsonic4j.tools.CatalogListener;
+import ch.lipsch.subsonic4j.tools.CatalogState;
+import ch.lipsch.subsonic4j.tools.CatalogSync;
+
+/**
+ * Syncs against a fake service whose index honors ifModifiedSince like the
+ * Subsonic server: nothing but the lastModified attribute is sent if the
+ * index did not change.
+ */
+public class CatalogSyncTest extends TestCase {
+
+	/**
+	 * Artist names by id.
+	 */
+	private final Map<String, String> artists = new LinkedHashMap<String, String>();
+	private long lastModified = 1000;
+
+	private final List<String> fetchedDirectories = new ArrayList<String>();
+	private final List<String> events = new ArrayList<String>();
+
+	private InternalSubsonicService service;
+	private MusicFolder musicFolder;
+	private CatalogListener listener;
+
+	@Override
+	@Before
+	public void setUp() {
+		for (int i = 0; i < 5; i++) {
+			artists.put("ar" + i, "Artist " + i);
+		}
+		service = (InternalSubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { InternalSubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						InternalSubsonicService service = (InternalSubsonicService) proxy;
+						if (method.getName().equals("getIndexes")
+								&& args.length == 3) {
+							// Enforced by the service like the server does
+							assertEquals(args[0] == null, args[1] == null);
+							visitIndexes((Calendar) args[1],
+									(IndexVisitor) args[2], service);
+							return null;
+						} else if (method.getName()
+								.equals("getMusicDirectory")) {
+							String id = ((Artist) args[0]).getId();
+							fetchedDirectories.add(id);
+							return new DirectoryImpl(id, artists.get(id),
+									null, Collections.<Song> emptyList(),
+									Collections.<Directory> emptyList(),
+									service);
+						} else if (method.getName().equals("getMusicFolders")) {
+							return Collections.singletonList(musicFolder);
+						}
+						return null;
+					}
+				});
+		musicFolder = ModelFactory.createMusicFolder(0, "Music", service);
+		listener = new CatalogListener() {
+			@Override
+			public void artistRemoved(String artistId, String artistName) {
+				events.add("removed " + artistId);
+			}
+
+			@Override
+			public void artistChanged(Artist artist, Directory directory) {
+				events.add("changed " + artist.getId());
+			}
+
+			@Override
+			public void artistAdded(Artist artist, Directory directory) {
+				events.add("added " + artist.getId());
+			}
+		};
+	}
+
+	private void visitIndexes(Calendar ifModifiedSince, IndexVisitor visitor,
+			InternalSubsonicService service) {
+		visitor.visitLastModified(lastModified);
+		if (ifModifiedSince != null
+				&& ifModifiedSince.getTimeInMillis() >= lastModified) {
+			return;
+		}
+		visitor.visitIndex("A");
+		for (Map.Entry<String, String> artist : artists.entrySet()) {
+			visitor.visitArtist(ModelFactory.createArtist(artist.getValue(),
+					artist.getKey(), service));
+		}
+	}
+
+	@Test
+	public void testFirstSync() throws Exception {
+		CatalogSync sync = new CatalogSync(service, listener);
+		assertTrue(sync.sync());
+		assertEquals(5, events.size());
+		assertEquals("added ar0", events.get(0));
+		assertEquals(5, fetchedDirectories.size());
+		assertEquals(Long.valueOf(1000),
+				sync.getState().getLastModified(musicFolder));
+		assertEquals(5, sync.getState().getArtistCount(musicFolder));
+	}
+
+	@Test
+	public void testUnchanged() throws Exception {
+		CatalogSync sync = new CatalogSync(service, listener);
+		sync.sync(musicFolder);
+		events.clear();
+		fetchedDirectories.clear();
+
+		assertFalse(sync.sync(musicFolder));
+		assertTrue(events.isEmpty());
+		assertTrue(fetchedDirectories.isEmpty());
+	}
+
+	@Test
+	public void testDiff() throws Exception {
+		CatalogSync sync = new CatalogSync(service, listener);
+		sync.sync(musicFolder);
+		events.clear();
+		fetchedDirectories.clear();
+
+		artists.remove("ar1");
+		artists.put("ar2", "Artist Two");
+		artists.put("ar5", "Artist 5");
+		lastModified = 2000;
+
+		assertTrue(sync.sync(musicFolder));
+		assertEquals(3, events.size());
+		assertEquals("removed ar1", events.get(0));
+		assertEquals("changed ar2", events.get(1));
+		assertEquals("added ar5", events.get(2));
+		assertEquals(2, fetchedDirectories.size());
+		assertEquals(Long.valueOf(2000),
+				sync.getState().getLastModified(musicFolder));
+	}
+
+	@Test
+	public void testStoredState() throws Exception {
+		CatalogSync sync = new CatalogSync(service, listener);
+		sync.sync(musicFolder);
+		events.clear();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(sync.getState());
+		out.close();
+		CatalogState state = (CatalogState) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		artists.remove("ar4");
+		lastModified = 3000;
+
+		CatalogSync restored = new CatalogSync(service, listener, state);
+		assertTrue(restored.sync(musicFolder));
+		assertEquals(1, events.size());
+		assertEquals("removed ar4", events.get(0));
+	}
+
+	@Test
+	public void testStubServer() throws Exception {
+		StubSubsonicServer server = new StubSubsonicServer(
+				new SyntheticLibrary(3, 1, 1));
+		server.start();
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		SubsonicServiceImpl stubService = new SubsonicServiceImpl(
+				server.getUrl(), false, new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+		try {
+			MusicFolder stubFolder = ModelFactory.createMusicFolder(
+					SyntheticLibrary.MUSIC_FOLDER_ID, "Music", stubService);
+			CatalogSync sync = new CatalogSync(stubService, listener);
+			assertTrue(sync.sync(stubFolder));
+			assertEquals(3, events.size());
+			assertEquals(3, server.getRequestCount("getMusicDirectory.view"));
+
+			events.clear();
+			assertFalse(sync.sync(stubFolder));
+			assertTrue(events.isEmpty());
+			assertEquals(3, server.getRequestCount("getMusicDirectory.view"));
+			assertEquals(2, server.getRequestCount("getIndexes.view"));
+		} finally {
+			stubService.disposeService();
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subsonic4j.CoalescingStatistics;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.Directory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests that identical concurrent requests of a {@link SubsonicServiceImpl}
+ * are sent only once to a slow local http server.
+ */
+public class CoalescingTest extends TestCase {
+
+	private static final int THREADS = 4;
+
+	/**
+	 * Time the server needs to answer. Long enough for all threads to issue
+	 * their request while the first one is running.
+	 */
+	private static final long LATENCY_MILLIS = 500;
+
+	private final AtomicInteger requests = new AtomicInteger(0);
+	private volatile byte[] body;
+	private HttpServer server;
+	private URL url;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		body = Fixtures.read(Fixtures.MUSIC_DIRECTORY);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				try {
+					Thread.sleep(LATENCY_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.getResponseHeaders().add("Content-Type", "text/xml");
+				byte[] content = body;
+				exchange.sendResponseHeaders(200, content.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(content);
+				out.close();
+			}
+		});
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort()
+				+ "/");
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		SubsonicServiceImpl service = createService(true);
+		Set<Directory> results = getConcurrently(service);
+
+		CoalescingStatistics statistics = service.getCoalescingStatistics();
+		System.out.println(statistics);
+		assertEquals(1, requests.get());
+		assertEquals(1, results.size());
+		assertEquals(THREADS, statistics.getRequests());
+		assertEquals(THREADS - 1, statistics.getCoalesced());
+		assertEquals(0, statistics.getInFlight());
+
+		// Sequential requests are not coalesced
+		service.getMusicDirectory("1");
+		assertEquals(2, requests.get());
+		service.disposeService();
+	}
+
+	@Test
+	public void testSharedFailure() throws Exception {
+		body = "<broken".getBytes("UTF-8");
+		SubsonicServiceImpl service = createService(true);
+		Set<Directory> results = getConcurrently(service);
+
+		assertEquals(1, requests.get());
+		assertTrue(results.isEmpty());
+		service.disposeService();
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		SubsonicServiceImpl service = createService(false);
+		getConcurrently(service);
+
+		assertEquals(THREADS, requests.get());
+		assertEquals(0, service.getCoalescingStatistics().getRequests());
+		service.disposeService();
+	}
+
+	private SubsonicServiceImpl createService(boolean coalesceRequests)
+			throws Exception {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setCoalesceRequests(coalesceRequests);
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setMaxConnectionsPerHost(THREADS);
+		return new SubsonicServiceImpl(url, false, new Credentials(), settings);
+	}
+
+	/**
+	 * Gets the same directory on {@link #THREADS} threads at once.
+	 * 
+	 * @return The distinct directory instances received.
+	 */
+	private Set<Directory> getConcurrently(final SubsonicServiceImpl service)
+			throws InterruptedException {
+		final Set<Directory> results = Collections
+				.synchronizedSet(Collections
+						.newSetFromMap(new IdentityHashMap<Directory, Boolean>()));
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for (int i = 0; i < THREADS; i++) {
+			new Thread("Requester-" + i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						results.add(service.getMusicDirectory("1"));
+					} catch (Exception e) {
+						System.out.println(getName() + ": " + e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		done.await();
+		return results;
+	}
+
+	private static final class Credentials implements CredentialsProvider {
+		@Override
+		public String getUserName() {
+			return "user";
+		}
+
+		@Override
+		public String getPassword() {
+			return "password";
+		}
+	}
+}
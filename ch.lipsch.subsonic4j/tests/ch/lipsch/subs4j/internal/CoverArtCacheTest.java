@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.CoverArtCache;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.StreamListener;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link CoverArtCache} in a temporary directory, alone and behind
+ * a {@link SubsonicServiceImpl} which talks to a local http server.
+ */
+public class CoverArtCacheTest extends TestCase {
+
+	private File directory;
+	private byte[] cover;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("covers", "");
+		directory.delete();
+		cover = createImage(400, 300);
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static byte[] createImage(int width, int height)
+			throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, (x * 255 / width) << 16 | y);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testStoreWhileReading() throws IOException {
+		CoverArtCache cache = new CoverArtCache(directory);
+		assertNull(cache.open("1", null));
+
+		InputStream partial = cache.storeWhileReading("1", null,
+				new ByteArrayInputStream(cover));
+		partial.read(new byte[10]);
+		partial.close();
+		assertNull(cache.open("1", null));
+
+		byte[] read = readFully(cache.storeWhileReading("1", null,
+				new ByteArrayInputStream(cover)));
+		assertEquals(cover.length, read.length);
+		assertEquals(cover.length, readFully(cache.open("1", null)).length);
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testDownscale() throws IOException {
+		CoverArtCache cache = new CoverArtCache(directory);
+		cache.put("1", null, cover);
+
+		BufferedImage scaled = ImageIO.read(cache.open("1", 100));
+		assertEquals(100, scaled.getWidth());
+		assertEquals(75, scaled.getHeight());
+		assertEquals(1, cache.getScaledHitCount());
+
+		// Now cached in that size
+		cache.open("1", 100).close();
+		assertEquals(1, cache.getScaledHitCount());
+		assertEquals(1, cache.getHitCount());
+
+		// Never upscaled
+		assertNull(cache.open("1", 800));
+		assertNull(cache.open("2", 100));
+	}
+
+	@Test
+	public void testContentAddressed() {
+		CoverArtCache cache = new CoverArtCache(directory);
+		cache.put("1", null, cover);
+		cache.put("2", null, cover);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(cover.length, cache.getByteCount());
+
+		cache.remove("1");
+		assertEquals(cover.length, cache.getByteCount());
+		cache.remove("2");
+		assertEquals(0, cache.getByteCount());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		CoverArtCache cache = new CoverArtCache(directory, 3000);
+		cache.put("1", null, new byte[1000]);
+		cache.put("2", null, new byte[1001]);
+		cache.open("1", null).close();
+		cache.put("3", null, new byte[1002]);
+
+		assertNotNull(cache.open("1", null));
+		assertNull(cache.open("2", null));
+		assertNotNull(cache.open("3", null));
+		assertEquals(2002, cache.getByteCount());
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		CoverArtCache cache = new CoverArtCache(directory);
+		cache.put("1", null, cover);
+		cache.put("1", 50, new byte[10]);
+
+		cache = new CoverArtCache(directory);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(cover.length + 10, cache.getByteCount());
+		assertEquals(cover.length, readFully(cache.open("1", null)).length);
+	}
+
+	private HttpServer startServer(final AtomicInteger requests)
+			throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				exchange.getResponseHeaders().add("Content-Type", "image/png");
+				exchange.sendResponseHeaders(200, cover.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(cover);
+				out.close();
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static SubsonicServiceImpl createService(HttpServer server,
+			CoverArtCache cache) throws IOException {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setCoverArtCache(cache);
+		return new SubsonicServiceImpl(new URL("http://localhost:"
+				+ server.getAddress().getPort() + "/"), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "user";
+					}
+
+					@Override
+					public String getPassword() {
+						return "password";
+					}
+				}, settings);
+	}
+
+	@Test
+	public void testService() throws Exception {
+		AtomicInteger requests = new AtomicInteger(0);
+		HttpServer server = startServer(requests);
+		try {
+			SubsonicServiceImpl service = createService(server,
+					new CoverArtCache(directory));
+
+			assertEquals(cover.length, getCoverArt(service, null).length);
+			assertEquals(cover.length, getCoverArt(service, null).length);
+			assertEquals(120, ImageIO.read(
+					new ByteArrayInputStream(getCoverArt(service, 120)))
+					.getWidth());
+			assertEquals(1, requests.get());
+			service.disposeService();
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testServiceUnclosedStream() throws Exception {
+		AtomicInteger requests = new AtomicInteger(0);
+		HttpServer server = startServer(requests);
+		try {
+			CoverArtCache cache = new CoverArtCache(directory);
+			SubsonicServiceImpl service = createService(server, cache);
+
+			// Read partially and not closed by the listener
+			readWithoutClosing(service, 10);
+			assertTrue(awaitNoTempFiles());
+			assertEquals(0, cache.getEntryCount());
+
+			// All bytes read but neither the end of the stream nor closed
+			readWithoutClosing(service, cover.length);
+			assertTrue(awaitEntryCount(cache, 1));
+			assertTrue(awaitNoTempFiles());
+			assertEquals(cover.length, readFully(cache.open("1", null)).length);
+			assertEquals(2, requests.get());
+			service.disposeService();
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static void readWithoutClosing(SubsonicServiceImpl service,
+			final int length) throws InterruptedException {
+		final CountDownLatch delivered = new CountDownLatch(1);
+		service.getCoverArt("1", null, new StreamListener() {
+			@Override
+			public void receivedStream(InputStream inputStream) {
+				try {
+					byte[] buffer = new byte[length];
+					int read = 0;
+					while (read < length) {
+						read += inputStream.read(buffer, read, length - read);
+					}
+				} catch (IOException e) {
+					// Checked by the assertions on the cache
+				}
+				delivered.countDown();
+			}
+		});
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * The stream is closed after the listener returned.
+	 */
+	private static boolean awaitEntryCount(CoverArtCache cache, int count)
+			throws InterruptedException {
+		for (int i = 0; i < 100 && cache.getEntryCount() != count; i++) {
+			Thread.sleep(50);
+		}
+		return cache.getEntryCount() == count;
+	}
+
+	private boolean awaitNoTempFiles() throws InterruptedException {
+		File images = new File(directory, "images");
+		for (int i = 0; i < 100; i++) {
+			boolean tempFiles = false;
+			for (File image : images.listFiles()) {
+				tempFiles |= image.getName().endsWith(".tmp");
+			}
+			if (!tempFiles) {
+				return true;
+			}
+			Thread.sleep(50);
+		}
+		return false;
+	}
+
+	private static byte[] getCoverArt(SubsonicServiceImpl service,
+			Integer size) throws InterruptedException {
+		final byte[][] image = new byte[1][];
+		final CountDownLatch delivered = new CountDownLatch(1);
+		service.getCoverArt("1", size, new StreamListener() {
+			@Override
+			public void receivedStream(InputStream inputStream) {
+				try {
+					image[0] = readFully(inputStream);
+				} catch (IOException e) {
+					image[0] = new byte[0];
+				}
+				delivered.countDown();
+			}
+		});
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		return image[0];
+	}
+}
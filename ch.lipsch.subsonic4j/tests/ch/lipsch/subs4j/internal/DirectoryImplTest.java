@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.internal.StaxResponseDecoder;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
+
+/**
+ * Checks that a directory fetches only its own content and that child
+ * directories stay stubs until they are accessed. Runs offline against the
+ * bundled artist directory, the fake service counts the directory requests.
+ */
+public class DirectoryImplTest extends TestCase {
+
+	private final List<String> fetchedIds = new ArrayList<String>();
+
+	private InternalSubsonicService service;
+
+	private Directory artistDirectory;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		service = (InternalSubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { InternalSubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getMusicDirectory")
+								&& args[0] instanceof String) {
+							fetchedIds.add((String) args[0]);
+							return new DirectoryImpl((String) args[0],
+									"Album", null,
+									Collections.<Song> emptyList(),
+									Collections.<Directory> emptyList(),
+									(InternalSubsonicService) proxy);
+						}
+						return null;
+					}
+				});
+		artistDirectory = new StaxResponseDecoder().decodeDirectory(
+				new ByteArrayInputStream(Fixtures
+						.read(Fixtures.MUSIC_DIRECTORY)), service);
+	}
+
+	@Test
+	public void testSongsNeedNoRequest() {
+		assertEquals(300, artistDirectory.getSongs().size());
+		assertTrue(fetchedIds.isEmpty());
+	}
+
+	@Test
+	public void testChildDirectoriesAreStubs() {
+		List<Directory> albums = artistDirectory.getChildDirectories();
+		assertEquals(12, albums.size());
+		for (Directory album : albums) {
+			assertNotNull(album.getName());
+			assertNotNull(album.getCoverArtId());
+			assertFalse(((DirectoryImpl) album).isContentLoaded());
+		}
+		assertTrue(fetchedIds.isEmpty());
+	}
+
+	@Test
+	public void testChildLoadsOnFirstAccess() {
+		Directory album = artistDirectory.getChildDirectories().get(3);
+		album.getSongs();
+		album.getChildDirectories();
+		album.getSongs();
+		assertEquals(1, fetchedIds.size());
+		assertEquals(album.getId(), fetchedIds.get(0));
+	}
+
+	@Test
+	public void testStubLoadsOnlyOnce() {
+		DirectoryImpl stub = new DirectoryImpl("42", "Stub", null, service);
+		assertFalse(stub.isContentLoaded());
+		stub.getChildDirectories();
+		stub.getSongs();
+		assertTrue(stub.isContentLoaded());
+		assertEquals(1, fetchedIds.size());
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.AsyncSubsonicService;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ExecutionMode;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicFactory;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.internal.ThreadFactories;
+
+/**
+ * Compares platform and virtual threads for many concurrent blocking calls.
+ * The calls go to a fake service which only sleeps, so the numbers show the
+ * cost of the threads and not of the network. Runs offline.
+ */
+public class ExecutionModeLoadTest extends TestCase {
+
+	private static final int CALLS = 5000;
+
+	private static final int MAX_CONCURRENT = 1000;
+
+	private static final long CALL_DURATION = 100;
+
+	@Test
+	public void testPlatformVsVirtualThreads() throws Exception {
+		System.out.println("mode\tcalls/s\tpeak threads\theap delta KB");
+		run(ExecutionMode.PLATFORM_THREADS);
+		if (ThreadFactories.isVirtualThreadSupported()) {
+			run(ExecutionMode.VIRTUAL_THREADS);
+		} else {
+			System.out.println("Virtual threads are not supported by "
+					+ System.getProperty("java.version"));
+		}
+	}
+
+	@Test
+	public void testVirtualThreadsUnsupported() {
+		if (ThreadFactories.isVirtualThreadSupported()) {
+			return;
+		}
+		ServiceSettings settings = new ServiceSettings();
+		settings.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+		try {
+			SubsonicFactory.createAsyncService(createSleepingService(),
+					settings);
+			fail("Virtual threads must be rejected on this runtime");
+		} catch (SubsonicException e) {
+			// Expected
+		}
+	}
+
+	private void run(ExecutionMode executionMode) throws Exception {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setExecutionMode(executionMode);
+		settings.setMaxConcurrentAsyncRequests(MAX_CONCURRENT);
+		AsyncSubsonicService service = SubsonicFactory.createAsyncService(
+				createSleepingService(), settings);
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		System.gc();
+		long heapBefore = usedHeap();
+		threadBean.resetPeakThreadCount();
+		long startTime = System.nanoTime();
+
+		List<Future<String>> futures = new ArrayList<Future<String>>(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			futures.add(service.getLyrics("artist", "title", null));
+		}
+		long heapDuringRun = usedHeap();
+		for (Future<String> future : futures) {
+			assertEquals("title", future.get(1, TimeUnit.MINUTES));
+		}
+
+		long duration = System.nanoTime() - startTime;
+		service.disposeService();
+
+		System.out.println(MessageFormat.format("{0}\t{1}\t{2}\t{3}",
+				executionMode, (CALLS * 1000000000L) / duration, threadBean
+						.getPeakThreadCount(),
+				(heapDuringRun - heapBefore) / 1024));
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static SubsonicService createSleepingService() {
+		return (SubsonicService) Proxy.newProxyInstance(
+				ExecutionModeLoadTest.class.getClassLoader(),
+				new Class<?>[] { SubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						Thread.sleep(CALL_DURATION);
+						return method.getName().equals("getLyrics") ? args[1]
+								: null;
+					}
+				});
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.MusicFolder;
+import ch.lipsch.subsonic4j.model.ModelFactory;
+import ch.lipsch.subsonic4j.model.Song;
+import ch.lipsch.subsonic4j.model.impl.DirectoryImpl;
+import ch.lipsch.subsonic4j.model.impl.SongImpl;
+import ch.lipsch.subsonic4j.tools.CrawlListener;
+import ch.lipsch.subsonic4j.tools.LibraryCrawler;
+
+/**
+ * Crawls a synthetic library of {@link #ARTISTS} artists with
+ * {@link #ALBUMS_PER_ARTIST} albums of {@link #SONGS_PER_ALBUM} songs each.
+ * Every directory request of the fake service takes {@link #LATENCY}
+ * milliseconds.
+ */
+public class LibraryCrawlerTest extends TestCase {
+
+	private static final int ARTISTS = 40;
+	private static final int ALBUMS_PER_ARTIST = 5;
+	private static final int SONGS_PER_ALBUM = 10;
+	private static final long LATENCY = 5;
+	private static final int FAILING_FOLDER = 99;
+
+	private final AtomicInteger running = new AtomicInteger(0);
+	private final AtomicInteger maxRunning = new AtomicInteger(0);
+
+	private InternalSubsonicService service;
+
+	@Override
+	@Before
+	public void setUp() {
+		service = (InternalSubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { InternalSubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						InternalSubsonicService service = (InternalSubsonicService) proxy;
+						if (method.getName().equals("getIndexes")
+								&& args.length == 3) {
+							// Same precondition as the real service
+							MusicFolder folder = (MusicFolder) args[0];
+							Calendar ifModifiedSince = (Calendar) args[1];
+							if ((folder == null) != (ifModifiedSince == null)) {
+								throw new SubsonicException(
+										"Both parameters musicFolder and ifModifiedSince must be null or set.",
+										70);
+							}
+							if (folder != null
+									&& folder.getId() == FAILING_FOLDER) {
+								throw new SubsonicException("Not found", 70);
+							}
+							IndexVisitor visitor = (IndexVisitor) args[2];
+							visitor.visitLastModified(1);
+							visitor.visitIndex("A");
+							for (int i = 0; i < ARTISTS; i++) {
+								visitor.visitArtist(ModelFactory.createArtist(
+										"Artist " + i, "ar" + i, service));
+							}
+							return null;
+						} else if (method.getName()
+								.equals("getMusicDirectory")) {
+							String id = args[0] instanceof Artist ? ((Artist) args[0])
+									.getId() : (String) args[0];
+							return fetchDirectory(id, service);
+						}
+						return null;
+					}
+				});
+	}
+
+	private Directory fetchDirectory(String id,
+			InternalSubsonicService service) throws InterruptedException {
+		int current = running.incrementAndGet();
+		synchronized (maxRunning) {
+			maxRunning.set(Math.max(current, maxRunning.get()));
+		}
+		try {
+			Thread.sleep(LATENCY);
+		} finally {
+			running.decrementAndGet();
+		}
+
+		if (id.equals("ar3")) {
+			throw new SubsonicException("Not found", 70);
+		}
+
+		List<Song> songs = new ArrayList<Song>();
+		List<Directory> albums = new ArrayList<Directory>();
+		if (!id.contains("-al")) {
+			for (int i = 0; i < ALBUMS_PER_ARTIST; i++) {
+				albums.add(new DirectoryImpl(id + "-al" + i, "Album " + i,
+						null, service));
+			}
+		} else {
+			for (int i = 0; i < SONGS_PER_ALBUM; i++) {
+				songs.add(new SongImpl("Song " + i, id + "-so" + i, null,
+						service));
+			}
+		}
+		return new DirectoryImpl(id, id, null, songs, albums, service);
+	}
+
+	@Test
+	public void testCrawl() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		LibraryCrawler crawler = new LibraryCrawler(service, 8, listener);
+
+		long startTime = System.currentTimeMillis();
+		crawler.crawl(null);
+		long duration = System.currentTimeMillis() - startTime;
+		System.out.println(MessageFormat.format("{0} in {1} ms",
+				crawler.getProgress(), duration));
+
+		assertCrawled(listener, crawler);
+		assertTrue(maxRunning.get() <= 8);
+		assertTrue(maxRunning.get() > 1);
+	}
+
+	@Test
+	public void testCrawlFolder() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		LibraryCrawler crawler = new LibraryCrawler(service, 8, listener);
+
+		crawler.crawl(ModelFactory.createMusicFolder(0, "Music", service));
+		System.out.println(crawler.getProgress());
+
+		assertCrawled(listener, crawler);
+		assertEquals(0, crawler.getProgress().getIndexesFailed());
+	}
+
+	@Test
+	public void testIndexesFailed() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		LibraryCrawler crawler = new LibraryCrawler(service, 8, listener);
+
+		crawler.crawl(ModelFactory.createMusicFolder(FAILING_FOLDER, "Gone",
+				service));
+		System.out.println(crawler.getProgress());
+
+		assertEquals(1, listener.failed.size());
+		assertNull(listener.failed.get(0));
+		assertEquals(1, crawler.getProgress().getIndexesFailed());
+		assertEquals(0, crawler.getProgress().getDirectoriesFailed());
+		assertEquals(0, crawler.getProgress().getDirectoriesPending());
+		assertTrue(crawler.isDone());
+	}
+
+	private void assertCrawled(RecordingListener listener,
+			LibraryCrawler crawler) {
+		int okArtists = ARTISTS - 1;
+		assertEquals(okArtists * (1 + ALBUMS_PER_ARTIST), listener.directories
+				.get());
+		assertEquals(okArtists * ALBUMS_PER_ARTIST * SONGS_PER_ALBUM,
+				listener.songs.get());
+		assertEquals(1, listener.failed.size());
+		assertEquals("ar3", listener.failed.get(0));
+		assertEquals(0, crawler.getProgress().getDirectoriesPending());
+		assertTrue(crawler.isDone());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final LibraryCrawler[] crawler = new LibraryCrawler[1];
+		crawler[0] = new LibraryCrawler(service, 2, new CrawlListener() {
+			@Override
+			public void songFound(Song song, Directory directory) {
+			}
+
+			@Override
+			public void directoryFound(Directory directory) {
+				if (crawler[0].getProgress().getDirectoriesFetched() >= 10) {
+					crawler[0].cancel();
+				}
+			}
+
+			@Override
+			public void directoryFailed(String directoryId,
+					SubsonicException exception) {
+			}
+		});
+
+		crawler[0].start(null);
+		assertTrue(crawler[0].awaitCompletion(5, TimeUnit.SECONDS));
+		assertTrue(crawler[0].isCancelled());
+		assertTrue(crawler[0].getProgress().getDirectoriesFetched() < ARTISTS
+				* (1 + ALBUMS_PER_ARTIST));
+	}
+
+	private static class RecordingListener implements CrawlListener {
+		private final AtomicInteger songs = new AtomicInteger(0);
+		private final AtomicInteger directories = new AtomicInteger(0);
+		private final List<String> failed = new ArrayList<String>();
+
+		@Override
+		public void songFound(Song song, Directory directory) {
+			songs.incrementAndGet();
+		}
+
+		@Override
+		public void directoryFound(Directory directory) {
+			directories.incrementAndGet();
+		}
+
+		@Override
+		public synchronized void directoryFailed(String directoryId,
+				SubsonicException exception) {
+			failed.add(directoryId);
+		}
+	}
+}
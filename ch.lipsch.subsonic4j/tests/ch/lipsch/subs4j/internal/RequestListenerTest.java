@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.DefaultRequestMetrics;
+import ch.lipsch.subsonic4j.RequestEvent;
+import ch.lipsch.subsonic4j.RequestListener;
+import ch.lipsch.subsonic4j.RequestMetrics.Phase;
+import ch.lipsch.subsonic4j.ResponseCache;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.StreamListener;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+
+/**
+ * Tests the events which the {@link SubsonicServiceImpl} reports to a
+ * {@link RequestListener}. Runs offline against the
+ * {@link StubSubsonicServer}.
+ */
+public class RequestListenerTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private final List<RequestEvent> events = new CopyOnWriteArrayList<RequestEvent>();
+	private final DefaultRequestMetrics metrics = new DefaultRequestMetrics();
+	private SubsonicServiceImpl service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		server = new StubSubsonicServer(new SyntheticLibrary(20, 2, 10));
+		server.start();
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		if (service != null) {
+			service.disposeService();
+		}
+		server.stop();
+	}
+
+	private void createService(ResponseCache responseCache) {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setResponseCache(responseCache);
+		settings.setRequestMetrics(metrics);
+		settings.setRequestListener(new RequestListener() {
+			@Override
+			public void requestCompleted(RequestEvent event) {
+				events.add(event);
+			}
+		});
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "secret";
+					}
+				}, settings);
+	}
+
+	@Test
+	public void testEvent() {
+		createService(null);
+		String id = server.getLibrary().getArtistId(3);
+		long start = System.currentTimeMillis();
+		service.getMusicDirectory(id);
+
+		assertEquals(1, events.size());
+		RequestEvent event = events.get(0);
+		System.out.println(event);
+		assertEquals("getMusicDirectory.view", event.getEndpoint());
+		assertTrue(event.getParameters().endsWith("&id=" + id));
+		assertFalse(event.getParameters().contains("u="));
+		assertFalse(event.getParameters().contains("p="));
+		assertEquals(Thread.currentThread().getName(), event.getThreadName());
+		assertTrue(event.getStartMillis() >= start);
+		assertEquals(200, event.getStatus());
+		assertTrue(event.getBytes() > 0);
+		assertFalse(event.isCacheHit());
+		assertFalse(event.isCoalesced());
+		assertNull(event.getErrorType());
+
+		long phases = 0;
+		for (Phase phase : Phase.values()) {
+			phases += Math.max(event.getPhaseNanos(phase), 0);
+		}
+		assertTrue(event.getPhaseNanos(Phase.TRANSFER) >= 0);
+		assertEquals(-1, event.getPhaseNanos(Phase.MAP));
+		assertTrue(event.getDurationNanos() >= phases);
+	}
+
+	@Test
+	public void testError() {
+		createService(null);
+		try {
+			service.getMusicDirectory("missing");
+			fail("An unknown directory must not be found.");
+		} catch (SubsonicException e) {
+			// Expected
+		}
+
+		RequestEvent event = events.get(0);
+		assertEquals(200, event.getStatus());
+		assertEquals(ErrorType.DATA_NOT_FOUND, event.getErrorType());
+	}
+
+	@Test
+	public void testCacheHit() {
+		createService(new ResponseCache());
+		String id = server.getLibrary().getArtistId(0);
+		service.getMusicDirectory(id);
+		service.getMusicDirectory(id);
+
+		assertEquals(2, events.size());
+		assertFalse(events.get(0).isCacheHit());
+		RequestEvent hit = events.get(1);
+		assertTrue(hit.isCacheHit());
+		assertEquals(0, hit.getStatus());
+		assertEquals(events.get(0).getBytes(), hit.getBytes());
+		assertEquals(-1, hit.getPhaseNanos(Phase.CONNECT));
+		assertEquals(-1, hit.getPhaseNanos(Phase.TRANSFER));
+		assertTrue(hit.getPhaseNanos(Phase.PARSE) >= 0);
+	}
+
+	@Test
+	public void testCoalesced() throws InterruptedException {
+		createService(null);
+		server.setLatency(500, 0);
+		final String id = server.getLibrary().getArtistId(0);
+		Thread first = new Thread("First") {
+			@Override
+			public void run() {
+				service.getMusicDirectory(id);
+			}
+		};
+		first.start();
+		// Waits until the first request is running
+		while (service.getCoalescingStatistics().getInFlight() == 0) {
+			Thread.sleep(5);
+		}
+		service.getMusicDirectory(id);
+		first.join();
+
+		assertEquals(2, events.size());
+		RequestEvent coalesced = events.get(0).isCoalesced() ? events.get(0)
+				: events.get(1);
+		RequestEvent sent = coalesced == events.get(0) ? events.get(1)
+				: events.get(0);
+		assertFalse(sent.isCoalesced());
+		assertEquals("First", sent.getThreadName());
+		assertEquals(Thread.currentThread().getName(),
+				coalesced.getThreadName());
+		assertEquals(0, coalesced.getStatus());
+		assertEquals(-1, coalesced.getPhaseNanos(Phase.FIRST_BYTE));
+		assertTrue(coalesced.getDurationNanos() > 0);
+
+		// The metrics count the requests to the server only
+		assertEquals(1, metrics.getStatistics("getMusicDirectory.view")
+				.getRequests());
+	}
+
+	@Test
+	public void testStream() throws InterruptedException {
+		createService(null);
+		server.setStreamBytes(5000);
+		final CountDownLatch read = new CountDownLatch(1);
+		service.download(server.getLibrary().getSongId(1),
+				new StreamListener() {
+					@Override
+					public void receivedStream(InputStream inputStream) {
+						try {
+							while (inputStream.read() != -1) {
+								// Reads the whole stream
+							}
+						} catch (IOException e) {
+							throw new SubsonicException(ErrorType.GENERIC, e);
+						} finally {
+							read.countDown();
+						}
+					}
+				});
+		assertTrue(read.await(10, TimeUnit.SECONDS));
+
+		// The event follows once the listener returned
+		long deadline = System.currentTimeMillis() + 10000;
+		while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		RequestEvent event = events.get(0);
+		assertEquals("download.view", event.getEndpoint());
+		assertEquals(200, event.getStatus());
+		assertEquals(5000, event.getBytes());
+		assertEquals(-1, event.getPhaseNanos(Phase.PARSE));
+	}
+}
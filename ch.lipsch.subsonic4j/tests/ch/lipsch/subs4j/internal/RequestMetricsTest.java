@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.DefaultRequestMetrics;
+import ch.lipsch.subsonic4j.EndpointStatistics;
+import ch.lipsch.subsonic4j.LatencyHistogram;
+import ch.lipsch.subsonic4j.RequestMetrics.Phase;
+import ch.lipsch.subsonic4j.ResponseCache;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.StreamListener;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+
+/**
+ * Tests the request metrics of the {@link SubsonicServiceImpl} against the
+ * {@link StubSubsonicServer} and the histograms of the
+ * {@link DefaultRequestMetrics}. Runs offline.
+ */
+public class RequestMetricsTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private DefaultRequestMetrics metrics;
+	private SubsonicServiceImpl service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		server = new StubSubsonicServer(new SyntheticLibrary(20, 2, 10));
+		server.start();
+		metrics = new DefaultRequestMetrics();
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		if (service != null) {
+			service.disposeService();
+		}
+		server.stop();
+	}
+
+	private void createService(ResponseCache responseCache) {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setRequestMetrics(metrics);
+		settings.setResponseCache(responseCache);
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+	}
+
+	@Test
+	public void testPhases() {
+		createService(null);
+		service.getIndexes(null, null);
+		for (int i = 0; i < 5; i++) {
+			service.getMusicDirectory(server.getLibrary().getArtistId(i));
+		}
+
+		EndpointStatistics directory = metrics
+				.getStatistics("getMusicDirectory.view");
+		System.out.println(metrics);
+		assertEquals(5, directory.getRequests());
+		assertEquals(0, directory.getErrors());
+		assertTrue(directory.getBytes() > 0);
+		assertEquals(5, directory.getLatency(Phase.CONNECT).getCount());
+		assertEquals(5, directory.getLatency(Phase.FIRST_BYTE).getCount());
+		assertEquals(5, directory.getLatency(Phase.TRANSFER).getCount());
+		assertEquals(5, directory.getLatency(Phase.PARSE).getCount());
+		// The StAX decoder creates the model while parsing
+		assertEquals(0, directory.getLatency(Phase.MAP).getCount());
+		assertEquals(5, directory.getTotalLatency().getCount());
+		assertTrue(directory.getTotalLatency().getTotalNanos() > 0);
+
+		assertEquals(1, metrics.getStatistics("getIndexes.view")
+				.getRequests());
+		assertEquals(2, metrics.getSnapshot().size());
+	}
+
+	@Test
+	public void testErrors() {
+		createService(null);
+		try {
+			service.getMusicDirectory("missing");
+			fail("An unknown directory must not be found.");
+		} catch (SubsonicException e) {
+			assertEquals(ErrorType.DATA_NOT_FOUND, e.getErrorType());
+		}
+
+		EndpointStatistics directory = metrics
+				.getStatistics("getMusicDirectory.view");
+		assertEquals(1, directory.getRequests());
+		assertEquals(1, directory.getErrors());
+		assertEquals(1, directory.getErrors(ErrorType.DATA_NOT_FOUND));
+		assertEquals(0, directory.getErrors(ErrorType.GENERIC));
+	}
+
+	@Test
+	public void testCachedResponses() {
+		createService(new ResponseCache());
+		String id = server.getLibrary().getArtistId(0);
+		service.getMusicDirectory(id);
+		long bytes = metrics.getStatistics("getMusicDirectory.view")
+				.getBytes();
+		service.getMusicDirectory(id);
+
+		EndpointStatistics directory = metrics
+				.getStatistics("getMusicDirectory.view");
+		assertEquals(2, directory.getRequests());
+		assertEquals(2 * bytes, directory.getBytes());
+		assertEquals(1, server.getRequestCount("getMusicDirectory.view"));
+		// The cached response went through no network phase
+		assertEquals(1, directory.getLatency(Phase.TRANSFER).getCount());
+		assertEquals(2, directory.getLatency(Phase.PARSE).getCount());
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		createService(null);
+		server.setStreamBytes(100000);
+		final long[] read = new long[1];
+		service.stream(server.getLibrary().getSongId(0), null,
+				new StreamListener() {
+			@Override
+			public void receivedStream(InputStream inputStream) {
+				try {
+					byte[] buffer = new byte[4096];
+					int count;
+					while ((count = inputStream.read(buffer)) != -1) {
+						read[0] += count;
+					}
+				} catch (IOException e) {
+					throw new SubsonicException(ErrorType.GENERIC, e);
+				}
+			}
+		});
+
+		// The stream is recorded after the listener returned
+		long deadline = System.currentTimeMillis() + 10000;
+		while (metrics.getStatistics("stream.view") == null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		EndpointStatistics stream = metrics.getStatistics("stream.view");
+		assertEquals(1, stream.getRequests());
+		assertEquals(100000, stream.getBytes());
+		assertEquals(read[0], stream.getBytes());
+		assertEquals(1, stream.getLatency(Phase.TRANSFER).getCount());
+		assertEquals(0, stream.getLatency(Phase.PARSE).getCount());
+	}
+
+	@Test
+	public void testDisabled() {
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+		service.getIndexes(null, null);
+		assertTrue(metrics.getSnapshot().isEmpty());
+	}
+
+	@Test
+	public void testHistogram() {
+		long[] phases = new long[Phase.values().length];
+		for (int micros = 1; micros <= 1000; micros++) {
+			phases[Phase.CONNECT.ordinal()] = -1;
+			phases[Phase.FIRST_BYTE.ordinal()] = micros * 1000L;
+			phases[Phase.TRANSFER.ordinal()] = 0;
+			phases[Phase.PARSE.ordinal()] = -1;
+			phases[Phase.MAP.ordinal()] = -1;
+			metrics.record("ping.view", phases, 10, null);
+		}
+
+		EndpointStatistics ping = metrics.getStatistics("ping.view");
+		assertEquals(1000, ping.getRequests());
+		assertEquals(10000, ping.getBytes());
+		assertEquals(0, ping.getLatency(Phase.CONNECT).getCount());
+		assertEquals(1000, ping.getLatency(Phase.TRANSFER).getCount());
+
+		LatencyHistogram firstByte = ping.getLatency(Phase.FIRST_BYTE);
+		assertEquals(1000, firstByte.getCount());
+		assertEquals(1000000, firstByte.getMaxNanos());
+		assertEquals(500500, firstByte.getMeanNanos());
+		assertEquals(1000000, firstByte.getPercentileNanos(100));
+		assertPercentile(500000, firstByte.getPercentileNanos(50));
+		assertPercentile(990000, firstByte.getPercentileNanos(99));
+		assertPercentile(1000, firstByte.getPercentileNanos(0));
+		System.out.println(firstByte);
+	}
+
+	private static void assertPercentile(long expected, long actual) {
+		assertTrue(actual + " is below " + expected, actual >= expected);
+		assertTrue(actual + " is too far above " + expected,
+				actual <= expected * 1.125);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final int recordsPerThread = 100000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			final ErrorType errorType = i % 2 == 0 ? null
+					: ErrorType.GENERIC;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					long[] phases = new long[Phase.values().length];
+					for (int j = 0; j < recordsPerThread; j++) {
+						phases[Phase.TRANSFER.ordinal()] = j;
+						metrics.record("stream.view", phases, 1, errorType);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		EndpointStatistics stream = metrics.getStatistics("stream.view");
+		assertEquals(4 * recordsPerThread, stream.getRequests());
+		assertEquals(4 * recordsPerThread, stream.getBytes());
+		assertEquals(2 * recordsPerThread, stream.getErrors());
+		assertEquals(4 * recordsPerThread, stream.getLatency(Phase.TRANSFER)
+				.getCount());
+		assertEquals(recordsPerThread - 1, stream.getLatency(Phase.TRANSFER)
+				.getMaxNanos());
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.text.MessageFormat;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.httpclient.util.URIUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.internal.RequestUrlBuilder;
+import ch.lipsch.subsonic4j.internal.SubsonicUtil;
+
+/**
+ * Tests the {@link RequestUrlBuilder} and compares its time and allocations
+ * per request with the former string concatenation.
+ */
+public class RequestUrlBuilderTest extends TestCase {
+
+	private static final int ITERATIONS = 200000;
+
+	private static final String CREDENTIALS = "?u=user&p=enc:70617373&v=1.4.0&c=subs4j";
+
+	private MutableCredentials credentials;
+	private URL url;
+	private RequestUrlBuilder urls;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		credentials = new MutableCredentials();
+		url = new URL("http://localhost:4040/subsonic");
+		urls = new RequestUrlBuilder(url, credentials);
+	}
+
+	@Test
+	public void testCreate() {
+		assertEquals("http://localhost:4040/subsonic/rest/ping.view"
+				+ CREDENTIALS, urls.create("ping.view").toString());
+		assertEquals("http://localhost:4040/subsonic/rest/ping.view"
+				+ CREDENTIALS, new RequestUrlBuilder(url, credentials).create(
+				"ping.view").toString());
+	}
+
+	@Test
+	public void testAppend() throws Exception {
+		String query = "AC/DC & Friends";
+		String created = urls.create("search2.view").append("query", query)
+				.append("genre", (String) null).append("size", 10)
+				.append("offset", (Integer) null).append("since", 42L)
+				.append("adminRole", Boolean.TRUE).toString();
+		assertEquals("http://localhost:4040/subsonic/rest/search2.view"
+				+ CREDENTIALS + "&query=" + URIUtil.encodeWithinQuery(query)
+				+ "&size=10&since=42&adminRole=true", created);
+	}
+
+	@Test
+	public void testChangedCredentials() {
+		urls.create("ping.view");
+		credentials.password = "secret";
+		assertTrue(urls.create("ping.view").toString().contains(
+				SubsonicUtil.hexEncodePassword("secret")));
+	}
+
+	@Test
+	public void testBenchmark() throws Exception {
+		assertEquals(concatenate(), build());
+
+		// Warm up
+		measure(false);
+		measure(true);
+
+		long[] concatenated = measure(false);
+		long[] built = measure(true);
+		System.out.println("\tns/request\tbytes/request");
+		System.out.println(MessageFormat.format("concatenated\t{0}\t{1}",
+				concatenated[0], concatenated[1]));
+		System.out.println(MessageFormat.format("built\t{0}\t{1}", built[0],
+				built[1]));
+		if (built[1] >= 0) {
+			assertTrue(built[1] < concatenated[1]);
+		}
+	}
+
+	/**
+	 * Creates the url of a createUser request {@link #ITERATIONS} times.
+	 * 
+	 * @return The nanoseconds and allocated bytes per request. The bytes are
+	 *         -1 if the vm can not measure them.
+	 */
+	private long[] measure(boolean withBuilder) throws Exception {
+		long startBytes = getAllocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			if (withBuilder) {
+				build();
+			} else {
+				concatenate();
+			}
+		}
+		long duration = System.nanoTime() - startTime;
+		long bytes = getAllocatedBytes() - startBytes;
+		return new long[] { duration / ITERATIONS,
+				startBytes < 0 ? -1 : bytes / ITERATIONS };
+	}
+
+	private String build() {
+		return urls.create("createUser.view").append("username", "newuser")
+				.append("password", "secret").append("adminRole", Boolean.FALSE)
+				.append("settingsRole", Boolean.TRUE)
+				.append("streamRole", Boolean.TRUE)
+				.append("downloadRole", Boolean.TRUE)
+				.append("playlistRole", Boolean.TRUE).toString();
+	}
+
+	/**
+	 * The url building as it was done before the {@link RequestUrlBuilder}.
+	 */
+	private String concatenate() throws Exception {
+		String restifiedUrl = url.toString();
+		restifiedUrl = restifiedUrl.endsWith("/") ? restifiedUrl
+				: restifiedUrl + "/";
+		restifiedUrl += "rest";
+		restifiedUrl = restifiedUrl.endsWith("/") ? restifiedUrl
+				: restifiedUrl + "/";
+		restifiedUrl += "createUser.view";
+		restifiedUrl = restifiedUrl + "?u=" + credentials.getUserName()
+				+ "&p="
+				+ SubsonicUtil.hexEncodePassword(credentials.getPassword())
+				+ "&v=1.4.0&c=subs4j";
+		restifiedUrl = concatenate(restifiedUrl, "username", "newuser");
+		restifiedUrl = concatenate(restifiedUrl, "password", "secret");
+		restifiedUrl = concatenate(restifiedUrl, "adminRole",
+				Boolean.FALSE.toString());
+		restifiedUrl = concatenate(restifiedUrl, "settingsRole",
+				Boolean.TRUE.toString());
+		restifiedUrl = concatenate(restifiedUrl, "streamRole",
+				Boolean.TRUE.toString());
+		restifiedUrl = concatenate(restifiedUrl, "downloadRole",
+				Boolean.TRUE.toString());
+		restifiedUrl = concatenate(restifiedUrl, "playlistRole",
+				Boolean.TRUE.toString());
+		return restifiedUrl;
+	}
+
+	private static String concatenate(String url, String key, String value)
+			throws Exception {
+		return url + "&" + key + "=" + URIUtil.encodeWithinQuery(value);
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread or -1 if the vm does
+	 *         not support measuring them.
+	 */
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory
+				.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static final class MutableCredentials implements
+			CredentialsProvider {
+		private volatile String password = "pass";
+
+		@Override
+		public String getUserName() {
+			return "user";
+		}
+
+		@Override
+		public String getPassword() {
+			return password;
+		}
+	}
+}
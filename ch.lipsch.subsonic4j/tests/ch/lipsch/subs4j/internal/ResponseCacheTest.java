@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.ResponseCache;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link ResponseCache} alone and behind a
+ * {@link SubsonicServiceImpl} which talks to a local http server.
+ */
+public class ResponseCacheTest extends TestCase {
+
+	private static final String ENDPOINT = "getMusicDirectory.view";
+
+	private ResponseCache cache;
+
+	@Override
+	@Before
+	public void setUp() {
+		cache = new ResponseCache(3, 100);
+	}
+
+	@Test
+	public void testDefaultEndpoints() {
+		assertTrue(cache.isCached(ENDPOINT));
+		assertTrue(cache.isCached("getLicense.view"));
+		assertFalse(cache.isCached("search2.view"));
+
+		cache.setTimeToLive(ENDPOINT, 0);
+		cache.put(ENDPOINT, "a", new byte[1]);
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		cache.put(ENDPOINT, "a", new byte[1]);
+		cache.put(ENDPOINT, "b", new byte[1]);
+		cache.put(ENDPOINT, "c", new byte[1]);
+		assertNotNull(cache.get("a"));
+		cache.put(ENDPOINT, "d", new byte[1]);
+
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testByteLimit() {
+		cache.put(ENDPOINT, "a", new byte[60]);
+		cache.put(ENDPOINT, "b", new byte[60]);
+		assertNull(cache.get("a"));
+		assertEquals(60, cache.getByteCount());
+
+		cache.put(ENDPOINT, "c", new byte[101]);
+		assertNull(cache.get("c"));
+		assertNotNull(cache.get("b"));
+	}
+
+	@Test
+	public void testTimeToLive() throws InterruptedException {
+		cache.setTimeToLive(ENDPOINT, 50);
+		cache.put(ENDPOINT, "a", new byte[1]);
+		assertNotNull(cache.get("a"));
+		Thread.sleep(100);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put(ENDPOINT, "a", new byte[1]);
+		cache.put("getLicense.view", "b", new byte[1]);
+		cache.invalidate(ENDPOINT);
+		assertNull(cache.get("a"));
+		assertNotNull(cache.get("b"));
+	}
+
+	@Test
+	public void testInvalidateParameter() {
+		String endpoint = "getPlaylist.view";
+		cache.setTimeToLive(endpoint, 1000);
+		cache.put(endpoint, "/getPlaylist.view?u=a&id=1", new byte[1]);
+		cache.put(endpoint, "/getPlaylist.view?u=b&id=1", new byte[1]);
+		cache.put(endpoint, "/getPlaylist.view?u=a&id=11", new byte[1]);
+		cache.invalidate(endpoint, "id", "1");
+		assertNull(cache.get("/getPlaylist.view?u=a&id=1"));
+		assertNull(cache.get("/getPlaylist.view?u=b&id=1"));
+		assertNotNull(cache.get("/getPlaylist.view?u=a&id=11"));
+	}
+
+	@Test
+	public void testStaleResponseAfterInvalidation() {
+		long invalidationCount = cache.getInvalidationCount();
+		cache.invalidate(ENDPOINT);
+		cache.put(ENDPOINT, "a", new byte[1], invalidationCount);
+		assertNull(cache.get("a"));
+
+		cache.put(ENDPOINT, "a", new byte[1], cache.getInvalidationCount());
+		assertNotNull(cache.get("a"));
+	}
+
+	@Test
+	public void testSharedBetweenUsers() throws Exception {
+		final byte[] fixture = Fixtures.read(Fixtures.MUSIC_DIRECTORY);
+		final AtomicInteger requests = new AtomicInteger(0);
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				exchange.getResponseHeaders().add("Content-Type", "text/xml");
+				exchange.sendResponseHeaders(200, fixture.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(fixture);
+				out.close();
+			}
+		});
+		server.start();
+
+		try {
+			URL url = new URL("http://localhost:"
+					+ server.getAddress().getPort() + "/");
+			ServiceSettings settings = new ServiceSettings();
+			settings.setResponseCache(new ResponseCache());
+			settings.setResponseDecoding(ResponseDecoding.STAX);
+			SubsonicServiceImpl first = new SubsonicServiceImpl(url, false,
+					new Credentials("first"), settings);
+			SubsonicServiceImpl second = new SubsonicServiceImpl(url, false,
+					new Credentials("second"), settings);
+
+			assertEquals(12, first.getMusicDirectory("1")
+					.getChildDirectories().size());
+			assertEquals(12, second.getMusicDirectory("1")
+					.getChildDirectories().size());
+			assertEquals(1, requests.get());
+
+			second.getMusicDirectory("2");
+			assertEquals(2, requests.get());
+
+			first.disposeService();
+			second.disposeService();
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static final class Credentials implements CredentialsProvider {
+		private final String userName;
+
+		private Credentials(String userName) {
+			this.userName = userName;
+		}
+
+		@Override
+		public String getUserName() {
+			return userName;
+		}
+
+		@Override
+		public String getPassword() {
+			return userName;
+		}
+	}
+}
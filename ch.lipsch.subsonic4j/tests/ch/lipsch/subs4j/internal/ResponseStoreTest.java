@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.ResponseCache;
+import ch.lipsch.subsonic4j.ResponseStore;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.model.ModelFactory;
+
+/**
+ * Tests the {@link ResponseStore} behind a {@link ResponseCache} in a
+ * temporary directory. The server is a fake whose indexes were last modified
+ * at {@link #lastModified}.
+ */
+public class ResponseStoreTest extends TestCase {
+
+	private static final String ENDPOINT = "getMusicDirectory.view";
+
+	private File directory;
+	private long lastModified = 1000;
+	private SubsonicService service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("responses", "");
+		directory.delete();
+		service = (InternalSubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { InternalSubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getMusicFolders")) {
+							return Collections.singletonList(ModelFactory
+									.createMusicFolder(0, "Music",
+											(InternalSubsonicService) proxy));
+						} else if (method.getName().equals("getIndexes")) {
+							IndexVisitor visitor = (IndexVisitor) args[2];
+							visitor.visitLastModified(lastModified);
+							Calendar ifModifiedSince = (Calendar) args[1];
+							if (ifModifiedSince.getTimeInMillis() < lastModified) {
+								visitor.visitIndex("A");
+							}
+						}
+						return null;
+					}
+				});
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private ResponseCache openCache(ResponseStore store) {
+		return new ResponseCache(10, 1024 * 1024, store);
+	}
+
+	@Test
+	public void testWarmRestart() {
+		ResponseStore store = new ResponseStore(directory);
+		assertFalse(store.validate(service));
+		ResponseCache cache = openCache(store);
+		cache.put(ENDPOINT, "/getMusicDirectory.view?id=1", new byte[] { 1 });
+		cache.put("getLyrics.view", "/getLyrics.view?artist=a", new byte[1]);
+		assertEquals(1, store.getEntryCount());
+		store.close();
+
+		store = new ResponseStore(directory);
+		cache = openCache(store);
+		assertNull(cache.get("/getMusicDirectory.view?id=1"));
+
+		assertTrue(store.validate(service));
+		byte[] body = cache.get("/getMusicDirectory.view?id=1");
+		assertEquals(1, body.length);
+		assertEquals(1, body[0]);
+		assertNull(cache.get("/getLyrics.view?artist=a"));
+		assertEquals(1, cache.getStoreHitCount());
+
+		// Now served from memory
+		cache.get("/getMusicDirectory.view?id=1");
+		assertEquals(1, cache.getStoreHitCount());
+		assertEquals(1, cache.getHitCount());
+		store.close();
+	}
+
+	@Test
+	public void testRetention() throws InterruptedException {
+		ResponseStore store = new ResponseStore(directory);
+		store.setRetention(50);
+		store.validate(service);
+		ResponseCache cache = openCache(store);
+		cache.put(ENDPOINT, "/getMusicDirectory.view?id=1", new byte[1]);
+
+		// A new cache reads the response from the store within its retention
+		assertNotNull(openCache(store).get("/getMusicDirectory.view?id=1"));
+
+		Thread.sleep(100);
+		cache = openCache(store);
+		assertNull(cache.get("/getMusicDirectory.view?id=1"));
+		assertEquals(0, cache.getStoreHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, store.getEntryCount());
+		store.close();
+	}
+
+	@Test
+	public void testOlderThanTimeToLive() throws InterruptedException {
+		ResponseStore store = new ResponseStore(directory);
+		store.validate(service);
+		ResponseCache cache = openCache(store);
+		cache.setTimeToLive(ENDPOINT, 50);
+		cache.put(ENDPOINT, "/getMusicDirectory.view?id=1", new byte[1]);
+		store.close();
+
+		// The record is older than the time to live of the memory tier but
+		// the store still returns it after a restart
+		Thread.sleep(100);
+		store = new ResponseStore(directory);
+		assertTrue(store.validate(service));
+		cache = openCache(store);
+		cache.setTimeToLive(ENDPOINT, 50);
+		assertNotNull(cache.get("/getMusicDirectory.view?id=1"));
+		assertEquals(1, cache.getStoreHitCount());
+
+		// The copy in memory expires with the time to live of the endpoint
+		Thread.sleep(100);
+		assertNotNull(cache.get("/getMusicDirectory.view?id=1"));
+		assertEquals(2, cache.getStoreHitCount());
+		assertEquals(0, cache.getHitCount());
+		store.close();
+	}
+
+	@Test
+	public void testLibraryChanged() {
+		ResponseStore store = new ResponseStore(directory);
+		store.validate(service);
+		openCache(store).put(ENDPOINT, "/getMusicDirectory.view?id=1",
+				new byte[1]);
+		store.close();
+
+		lastModified = 2000;
+		store = new ResponseStore(directory);
+		assertFalse(store.validate(service));
+		assertEquals(0, store.getEntryCount());
+		assertEquals(2000, store.getLastModified());
+		assertNull(openCache(store).get("/getMusicDirectory.view?id=1"));
+		store.close();
+	}
+
+	@Test
+	public void testManyEntries() {
+		ResponseStore store = new ResponseStore(directory);
+		store.validate(service);
+		ResponseCache cache = openCache(store);
+		for (int i = 0; i < 5000; i++) {
+			cache.put(ENDPOINT, "/getMusicDirectory.view?id=" + i,
+					Integer.toString(i).getBytes());
+		}
+		store.close();
+
+		store = new ResponseStore(directory);
+		store.validate(service);
+		cache = openCache(store);
+		assertEquals(5000, store.getEntryCount());
+		for (int i = 0; i < 5000; i += 7) {
+			assertEquals(Integer.toString(i),
+					new String(cache.get("/getMusicDirectory.view?id=" + i)));
+		}
+		store.close();
+	}
+
+	@Test
+	public void testCompaction() {
+		ResponseStore store = new ResponseStore(directory, 10000);
+		store.validate(service);
+		ResponseCache cache = openCache(store);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(ENDPOINT, "/getMusicDirectory.view?id=" + (i % 10),
+					new byte[100]);
+		}
+		assertEquals(10, store.getEntryCount());
+		assertTrue(store.getByteCount() < 12000);
+		store.close();
+	}
+
+	@Test
+	public void testInvalidate() {
+		ResponseStore store = new ResponseStore(directory);
+		store.validate(service);
+		store.setStored("getPlaylist.view", true);
+		ResponseCache cache = openCache(store);
+		cache.setTimeToLive("getPlaylist.view", 1000);
+		cache.put("getPlaylist.view", "/getPlaylist.view?id=1", new byte[1]);
+		cache.put("getPlaylist.view", "/getPlaylist.view?id=2", new byte[1]);
+		cache.invalidate("getPlaylist.view", "id", "1");
+		store.close();
+
+		store = new ResponseStore(directory);
+		store.validate(service);
+		store.setStored("getPlaylist.view", true);
+		cache = openCache(store);
+		cache.setTimeToLive("getPlaylist.view", 1000);
+		assertNull(cache.get("/getPlaylist.view?id=1"));
+		assertNotNull(cache.get("/getPlaylist.view?id=2"));
+		store.close();
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.SearchBatch;
+import ch.lipsch.subsonic4j.SearchBatchListener;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Tests the order, the deduplication and the parallelism of a
+ * {@link SearchBatch} against the {@link StubSubsonicServer}. Runs offline.
+ */
+public class SearchBatchTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private SubsonicServiceImpl service;
+	private SearchBatch batch;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		// 18 songs, every query fits into the first page
+		server = new StubSubsonicServer(new SyntheticLibrary(3, 2, 3));
+		server.start();
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+		batch = service.createSearchBatch(4, new SearchPaging(20));
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		batch.close();
+		service.disposeService();
+		server.stop();
+	}
+
+	/**
+	 * Collects the delivered results as "index:query:songs" or
+	 * "index:query:errorType".
+	 */
+	private static final class Collector implements SearchBatchListener {
+
+		private final List<String> delivered = new ArrayList<String>();
+
+		@Override
+		public void resultAvailable(int index, String query,
+				SearchResult result) {
+			delivered.add(index + ":" + query + ":" + countSongs(result));
+		}
+
+		@Override
+		public void searchFailed(int index, String query,
+				SubsonicException exception) {
+			delivered.add(index + ":" + query + ":"
+					+ exception.getErrorType());
+		}
+	}
+
+	private static int countSongs(SearchResult result) {
+		int count = 0;
+		Iterator<Song> songs = result.getSongs();
+		while (songs.hasNext()) {
+			songs.next();
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testOrderAndDuplicates() throws Exception {
+		Collector collector = new Collector();
+		batch.search(Arrays.asList("song", "song 1", " ", "Song", "band",
+				"SONG  1 "), collector);
+
+		assertEquals(Arrays.asList("0:song:18", "1:song 1:6", "2: :0",
+				"3:Song:18", "4:band:18", "5:SONG  1 :6"), collector.delivered);
+		assertEquals(3, server.getRequestCount("search2.view"));
+	}
+
+	@Test
+	public void testKeptResults() throws Exception {
+		batch.search(Arrays.asList("song", "band"), new Collector());
+		Collector collector = new Collector();
+		batch.search(Arrays.asList("band", "song 2", "song"), collector);
+
+		assertEquals(Arrays.asList("0:band:18", "1:song 2:6", "2:song:18"),
+				collector.delivered);
+		assertEquals(3, server.getRequestCount("search2.view"));
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		server.setLatency(200, 0);
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < 8; i++) {
+			queries.add("song " + i);
+		}
+
+		long start = System.currentTimeMillis();
+		Collector collector = new Collector();
+		batch.search(queries, collector);
+		long millis = System.currentTimeMillis() - start;
+		System.out.println("8 queries with 4 threads took " + millis + "ms");
+
+		// Sequentially the queries would take 1600ms
+		assertTrue(millis >= 400);
+		assertTrue(millis < 1200);
+		assertEquals(8, collector.delivered.size());
+		for (int i = 0; i < 8; i++) {
+			assertTrue(collector.delivered.get(i).startsWith(
+					i + ":song " + i + ":"));
+		}
+		assertEquals(8, server.getRequestCount("search2.view"));
+	}
+
+	@Test
+	public void testFailureNotKept() throws Exception {
+		server.setErrorRate(1);
+		Collector collector = new Collector();
+		batch.search(Arrays.asList("song", "band"), collector);
+		assertEquals(2, collector.delivered.size());
+		assertFalse(collector.delivered.get(0).endsWith(":18"));
+		int requests = server.getRequestCount("search2.view");
+
+		server.setErrorRate(0);
+		collector = new Collector();
+		batch.search(Arrays.asList("song", "band"), collector);
+		assertEquals(Arrays.asList("0:song:18", "1:band:18"),
+				collector.delivered);
+		assertEquals(requests + 2, server.getRequestCount("search2.view"));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		batch.close();
+		assertTrue(batch.isClosed());
+		try {
+			batch.search(Arrays.asList("song"), new Collector());
+			fail("A closed batch must not search.");
+		} catch (SubsonicException e) {
+			assertEquals(ErrorType.IS_DISPOSED, e.getErrorType());
+		}
+	}
+}
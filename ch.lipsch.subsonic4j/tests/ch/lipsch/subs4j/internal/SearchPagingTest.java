@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.RequestEvent;
+import ch.lipsch.subsonic4j.RequestListener;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.Artist;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Tests the paging of the iterators of a {@link SearchResult} against the
+ * {@link StubSubsonicServer}. Runs offline.
+ */
+public class SearchPagingTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private final List<RequestEvent> searches = new CopyOnWriteArrayList<RequestEvent>();
+	private SubsonicServiceImpl service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		server = new StubSubsonicServer(new SyntheticLibrary(25, 3, 7));
+		server.start();
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setRequestListener(new RequestListener() {
+			@Override
+			public void requestCompleted(RequestEvent event) {
+				if (event.getEndpoint().equals("search2.view")) {
+					searches.add(event);
+				}
+			}
+		});
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		service.disposeService();
+		server.stop();
+	}
+
+	@Test
+	public void testSongPaging() {
+		Set<String> ids = new HashSet<String>();
+		Iterator<Song> songs = service.search("song").getSongs();
+		while (songs.hasNext()) {
+			assertTrue(ids.add(songs.next().getId()));
+		}
+		assertFalse(songs.hasNext());
+
+		assertEquals(server.getLibrary().getSongCount(), ids.size());
+		// 26 full pages and a last one with 5 songs
+		assertEquals(27, searches.size());
+		for (RequestEvent search : searches.subList(1, searches.size())) {
+			String parameters = search.getParameters();
+			assertTrue(parameters, parameters.contains("artistCount=0"));
+			assertTrue(parameters, parameters.contains("albumCount=0"));
+			assertTrue(parameters, parameters.contains("songCount=20"));
+		}
+		assertTrue(searches.get(26).getParameters().contains("songOffset=520"));
+	}
+
+	@Test
+	public void testAlbumPaging() {
+		Set<String> ids = new HashSet<String>();
+		Iterator<Directory> albums = service.search("sessions").getAlbums();
+		while (albums.hasNext()) {
+			assertTrue(ids.add(albums.next().getId()));
+		}
+
+		assertEquals(server.getLibrary().getAlbumCount(), ids.size());
+		assertEquals(4, searches.size());
+		for (RequestEvent search : searches.subList(1, searches.size())) {
+			String parameters = search.getParameters();
+			assertTrue(parameters, parameters.contains("artistCount=0"));
+			assertTrue(parameters, parameters.contains("songCount=0"));
+		}
+	}
+
+	@Test
+	public void testLastPage() {
+		Iterator<Artist> artists = service.search("band").getArtists();
+		int count = 0;
+		while (artists.hasNext()) {
+			artists.next();
+			count++;
+		}
+		assertFalse(artists.hasNext());
+
+		assertEquals(25, count);
+		// The second page is not full, there is no need to ask for a third
+		assertEquals(2, searches.size());
+		assertTrue(searches.get(1).getParameters().contains("artistOffset=20"));
+	}
+
+	@Test
+	public void testPrefetch() throws InterruptedException {
+		Iterator<Song> songs = service.search("song").getSongs();
+		for (int i = 0; i < 5; i++) {
+			songs.next();
+		}
+		Thread.sleep(200);
+		assertEquals(1, searches.size());
+
+		// Half of the page is consumed, the next one is loaded meanwhile
+		for (int i = 0; i < 5; i++) {
+			songs.next();
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (searches.size() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, searches.size());
+		assertFalse(searches.get(1).getThreadName().equals(
+				Thread.currentThread().getName()));
+
+		for (int i = 0; i < 15; i++) {
+			songs.next();
+		}
+		assertTrue(songs.hasNext());
+	}
+
+	@Test
+	public void testFixedPaging() {
+		int count = count(service.search("song", new SearchPaging(100))
+				.getSongs());
+
+		assertEquals(server.getLibrary().getSongCount(), count);
+		assertEquals(6, searches.size());
+		assertTrue(searches.get(0).getParameters().contains("artistCount=100"));
+		assertTrue(searches.get(5).getParameters().contains("songOffset=500"));
+	}
+
+	@Test
+	public void testAdaptivePaging() {
+		int count = count(service.search("song",
+				new SearchPaging(5, 160, 10000)).getSongs());
+
+		assertEquals(server.getLibrary().getSongCount(), count);
+		// Pages of 5, 10, 20, 40, 80, 160, 160 and the last 50 songs
+		assertEquals(8, searches.size());
+		int[] sizes = { 5, 10, 20, 40, 80, 160, 160, 160 };
+		int offset = 0;
+		for (int i = 1; i < sizes.length; i++) {
+			offset += sizes[i - 1];
+			String parameters = searches.get(i).getParameters();
+			assertTrue(parameters,
+					parameters.contains("songCount=" + sizes[i]));
+			assertTrue(parameters, parameters.contains("songOffset=" + offset));
+		}
+	}
+
+	@Test
+	public void testAdaptivePagingOfSlowServer() {
+		server.setLatency(50, 0);
+		int count = count(service.search("sessions",
+				new SearchPaging(10, 160, 10)).getAlbums());
+
+		assertEquals(server.getLibrary().getAlbumCount(), count);
+		// Every page exceeds the target latency and keeps the first size
+		assertEquals(8, searches.size());
+		for (RequestEvent search : searches) {
+			String parameters = search.getParameters();
+			assertTrue(parameters, parameters.contains("albumCount=10"));
+		}
+	}
+
+	@Test
+	public void testNextPageSize() {
+		SearchPaging fixed = new SearchPaging(20);
+		assertFalse(fixed.isAdaptive());
+		assertEquals(20, fixed.getNextPageSize(20, 0));
+		assertEquals(20, fixed.getNextPageSize(20, Long.MAX_VALUE));
+
+		SearchPaging adaptive = new SearchPaging(10, 50, 100);
+		long fast = TimeUnit.MILLISECONDS.toNanos(20);
+		long slow = TimeUnit.MILLISECONDS.toNanos(200);
+		assertTrue(adaptive.isAdaptive());
+		assertEquals(20, adaptive.getNextPageSize(10, fast));
+		assertEquals(50, adaptive.getNextPageSize(40, fast));
+		assertEquals(50, adaptive.getNextPageSize(50, fast));
+		assertEquals(20, adaptive.getNextPageSize(40, slow));
+		assertEquals(10, adaptive.getNextPageSize(10, slow));
+		assertEquals(40, adaptive.getNextPageSize(40, -1));
+	}
+
+	private static int count(Iterator<?> results) {
+		int count = 0;
+		while (results.hasNext()) {
+			results.next();
+			count++;
+		}
+		return count;
+	}
+}
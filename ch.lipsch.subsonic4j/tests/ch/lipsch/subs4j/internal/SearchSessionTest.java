@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.stub.StubSubsonicServer;
+import ch.lipsch.subs4j.stub.SyntheticLibrary;
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.RequestEvent;
+import ch.lipsch.subsonic4j.RequestListener;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.SearchSession;
+import ch.lipsch.subsonic4j.SearchSessionListener;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.SearchResult;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Tests the debouncing, the cancellation and the reuse of results of a
+ * {@link SearchSession} against the {@link StubSubsonicServer}. Runs offline.
+ */
+public class SearchSessionTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private SubsonicServiceImpl service;
+	private SearchSession session;
+	private final List<RequestEvent> searches = new CopyOnWriteArrayList<RequestEvent>();
+	private final BlockingQueue<Object> delivered = new LinkedBlockingQueue<Object>();
+	private final List<String> deliveredQueries = new CopyOnWriteArrayList<String>();
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		// 18 songs, every query fits into the first page
+		server = new StubSubsonicServer(new SyntheticLibrary(3, 2, 3));
+		server.start();
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setRequestListener(new RequestListener() {
+			@Override
+			public void requestCompleted(RequestEvent event) {
+				if (event.getEndpoint().equals("search2.view")) {
+					searches.add(event);
+				}
+			}
+		});
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		if (session != null) {
+			session.close();
+		}
+		service.disposeService();
+		server.stop();
+	}
+
+	private void createSession(long debounceMillis, SearchPaging paging) {
+		session = service.createSearchSession(debounceMillis, paging,
+				new SearchSessionListener() {
+					@Override
+					public void resultAvailable(String query,
+							SearchResult result) {
+						deliveredQueries.add(query);
+						delivered.add(result);
+					}
+
+					@Override
+					public void searchFailed(String query,
+							SubsonicException exception) {
+						deliveredQueries.add(query);
+						delivered.add(exception);
+					}
+				});
+	}
+
+	private SearchResult awaitResult() throws InterruptedException {
+		Object result = delivered.poll(10, TimeUnit.SECONDS);
+		assertNotNull("No result was delivered.", result);
+		if (result instanceof SubsonicException) {
+			throw (SubsonicException) result;
+		}
+		return (SearchResult) result;
+	}
+
+	private static List<String> getSongIds(SearchResult result) {
+		List<String> ids = new ArrayList<String>();
+		Iterator<Song> songs = result.getSongs();
+		while (songs.hasNext()) {
+			ids.add(songs.next().getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testDebounce() throws InterruptedException {
+		createSession(200, new SearchPaging(20));
+		session.setQuery("s");
+		session.setQuery("so");
+		session.setQuery("son");
+		session.setQuery("song");
+
+		assertEquals(18, getSongIds(awaitResult()).size());
+		Thread.sleep(300);
+		assertTrue(delivered.isEmpty());
+		assertEquals(1, deliveredQueries.size());
+		assertEquals("song", deliveredQueries.get(0));
+		assertEquals(1, server.getRequestCount("search2.view"));
+	}
+
+	@Test
+	public void testPrefixReuse() throws InterruptedException {
+		createSession(0, new SearchPaging(20));
+		session.setQuery("song");
+		assertEquals(18, getSongIds(awaitResult()).size());
+		session.setQuery("song 1");
+		assertEquals(6, getSongIds(awaitResult()).size());
+		session.setQuery("song");
+		assertEquals(18, getSongIds(awaitResult()).size());
+
+		// The repeated query is answered from its kept page, the extended
+		// one only requests its albums and songs
+		assertEquals(2, searches.size());
+		assertTrue(searches.get(1).getParameters().contains("artistCount=0"));
+	}
+
+	@Test
+	public void testArtistMatch() throws InterruptedException {
+		createSession(0, new SearchPaging(20));
+		session.setQuery("ka");
+		awaitResult();
+		session.setQuery("ka band");
+		SearchResult result = awaitResult();
+
+		// The songs match on their artist only, their titles lack "band"
+		List<String> songs = getSongIds(result);
+		assertEquals(6, songs.size());
+		assertEquals(songs, getSongIds(service.search("ka band",
+				new SearchPaging(20))));
+		assertEquals(2, count(result.getAlbums()));
+		assertEquals(1, count(result.getArtists()));
+	}
+
+	private static int count(Iterator<?> iterator) {
+		int count = 0;
+		while (iterator.hasNext()) {
+			iterator.next();
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testIncompletePrefix() throws InterruptedException {
+		createSession(0, new SearchPaging(5));
+		session.setQuery("song");
+		assertEquals(18, getSongIds(awaitResult()).size());
+		int requests = server.getRequestCount("search2.view");
+
+		// The first page of "song" did not hold all of its songs, the 6
+		// songs of "song 1" need two pages
+		session.setQuery("song 1");
+		assertEquals(6, getSongIds(awaitResult()).size());
+		assertEquals(requests + 2, searches.size());
+		assertTrue(searches.get(requests).getParameters().contains(
+				"query=song%201"));
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		server.setLatency(1000, 0);
+		createSession(0, new SearchPaging(20));
+		session.setQuery("song");
+		long deadline = System.currentTimeMillis() + 10000;
+		while (server.getRequestCount("search2.view") == 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		long start = System.currentTimeMillis();
+		session.setQuery("band");
+		assertEquals(18, getSongIds(awaitResult()).size());
+		long millis = System.currentTimeMillis() - start;
+		System.out.println("Superseding search took " + millis + "ms");
+
+		// The request of "song" was aborted instead of completed
+		assertTrue(millis < 1900);
+		assertEquals(1, deliveredQueries.size());
+		assertEquals("band", deliveredQueries.get(0));
+		assertEquals(2, searches.size());
+		assertEquals(ErrorType.CANCELLED, searches.get(0).getErrorType());
+		assertNull(searches.get(1).getErrorType());
+	}
+
+	@Test
+	public void testClose() throws InterruptedException {
+		createSession(200, new SearchPaging(20));
+		session.setQuery("song");
+		session.close();
+		assertTrue(session.isClosed());
+		Thread.sleep(300);
+
+		assertTrue(delivered.isEmpty());
+		assertEquals(0, server.getRequestCount("search2.view"));
+		try {
+			session.setQuery("band");
+			fail("A closed session must not search.");
+		} catch (SubsonicException e) {
+			assertEquals(ErrorType.IS_DISPOSED, e.getErrorType());
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subs4j.TestConfig;
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicException.ErrorType;
+import ch.lipsch.subsonic4j.SubsonicFactory;
+import ch.lipsch.subsonic4j.SubsonicService;
+import ch.lipsch.subsonic4j.internal.JaxbResponseDecoder;
+import ch.lipsch.subsonic4j.internal.ResponseDecoder;
+import ch.lipsch.subsonic4j.internal.SearchPage;
+import ch.lipsch.subsonic4j.internal.StaxResponseDecoder;
+import ch.lipsch.subsonic4j.internal.UnmarshallerPool;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Checks that {@link StaxResponseDecoder} decodes the same model as
+ * {@link JaxbResponseDecoder} and compares their speed. Runs offline, the
+ * service is only used as owner of the decoded model objects.
+ */
+public class StaxResponseDecoderTest extends TestCase {
+
+	private static final String INDEXES = "<subsonic-response xmlns=\"http://subsonic.org/restapi\" status=\"ok\" version=\"1.4.0\">"
+			+ "<indexes lastModified=\"237462836472342\">"
+			+ "<shortcut id=\"11\" name=\"Audio books\"/>"
+			+ "<index name=\"A\"><artist id=\"1\" name=\"ABBA\"/><artist id=\"2\" name=\"Alanis Morisette\"/></index>"
+			+ "<index name=\"B\"><artist id=\"3\" name=\"Bob Dylan\"/></index>"
+			+ "</indexes></subsonic-response>";
+	private static final String SEARCH_RESULT2 = "<subsonic-response xmlns=\"http://subsonic.org/restapi\" status=\"ok\" version=\"1.4.0\">"
+			+ "<searchResult2><artist id=\"1\" name=\"ABBA\"/>"
+			+ "<album id=\"11\" parent=\"1\" title=\"Arrival\" artist=\"ABBA\" isDir=\"true\"/>"
+			+ "<song id=\"111\" parent=\"11\" title=\"Dancing Queen\" isDir=\"false\" genre=\"Pop\"/>"
+			+ "</searchResult2></subsonic-response>";
+	private static final String ALBUM_LIST = "<subsonic-response xmlns=\"http://subsonic.org/restapi\" status=\"ok\" version=\"1.4.0\">"
+			+ "<albumList><album id=\"11\" parent=\"1\" title=\"Arrival\" artist=\"ABBA\" isDir=\"true\"/>"
+			+ "<album id=\"111\" parent=\"11\" title=\"Dancing Queen\" isDir=\"false\"/>"
+			+ "<album id=\"12\" parent=\"1\" title=\"Voulez-Vous\" artist=\"ABBA\" isDir=\"true\"/>"
+			+ "</albumList></subsonic-response>";
+	private static final String ERROR = "<subsonic-response xmlns=\"http://subsonic.org/restapi\" status=\"failed\" version=\"1.4.0\">"
+			+ "<error code=\"70\" message=\"Directory not found\"/></subsonic-response>";
+	private static final int ITERATIONS = 500;
+
+	private SubsonicService subsonicService;
+	private ResponseDecoder staxDecoder;
+	private ResponseDecoder jaxbDecoder;
+	private byte[] fixture;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		subsonicService = SubsonicFactory.createService(new URL(
+				TestConfig.SUBSONIC_URL), false, TestConfig.USER1_CREDENTIALS);
+		staxDecoder = new StaxResponseDecoder();
+		jaxbDecoder = new JaxbResponseDecoder(new UnmarshallerPool(
+				JAXBContext.newInstance("org.subsonic.restapi"), 1));
+		fixture = Fixtures.read(Fixtures.MUSIC_DIRECTORY);
+	}
+
+	@After
+	public void teardown() {
+		subsonicService.disposeService();
+	}
+
+	@Test
+	public void testDecodeDirectory() {
+		Directory stax = staxDecoder.decodeDirectory(new ByteArrayInputStream(
+				fixture), subsonicService);
+		Directory jaxb = jaxbDecoder.decodeDirectory(new ByteArrayInputStream(
+				fixture), subsonicService);
+
+		assertEquals(jaxb.getId(), stax.getId());
+		assertEquals(jaxb.getName(), stax.getName());
+		assertEquals(jaxb.getSongs(), stax.getSongs());
+		assertEquals(300, stax.getSongs().size());
+
+		Song song = stax.getSongs().get(0);
+		assertEquals(jaxb.getSongs().get(0).getTitle(), song.getTitle());
+		assertEquals(jaxb.getSongs().get(0).getGenre(), song.getGenre());
+	}
+
+	@Test
+	public void testDecodeIndexes() throws UnsupportedEncodingException {
+		List<Index> indexes = staxDecoder.decodeIndexes(
+				new ByteArrayInputStream(INDEXES.getBytes("UTF-8")),
+				subsonicService);
+
+		assertEquals(2, indexes.size());
+		assertEquals("A", indexes.get(0).getIdentifier());
+		assertEquals(2, indexes.get(0).getArtists().size());
+		assertEquals("Alanis Morisette", indexes.get(0).getArtists().get(1)
+				.getName());
+		assertEquals("3", indexes.get(1).getArtists().get(0).getId());
+	}
+
+	@Test
+	public void testDecodeSearchResult2() throws UnsupportedEncodingException {
+		SearchPage page = staxDecoder.decodeSearchResult2(
+				new ByteArrayInputStream(SEARCH_RESULT2.getBytes("UTF-8")),
+				subsonicService);
+
+		assertEquals("ABBA", page.getArtists().get(0).getName());
+		assertEquals("Arrival", page.getAlbums().get(0).getName());
+		assertEquals("Pop", page.getSongs().get(0).getGenre());
+	}
+
+	@Test
+	public void testDecodeAlbumList() throws UnsupportedEncodingException {
+		byte[] response = ALBUM_LIST.getBytes("UTF-8");
+		List<Directory> stax = staxDecoder.decodeAlbumList(
+				new ByteArrayInputStream(response), subsonicService);
+
+		// The entry which is no directory is skipped
+		assertEquals(2, stax.size());
+		assertEquals("Arrival", stax.get(0).getName());
+		assertEquals("Voulez-Vous", stax.get(1).getName());
+
+		List<Directory> jaxb = jaxbDecoder.decodeAlbumList(
+				new ByteArrayInputStream(response), subsonicService);
+		assertEquals(jaxb.size(), stax.size());
+		assertEquals(jaxb.get(1).getId(), stax.get(1).getId());
+	}
+
+	@Test
+	public void testDecodeError() throws UnsupportedEncodingException {
+		try {
+			staxDecoder.decodeDirectory(
+					new ByteArrayInputStream(ERROR.getBytes("UTF-8")),
+					subsonicService);
+			fail("Error response must raise an exception.");
+		} catch (SubsonicException e) {
+			assertEquals(ErrorType.DATA_NOT_FOUND, e.getErrorType());
+			assertEquals("Directory not found", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSpeed() {
+		// Warm up
+		decodeRepeatedly(jaxbDecoder);
+		decodeRepeatedly(staxDecoder);
+
+		long jaxbTime = decodeRepeatedly(jaxbDecoder);
+		long staxTime = decodeRepeatedly(staxDecoder);
+
+		System.out.println(MessageFormat.format(
+				"getMusicDirectory x{0}: jaxb {1} ms, stax {2} ms",
+				ITERATIONS, jaxbTime / 1000000, staxTime / 1000000));
+	}
+
+	private long decodeRepeatedly(ResponseDecoder decoder) {
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			decoder.decodeDirectory(new ByteArrayInputStream(fixture),
+					subsonicService);
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -25,10 +25,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import junit.framework.TestCase;
@@ -39,10 +43,20 @@ import org.junit.Test;
 import org.subsonic.restapi.SearchResult2;
 
 import ch.lipsch.subs4j.TestConfig;
+import ch.lipsch.subsonic4j.AlbumVisitor;
+import ch.lipsch.subsonic4j.CoalescingStatistics;
+import ch.lipsch.subsonic4j.ExecutorStatistics;
+import ch.lipsch.subsonic4j.IndexVisitor;
+import ch.lipsch.subsonic4j.SearchBatch;
+import ch.lipsch.subsonic4j.SearchBatchListener;
+import ch.lipsch.subsonic4j.SearchPaging;
+import ch.lipsch.subsonic4j.SearchSession;
+import ch.lipsch.subsonic4j.SearchSessionListener;
 import ch.lipsch.subsonic4j.StreamListener;
 import ch.lipsch.subsonic4j.SubsonicException;
 import ch.lipsch.subsonic4j.SubsonicFactory;
 import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.internal.SearchPage;
 import ch.lipsch.subsonic4j.model.Artist;
 import ch.lipsch.subsonic4j.model.ChatMessage;
 import ch.lipsch.subsonic4j.model.Directory;
@@ -184,6 +198,40 @@ public class SubsonicServiceImplTests extends TestCase implements
 		assertNotNull(musicDirectory);
 	}
 
+	@Test
+	public void testGetIndexesWithVisitor() throws SubsonicException {
+		final int[] artistCount = new int[1];
+		getIndexes(null, null, new IndexVisitor() {
+			@Override
+			public void visitLastModified(long lastModified) {
+				assertTrue(lastModified > 0);
+			}
+
+			@Override
+			public void visitIndex(String identifier) {
+				assertNotNull(identifier);
+			}
+
+			@Override
+			public void visitArtist(Artist artist) {
+				assertNotNull(artist.getId());
+				artistCount[0]++;
+			}
+		});
+
+		int expectedCount = 0;
+		for (Index index : getIndexes(null, null)) {
+			expectedCount += index.getArtists().size();
+		}
+		assertEquals(expectedCount, artistCount[0]);
+	}
+
+	@Override
+	public void getIndexes(MusicFolder musicFolder, Calendar ifModifiedSince,
+			IndexVisitor visitor) throws SubsonicException {
+		subsonicService.getIndexes(musicFolder, ifModifiedSince, visitor);
+	}
+
 	@Override
 	public ch.lipsch.subsonic4j.model.Directory getMusicDirectory(
 			MusicFolder musicFolder) throws SubsonicException {
@@ -245,6 +293,86 @@ public class SubsonicServiceImplTests extends TestCase implements
 		return subsonicService.search(query);
 	}
 
+	@Test
+	public void testSearchWithAdaptivePaging() throws SubsonicException {
+		Iterator<Song> songs = search("test", new SearchPaging(5, 100, 1000))
+				.getSongs();
+		while (songs.hasNext()) {
+			assertNotNull(songs.next());
+		}
+	}
+
+	@Override
+	public SearchResult search(String query, SearchPaging paging)
+			throws SubsonicException {
+		return subsonicService.search(query, paging);
+	}
+
+	@Test
+	public void testSearchSession() throws Exception {
+		final CountDownLatch delivered = new CountDownLatch(1);
+		SearchSession session = createSearchSession(100, new SearchPaging(10),
+				new SearchSessionListener() {
+					@Override
+					public void resultAvailable(String query,
+							SearchResult result) {
+						delivered.countDown();
+					}
+
+					@Override
+					public void searchFailed(String query,
+							SubsonicException exception) {
+						exception.printStackTrace();
+					}
+				});
+		try {
+			session.setQuery("te");
+			session.setQuery("test");
+			assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	public SearchSession createSearchSession(long debounceMillis,
+			SearchPaging paging, SearchSessionListener listener)
+			throws SubsonicException {
+		return subsonicService.createSearchSession(debounceMillis, paging,
+				listener);
+	}
+
+	@Test
+	public void testSearchBatch() throws Exception {
+		final List<String> found = new ArrayList<String>();
+		SearchBatch batch = createSearchBatch(2, new SearchPaging(10));
+		try {
+			batch.search(Arrays.asList("test", "", "TEST"),
+					new SearchBatchListener() {
+						@Override
+						public void resultAvailable(int index, String query,
+								SearchResult result) {
+							found.add(query);
+						}
+
+						@Override
+						public void searchFailed(int index, String query,
+								SubsonicException exception) {
+							exception.printStackTrace();
+						}
+					});
+		} finally {
+			batch.close();
+		}
+		assertEquals(Arrays.asList("test", "", "TEST"), found);
+	}
+
+	@Override
+	public SearchBatch createSearchBatch(int parallelism, SearchPaging paging)
+			throws SubsonicException {
+		return subsonicService.createSearchBatch(parallelism, paging);
+	}
+
 	@Override
 	public SearchResult2 search(String query, Integer artistCount,
 			Integer artistOffset, Integer albumCound, Integer albumOffset,
@@ -253,6 +381,29 @@ public class SubsonicServiceImplTests extends TestCase implements
 				albumCound, albumOffset, songCount, songOffset);
 	}
 
+	@Test
+	public void testSearchPage() throws SubsonicException {
+		assertTrue(searchPage("test", 0, 0, 0, 0, 20, 0).getAlbums()
+				.isEmpty());
+	}
+
+	@Override
+	public SearchPage searchPage(String query, int artistCount,
+			int artistOffset, int albumCount, int albumOffset, int songCount,
+			int songOffset) throws SubsonicException {
+		return subsonicService.searchPage(query, artistCount, artistOffset,
+				albumCount, albumOffset, songCount, songOffset);
+	}
+
+	@Override
+	public Future<SearchPage> prefetchSearchPage(String query,
+			int artistCount, int artistOffset, int albumCount,
+			int albumOffset, int songCount, int songOffset)
+			throws SubsonicException {
+		return subsonicService.prefetchSearchPage(query, artistCount,
+				artistOffset, albumCount, albumOffset, songCount, songOffset);
+	}
+
 	@Test
 	public void testGetPlayLists() throws SubsonicException {
 		assertNotNull(getPlayLists());
@@ -628,6 +779,25 @@ public class SubsonicServiceImplTests extends TestCase implements
 		return subsonicService.getAlbumList(albumType, size, offset);
 	}
 
+	@Test
+	public void testGetAlbumListWithVisitor() throws SubsonicException {
+		final List<Directory> albums = new ArrayList<Directory>();
+		getAlbumList(AlbumType.NEWEST, null, null, new AlbumVisitor() {
+			@Override
+			public void visitAlbum(Directory album) {
+				albums.add(album);
+			}
+		});
+		assertEquals(getAlbumList(AlbumType.NEWEST, null, null).size(),
+				albums.size());
+	}
+
+	@Override
+	public void getAlbumList(AlbumType albumType, Integer size,
+			Integer offset, AlbumVisitor visitor) throws SubsonicException {
+		subsonicService.getAlbumList(albumType, size, offset, visitor);
+	}
+
 	@Test
 	public void testGetRandomSongs() throws SubsonicException {
 		System.out.println(NEW_TEST_SYSOUT);
@@ -716,6 +886,34 @@ public class SubsonicServiceImplTests extends TestCase implements
 		return subsonicService.getStreamUrl(id);
 	}
 
+	@Test
+	public void testGetStreamDeliveryStatistics() throws Exception {
+		testGetCoverArt();
+		ExecutorStatistics statistics = getStreamDeliveryStatistics();
+		System.out.println(statistics);
+		assertTrue(statistics.getCompleted() >= 1);
+		assertEquals(0, statistics.getRejected());
+	}
+
+	@Override
+	public ExecutorStatistics getStreamDeliveryStatistics() {
+		return subsonicService.getStreamDeliveryStatistics();
+	}
+
+	@Test
+	public void testGetCoalescingStatistics() throws Exception {
+		getLicense();
+		CoalescingStatistics statistics = getCoalescingStatistics();
+		System.out.println(statistics);
+		assertTrue(statistics.getRequests() >= 1);
+		assertEquals(0, statistics.getInFlight());
+	}
+
+	@Override
+	public CoalescingStatistics getCoalescingStatistics() {
+		return subsonicService.getCoalescingStatistics();
+	}
+
 	@Test
 	public void testGetMusicDirectory() {
 		fail("TODO");
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.subsonic.restapi.Response;
+
+import ch.lipsch.subs4j.fixtures.Fixtures;
+import ch.lipsch.subsonic4j.internal.UnmarshallerPool;
+
+/**
+ * Compares the throughput of the {@link UnmarshallerPool} with a single
+ * synchronized {@link Unmarshaller} for a growing number of threads. Runs
+ * offline against a bundled getMusicDirectory response.
+ */
+public class UnmarshallerPoolTest extends TestCase {
+
+	private static final int PARSES_PER_THREAD = 200;
+
+	private JAXBContext jaxbContext;
+	private byte[] fixture;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		jaxbContext = JAXBContext.newInstance("org.subsonic.restapi");
+		fixture = Fixtures.read(Fixtures.MUSIC_DIRECTORY);
+	}
+
+	@Test
+	public void testUnmarshal() throws JAXBException {
+		UnmarshallerPool pool = new UnmarshallerPool(jaxbContext, 2);
+		Response response = toResponse(pool.unmarshal(new ByteArrayInputStream(
+				fixture)));
+		assertEquals(312, response.getDirectory().getChild().size());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testIdleLimit() throws Exception {
+		final UnmarshallerPool pool = new UnmarshallerPool(jaxbContext, 1);
+		runConcurrently(4, new Parser() {
+			@Override
+			public void parse(InputStream inputStream) throws JAXBException {
+				pool.unmarshal(inputStream);
+			}
+		});
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testContention() throws Exception {
+		final Unmarshaller shared = jaxbContext.createUnmarshaller();
+		final UnmarshallerPool pool = new UnmarshallerPool(jaxbContext,
+				Runtime.getRuntime().availableProcessors() * 2);
+
+		Parser locked = new Parser() {
+			@Override
+			public void parse(InputStream inputStream) throws JAXBException {
+				synchronized (shared) {
+					shared.unmarshal(inputStream);
+				}
+			}
+		};
+		Parser pooled = new Parser() {
+			@Override
+			public void parse(InputStream inputStream) throws JAXBException {
+				pool.unmarshal(inputStream);
+			}
+		};
+
+		// Warm up
+		runConcurrently(1, locked);
+		runConcurrently(1, pooled);
+
+		System.out.println("threads\tlocked parses/s\tpooled parses/s");
+		int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long lockedRate = runConcurrently(threads, locked);
+			long pooledRate = runConcurrently(threads, pooled);
+			System.out.println(MessageFormat.format("{0}\t{1}\t{2}",
+					threads, lockedRate, pooledRate));
+		}
+	}
+
+	/**
+	 * Parses the fixture {@link #PARSES_PER_THREAD} times on each thread.
+	 * 
+	 * @return The achieved parses per second.
+	 */
+	private long runConcurrently(int threads, final Parser parser)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong failures = new AtomicLong(0);
+
+		for (int i = 0; i < threads; i++) {
+			new Thread("Parser-" + i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < PARSES_PER_THREAD; j++) {
+							parser.parse(new ByteArrayInputStream(fixture));
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		long duration = System.nanoTime() - startTime;
+
+		assertEquals(0, failures.get());
+		return (threads * PARSES_PER_THREAD * 1000000000L)
+				/ Math.max(1, duration);
+	}
+
+	private static Response toResponse(Object unmarshalled) {
+		return (Response) ((JAXBElement<?>) unmarshalled).getValue();
+	}
+
+	private interface Parser {
+		public void parse(InputStream inputStream) throws JAXBException;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Generates complete subsonic responses from a {@link SyntheticLibrary}. The
+ * same library shape always yields the same documents, so they can serve as
+ * fixtures of benchmarks which are compared across runs.
+ * 
+ * Run {@link #main(String[])} to write a set of fixtures to a directory.
+ */
+public final class FixtureGenerator {
+
+	private static final String VERSION = "1.4.0";
+
+	private final SyntheticLibrary library;
+
+	public FixtureGenerator(SyntheticLibrary library) {
+		this.library = library;
+	}
+
+	/**
+	 * @return The response of getIndexes with all artists.
+	 */
+	public byte[] indexes() {
+		StringBuilder xml = startResponse("ok");
+		library.appendIndexes(xml, -1);
+		return finishResponse(xml);
+	}
+
+	/**
+	 * @return The response of getMusicDirectory for an artist, album or
+	 *         folder.
+	 * @throws IllegalArgumentException
+	 *             If the id does not denote a directory of the library.
+	 */
+	public byte[] directory(String id) {
+		StringBuilder xml = startResponse("ok");
+		if (!library.appendDirectory(xml, id)) {
+			throw new IllegalArgumentException("No directory: " + id);
+		}
+		return finishResponse(xml);
+	}
+
+	/**
+	 * @return The response of search2 with the same count and offset for
+	 *         artists, albums and songs.
+	 */
+	public byte[] searchResult2(String query, int count, int offset) {
+		StringBuilder xml = startResponse("ok");
+		library.appendSearchResult2(xml, query, count, offset, count, offset,
+				count, offset);
+		return finishResponse(xml);
+	}
+
+	/**
+	 * @return The response of getAlbumList with albums in library order.
+	 */
+	public byte[] albumList(int size, int offset) {
+		StringBuilder xml = startResponse("ok");
+		library.appendAlbumList(xml, "newest", size, offset,
+				new Random(0));
+		return finishResponse(xml);
+	}
+
+	/**
+	 * @return The response of getPlaylist with songs spread over the
+	 *         library.
+	 */
+	public byte[] playlist(String id, int songCount) {
+		StringBuilder xml = startResponse("ok");
+		library.appendPlaylist(xml, id, "Playlist " + id, songCount);
+		return finishResponse(xml);
+	}
+
+	/**
+	 * Writes one document of every kind into the directory: the indexes,
+	 * the first artist, album and playlist, a search and an album list.
+	 */
+	public void writeAll(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		write(new File(directory, "getIndexes.xml"), indexes());
+		write(new File(directory, "getMusicDirectory-artist.xml"),
+				directory(library.getArtistId(0)));
+		write(new File(directory, "getMusicDirectory-album.xml"),
+				directory(library.getAlbumId(0)));
+		write(new File(directory, "search2.xml"), searchResult2("a", 100, 0));
+		write(new File(directory, "getAlbumList.xml"), albumList(500, 0));
+		write(new File(directory, "getPlaylist.xml"), playlist("1", 500));
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Starts a subsonic response. The content is appended to the returned
+	 * buffer.
+	 * 
+	 * @param status
+	 *            "ok" or "failed".
+	 */
+	public static StringBuilder startResponse(String status) {
+		StringBuilder xml = new StringBuilder(1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+				.append("<subsonic-response xmlns=\"http://subsonic.org/restapi\"")
+				.append(" status=\"").append(status).append("\" version=\"")
+				.append(VERSION).append("\">");
+		return xml;
+	}
+
+	/**
+	 * Ends a response started by {@link #startResponse(String)}.
+	 * 
+	 * @return The encoded response.
+	 */
+	public static byte[] finishResponse(StringBuilder xml) {
+		xml.append("</subsonic-response>");
+		try {
+			return xml.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes fixtures of a library of the given shape.
+	 * 
+	 * @param args
+	 *            directory artists albumsPerArtist songsPerFolder
+	 *            [folderDepth [minTitleLength [unicode]]]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.out.println("Usage: FixtureGenerator directory artists "
+					+ "albumsPerArtist songsPerFolder "
+					+ "[folderDepth [minTitleLength [unicode]]]");
+			return;
+		}
+		SyntheticLibrary.Shape shape = new SyntheticLibrary.Shape();
+		shape.setArtists(Integer.parseInt(args[1]));
+		shape.setAlbumsPerArtist(Integer.parseInt(args[2]));
+		shape.setSongsPerFolder(Integer.parseInt(args[3]));
+		if (args.length > 4) {
+			shape.setFolders(Integer.parseInt(args[4]), 2);
+		}
+		if (args.length > 5) {
+			shape.setMinTitleLength(Integer.parseInt(args[5]));
+		}
+		if (args.length > 6) {
+			shape.setUnicode(Boolean.parseBoolean(args[6]));
+		}
+		new FixtureGenerator(new SyntheticLibrary(shape)).writeAll(new File(
+				args[0]));
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.internal.InternalSubsonicService;
+import ch.lipsch.subsonic4j.internal.StaxResponseDecoder;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+
+/**
+ * Checks that the {@link FixtureGenerator} creates deterministic documents
+ * which conform to subsonic-rest-api.xsd and decode to the expected model
+ * for libraries of several shapes.
+ */
+public class FixtureGeneratorTest extends TestCase {
+
+	private Validator validator;
+	private StaxResponseDecoder decoder;
+	private InternalSubsonicService service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		validator = SchemaFactory
+				.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+				.newSchema(new File("subsonic-rest-api.xsd")).newValidator();
+		decoder = new StaxResponseDecoder();
+		service = (InternalSubsonicService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { InternalSubsonicService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testDeterministic() {
+		FixtureGenerator first = new FixtureGenerator(new SyntheticLibrary(
+				createShape(true)));
+		FixtureGenerator second = new FixtureGenerator(new SyntheticLibrary(
+				createShape(true)));
+		assertTrue(Arrays.equals(first.indexes(), second.indexes()));
+		assertTrue(Arrays.equals(first.directory("3.1"),
+				second.directory("3.1")));
+		assertTrue(Arrays.equals(first.searchResult2("a", 50, 10),
+				second.searchResult2("a", 50, 10)));
+		assertTrue(Arrays.equals(first.albumList(20, 5),
+				second.albumList(20, 5)));
+		assertTrue(Arrays.equals(first.playlist("7", 30),
+				second.playlist("7", 30)));
+	}
+
+	@Test
+	public void testSchema() throws Exception {
+		validate(new SyntheticLibrary(new SyntheticLibrary.Shape()));
+		validate(new SyntheticLibrary(createShape(false)));
+		validate(new SyntheticLibrary(createShape(true)));
+	}
+
+	@Test
+	public void testDeepTree() {
+		SyntheticLibrary library = new SyntheticLibrary(createShape(false));
+		FixtureGenerator generator = new FixtureGenerator(library);
+
+		Directory album = decode(generator.directory("2.3"));
+		assertEquals(3, album.getChildDirectories().size());
+		assertTrue(album.getSongs().isEmpty());
+
+		Directory disc = decode(generator.directory(album
+				.getChildDirectories().get(2).getId()));
+		assertEquals("2.3.2", disc.getId());
+		assertEquals(3, disc.getChildDirectories().size());
+
+		Directory folder = decode(generator.directory("2.3.2.1"));
+		assertEquals(40, folder.getSongs().size());
+		assertEquals(10L * 4 * 3 * 3 * 40, library.getSongCount());
+		assertTrue(library.isSong(library
+				.getSongId(library.getSongCount() - 1)));
+	}
+
+	@Test
+	public void testLongUnicodeTitles() {
+		FixtureGenerator generator = new FixtureGenerator(new SyntheticLibrary(
+				createShape(true)));
+		Directory folder = decode(generator.directory("1.0.0.0"));
+		String title = folder.getSongs().get(0).getTitle();
+		assertTrue(title.length() >= 100);
+		assertTrue(title.endsWith("\uD83C\uDFB5"));
+	}
+
+	@Test
+	public void testLargeIndexes() {
+		SyntheticLibrary.Shape shape = new SyntheticLibrary.Shape();
+		shape.setArtists(200000);
+		byte[] indexes = new FixtureGenerator(new SyntheticLibrary(shape))
+				.indexes();
+		System.out.println("200000 artists: " + indexes.length + " bytes");
+
+		List<Index> decoded = decoder.decodeIndexes(new ByteArrayInputStream(
+				indexes), service);
+		int artists = 0;
+		for (Index index : decoded) {
+			artists += index.getArtists().size();
+		}
+		assertEquals(20, decoded.size());
+		assertEquals(200000, artists);
+	}
+
+	/**
+	 * @return A library of 10 artists with 4 albums, each with two levels of
+	 *         3 folders with 40 songs.
+	 */
+	private static SyntheticLibrary.Shape createShape(boolean unicode) {
+		SyntheticLibrary.Shape shape = new SyntheticLibrary.Shape();
+		shape.setArtists(10);
+		shape.setAlbumsPerArtist(4);
+		shape.setFolders(2, 3);
+		shape.setSongsPerFolder(40);
+		if (unicode) {
+			shape.setMinTitleLength(100);
+			shape.setUnicode(true);
+		}
+		return shape;
+	}
+
+	private void validate(SyntheticLibrary library) throws Exception {
+		FixtureGenerator generator = new FixtureGenerator(library);
+		for (byte[] document : new byte[][] { generator.indexes(),
+				generator.directory(library.getArtistId(0)),
+				generator.directory(library.getAlbumId(1)),
+				generator.searchResult2("o", 30, 0),
+				generator.albumList(30, 2), generator.playlist("1", 30) }) {
+			validator.validate(new StreamSource(new ByteArrayInputStream(
+					document)));
+		}
+	}
+
+	private Directory decode(byte[] document) {
+		return decoder.decodeDirectory(new ByteArrayInputStream(document),
+				service);
+	}
+}
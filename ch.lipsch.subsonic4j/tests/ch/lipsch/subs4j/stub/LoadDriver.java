@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs an operation on several threads for a fixed time and reports the
+ * throughput and the latency distribution of the successful operations.
+ */
+public final class LoadDriver {
+
+	/**
+	 * The operation under load, typically one or more calls of a subsonic
+	 * service.
+	 */
+	public interface Operation {
+		/**
+		 * @param thread
+		 *            The index of the calling thread.
+		 * @param iteration
+		 *            The number of operations the thread has run before.
+		 * @throws Exception
+		 *             Counted as error.
+		 */
+		public void run(int thread, int iteration) throws Exception;
+	}
+
+	private final int threads;
+	private final long durationMillis;
+
+	/**
+	 * @param threads
+	 *            The number of threads which run the operation concurrently.
+	 * @param durationMillis
+	 *            How long every thread runs the operation repeatedly.
+	 */
+	public LoadDriver(int threads, long durationMillis) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread required.");
+		}
+		this.threads = threads;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Runs the operation until the duration is over.
+	 * 
+	 * @return The measured load.
+	 */
+	public Report run(final Operation operation) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong errors = new AtomicLong(0);
+		final long[][] latencies = new long[threads][];
+		final int[] counts = new int[threads];
+		final long[] end = new long[1];
+
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			new Thread("Load-" + i) {
+				@Override
+				public void run() {
+					long[] own = new long[1024];
+					int count = 0;
+					int iteration = 0;
+					try {
+						start.await();
+						while (System.nanoTime() < end[0]) {
+							long begin = System.nanoTime();
+							try {
+								operation.run(thread, iteration++);
+								if (count == own.length) {
+									own = Arrays.copyOf(own, count * 2);
+								}
+								own[count++] = System.nanoTime() - begin;
+							} catch (Exception e) {
+								errors.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						latencies[thread] = own;
+						counts[thread] = count;
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		long begin = System.nanoTime();
+		end[0] = begin + durationMillis * 1000000L;
+		// The latch publishes end to the threads
+		start.countDown();
+		done.await();
+		long duration = System.nanoTime() - begin;
+
+		int total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+		long[] all = new long[total];
+		int offset = 0;
+		for (int i = 0; i < threads; i++) {
+			System.arraycopy(latencies[i], 0, all, offset, counts[i]);
+			offset += counts[i];
+		}
+		Arrays.sort(all);
+		return new Report(threads, all, errors.get(), duration);
+	}
+
+	/**
+	 * The result of a load run. Latencies are in nanoseconds.
+	 */
+	public static final class Report {
+		private final int threads;
+		private final long[] sortedLatencies;
+		private final long errors;
+		private final long durationNanos;
+
+		private Report(int threads, long[] sortedLatencies, long errors,
+				long durationNanos) {
+			this.threads = threads;
+			this.sortedLatencies = sortedLatencies;
+			this.errors = errors;
+			this.durationNanos = durationNanos;
+		}
+
+		/**
+		 * @return The number of successful operations.
+		 */
+		public int getOperations() {
+			return sortedLatencies.length;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return Successful operations per second.
+		 */
+		public double getThroughput() {
+			return sortedLatencies.length * 1000000000.0 / durationNanos;
+		}
+
+		/**
+		 * @param percentile
+		 *            In (0, 100].
+		 * @return The latency below or at which the given percentage of the
+		 *         successful operations completed, or 0 if there were none.
+		 */
+		public long getLatency(double percentile) {
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percentile / 100
+					* sortedLatencies.length);
+			return sortedLatencies[Math.max(rank, 1) - 1];
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format(
+					"threads={0}, operations={1}, errors={2}, "
+							+ "throughput={3,number,0.0}/s, p50={4} ms, "
+							+ "p99={5} ms, max={6} ms", threads,
+					getOperations(), errors, getThroughput(),
+					toMillis(getLatency(50)), toMillis(getLatency(99)),
+					toMillis(getLatency(100)));
+		}
+
+		private static String toMillis(long nanos) {
+			return String.format(Locale.ROOT, "%.2f", nanos / 1000000.0);
+		}
+	}
+}
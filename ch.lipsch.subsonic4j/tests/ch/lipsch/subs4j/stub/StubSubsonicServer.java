@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process subsonic server which answers every request of the client
+ * from a {@link SyntheticLibrary}. Playlists, users and chat messages are
+ * kept in memory. Latency, jitter, bandwidth and failures can be injected to
+ * reproduce the behavior of a real server under load.
+ * 
+ * The server accepts any credentials and listens on an ephemeral port of
+ * localhost. This class is thread-safe.
+ */
+public final class StubSubsonicServer {
+
+	private static final int ERROR_GENERIC = 0;
+	private static final int ERROR_MISSING_PARAMETER = 10;
+	private static final int ERROR_NOT_FOUND = 70;
+
+	private final SyntheticLibrary library;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Source of jitter, failures and random lists. Seeded so a run can be
+	 * repeated.
+	 */
+	private final Random random = new Random(42);
+
+	private volatile long latencyMillis = 0;
+	private volatile long jitterMillis = 0;
+	private volatile long bytesPerSecond = 0;
+	private volatile double errorRate = 0;
+	private volatile double disconnectRate = 0;
+	private volatile byte[] audio = createAudio(64 * 1024);
+
+	private final ConcurrentHashMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentHashMap<Integer, byte[]> coverArts = new ConcurrentHashMap<Integer, byte[]>();
+
+	/**
+	 * Mutable server state. Access must be synchronized by the server.
+	 */
+	private final Map<String, Playlist> playlists = new LinkedHashMap<String, Playlist>();
+	private final Map<String, Map<String, String>> users = new HashMap<String, Map<String, String>>();
+	private final List<String[]> chatMessages = new ArrayList<String[]>();
+	private int nextPlaylistId = 1;
+
+	/**
+	 * Creates a stopped server.
+	 * 
+	 * @param library
+	 *            The library served.
+	 * @throws IOException
+	 *             If no port could be bound.
+	 */
+	public StubSubsonicServer(SyntheticLibrary library) throws IOException {
+		this.library = library;
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/rest/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					StubSubsonicServer.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return The root url of the server, as passed to the client.
+	 */
+	public URL getUrl() {
+		try {
+			return new URL("http://localhost:" + server.getAddress().getPort()
+					+ "/");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public SyntheticLibrary getLibrary() {
+		return library;
+	}
+
+	/**
+	 * Delays every response by the latency plus a uniformly distributed
+	 * jitter.
+	 */
+	public void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+	}
+
+	/**
+	 * Limits the speed at which every response body is sent.
+	 * 
+	 * @param bytesPerSecond
+	 *            The bandwidth per response or 0 for no limit.
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @param errorRate
+	 *            The fraction of requests which are answered with a
+	 *            subsonic error instead of their response.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param disconnectRate
+	 *            The fraction of requests whose connection is closed without
+	 *            a response.
+	 */
+	public void setDisconnectRate(double disconnectRate) {
+		this.disconnectRate = disconnectRate;
+	}
+
+	/**
+	 * @param streamBytes
+	 *            The size of the body of every stream and download.
+	 */
+	public void setStreamBytes(int streamBytes) {
+		audio = createAudio(streamBytes);
+	}
+
+	/**
+	 * @return The number of requests received for the given view, e.g.
+	 *         "ping.view".
+	 */
+	public int getRequestCount(String endpoint) {
+		AtomicInteger count = requestCounts.get(endpoint);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * @return The number of requests received for all views.
+	 */
+	public int getRequestCount() {
+		int total = 0;
+		for (AtomicInteger count : requestCounts.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String endpoint = path.substring(path.lastIndexOf('/') + 1);
+		AtomicInteger count = requestCounts.get(endpoint);
+		if (count == null) {
+			requestCounts.putIfAbsent(endpoint, new AtomicInteger(0));
+			count = requestCounts.get(endpoint);
+		}
+		count.incrementAndGet();
+
+		long delay = latencyMillis;
+		if (jitterMillis > 0) {
+			delay += (long) (random.nextDouble() * jitterMillis);
+		}
+		sleep(delay);
+		if (random.nextDouble() < disconnectRate) {
+			// Closing the exchange without headers drops the connection
+			return;
+		}
+
+		Map<String, List<String>> parameters = parseQuery(exchange
+				.getRequestURI().getRawQuery());
+		try {
+			if (random.nextDouble() < errorRate) {
+				throw new StubError(ERROR_GENERIC, "Injected error");
+			}
+			if (endpoint.equals("stream.view")
+					|| endpoint.equals("download.view")) {
+				if (!library.isSong(getRequired(parameters, "id"))) {
+					throw new StubError(ERROR_NOT_FOUND, "Song not found");
+				}
+				send(exchange, "audio/mpeg", audio);
+			} else if (endpoint.equals("getCoverArt.view")) {
+				if (!library.isAlbum(getRequired(parameters, "id"))) {
+					throw new StubError(ERROR_NOT_FOUND, "Cover art not found");
+				}
+				send(exchange, "image/png",
+						getCoverArt(getInt(parameters, "size", 300)));
+			} else {
+				StringBuilder xml = FixtureGenerator.startResponse("ok");
+				respond(endpoint, parameters, xml);
+				sendXml(exchange, xml);
+			}
+		} catch (StubError e) {
+			StringBuilder xml = FixtureGenerator.startResponse("failed");
+			xml.append("<error code=\"").append(e.code)
+					.append("\" message=\"");
+			SyntheticLibrary.appendEscaped(xml, e.getMessage());
+			xml.append("\"/>");
+			sendXml(exchange, xml);
+		}
+	}
+
+	/**
+	 * Appends the content of the response to the given view.
+	 */
+	private void respond(String endpoint, Map<String, List<String>> parameters,
+			StringBuilder xml) throws StubError {
+		if (endpoint.equals("ping.view")) {
+			// Empty response
+		} else if (endpoint.equals("getLicense.view")) {
+			xml.append("<license valid=\"true\" email=\"stub@localhost\"")
+					.append(" key=\"stub\" date=\"2011-01-01T00:00:00\"/>");
+		} else if (endpoint.equals("getMusicFolders.view")) {
+			xml.append("<musicFolders><musicFolder id=\"")
+					.append(SyntheticLibrary.MUSIC_FOLDER_ID)
+					.append("\" name=\"Music\"/></musicFolders>");
+		} else if (endpoint.equals("getNowPlaying.view")) {
+			StringBuilder song = new StringBuilder();
+			library.appendSong(song, "entry", 0);
+			song.setLength(song.length() - 2);
+			xml.append("<nowPlaying>").append(song)
+					.append(" username=\"stub\" minutesAgo=\"1\"")
+					.append(" playerId=\"1\" playerName=\"Stub\"/>")
+					.append("</nowPlaying>");
+		} else if (endpoint.equals("getIndexes.view")) {
+			library.appendIndexes(xml,
+					getLong(parameters, "ifModifiedSince", -1));
+		} else if (endpoint.equals("getMusicDirectory.view")) {
+			if (!library.appendDirectory(xml, getRequired(parameters, "id"))) {
+				throw new StubError(ERROR_NOT_FOUND, "Directory not found");
+			}
+		} else if (endpoint.equals("search2.view")) {
+			library.appendSearchResult2(xml, getRequired(parameters, "query"),
+					getInt(parameters, "artistCount", 20),
+					getInt(parameters, "artistOffset", 0),
+					getInt(parameters, "albumCount", 20),
+					getInt(parameters, "albumOffset", 0),
+					getInt(parameters, "songCount", 20),
+					getInt(parameters, "songOffset", 0));
+		} else if (endpoint.equals("getAlbumList.view")) {
+			library.appendAlbumList(xml, getRequired(parameters, "type"),
+					getInt(parameters, "size", 10),
+					getInt(parameters, "offset", 0), random);
+		} else if (endpoint.equals("getRandomSongs.view")) {
+			library.appendRandomSongs(xml, getInt(parameters, "size", 10),
+					random);
+		} else if (endpoint.equals("getLyrics.view")) {
+			xml.append("<lyrics artist=\"");
+			SyntheticLibrary.appendEscaped(xml, get(parameters, "artist", ""));
+			xml.append("\" title=\"");
+			SyntheticLibrary.appendEscaped(xml, get(parameters, "title", ""));
+			xml.append("\">La la la</lyrics>");
+		} else {
+			synchronized (this) {
+				respondWithState(endpoint, parameters, xml);
+			}
+		}
+	}
+
+	/**
+	 * Appends the content of the responses which read or change the state
+	 * of the server. Must be called synchronized by the server.
+	 */
+	private void respondWithState(String endpoint,
+			Map<String, List<String>> parameters, StringBuilder xml)
+			throws StubError {
+		if (endpoint.equals("getPlaylists.view")) {
+			xml.append("<playlists>");
+			for (Map.Entry<String, Playlist> playlist : playlists.entrySet()) {
+				xml.append("<playlist id=\"").append(playlist.getKey())
+						.append("\" name=\"");
+				SyntheticLibrary.appendEscaped(xml, playlist.getValue().name);
+				xml.append("\"/>");
+			}
+			xml.append("</playlists>");
+		} else if (endpoint.equals("getPlaylist.view")) {
+			String id = getRequired(parameters, "id");
+			Playlist playlist = getPlaylist(id);
+			xml.append("<playlist id=\"").append(id).append("\" name=\"");
+			SyntheticLibrary.appendEscaped(xml, playlist.name);
+			xml.append("\">");
+			for (String songId : playlist.songIds) {
+				library.appendSong(xml, "entry", songId);
+			}
+			xml.append("</playlist>");
+		} else if (endpoint.equals("createPlaylist.view")) {
+			List<String> songIds = parameters.get("songId");
+			if (songIds == null) {
+				songIds = Collections.emptyList();
+			}
+			for (String songId : songIds) {
+				if (!library.isSong(songId)) {
+					throw new StubError(ERROR_NOT_FOUND, "Song not found");
+				}
+			}
+			String id = get(parameters, "playlistId", null);
+			if (id == null) {
+				playlists.put(Integer.toString(nextPlaylistId++),
+						new Playlist(getRequired(parameters, "name"), songIds));
+			} else {
+				getPlaylist(id).songIds = songIds;
+			}
+		} else if (endpoint.equals("deletePlaylist.view")) {
+			String id = getRequired(parameters, "id");
+			getPlaylist(id);
+			playlists.remove(id);
+		} else if (endpoint.equals("getUser.view")) {
+			String username = getRequired(parameters, "username");
+			Map<String, String> user = getUser(username);
+			xml.append("<user username=\"");
+			SyntheticLibrary.appendEscaped(xml, username);
+			xml.append('"');
+			for (String role : new String[] { "adminRole", "settingsRole",
+					"downloadRole", "uploadRole", "playlistRole",
+					"coverArtRole", "commentRole", "podcastRole",
+					"streamRole", "jukeboxRole" }) {
+				xml.append(' ').append(role).append("=\"")
+						.append(Boolean.parseBoolean(user.get(role)))
+						.append('"');
+			}
+			xml.append("/>");
+		} else if (endpoint.equals("createUser.view")) {
+			Map<String, String> user = new HashMap<String, String>();
+			for (Map.Entry<String, List<String>> parameter : parameters
+					.entrySet()) {
+				user.put(parameter.getKey(), parameter.getValue().get(0));
+			}
+			getRequired(parameters, "password");
+			users.put(getRequired(parameters, "username"), user);
+		} else if (endpoint.equals("deleteUser.view")) {
+			String username = getRequired(parameters, "username");
+			getUser(username);
+			users.remove(username);
+		} else if (endpoint.equals("changePassword.view")) {
+			getUser(getRequired(parameters, "username")).put("password",
+					getRequired(parameters, "password"));
+		} else if (endpoint.equals("getChatMessages.view")) {
+			long since = getLong(parameters, "since", 0);
+			xml.append("<chatMessages>");
+			for (String[] message : chatMessages) {
+				if (Long.parseLong(message[1]) > since) {
+					xml.append("<chatMessage username=\"");
+					SyntheticLibrary.appendEscaped(xml, message[0]);
+					xml.append("\" time=\"").append(message[1])
+							.append("\" message=\"");
+					SyntheticLibrary.appendEscaped(xml, message[2]);
+					xml.append("\"/>");
+				}
+			}
+			xml.append("</chatMessages>");
+		} else if (endpoint.equals("addChatMessage.view")) {
+			chatMessages.add(new String[] { get(parameters, "u", "stub"),
+					Long.toString(System.currentTimeMillis()),
+					getRequired(parameters, "message") });
+		} else {
+			throw new StubError(ERROR_GENERIC, "Unknown view: " + endpoint);
+		}
+	}
+
+	private Playlist getPlaylist(String id) throws StubError {
+		Playlist playlist = playlists.get(id);
+		if (playlist == null) {
+			throw new StubError(ERROR_NOT_FOUND, "Playlist not found");
+		}
+		return playlist;
+	}
+
+	private Map<String, String> getUser(String username) throws StubError {
+		Map<String, String> user = users.get(username);
+		if (user == null) {
+			throw new StubError(ERROR_NOT_FOUND, "User not found");
+		}
+		return user;
+	}
+
+	private void sendXml(HttpExchange exchange, StringBuilder xml)
+			throws IOException {
+		send(exchange, "text/xml; charset=utf-8",
+				FixtureGenerator.finishResponse(xml));
+	}
+
+	/**
+	 * Sends the body in chunks which are paced to the bandwidth.
+	 */
+	private void send(HttpExchange exchange, String contentType, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		long bandwidth = bytesPerSecond;
+		if (bandwidth <= 0) {
+			out.write(body);
+		} else {
+			int chunk = (int) Math.max(1024, bandwidth / 20);
+			for (int offset = 0; offset < body.length; offset += chunk) {
+				int length = Math.min(chunk, body.length - offset);
+				out.write(body, offset, length);
+				out.flush();
+				sleep(length * 1000L / bandwidth);
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * @return A png image of the given size. Images are created once per
+	 *         size.
+	 */
+	private byte[] getCoverArt(int size) throws IOException {
+		byte[] coverArt = coverArts.get(size);
+		if (coverArt == null) {
+			BufferedImage image = new BufferedImage(size, size,
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			graphics.setColor(Color.DARK_GRAY);
+			graphics.fillRect(0, 0, size, size);
+			graphics.setColor(Color.ORANGE);
+			graphics.fillOval(size / 4, size / 4, size / 2, size / 2);
+			graphics.dispose();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(image, "png", out);
+			coverArt = out.toByteArray();
+			coverArts.put(size, coverArt);
+		}
+		return coverArt;
+	}
+
+	private static byte[] createAudio(int size) {
+		byte[] audio = new byte[size];
+		new Random(size).nextBytes(audio);
+		return audio;
+	}
+
+	private static Map<String, List<String>> parseQuery(String query)
+			throws UnsupportedEncodingException {
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				String name = URLDecoder.decode(pair.substring(0, separator),
+						"UTF-8");
+				List<String> values = parameters.get(name);
+				if (values == null) {
+					values = new ArrayList<String>();
+					parameters.put(name, values);
+				}
+				values.add(URLDecoder.decode(pair.substring(separator + 1),
+						"UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	private static String get(Map<String, List<String>> parameters,
+			String name, String defaultValue) {
+		List<String> values = parameters.get(name);
+		return values == null ? defaultValue : values.get(0);
+	}
+
+	private static String getRequired(Map<String, List<String>> parameters,
+			String name) throws StubError {
+		String value = get(parameters, name, null);
+		if (value == null) {
+			throw new StubError(ERROR_MISSING_PARAMETER,
+					"Required parameter is missing: " + name);
+		}
+		return value;
+	}
+
+	private static int getInt(Map<String, List<String>> parameters,
+			String name, int defaultValue) throws StubError {
+		return (int) getLong(parameters, name, defaultValue);
+	}
+
+	private static long getLong(Map<String, List<String>> parameters,
+			String name, long defaultValue) throws StubError {
+		String value = get(parameters, name, null);
+		try {
+			return value == null ? defaultValue : Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new StubError(ERROR_GENERIC, "Not a number: " + name);
+		}
+	}
+
+	private static void sleep(long millis) {
+		if (millis > 0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static final class Playlist {
+		private final String name;
+		private List<String> songIds;
+
+		private Playlist(String name, List<String> songIds) {
+			this.name = name;
+			this.songIds = songIds;
+		}
+	}
+
+	/**
+	 * A failed request, answered with a subsonic error.
+	 */
+	private static final class StubError extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final int code;
+
+		private StubError(int code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.lipsch.subsonic4j.CredentialsProvider;
+import ch.lipsch.subsonic4j.ServiceSettings;
+import ch.lipsch.subsonic4j.ServiceSettings.ResponseDecoding;
+import ch.lipsch.subsonic4j.StreamListener;
+import ch.lipsch.subsonic4j.SubsonicException;
+import ch.lipsch.subsonic4j.SubsonicService.AlbumType;
+import ch.lipsch.subsonic4j.internal.SubsonicServiceImpl;
+import ch.lipsch.subsonic4j.model.Directory;
+import ch.lipsch.subsonic4j.model.Index;
+import ch.lipsch.subsonic4j.model.Playlist;
+import ch.lipsch.subsonic4j.model.Song;
+
+/**
+ * Runs the client against the {@link StubSubsonicServer} and drives it with
+ * the {@link LoadDriver}. Runs offline.
+ */
+public class StubSubsonicServerTest extends TestCase {
+
+	private StubSubsonicServer server;
+	private SubsonicServiceImpl service;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		server = new StubSubsonicServer(new SyntheticLibrary(50, 4, 10));
+		server.start();
+		ServiceSettings settings = new ServiceSettings();
+		settings.setResponseDecoding(ResponseDecoding.STAX);
+		settings.setMaxConnectionsPerHost(8);
+		service = new SubsonicServiceImpl(server.getUrl(), false,
+				new CredentialsProvider() {
+					@Override
+					public String getUserName() {
+						return "stub";
+					}
+
+					@Override
+					public String getPassword() {
+						return "stub";
+					}
+				}, settings);
+	}
+
+	@Override
+	@After
+	public void tearDown() {
+		service.disposeService();
+		server.stop();
+	}
+
+	@Test
+	public void testBrowse() {
+		List<Index> indexes = service.getIndexes(null, null);
+		int artists = 0;
+		for (Index index : indexes) {
+			artists += index.getArtists().size();
+		}
+		assertEquals(50, artists);
+
+		Directory artist = service.getMusicDirectory(indexes.get(0)
+				.getArtists().get(0));
+		assertEquals(4, artist.getChildDirectories().size());
+		Directory album = artist.getChildDirectories().get(1);
+		assertEquals(10, album.getSongs().size());
+
+		assertTrue(service.search("song 3").getSongs().hasNext());
+		assertEquals(5, service.getAlbumList(AlbumType.NEWEST, 5, 0).size());
+	}
+
+	@Test
+	public void testResponses() {
+		service.ping();
+		assertNotNull(service.getLicense());
+		assertEquals(1, service.getMusicFolders().size());
+		assertEquals(1, service.getNowPlaying().size());
+		assertEquals(7, service.getRandomSongs(7, null, null, null, null)
+				.size());
+		assertEquals("La la la", service.getLyrics("Kaka Band", "Song 1"));
+
+		service.addChatMessage("Hello");
+		assertEquals("Hello", service.getChatMessages(null).get(0)
+				.getMessage());
+
+		service.createUser("guest", "secret", null, null, null, Boolean.TRUE,
+				null, null, null, null, null, null, null);
+		assertEquals("guest", service.getUser("guest").getUsername());
+		service.deleteUser("guest");
+		try {
+			service.getUser("guest");
+			fail("A deleted user must not be found.");
+		} catch (SubsonicException e) {
+			// Expected
+		}
+
+		Song song = service.getMusicDirectory("0.0").getSongs().get(0);
+		Playlist playlist = service.createPlaylist("Stub",
+				Collections.singletonList(song));
+		assertEquals(1, playlist.getSongs().size());
+		playlist.delete();
+		assertTrue(service.getPlayLists().isEmpty());
+	}
+
+	@Test
+	public void testSchema() throws Exception {
+		Validator validator = SchemaFactory
+				.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+				.newSchema(new File("subsonic-rest-api.xsd")).newValidator();
+		String[] requests = { "ping.view", "getLicense.view",
+				"getMusicFolders.view", "getNowPlaying.view",
+				"getIndexes.view", "getMusicDirectory.view?id=3",
+				"getMusicDirectory.view?id=3.1",
+				"search2.view?query=a&songCount=5", "getPlaylists.view",
+				"getUser.view?username=nobody",
+				"getAlbumList.view?type=random", "getRandomSongs.view",
+				"getChatMessages.view", "getLyrics.view?artist=a&title=b" };
+		for (String request : requests) {
+			URL url = new URL(server.getUrl(), "rest/" + request);
+			InputStream in = url.openStream();
+			try {
+				validator.validate(new StreamSource(in));
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		server.setStreamBytes(100000);
+		assertEquals(100000, receive("stream.view", "0.0.0"));
+		assertEquals(100000, receive("download.view", "0.0.0"));
+		assertTrue(receive("getCoverArt.view", "0.0") > 0);
+		assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void testInjectedFailures() {
+		server.setErrorRate(1);
+		try {
+			service.getMusicDirectory("1");
+			fail("An injected error must raise an exception.");
+		} catch (SubsonicException e) {
+			assertEquals("Injected error", e.getMessage());
+		}
+
+		server.setErrorRate(0);
+		server.setDisconnectRate(1);
+		try {
+			service.getMusicDirectory("1");
+			fail("A dropped connection must raise an exception.");
+		} catch (SubsonicException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		server.setLatency(5, 10);
+		server.setBandwidth(1000000);
+		final int artists = server.getLibrary().getArtistCount();
+		final Random random = new Random(1);
+		LoadDriver.Report report = new LoadDriver(8, 2000)
+				.run(new LoadDriver.Operation() {
+					@Override
+					public void run(int thread, int iteration) {
+						service.getMusicDirectory(Integer.toString(random
+								.nextInt(artists)));
+					}
+				});
+		System.out.println(report);
+
+		assertEquals(0, report.getErrors());
+		assertTrue(report.getOperations() > 0);
+		assertTrue(report.getLatency(50) >= 5000000);
+		assertTrue(report.getLatency(99) >= report.getLatency(50));
+		// Concurrent requests of the same artist are coalesced
+		assertEquals(report.getOperations(),
+				server.getRequestCount("getMusicDirectory.view")
+						+ service.getCoalescingStatistics().getCoalesced());
+	}
+
+	/**
+	 * Requests a binary response and counts its bytes.
+	 */
+	private long receive(String endpoint, String id) throws Exception {
+		final AtomicLong bytes = new AtomicLong(0);
+		final CountDownLatch received = new CountDownLatch(1);
+		StreamListener listener = new StreamListener() {
+			@Override
+			public void receivedStream(InputStream inputStream) {
+				try {
+					byte[] buffer = new byte[8192];
+					int read = inputStream.read(buffer);
+					while (read != -1) {
+						bytes.addAndGet(read);
+						read = inputStream.read(buffer);
+					}
+					inputStream.close();
+				} catch (IOException e) {
+					bytes.set(-1);
+				} finally {
+					received.countDown();
+				}
+			}
+		};
+		if (endpoint.equals("stream.view")) {
+			service.stream(id, null, listener);
+		} else if (endpoint.equals("download.view")) {
+			service.download(id, listener);
+		} else {
+			service.getCoverArt(id, 64, listener);
+		}
+		assertTrue(received.await(10, TimeUnit.SECONDS));
+		return bytes.get();
+	}
+}
@@ -0,0 +1,628 @@
+/*
+ * Copyright (C) 2011 Erwin Betschart
+ * 
+ * This file is part of Subsonic4J.
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.subs4j.stub;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A deterministic music library of artists, albums and songs which is
+ * computed from the ids instead of being stored, so it can be arbitrarily
+ * large. The id of an entry is the path of indices to it: "3" is the fourth
+ * artist, "3.1" its second album and "3.1.7" the eighth song of that album.
+ * Albums may contain further folder levels, e.g. discs, before the songs.
+ * 
+ * The library renders its content as the elements of subsonic responses
+ * according to subsonic-rest-api.xsd.
+ * 
+ * This class is thread-safe.
+ */
+public final class SyntheticLibrary {
+
+	/**
+	 * The id of the only music folder.
+	 */
+	public static final int MUSIC_FOLDER_ID = 0;
+
+	private static final String[] ASCII_SYLLABLES = { "ka", "lo", "mi",
+			"ra", "su", "te", "vo", "ne", "di", "ba", "po", "gu", "ze", "fa",
+			"ho", "ji", "wy", "qu", "xe", "ol" };
+
+	/**
+	 * Syllables with characters of several scripts. Like the ascii
+	 * syllables, every one starts with a different character.
+	 */
+	private static final String[] UNICODE_SYLLABLES = { "\u00E4n", "\u00F6l",
+			"\u00FCr", "\u00E9t", "\u00F1a", "\u00F8y", "\u00DFe", "\u4E2D",
+			"\u65E5", "\u97F3", "\u697D", "\u0436\u0430", "\u0449\u0438",
+			"\u03BB\u03B1", "\u03C9\u03BF", "\u00E7e", "\u0142u", "\u011Fi",
+			"\u30A2", "\u044B\u0439" };
+
+	/**
+	 * A character outside the basic multilingual plane, appended to titles
+	 * of unicode libraries.
+	 */
+	private static final String MUSICAL_NOTE = "\uD83C\uDFB5";
+
+	private static final String[] GENRES = { "Rock", "Pop", "Jazz",
+			"Classical", "Electronic", "Hip-Hop", "Folk", "Blues" };
+
+	/**
+	 * The shape of a library. The defaults describe a small library of
+	 * artists with albums of songs and short ascii titles.
+	 */
+	public static final class Shape {
+		private int artists = 100;
+		private int albumsPerArtist = 10;
+		private int folderDepth = 0;
+		private int foldersPerLevel = 2;
+		private int songsPerFolder = 12;
+		private int minTitleLength = 0;
+		private boolean unicode = false;
+
+		public void setArtists(int artists) {
+			this.artists = artists;
+		}
+
+		public void setAlbumsPerArtist(int albumsPerArtist) {
+			this.albumsPerArtist = albumsPerArtist;
+		}
+
+		/**
+		 * @param folderDepth
+		 *            The number of folder levels between an album and its
+		 *            songs. 0 puts the songs directly into the albums.
+		 * @param foldersPerLevel
+		 *            The number of subfolders of every folder.
+		 */
+		public void setFolders(int folderDepth, int foldersPerLevel) {
+			this.folderDepth = folderDepth;
+			this.foldersPerLevel = foldersPerLevel;
+		}
+
+		/**
+		 * @param songsPerFolder
+		 *            The number of songs of every album or, if there are
+		 *            folder levels, of every folder of the deepest level.
+		 */
+		public void setSongsPerFolder(int songsPerFolder) {
+			this.songsPerFolder = songsPerFolder;
+		}
+
+		/**
+		 * @param minTitleLength
+		 *            Album and song titles are padded with words to at least
+		 *            this length.
+		 */
+		public void setMinTitleLength(int minTitleLength) {
+			this.minTitleLength = minTitleLength;
+		}
+
+		/**
+		 * @param unicode
+		 *            True to use names of several scripts and characters
+		 *            outside the basic multilingual plane.
+		 */
+		public void setUnicode(boolean unicode) {
+			this.unicode = unicode;
+		}
+	}
+
+	/**
+	 * The number of entries per level: artists, albums, the folder levels
+	 * and songs. A path as long as this array denotes a song.
+	 */
+	private final int[] widths;
+	private final int minTitleLength;
+	private final boolean unicode;
+	private final String[] syllables;
+
+	/**
+	 * The indices of {@link #syllables} sorted by the index letter of the
+	 * artists starting with them.
+	 */
+	private final Integer[] indexOrder;
+	private final long lastModified;
+
+	/**
+	 * Creates a library of artists with albums of songs.
+	 */
+	public SyntheticLibrary(int artists, int albumsPerArtist,
+			int songsPerAlbum) {
+		this(createShape(artists, albumsPerArtist, songsPerAlbum));
+	}
+
+	public SyntheticLibrary(Shape shape) {
+		if (shape.artists < 1 || shape.albumsPerArtist < 1
+				|| shape.songsPerFolder < 1 || shape.folderDepth < 0
+				|| (shape.folderDepth > 0 && shape.foldersPerLevel < 1)) {
+			throw new IllegalArgumentException(
+					"A library needs at least one artist, album and song.");
+		}
+		widths = new int[3 + shape.folderDepth];
+		widths[0] = shape.artists;
+		widths[1] = shape.albumsPerArtist;
+		for (int level = 2; level < widths.length - 1; level++) {
+			widths[level] = shape.foldersPerLevel;
+		}
+		widths[widths.length - 1] = shape.songsPerFolder;
+		minTitleLength = shape.minTitleLength;
+		unicode = shape.unicode;
+		syllables = unicode ? UNICODE_SYLLABLES : ASCII_SYLLABLES;
+
+		indexOrder = new Integer[syllables.length];
+		for (int i = 0; i < indexOrder.length; i++) {
+			indexOrder[i] = i;
+		}
+		Arrays.sort(indexOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return getIndexLetter(first) - getIndexLetter(second);
+			}
+		});
+		// Fixed, so the library looks the same in every run
+		lastModified = 1300000000000L;
+	}
+
+	private static Shape createShape(int artists, int albumsPerArtist,
+			int songsPerAlbum) {
+		Shape shape = new Shape();
+		shape.setArtists(artists);
+		shape.setAlbumsPerArtist(albumsPerArtist);
+		shape.setSongsPerFolder(songsPerAlbum);
+		return shape;
+	}
+
+	public int getArtistCount() {
+		return widths[0];
+	}
+
+	public int getAlbumCount() {
+		return widths[0] * widths[1];
+	}
+
+	public long getSongCount() {
+		long songs = 1;
+		for (int width : widths) {
+			songs *= width;
+		}
+		return songs;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return The id of the artist with the given index in
+	 *         [0, {@link #getArtistCount()}).
+	 */
+	public String getArtistId(int artist) {
+		return Integer.toString(artist);
+	}
+
+	/**
+	 * @return The id of the album with the given index in
+	 *         [0, {@link #getAlbumCount()}).
+	 */
+	public String getAlbumId(int album) {
+		return (album / widths[1]) + "." + (album % widths[1]);
+	}
+
+	/**
+	 * @return The id of the song with the given index in
+	 *         [0, {@link #getSongCount()}).
+	 */
+	public String getSongId(long song) {
+		return toId(getSongPath(song), widths.length);
+	}
+
+	/**
+	 * @return True if the id denotes a song of this library.
+	 */
+	public boolean isSong(String id) {
+		int[] path = parse(id);
+		return path != null && path.length == widths.length;
+	}
+
+	/**
+	 * @return True if the id denotes an album of this library.
+	 */
+	public boolean isAlbum(String id) {
+		int[] path = parse(id);
+		return path != null && path.length == 2;
+	}
+
+	/**
+	 * Appends the indexes of all artists, grouped by their first letter. The
+	 * indexes are empty if the library has not been modified since the
+	 * given time.
+	 * 
+	 * @param ifModifiedSince
+	 *            The time of the last known modification or -1.
+	 */
+	public void appendIndexes(StringBuilder xml, long ifModifiedSince) {
+		xml.append("<indexes lastModified=\"").append(lastModified)
+				.append("\">");
+		if (ifModifiedSince < lastModified) {
+			// The first syllable of an artist, and so its letter, is
+			// determined by its index modulo the number of syllables.
+			for (int syllable : indexOrder) {
+				if (syllable >= widths[0]) {
+					continue;
+				}
+				xml.append("<index name=\"").append(getIndexLetter(syllable))
+						.append("\">");
+				for (int artist = syllable; artist < widths[0];
+						artist += syllables.length) {
+					xml.append("<artist id=\"").append(artist)
+							.append("\" name=\"");
+					appendEscaped(xml, getArtistName(artist));
+					xml.append("\"/>");
+				}
+				xml.append("</index>");
+			}
+		}
+		xml.append("</indexes>");
+	}
+
+	/**
+	 * Appends the directory of an artist, album or folder.
+	 * 
+	 * @return False if the id does not denote a directory of this library.
+	 */
+	public boolean appendDirectory(StringBuilder xml, String id) {
+		int[] path = parse(id);
+		if (path == null || path.length == widths.length) {
+			return false;
+		}
+		xml.append("<directory id=\"").append(id).append("\" name=\"");
+		appendEscaped(xml, getName(path, path.length));
+		xml.append('"');
+		if (path.length > 1) {
+			xml.append(" parent=\"").append(toId(path, path.length - 1))
+					.append('"');
+		}
+		xml.append('>');
+
+		int[] child = Arrays.copyOf(path, path.length + 1);
+		for (int i = 0; i < widths[path.length]; i++) {
+			child[path.length] = i;
+			if (child.length == widths.length) {
+				appendSong(xml, "child", child);
+			} else {
+				appendFolder(xml, "child", child);
+			}
+		}
+		xml.append("</directory>");
+		return true;
+	}
+
+	/**
+	 * Appends the artists, albums and songs whose name contains the query,
+	 * ignoring case, with separate paging per type. Like the Subsonic server,
+	 * albums and songs also match on the name of their artist.
+	 */
+	public void appendSearchResult2(StringBuilder xml, String query,
+			int artistCount, int artistOffset, int albumCount,
+			int albumOffset, int songCount, int songOffset) {
+		String lowerQuery = query.toLowerCase();
+		xml.append("<searchResult2>");
+		int skipped = 0;
+		int found = 0;
+		for (int artist = 0; artist < widths[0] && found < artistCount;
+				artist++) {
+			String name = getArtistName(artist);
+			if (name.toLowerCase().contains(lowerQuery)
+					&& skipped++ >= artistOffset) {
+				xml.append("<artist id=\"").append(artist).append("\" name=\"");
+				appendEscaped(xml, name);
+				xml.append("\"/>");
+				found++;
+			}
+		}
+
+		skipped = 0;
+		found = 0;
+		int[] album = new int[2];
+		for (int i = 0; i < getAlbumCount() && found < albumCount; i++) {
+			album[0] = i / widths[1];
+			album[1] = i % widths[1];
+			if (matches(album, lowerQuery) && skipped++ >= albumOffset) {
+				appendFolder(xml, "album", album);
+				found++;
+			}
+		}
+
+		skipped = 0;
+		found = 0;
+		for (long i = 0; i < getSongCount() && found < songCount; i++) {
+			int[] song = getSongPath(i);
+			if (matches(song, lowerQuery) && skipped++ >= songOffset) {
+				appendSong(xml, "song", song);
+				found++;
+			}
+		}
+		xml.append("</searchResult2>");
+	}
+
+	/**
+	 * @return True if the name of the album or song, or of its artist,
+	 *         contains the query.
+	 */
+	private boolean matches(int[] path, String lowerQuery) {
+		return getName(path, path.length).toLowerCase().contains(lowerQuery)
+				|| getArtistName(path[0]).toLowerCase().contains(lowerQuery);
+	}
+
+	/**
+	 * Appends a page of albums. Random lists use the given random, all other
+	 * types list the albums in library order.
+	 */
+	public void appendAlbumList(StringBuilder xml, String type, int size,
+			int offset, Random random) {
+		xml.append("<albumList>");
+		int[] path = new int[2];
+		for (int i = 0; i < size; i++) {
+			int album;
+			if ("random".equals(type)) {
+				album = random.nextInt(getAlbumCount());
+			} else if (offset + i < getAlbumCount()) {
+				album = offset + i;
+			} else {
+				break;
+			}
+			path[0] = album / widths[1];
+			path[1] = album % widths[1];
+			appendFolder(xml, "album", path);
+		}
+		xml.append("</albumList>");
+	}
+
+	/**
+	 * Appends randomly chosen songs.
+	 */
+	public void appendRandomSongs(StringBuilder xml, int size, Random random) {
+		xml.append("<randomSongs>");
+		for (int i = 0; i < size; i++) {
+			appendSong(xml, "song",
+					(long) (random.nextDouble() * getSongCount()));
+		}
+		xml.append("</randomSongs>");
+	}
+
+	/**
+	 * Appends a playlist of songs spread over the library. The same id
+	 * always yields the same songs.
+	 */
+	public void appendPlaylist(StringBuilder xml, String id, String name,
+			int songCount) {
+		xml.append("<playlist id=\"");
+		appendEscaped(xml, id);
+		xml.append("\" name=\"");
+		appendEscaped(xml, name);
+		xml.append("\">");
+		long songs = getSongCount();
+		long song = Math.abs((long) id.hashCode()) % songs;
+		for (int i = 0; i < songCount; i++) {
+			appendSong(xml, "entry", song);
+			// A prime step visits different albums and artists
+			song = (song + 7919) % songs;
+		}
+		xml.append("</playlist>");
+	}
+
+	/**
+	 * Appends the song with the given index as element with the given name.
+	 */
+	public void appendSong(StringBuilder xml, String element, long song) {
+		appendSong(xml, element, getSongPath(song));
+	}
+
+	/**
+	 * Appends the song with the given id as element with the given name.
+	 * 
+	 * @return False if the id does not denote a song of this library.
+	 */
+	public boolean appendSong(StringBuilder xml, String element, String id) {
+		int[] path = parse(id);
+		if (path == null || path.length != widths.length) {
+			return false;
+		}
+		appendSong(xml, element, path);
+		return true;
+	}
+
+	/**
+	 * Appends an album or a folder of an album.
+	 */
+	private void appendFolder(StringBuilder xml, String element, int[] path) {
+		xml.append('<').append(element).append(" id=\"")
+				.append(toId(path, path.length)).append("\" parent=\"")
+				.append(toId(path, path.length - 1))
+				.append("\" isDir=\"true\" title=\"");
+		appendEscaped(xml, getName(path, path.length));
+		xml.append("\" artist=\"");
+		appendEscaped(xml, getArtistName(path[0]));
+		xml.append("\" coverArt=\"").append(path[0]).append('.')
+				.append(path[1]).append("\"/>");
+	}
+
+	private void appendSong(StringBuilder xml, String element, int[] path) {
+		int artist = path[0];
+		int album = path[1];
+		int song = path[path.length - 1];
+		xml.append('<').append(element).append(" id=\"")
+				.append(toId(path, path.length)).append("\" parent=\"")
+				.append(toId(path, path.length - 1))
+				.append("\" isDir=\"false\" title=\"");
+		appendEscaped(xml, getName(path, path.length));
+		xml.append("\" album=\"");
+		appendEscaped(xml, getName(path, 2));
+		xml.append("\" artist=\"");
+		appendEscaped(xml, getArtistName(artist));
+		xml.append("\" track=\"").append(song + 1).append("\" year=\"")
+				.append(1960 + (artist + album) % 50).append("\" genre=\"")
+				.append(GENRES[(artist + album) % GENRES.length])
+				.append("\" coverArt=\"").append(artist).append('.')
+				.append(album).append("\" size=\"")
+				.append(3000000 + (song * 7919L) % 5000000)
+				.append("\" contentType=\"audio/mpeg\" suffix=\"mp3\"")
+				.append(" duration=\"").append(120 + (song * 31) % 300)
+				.append("\" bitRate=\"192\" path=\"");
+		for (int length = 1; length <= path.length; length++) {
+			appendEscaped(xml, getName(path, length));
+			xml.append(length < path.length ? "/" : ".mp3");
+		}
+		xml.append("\"/>");
+	}
+
+	/**
+	 * @return A pronounceable name, different for every artist. Its first
+	 *         syllable is determined by the index modulo the number of
+	 *         syllables.
+	 */
+	public String getArtistName(int artist) {
+		StringBuilder name = new StringBuilder();
+		int rest = artist;
+		do {
+			name.append(syllables[rest % syllables.length]);
+			rest /= syllables.length;
+		} while (rest > 0);
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.append(" Band").toString();
+	}
+
+	/**
+	 * @return The letter of the index of the artists starting with the
+	 *         given syllable.
+	 */
+	private char getIndexLetter(int syllable) {
+		return Character.toUpperCase(syllables[syllable].charAt(0));
+	}
+
+	/**
+	 * @return The name of the entry denoted by the first length elements of
+	 *         the path.
+	 */
+	private String getName(int[] path, int length) {
+		if (length == 1) {
+			return getArtistName(path[0]);
+		}
+		int entry = path[length - 1];
+		StringBuilder name = new StringBuilder();
+		if (length == 2) {
+			name.append(
+					syllables[(path[0] * 7 + entry) % syllables.length]
+							.toUpperCase()).append(" Sessions Vol. ")
+					.append(entry + 1);
+		} else if (length < widths.length) {
+			name.append("Disc ").append(entry + 1);
+			return name.toString();
+		} else {
+			name.append("Song ").append(entry + 1).append(" of ")
+					.append(syllables[(path[0] + path[1] * 3 + entry)
+							% syllables.length]);
+		}
+		// Padding words, deterministic per entry
+		int word = entry;
+		while (name.length() < minTitleLength) {
+			name.append(' ').append(syllables[word++ % syllables.length])
+					.append(syllables[(word * 3) % syllables.length]);
+		}
+		if (unicode) {
+			name.append(' ').append(MUSICAL_NOTE);
+		}
+		return name.toString();
+	}
+
+	private int[] getSongPath(long song) {
+		int[] path = new int[widths.length];
+		long rest = song;
+		for (int level = widths.length - 1; level > 0; level--) {
+			path[level] = (int) (rest % widths[level]);
+			rest /= widths[level];
+		}
+		path[0] = (int) rest;
+		return path;
+	}
+
+	private static String toId(int[] path, int length) {
+		StringBuilder id = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				id.append('.');
+			}
+			id.append(path[i]);
+		}
+		return id.toString();
+	}
+
+	/**
+	 * @return The path of the id or <code>null</code> if the id does not
+	 *         belong to this library.
+	 */
+	private int[] parse(String id) {
+		if (id == null || id.length() == 0) {
+			return null;
+		}
+		String[] parts = id.split("\\.");
+		if (parts.length > widths.length) {
+			return null;
+		}
+		int[] path = new int[parts.length];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				path[i] = Integer.parseInt(parts[i]);
+				if (path[i] < 0 || path[i] >= widths[i]) {
+					return null;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * Appends text as xml attribute value.
+	 */
+	public static void appendEscaped(StringBuilder xml, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				xml.append("&lt;");
+				break;
+			case '>':
+				xml.append("&gt;");
+				break;
+			case '&':
+				xml.append("&amp;");
+				break;
+			case '"':
+				xml.append("&quot;");
+				break;
+			default:
+				xml.append(c);
+			}
+		}
+	}
+}